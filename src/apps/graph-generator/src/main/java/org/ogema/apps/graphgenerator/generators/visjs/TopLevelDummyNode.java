@@ -65,6 +65,10 @@ public class TopLevelDummyNode implements Resource {
 	public void addValueListener(ResourceValueListener<?> listener, boolean callOnEveryUpdate) {
 	}
 
+	@Override
+	public void addValueListener(ResourceValueListener<?> listener, boolean callOnEveryUpdate, boolean coalesce) {
+	}
+
 	@Override
 	public void addValueListener(ResourceValueListener<?> listener) {
 	}
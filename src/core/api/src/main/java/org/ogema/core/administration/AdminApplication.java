@@ -122,6 +122,12 @@ public interface AdminApplication {
 	 */
 	boolean isRunning();
 
+	/**
+	 * Gets the metrics of the listener and timer callbacks executed for this application, e.g. to find listeners
+	 * which cannot keep up with their events.
+	 */
+	CallbackStatistics getCallbackStatistics();
+
 	/*
 	 * stop bundle, but do not uninstall
 	 */
@@ -0,0 +1,98 @@
+/**
+ * Copyright 2011-2018 Fraunhofer-Gesellschaft zur Förderung der angewandten Wissenschaften e.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ogema.core.administration;
+
+import java.util.List;
+
+/**
+ * Metrics of the callbacks (listeners and timers) executed for an application since its start. Times are measured
+ * in nanoseconds. The latency of a callback is the time between the event and the start of the callback.
+ */
+public interface CallbackStatistics {
+
+	/**
+	 * Gets the execution mode of the application, e.g. single or pool.
+	 */
+	String getMode();
+
+	/**
+	 * Gets the number of callbacks waiting for execution.
+	 */
+	int getQueueDepth();
+
+	/**
+	 * Gets the maximum number of callbacks that have been waiting at the same time.
+	 */
+	int getMaxQueueDepth();
+
+	/**
+	 * Gets the number of callbacks executed so far.
+	 */
+	long getExecuted();
+
+	/**
+	 * Gets the number of value events dropped because the application could not keep up with its events.
+	 */
+	long getDropped();
+
+	/**
+	 * Gets the number of value events merged with an equal pending event because the application could not keep up
+	 * with its events.
+	 */
+	long getCoalesced();
+
+	long getAverageLatencyNanos();
+
+	long getMaxLatencyNanos();
+
+	long getAverageExecutionNanos();
+
+	long getMaxExecutionNanos();
+
+	/**
+	 * Gets the latency distribution of the executed callbacks. Element 0 counts the callbacks with a latency below
+	 * 1 &micro;s, element i the callbacks with a latency from 2<sup>i-1</sup> to 2<sup>i</sup> &micro;s, the last
+	 * element all longer latencies.
+	 */
+	long[] getLatencyHistogram();
+
+	/**
+	 * Gets the callbacks with the longest maximum execution time, slowest first.
+	 * 
+	 * @param n
+	 *            maximum number of callbacks returned.
+	 */
+	List<CallbackTimes> getSlowestCallbacks(int n);
+
+	/**
+	 * Execution times of the callbacks of one listener or timer class.
+	 */
+	interface CallbackTimes {
+
+		/**
+		 * Gets the class name of the listener.
+		 */
+		String getName();
+
+		long getCount();
+
+		long getTotalExecutionNanos();
+
+		long getMaxExecutionNanos();
+
+	}
+
+}
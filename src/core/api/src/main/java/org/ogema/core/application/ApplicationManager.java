@@ -117,6 +117,21 @@ public interface ApplicationManager extends Serializable {
 	 */
 	Timer createTimer(long millis);
 
+	/**
+	 * Create and start a timer whose callbacks are aligned to the framework clock: the timer elapses at
+	 * multiples of its timing interval, e.g. at full minutes for an interval of 60000 ms. The aligned timers of
+	 * an application which elapse at the same time are executed together, so that all of them see the
+	 * same execution time.
+	 * 
+	 * @param millis
+	 *            time in ms between two callbacks performed by the timer, must be {@code > 0}
+	 * @param listener
+	 *            reference to object implementing the callback for the timer
+	 * @return reference to Timer that will perform callbacks to listener
+	 * @throws IllegalArgumentException if {@code millis < 1}
+	 */
+	Timer createAlignedTimer(long millis, TimerListener listener);
+
 	/**
 	 * Destroys a previously-created timer. This is an equivalent alternative to {@link Timer#destroy()}.
 	 * @param timer Timer to destroy.
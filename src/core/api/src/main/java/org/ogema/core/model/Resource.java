@@ -114,6 +114,23 @@ public interface Resource {
 	 */
 	void addValueListener(ResourceValueListener<?> listener, boolean callOnEveryUpdate);
 
+	/**
+	 * Register listener receiving callbacks whenever the resource value is changed or written, like
+	 * {@link #addValueListener(ResourceValueListener, boolean)}. If coalesce is true, at most one callback of this
+	 * listener is waiting for execution at any time: changes which occur while a callback is waiting do not queue
+	 * further callbacks, the waiting callback sees the latest value of the resource. This bounds the number of
+	 * waiting callbacks for listeners which are slower than the updates of the resource and only need its latest
+	 * state, intermediate values are not reported.
+	 * 
+	 * @param listener
+	 *            reference to the listener receiving the callbacks.
+	 * @param callOnEveryUpdate
+	 *            see {@link #addValueListener(ResourceValueListener, boolean)}.
+	 * @param coalesce
+	 *            merge changes into a waiting callback instead of queueing a callback per change.
+	 */
+	void addValueListener(ResourceValueListener<?> listener, boolean callOnEveryUpdate, boolean coalesce);
+
 	/**
 	 * Register listener receiving callback whenever the resource value changes
 	 * to a new value (for simple values containing only a single value) or if
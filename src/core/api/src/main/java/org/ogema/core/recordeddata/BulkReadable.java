@@ -0,0 +1,44 @@
+/**
+ * Copyright 2011-2018 Fraunhofer-Gesellschaft zur Förderung der angewandten Wissenschaften e.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ogema.core.recordeddata;
+
+import org.ogema.core.channelmanager.measurements.SampledValue;
+import org.ogema.core.timeseries.ReadOnlyTimeSeries;
+
+/**
+ * Optional interface of time series which can read their values into a {@link TimestampedDoubleBlock} natively,
+ * without creating one {@link SampledValue} per data point. Check with <code>instanceof</code>, or use 
+ * {@link TimestampedDoubleBlock#addValues(ReadOnlyTimeSeries, long, long, TimestampedDoubleBlock)}, which uses 
+ * this interface if it is available.
+ */
+public interface BulkReadable {
+
+	/**
+	 * Bulk variant of {@link ReadOnlyTimeSeries#getValues(long, long)}: appends all values from startTime until
+	 * endTime to the target block. Intended for reading long intervals, such as exports of large histories. 
+	 * The target is not cleared by this method. 
+	 * 
+	 * @param startTime
+	 *            Time of the first value in the time series in ms since epoche. inclusive
+	 * @param endTime
+	 *            Time of the last value in the time series in ms since epoche. exclusive
+	 * @param target
+	 *            block the values are appended to
+	 * @return the number of values appended
+	 */
+	int getValues(long startTime, long endTime, TimestampedDoubleBlock target);
+
+}
@@ -61,6 +61,11 @@ public class RecordedDataConfiguration implements Serializable {
 	 */
 	private long fixedInterval;
 
+	/**
+	 * Request a compressed on-disk representation, if supported by the storage implementation.
+	 */
+	private boolean compressed;
+
 	/**
 	 * Getter method for the storage type to be used
 	 * 
@@ -99,11 +104,34 @@ public class RecordedDataConfiguration implements Serializable {
 		this.fixedInterval = fixedInterval;
 	}
 
+	/**
+	 * Getter for the compression flag.
+	 * 
+	 * @return true if the log data shall be stored in a compressed format
+	 * @since 2.3.0
+	 */
+	public boolean isCompressed() {
+		return compressed;
+	}
+
+	/**
+	 * Request a compressed storage format for new log data. Storage implementations that do not support
+	 * compression ignore this flag. Data already stored in a different format remains readable.
+	 * 
+	 * @param compressed
+	 *            true to store log data compressed
+	 * @since 2.3.0
+	 */
+	public void setCompressed(boolean compressed) {
+		this.compressed = compressed;
+	}
+
 	@Override
 	public int hashCode() {
 		int hash = 3;
 		hash = 79 * hash + Objects.hashCode(this.storageType);
 		hash = 79 * hash + (int) (this.fixedInterval ^ (this.fixedInterval >>> 32));
+		hash = 79 * hash + (this.compressed ? 1 : 0);
 		return hash;
 	}
 
@@ -122,6 +150,9 @@ public class RecordedDataConfiguration implements Serializable {
 		if (this.fixedInterval != other.fixedInterval) {
 			return false;
 		}
+		if (this.compressed != other.compressed) {
+			return false;
+		}
 		return this.storageType == other.storageType;
 	}
 	
@@ -0,0 +1,200 @@
+/**
+ * Copyright 2011-2018 Fraunhofer-Gesellschaft zur Förderung der angewandten Wissenschaften e.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ogema.core.recordeddata;
+
+import java.util.Arrays;
+import java.util.Iterator;
+
+import org.ogema.core.channelmanager.measurements.IllegalConversionException;
+import org.ogema.core.channelmanager.measurements.Quality;
+import org.ogema.core.channelmanager.measurements.SampledValue;
+import org.ogema.core.timeseries.ReadOnlyTimeSeries;
+
+/**
+ * A reusable block of time series data points in primitive column form. Timestamps, values and qualities
+ * are stored in parallel arrays, the first {@link #size()} entries of which are valid. Use this for 
+ * bulk reads of large intervals, where one {@link SampledValue} object per data point would be too expensive.
+ * A block can be reused for subsequent queries after calling {@link #clear()}.<br>
+ * Instances are not thread-safe.
+ * 
+ * @see BulkReadable
+ * @see #addValues(ReadOnlyTimeSeries, long, long, TimestampedDoubleBlock)
+ */
+public final class TimestampedDoubleBlock {
+
+	private static final int DEFAULT_CAPACITY = 16;
+
+	private long[] t;
+	private double[] v;
+	private byte[] quality;
+	private int size;
+
+	public TimestampedDoubleBlock() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @param initialCapacity
+	 * 		expected number of data points
+	 */
+	public TimestampedDoubleBlock(int initialCapacity) {
+		final int cap = Math.max(initialCapacity, 1);
+		t = new long[cap];
+		v = new double[cap];
+		quality = new byte[cap];
+	}
+
+	/**
+	 * @return
+	 * 		the number of valid entries
+	 */
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Remove all entries. The backing arrays are kept for reuse.
+	 */
+	public void clear() {
+		size = 0;
+	}
+
+	/**
+	 * @return
+	 * 		the backing timestamp array. Only the first {@link #size()} entries are valid. The array 
+	 * 		is replaced when the block grows, so do not keep a reference across write operations.
+	 */
+	public long[] getTimestamps() {
+		return t;
+	}
+
+	/**
+	 * @return
+	 * 		the backing value array. Only the first {@link #size()} entries are valid.
+	 * @see #getTimestamps()
+	 */
+	public double[] getValues() {
+		return v;
+	}
+
+	/**
+	 * @return
+	 * 		the backing quality array, containing {@link Quality#getQuality()} values. Only the first 
+	 * 		{@link #size()} entries are valid.
+	 * @see #getTimestamps()
+	 */
+	public byte[] getQualities() {
+		return quality;
+	}
+
+	public long getTimestamp(int index) {
+		checkIndex(index);
+		return t[index];
+	}
+
+	public double getValue(int index) {
+		checkIndex(index);
+		return v[index];
+	}
+
+	public Quality getQuality(int index) {
+		checkIndex(index);
+		return Quality.getQuality(quality[index]);
+	}
+
+	private void checkIndex(int index) {
+		if (index < 0 || index >= size)
+			throw new IndexOutOfBoundsException("Index " + index + ", size " + size);
+	}
+
+	/**
+	 * Make sure that at least <code>additional</code> further entries can be added without 
+	 * reallocating the backing arrays.
+	 * 
+	 * @param additional
+	 */
+	public void ensureAdditionalCapacity(int additional) {
+		final int required = size + additional;
+		if (required <= t.length)
+			return;
+		final int newCap = Math.max(required, t.length + (t.length >> 1));
+		t = Arrays.copyOf(t, newCap);
+		v = Arrays.copyOf(v, newCap);
+		quality = Arrays.copyOf(quality, newCap);
+	}
+
+	/**
+	 * Append a data point. Callers are responsible for adding points in chronological order.
+	 * 
+	 * @param timestamp
+	 * @param value
+	 * @param quality
+	 * 		a {@link Quality#getQuality()} value
+	 */
+	public void add(long timestamp, double value, byte quality) {
+		if (size == t.length)
+			ensureAdditionalCapacity(1);
+		t[size] = timestamp;
+		v[size] = value;
+		this.quality[size] = quality;
+		size++;
+	}
+
+	public void add(long timestamp, double value, Quality quality) {
+		add(timestamp, value, (byte) quality.getQuality());
+	}
+
+	public void add(SampledValue value) {
+		add(value.getTimestamp(), value.getValue().getDoubleValue(), value.getQuality());
+	}
+
+	/**
+	 * Appends all points of <code>source</code> with timestamps in the interval [startTime, endTime) to the 
+	 * target block. Uses the native bulk read of a {@link BulkReadable} source, and the iterator of the time 
+	 * series otherwise, in which case values that cannot be converted to double are skipped.
+	 * 
+	 * @param source
+	 * @param startTime
+	 * 		inclusive
+	 * @param endTime
+	 * 		exclusive
+	 * @param target
+	 * @return
+	 * 		the number of points added
+	 */
+	public static int addValues(ReadOnlyTimeSeries source, long startTime, long endTime, TimestampedDoubleBlock target) {
+		if (endTime <= startTime)
+			return 0;
+		if (source instanceof BulkReadable)
+			return ((BulkReadable) source).getValues(startTime, endTime, target);
+		final int sizeBefore = target.size;
+		final Iterator<SampledValue> it = source.iterator(startTime, endTime - 1);
+		while (it.hasNext()) {
+			final SampledValue sv = it.next();
+			try {
+				target.add(sv);
+			} catch (IllegalConversionException e) {
+				continue;
+			}
+		}
+		return target.size - sizeBefore;
+	}
+
+}
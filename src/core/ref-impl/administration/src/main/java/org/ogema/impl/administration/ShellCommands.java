@@ -47,6 +47,8 @@ import org.ogema.accesscontrol.ResourcePermission;
 import org.ogema.core.administration.AdminApplication;
 import org.ogema.core.administration.AdminLogger;
 import org.ogema.core.administration.AdministrationManager;
+import org.ogema.core.administration.CallbackStatistics;
+import org.ogema.core.administration.CallbackStatistics.CallbackTimes;
 import org.ogema.core.administration.CredentialStore;
 import org.ogema.core.administration.FrameworkClock;
 import org.ogema.core.administration.PatternCondition;
@@ -83,7 +85,7 @@ import org.osgi.service.useradmin.UserAdmin;
  */
 @Component(specVersion = "1.2")
 @Properties({ @Property(name = "osgi.command.scope", value = "ogm"), @Property(name = "osgi.command.function", value = {
-		"apps", "clock", "loggers", "log", "dump_cache", "update", 
+		"apps", "callbacks", "clock", "loggers", "log", "dump_cache", "update", 
 		"listUsers", "getUserProps", "setUserProp", "removeUserProp", "createUser", "deleteUser", 
 		"listGroups", "createGroup", "addMember", "removeMember",
 		"setNewPassword", "setUserPassword" }) })
@@ -222,6 +224,57 @@ public class ShellCommands {
 		}
 	}
 
+	@Descriptor("show queue length, latency and slowest callbacks of running OGEMA apps")
+	public void callbacks(
+			@Descriptor("number of slowest callbacks shown per app") @Parameter(names = { "-n",
+					"--slowest" }, absentValue = "5") int slowest) {
+		callbacks(slowest, null);
+	}
+
+	@Descriptor("show queue length, latency and slowest callbacks of running OGEMA apps")
+	public void callbacks(
+			@Descriptor("number of slowest callbacks shown per app") @Parameter(names = { "-n",
+					"--slowest" }, absentValue = "5") int slowest,
+			@Descriptor("substring matched against application or bundle name") String pattern) {
+		for (AdminApplication app : admin.getAllApps()) {
+			String appName = app.getID().getApplication().getClass().getCanonicalName();
+			String bundleName = app.getBundleRef().getSymbolicName();
+			if (pattern != null) {
+				if (!(appName.toUpperCase().contains(pattern.toUpperCase())
+						|| (bundleName.toUpperCase().contains(pattern.toUpperCase())))) {
+					continue;
+				}
+			}
+			CallbackStatistics stats = app.getCallbackStatistics();
+			System.out.printf("%s (%s, %d)%n", appName, bundleName, app.getBundleRef().getBundleId());
+			System.out.printf("  %s executor: %d callbacks, queue %d (max %d), %d dropped, %d coalesced%n",
+					stats.getMode(), stats.getExecuted(), stats.getQueueDepth(), stats.getMaxQueueDepth(),
+					stats.getDropped(), stats.getCoalesced());
+			System.out.printf("  latency avg %d us (max %d us), execution avg %d us (max %d us)%n",
+					stats.getAverageLatencyNanos() / 1000, stats.getMaxLatencyNanos() / 1000,
+					stats.getAverageExecutionNanos() / 1000, stats.getMaxExecutionNanos() / 1000);
+			long[] histogram = stats.getLatencyHistogram();
+			StringBuilder sb = new StringBuilder();
+			for (int i = 0; i < histogram.length; i++) {
+				if (histogram[i] == 0) {
+					continue;
+				}
+				String bound = i == histogram.length - 1 ? ">=" + (1L << (i - 1)) : "<" + (1L << i);
+				sb.append(' ').append(bound).append(" us: ").append(histogram[i]);
+			}
+			System.out.printf("  latency histogram:%s%n", sb);
+			List<CallbackTimes> slowestCallbacks = stats.getSlowestCallbacks(slowest);
+			if (!slowestCallbacks.isEmpty()) {
+				System.out.printf("  slowest callbacks:%n");
+				for (CallbackTimes ct : slowestCallbacks) {
+					System.out.printf("    %s: %d calls, avg %d us, max %d us%n", ct.getName(), ct.getCount(),
+							ct.getCount() == 0 ? 0 : ct.getTotalExecutionNanos() / ct.getCount() / 1000,
+							ct.getMaxExecutionNanos() / 1000);
+				}
+			}
+		}
+	}
+
 	@Descriptor("Display or set framework clock settings")
 	public void clock(
 			@Descriptor("set the simulation factor (value>=0)") 
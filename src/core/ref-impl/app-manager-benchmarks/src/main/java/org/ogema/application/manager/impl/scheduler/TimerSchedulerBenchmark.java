@@ -0,0 +1,126 @@
+/**
+ * Copyright 2011-2018 Fraunhofer-Gesellschaft zur Förderung der angewandten Wissenschaften e.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ogema.application.manager.impl.scheduler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import org.ogema.application.manager.impl.SystemClock;
+import org.ogema.core.application.Timer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Timer operations with many registered timers. The timers have periods between 1 and 10 seconds and do nothing,
+ * their listeners are executed directly on the dispatcher thread. 
+ * <ul>
+ * <li>setTimingInterval: changing the period of a timer, as seen by the caller.</li>
+ * <li>createAndDestroy: registering and removing a timer, as seen by the caller.</li>
+ * <li>queueReschedule: moving a timer to a new run time in the queue of the dispatcher thread.</li>
+ * </ul>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class TimerSchedulerBenchmark {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(TimerSchedulerBenchmark.class);
+	private static final Executor DIRECT = new Executor() {
+
+		@Override
+		public void execute(Runnable command) {
+			command.run();
+		}
+	};
+
+	@Param({ "10000" })
+	public int timers;
+
+	private DefaultTimerScheduler scheduler;
+	private final List<Timer> registered = new ArrayList<>();
+	private final Random random = new Random(1);
+	private TimerQueue queue;
+	private ApplicationTimer[] queued;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		scheduler = new DefaultTimerScheduler();
+		scheduler.clock = new SystemClock();
+		scheduler.activate(null);
+		for (int i = 0; i < timers; i++) {
+			Timer t = scheduler.createTimer(DIRECT, LOGGER);
+			t.setTimingInterval(1000 + random.nextInt(9000));
+			registered.add(t);
+		}
+		// timers of a scheduler without dispatcher thread in a separate queue, so that only the queue is measured
+		final DefaultTimerScheduler detached = new DefaultTimerScheduler();
+		detached.clock = scheduler.clock;
+		queue = new TimerQueue();
+		queued = new ApplicationTimer[timers];
+		for (int i = 0; i < timers; i++) {
+			queued[i] = (ApplicationTimer) detached.createTimer(DIRECT, LOGGER);
+			queue.schedule(queued[i], random.nextInt(1000000));
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void shutdown() {
+		for (Timer t : registered)
+			t.destroy();
+		scheduler.deactivate(null);
+	}
+
+	@Benchmark
+	public Timer setTimingInterval() {
+		final Timer t = registered.get(random.nextInt(timers));
+		t.setTimingInterval(1000 + random.nextInt(9000));
+		return t;
+	}
+
+	@Benchmark
+	public Timer createAndDestroy() {
+		final Timer t = scheduler.createTimer(DIRECT, LOGGER);
+		t.setTimingInterval(1000 + random.nextInt(9000));
+		t.destroy();
+		return t;
+	}
+
+	@Benchmark
+	public TimerQueue queueReschedule() {
+		queue.schedule(queued[random.nextInt(timers)], random.nextInt(1000000));
+		return queue;
+	}
+
+}
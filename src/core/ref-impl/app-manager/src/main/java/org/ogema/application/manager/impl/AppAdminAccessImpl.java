@@ -28,6 +28,7 @@ import org.ogema.accesscontrol.Constants;
 import org.ogema.accesscontrol.SessionAuth;
 import org.ogema.core.administration.AdminApplication;
 import org.ogema.core.administration.AdminLogger;
+import org.ogema.core.administration.CallbackStatistics;
 import org.ogema.core.administration.RegisteredAccessModeRequest;
 import org.ogema.core.administration.RegisteredPatternListener;
 import org.ogema.core.administration.RegisteredResourceDemand;
@@ -267,6 +268,11 @@ public class AppAdminAccessImpl implements AdminApplication {
 		return !appman.executor.isShutdown();
 	}
 
+	@Override
+	public CallbackStatistics getCallbackStatistics() {
+		return appman.getExecutorStatistics();
+	}
+
 	@Override
 	public String toString() {
 		return getID().toString();
@@ -0,0 +1,729 @@
+/**
+ * Copyright 2011-2018 Fraunhofer-Gesellschaft zur Förderung der angewandten Wissenschaften e.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ogema.application.manager.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+import org.ogema.core.application.Application;
+import org.ogema.events.CallbackBatch;
+import org.ogema.events.ListenerCallback;
+import org.ogema.events.OrderedEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Executes the callbacks of one application. Callbacks are queued in serial lanes, a lane executes its callbacks
+ * one after another on the threads of a backing executor. The execution mode is configured by the system property
+ * {@link #PROP_MODE}, for a single application by appending the class name of the application to the property name:
+ * <ul>
+ * <li>single (default): all callbacks in one lane on a thread of the application, i.e. no concurrent callbacks.</li>
+ * <li>pool: a pool of {@link #PROP_POOL_SIZE} threads for the application. Callbacks which implement
+ * {@link OrderedEvent}, e.g. resource listener callbacks, are executed in order per key, all other callbacks in one
+ * lane.</li>
+ * <li>virtual: like pool, but with a virtual thread per lane on Java runtimes which support virtual threads,
+ * single otherwise.</li>
+ * <li>shared: all callbacks in one lane, like single, but on a pool of {@link #PROP_POOL_SIZE} threads shared
+ * between all applications in this mode.</li>
+ * </ul>
+ * The number of waiting callbacks can be limited by {@link #PROP_QUEUE_LIMIT}. If the limit is reached, value events
+ * (see {@link ListenerCallback#isValueEvent()}) are handled according to {@link #PROP_OVERLOAD}:
+ * <ul>
+ * <li>block (default): the thread which submits a value event waits up to one second for a free place, value
+ * events submitted by the application itself are never blocked.</li>
+ * <li>drop_oldest: the oldest waiting value event is dropped.</li>
+ * <li>coalesce: a new value event is dropped if an equal value event is still waiting.</li>
+ * </ul>
+ * Value events are queued anyway if no place could be freed. All other callbacks, e.g. timers and framework
+ * callbacks, are always queued without waiting, since they are submitted by threads shared between applications.
+ * Both properties, as well as {@link #PROP_SLOW_CALLBACK}, can be set for a single application like the execution
+ * mode.
+ */
+class ApplicationExecutor extends AbstractExecutorService {
+
+	static final String PROP_MODE = "org.ogema.apps.executor";
+	static final String PROP_POOL_SIZE = "org.ogema.apps.executor.poolsize";
+	// maximum number of waiting callbacks, default 0: unlimited
+	static final String PROP_QUEUE_LIMIT = "org.ogema.apps.executor.queuelimit";
+	static final String PROP_OVERLOAD = "org.ogema.apps.executor.overload";
+	// callbacks running longer than this (in ms) are logged, 0 disables the log message
+	static final String PROP_SLOW_CALLBACK = "org.ogema.apps.executor.slowcallback";
+
+	enum Mode {
+		SINGLE, POOL, VIRTUAL, SHARED
+	}
+
+	enum Overload {
+		BLOCK, DROP_OLDEST, COALESCE
+	}
+
+	// number of callbacks a lane executes before it gives its thread to the next lane
+	private static final int LANE_BATCH = 64;
+	private static final long BLOCK_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(1);
+	private static final long DEFAULT_SLOW_CALLBACK_MILLIS = 10000;
+	// overload messages are logged for the first and then for every n-th dropped callback
+	private static final int OVERLOAD_LOG_INTERVAL = 10000;
+	private static final AtomicIntegerFieldUpdater<Task> CLAIMED = AtomicIntegerFieldUpdater.newUpdater(Task.class,
+			"claimed");
+	private static final ThreadLocal<ApplicationExecutor> CURRENT = new ThreadLocal<>();
+	private static final Logger LOGGER = LoggerFactory.getLogger(ApplicationExecutor.class);
+	private static ExecutorService sharedPool;
+
+	private final String name;
+	private final Mode mode;
+	private final ExecutorService backing;
+	private final boolean ownBacking;
+	private final int queueLimit;
+	private final Overload overload;
+	private final long slowCallbackNanos;
+	private final Lane appLane = new Lane(null);
+	// only used in modes pool and virtual
+	private final ConcurrentMap<Object, Lane> lanes = new ConcurrentHashMap<>();
+	private final ExecutorStatistics statistics;
+	// queued and running callbacks
+	private final AtomicInteger pending = new AtomicInteger();
+	// waiting value events, oldest first, only used with policy drop_oldest; may contain started events
+	private final Queue<Task> valueEvents = new ConcurrentLinkedQueue<>();
+	// first waiting value event per callback, only used with policy coalesce
+	private final ConcurrentMap<Object, Task> pendingValueEvents = new ConcurrentHashMap<>();
+	// threads waiting for a free place, only used with policy block
+	private final AtomicInteger blocked = new AtomicInteger();
+	private final Object capacity = new Object();
+	private volatile boolean shutdown;
+
+	ApplicationExecutor(String name, Mode mode, ExecutorService backing, boolean ownBacking, int queueLimit,
+			Overload overload, long slowCallbackMillis) {
+		this.name = name;
+		this.mode = mode;
+		this.backing = backing;
+		this.ownBacking = ownBacking;
+		this.queueLimit = queueLimit;
+		this.overload = overload;
+		this.slowCallbackNanos = TimeUnit.MILLISECONDS.toNanos(slowCallbackMillis);
+		this.statistics = new ExecutorStatistics(mode.name().toLowerCase(Locale.ENGLISH));
+	}
+
+	static ApplicationExecutor create(Application app, ThreadFactory threads) {
+		final String name = app.getClass().getName();
+		Mode mode = getMode(name);
+		final int poolSize = Math.max(1, Integer.getInteger(PROP_POOL_SIZE, Runtime.getRuntime().availableProcessors()));
+		final int queueLimit = (int) getLong(PROP_QUEUE_LIMIT, name, 0);
+		final Overload overload = getOverload(name);
+		final long slowCallback = getLong(PROP_SLOW_CALLBACK, name, DEFAULT_SLOW_CALLBACK_MILLIS);
+		switch (mode) {
+		case POOL:
+			return new ApplicationExecutor(name, mode, newPool(poolSize, threads), true, queueLimit, overload,
+					slowCallback);
+		case VIRTUAL:
+			final ExecutorService virtual = newVirtualThreadExecutor();
+			if (virtual != null) {
+				return new ApplicationExecutor(name, mode, virtual, true, queueLimit, overload, slowCallback);
+			}
+			LOGGER.warn("Virtual threads not supported by this Java runtime, app {} uses a single thread", name);
+			mode = Mode.SINGLE;
+			break;
+		case SHARED:
+			return new ApplicationExecutor(name, mode, getSharedPool(poolSize), false, queueLimit, overload,
+					slowCallback);
+		default:
+			break;
+		}
+		return new ApplicationExecutor(name, mode, Executors.newSingleThreadExecutor(threads), true, queueLimit,
+				overload, slowCallback);
+	}
+
+	/*
+	 * value of the application specific property, or of the global property
+	 */
+	private static String getProperty(String property, String appClass) {
+		return System.getProperty(property + "." + appClass, System.getProperty(property));
+	}
+
+	private static Mode getMode(String appClass) {
+		final String value = getProperty(PROP_MODE, appClass);
+		if (value == null) {
+			return Mode.SINGLE;
+		}
+		try {
+			return Mode.valueOf(value.trim().toUpperCase(Locale.ENGLISH));
+		} catch (IllegalArgumentException e) {
+			LOGGER.warn("Unknown execution mode '{}' for app {}, using a single thread", value, appClass);
+			return Mode.SINGLE;
+		}
+	}
+
+	private static Overload getOverload(String appClass) {
+		final String value = getProperty(PROP_OVERLOAD, appClass);
+		if (value == null) {
+			return Overload.BLOCK;
+		}
+		try {
+			return Overload.valueOf(value.trim().toUpperCase(Locale.ENGLISH));
+		} catch (IllegalArgumentException e) {
+			LOGGER.warn("Unknown overload policy '{}' for app {}, using block", value, appClass);
+			return Overload.BLOCK;
+		}
+	}
+
+	private static long getLong(String property, String appClass, long defaultValue) {
+		final String value = getProperty(property, appClass);
+		if (value == null) {
+			return defaultValue;
+		}
+		try {
+			return Math.max(0, Long.parseLong(value.trim()));
+		} catch (NumberFormatException e) {
+			LOGGER.warn("Invalid value '{}' of property {} for app {}", value, property, appClass);
+			return defaultValue;
+		}
+	}
+
+	private static ThreadPoolExecutor newPool(int size, ThreadFactory threads) {
+		final ThreadPoolExecutor pool = new ThreadPoolExecutor(size, size, 60, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(), threads);
+		pool.allowCoreThreadTimeOut(true);
+		return pool;
+	}
+
+	// Executors.newVirtualThreadPerTaskExecutor(), available from Java 21 on
+	private static ExecutorService newVirtualThreadExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException | SecurityException e) {
+			return null;
+		}
+	}
+
+	private static synchronized ExecutorService getSharedPool(int size) {
+		if (sharedPool == null) {
+			final ThreadFactory threads = new ThreadFactory() {
+
+				private final AtomicInteger count = new AtomicInteger();
+
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(ApplicationThreadFactory.group, r);
+					t.setName("OGEMA shared app thread (" + count.incrementAndGet() + ")");
+					t.setDaemon(true);
+					return t;
+				}
+			};
+			sharedPool = newPool(size, threads);
+		}
+		return sharedPool;
+	}
+
+	Mode getMode() {
+		return mode;
+	}
+
+	Overload getOverload() {
+		return overload;
+	}
+
+	ExecutorStatistics getStatistics() {
+		return statistics;
+	}
+
+	/**
+	 * @return true iff the current thread is executing a callback of this executor.
+	 */
+	boolean isExecutorThread() {
+		return CURRENT.get() == this;
+	}
+
+	@Override
+	public <T> Future<T> submit(Callable<T> task) {
+		return submit(task, null);
+	}
+
+	/*
+	 * like submit(Callable), but adds the future to newTasks if a new task has been queued, i.e. unless the callback
+	 * has been coalesced with an equal waiting one
+	 */
+	@SuppressWarnings("unchecked")
+	<T> Future<T> submit(Callable<T> task, Collection<? super Future<T>> newTasks) {
+		if (task == null) {
+			throw new NullPointerException();
+		}
+		final RunnableFuture<T> future = newTaskFor(task);
+		final Task queued = execute(future, task);
+		if (queued.command != future) {
+			// a coalesced callback is represented by the equal waiting callback
+			return (Future<T>) queued.command;
+		}
+		if (newTasks != null) {
+			newTasks.add(future);
+		}
+		return future;
+	}
+
+	@Override
+	protected <T> RunnableFuture<T> newTaskFor(Runnable runnable, T value) {
+		if (runnable instanceof CallbackBatch) {
+			return new BatchFuture<>((CallbackBatch) runnable, value);
+		}
+		return super.newTaskFor(runnable, value);
+	}
+
+	@Override
+	public void execute(Runnable command) {
+		if (command == null) {
+			throw new NullPointerException();
+		}
+		execute(command, command);
+	}
+
+	/*
+	 * callback is the object submitted by the caller, it determines ordering, name and overload handling of the
+	 * task; returns the queued task
+	 */
+	private Task execute(Runnable command, Object callback) {
+		if (shutdown) {
+			throw new RejectedExecutionException("executor has been shut down");
+		}
+		final boolean valueEvent = callback instanceof ListenerCallback && ((ListenerCallback) callback).isValueEvent();
+		if (queueLimit > 0 && statistics.getQueueDepth() >= queueLimit) {
+			final Task waiting = overloaded(callback, valueEvent);
+			if (waiting != null) {
+				return waiting;
+			}
+		}
+		final Task task = new Task(command, callback);
+		pending.incrementAndGet();
+		statistics.submitted();
+		if (valueEvent && queueLimit > 0) {
+			if (overload == Overload.DROP_OLDEST) {
+				removeStartedValueEvents();
+				valueEvents.offer(task);
+			} else if (overload == Overload.COALESCE) {
+				pendingValueEvents.putIfAbsent(callback, task);
+			}
+		}
+		try {
+			final Object key = callback instanceof OrderedEvent ? ((OrderedEvent) callback).getOrderingKey() : null;
+			if (key == null || mode == Mode.SINGLE || mode == Mode.SHARED) {
+				appLane.add(task);
+			} else {
+				addKeyed(key, task);
+			}
+		} catch (RejectedExecutionException e) {
+			task.claim();
+			pendingValueEvents.remove(callback, task);
+			statistics.removed();
+			done();
+			throw e;
+		}
+		return task;
+	}
+
+	/*
+	 * called if the queue limit has been reached; returns a waiting task which replaces the new callback, or null if
+	 * the new callback has to be queued
+	 */
+	private Task overloaded(Object callback, boolean valueEvent) {
+		switch (overload) {
+		case DROP_OLDEST:
+			dropOldestValueEvent();
+			return null;
+		case COALESCE:
+			if (!valueEvent) {
+				return null;
+			}
+			final Task waiting = pendingValueEvents.get(callback);
+			// a task which has not been claimed yet will see the latest value
+			if (waiting == null || waiting.claimed != 0) {
+				return null;
+			}
+			final long coalesced = statistics.coalesced();
+			if (coalesced == 1 || coalesced % OVERLOAD_LOG_INTERVAL == 0) {
+				LOGGER.warn("Callback queue of app {} full ({} callbacks), {} value events coalesced so far", name,
+						queueLimit, coalesced);
+			}
+			return waiting;
+		default:
+			if (valueEvent) {
+				awaitCapacity();
+			}
+			return null;
+		}
+	}
+
+	private void dropOldestValueEvent() {
+		Task task;
+		while ((task = valueEvents.poll()) != null) {
+			if (!task.claim()) {
+				continue;
+			}
+			// the task stays in its lane, but will not be executed
+			if (task.command instanceof Future) {
+				((Future<?>) task.command).cancel(false);
+			}
+			final long dropped = statistics.dropped();
+			done();
+			if (dropped == 1 || dropped % OVERLOAD_LOG_INTERVAL == 0) {
+				LOGGER.warn("Callback queue of app {} full ({} callbacks), {} value events dropped so far", name,
+						queueLimit, dropped);
+			}
+			return;
+		}
+	}
+
+	private void removeStartedValueEvents() {
+		Task head;
+		while ((head = valueEvents.peek()) != null && head.claimed != 0) {
+			valueEvents.remove(head);
+		}
+	}
+
+	private void awaitCapacity() {
+		// a callback waiting for the callbacks of its own application would only delay them
+		if (isExecutorThread()) {
+			return;
+		}
+		final long deadline = System.nanoTime() + BLOCK_TIMEOUT_NANOS;
+		blocked.incrementAndGet();
+		try {
+			synchronized (capacity) {
+				while (statistics.getQueueDepth() >= queueLimit && !shutdown) {
+					final long remaining = deadline - System.nanoTime();
+					if (remaining <= 0) {
+						LOGGER.warn("Callback queue of app {} still full after {} ms, queueing callback anyway", name,
+								TimeUnit.NANOSECONDS.toMillis(BLOCK_TIMEOUT_NANOS));
+						return;
+					}
+					TimeUnit.NANOSECONDS.timedWait(capacity, remaining);
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			blocked.decrementAndGet();
+		}
+	}
+
+	private void signalCapacity() {
+		if (blocked.get() > 0) {
+			synchronized (capacity) {
+				capacity.notifyAll();
+			}
+		}
+	}
+
+	static String getCallbackName(Object callback) {
+		final Object target = callback instanceof ListenerCallback ? ((ListenerCallback) callback).getListener()
+				: callback;
+		return target.getClass().getName();
+	}
+
+	private void addKeyed(Object key, Task task) {
+		for (;;) {
+			Lane lane = lanes.get(key);
+			if (lane == null) {
+				final Lane newLane = new Lane(key);
+				lane = lanes.putIfAbsent(key, newLane);
+				if (lane == null) {
+					lane = newLane;
+				}
+			}
+			if (lane.add(task)) {
+				return;
+			}
+			// lane has just been removed
+		}
+	}
+
+	private void done() {
+		if (pending.decrementAndGet() == 0 && shutdown) {
+			terminate();
+		}
+	}
+
+	private void terminate() {
+		if (ownBacking) {
+			backing.shutdown();
+		}
+		synchronized (pending) {
+			pending.notifyAll();
+		}
+	}
+
+	@Override
+	public void shutdown() {
+		shutdown = true;
+		if (pending.get() == 0) {
+			terminate();
+		}
+	}
+
+	@Override
+	public List<Runnable> shutdownNow() {
+		shutdown = true;
+		final List<Runnable> notStarted = new ArrayList<>();
+		appLane.drainTo(notStarted);
+		for (Lane lane : lanes.values()) {
+			lane.drainTo(notStarted);
+		}
+		appLane.interrupt();
+		for (Lane lane : lanes.values()) {
+			lane.interrupt();
+		}
+		if (pending.get() == 0) {
+			terminate();
+		}
+		return notStarted;
+	}
+
+	@Override
+	public boolean isShutdown() {
+		return shutdown;
+	}
+
+	@Override
+	public boolean isTerminated() {
+		return shutdown && pending.get() == 0;
+	}
+
+	@Override
+	public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+		final long deadline = System.nanoTime() + unit.toNanos(timeout);
+		synchronized (pending) {
+			while (!isTerminated()) {
+				final long remaining = deadline - System.nanoTime();
+				if (remaining <= 0) {
+					return false;
+				}
+				TimeUnit.NANOSECONDS.timedWait(pending, remaining);
+			}
+		}
+		return true;
+	}
+
+	/* a submitted callback, measures the waiting and execution times */
+	private final class Task implements Runnable {
+
+		final Runnable command;
+		final Object callback;
+		final long submitted = System.nanoTime();
+		// set to 1 by the thread which executes, drops or drains the task
+		volatile int claimed;
+
+		Task(Runnable command, Object callback) {
+			this.command = command;
+			this.callback = callback;
+		}
+
+		boolean claim() {
+			return CLAIMED.compareAndSet(this, 0, 1);
+		}
+
+		@Override
+		public void run() {
+			if (!claim()) {
+				// dropped by the overload policy
+				return;
+			}
+			if (overload == Overload.COALESCE) {
+				pendingValueEvents.remove(callback, this);
+			}
+			final long start = System.nanoTime();
+			statistics.started(start - submitted);
+			signalCapacity();
+			try {
+				if (command == callback && callback instanceof CallbackBatch) {
+					runBatch((CallbackBatch) callback, start);
+				} else if (command instanceof BatchFuture) {
+					// the future of a submitted batch measures the callbacks itself
+					command.run();
+				} else {
+					try {
+						command.run();
+					} finally {
+						finished(callback, System.nanoTime() - start);
+					}
+				}
+			} finally {
+				done();
+			}
+		}
+
+	}
+
+	/* each callback of the batch is measured on its own */
+	private void runBatch(CallbackBatch batch, long start) {
+		long partStart = start;
+		for (Runnable part : batch.getCallbacks()) {
+			try {
+				part.run();
+			} finally {
+				final long end = System.nanoTime();
+				finished(part, end - partStart);
+				partStart = end;
+			}
+		}
+	}
+
+	private void finished(Object callback, long time) {
+		final String callbackName = getCallbackName(callback);
+		statistics.finished(callbackName, time);
+		if (slowCallbackNanos > 0 && time > slowCallbackNanos) {
+			LOGGER.warn("Slow callback in app {}: {} took {} ms", name, callbackName,
+					TimeUnit.NANOSECONDS.toMillis(time));
+		}
+	}
+
+	/* future of a submitted batch, completes after all callbacks of the batch have been executed */
+	private final class BatchFuture<T> extends FutureTask<T> {
+
+		BatchFuture(final CallbackBatch batch, T value) {
+			super(new Runnable() {
+
+				@Override
+				public void run() {
+					runBatch(batch, System.nanoTime());
+				}
+			}, value);
+		}
+
+	}
+
+	/* callbacks which are executed one after another */
+	private final class Lane implements Runnable {
+
+		final Object key;
+		final Queue<Task> tasks = new ConcurrentLinkedQueue<>();
+		// guarded by this
+		boolean scheduled;
+		boolean removed;
+		volatile Thread thread;
+
+		Lane(Object key) {
+			this.key = key;
+		}
+
+		/*
+		 * returns false if the lane has been removed
+		 */
+		boolean add(Task task) {
+			synchronized (this) {
+				if (removed) {
+					return false;
+				}
+				tasks.offer(task);
+				if (scheduled) {
+					return true;
+				}
+				scheduled = true;
+			}
+			try {
+				backing.execute(this);
+			} catch (RejectedExecutionException e) {
+				synchronized (this) {
+					tasks.remove(task);
+					scheduled = false;
+				}
+				throw e;
+			}
+			return true;
+		}
+
+		@Override
+		public void run() {
+			thread = Thread.currentThread();
+			CURRENT.set(ApplicationExecutor.this);
+			try {
+				for (int i = 0; i < LANE_BATCH; i++) {
+					final Task task = tasks.poll();
+					if (task == null) {
+						break;
+					}
+					task.run();
+				}
+			} finally {
+				CURRENT.remove();
+				thread = null;
+				// interrupt status must not leak to the next lane on this thread
+				Thread.interrupted();
+				reschedule();
+			}
+		}
+
+		private void reschedule() {
+			synchronized (this) {
+				if (tasks.isEmpty()) {
+					scheduled = false;
+					if (key != null) {
+						removed = true;
+						lanes.remove(key, this);
+					}
+					return;
+				}
+			}
+			try {
+				backing.execute(this);
+			} catch (RejectedExecutionException e) {
+				final List<Runnable> dropped = new ArrayList<>();
+				drainTo(dropped);
+				synchronized (this) {
+					scheduled = false;
+				}
+				LOGGER.warn("{} callbacks dropped, executor has been shut down", dropped.size());
+			}
+		}
+
+		void drainTo(List<Runnable> notStarted) {
+			Task task;
+			while ((task = tasks.poll()) != null) {
+				if (!task.claim()) {
+					continue;
+				}
+				pendingValueEvents.remove(task.callback, task);
+				notStarted.add(task.command);
+				statistics.removed();
+				done();
+			}
+		}
+
+		void interrupt() {
+			final Thread t = thread;
+			if (t != null) {
+				t.interrupt();
+			}
+		}
+
+	}
+
+}
@@ -26,10 +26,10 @@ import java.util.List;
 import java.util.Objects;
 import java.util.Queue;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
@@ -72,6 +72,7 @@ public class ApplicationManagerImpl implements ApplicationManager, TimerRemovedL
 	private final FrameworkClock clock;
 
 	protected final ExecutorService executor;
+	private final ApplicationExecutor appExecutor;
 	private final Queue<Future<?>> workQueue;
 	private static final int WORKQUEUE_FORCE_DRAIN_SIZE = 50;
 	final Callable<Void> drainWorkQueueTask;
@@ -102,7 +103,7 @@ public class ApplicationManagerImpl implements ApplicationManager, TimerRemovedL
 		this.application = Objects.requireNonNull(app);
 		this.appID = id;
 		workQueue = new ConcurrentLinkedQueue<>();
-		this.executor = Executors.newSingleThreadExecutor(tfac = new ApplicationThreadFactory(application));
+		this.executor = appExecutor = ApplicationExecutor.create(application, tfac = new ApplicationThreadFactory(application));
 		logger = LoggerFactory.getLogger("org.ogema.core.application-" + app.getClass().getName());
 		this.resMan = new ApplicationResourceManager(this, app, tracker.getResourceDBManager(),
 				tracker.getPermissionManager());
@@ -126,7 +127,7 @@ public class ApplicationManagerImpl implements ApplicationManager, TimerRemovedL
 		this.clock = clock;
 		this.bContext = null;
 		workQueue = new ConcurrentLinkedQueue<>();
-		this.executor = Executors.newSingleThreadExecutor(tfac = new ApplicationThreadFactory(application));
+		this.executor = appExecutor = ApplicationExecutor.create(application, tfac = new ApplicationThreadFactory(application));
 		logger = LoggerFactory.getLogger("AppMan." + app.getClass().getName());
 		resMan = null;
 		this.appID = AppIDImpl.getNewID(app);
@@ -246,6 +247,17 @@ public class ApplicationManagerImpl implements ApplicationManager, TimerRemovedL
 		return timer;
 	}
 
+	@Override
+	public Timer createAlignedTimer(long millis, TimerListener listener) {
+		Timer t = scheduler.createAlignedTimer(executor, getLogger(), this);
+		t.setTimingInterval(millis);
+		t.addListener(listener);
+		synchronized (timers) {
+			timers.add(t);
+		}
+		return t;
+	}
+
 	@Override
 	public void destroyTimer(Timer t) {
 		// will trigger a timerRemoved callback to this object
@@ -346,7 +358,7 @@ public class ApplicationManagerImpl implements ApplicationManager, TimerRemovedL
 		if (!executor.isTerminated()) 
 			logger.error("App {} did not shut down properly, there are still running tasks",appID.getIDString());
 		else
-			logger.debug("shut down application manager for app '{}'", appID.getIDString());
+			logger.debug("shut down application manager for app '{}', {}", appID.getIDString(), appExecutor.getStatistics());
 		((AppIDImpl) appID).close();
 	}
 
@@ -355,8 +367,8 @@ public class ApplicationManagerImpl implements ApplicationManager, TimerRemovedL
 		if (executor.isShutdown()) {
 			return null;
 		}
-		Future<T> f = executor.submit(application);
-		workQueue.add(f);
+		// a callback coalesced with a waiting one returns the future of the latter, which is queued already
+		Future<T> f = appExecutor.submit(application, workQueue);
 		if (workQueue.size() > WORKQUEUE_FORCE_DRAIN_SIZE) {
 			final Future<?> future = workQueue.peek();
 			if (future != null && future.isDone()) {
@@ -375,6 +387,9 @@ public class ApplicationManagerImpl implements ApplicationManager, TimerRemovedL
 			Future<?> f = workQueue.poll();
 			try {
 				f.get();
+			} catch (CancellationException ce) {
+				// dropped by the overload policy of the executor
+				continue;
 			} catch (ExecutionException ee) {
 				reportException(ee.getCause());
 			} catch (InterruptedException ie) {
@@ -406,7 +421,14 @@ public class ApplicationManagerImpl implements ApplicationManager, TimerRemovedL
 	 * @return true iff the current thread is this application's thread.
 	 */
 	public boolean isApplicationThread() {
-		return Thread.currentThread() == tfac.getLastThread();
+		return appExecutor.isExecutorThread();
+	}
+
+	/**
+	 * @return queue depth and latency of the callbacks of this application.
+	 */
+	public ExecutorStatistics getExecutorStatistics() {
+		return appExecutor.getStatistics();
 	}
 
 	@Override
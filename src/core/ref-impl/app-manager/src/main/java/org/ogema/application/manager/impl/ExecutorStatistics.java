@@ -0,0 +1,259 @@
+/**
+ * Copyright 2011-2018 Fraunhofer-Gesellschaft zur Förderung der angewandten Wissenschaften e.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ogema.application.manager.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.ogema.core.administration.CallbackStatistics;
+
+/**
+ * Metrics of the callbacks of one application, see {@link ApplicationManagerImpl#getExecutorStatistics()} and
+ * {@link org.ogema.core.administration.AdminApplication#getCallbackStatistics()}. Updated
+ * by the threads executing the callbacks, may be read by any thread.
+ */
+public class ExecutorStatistics implements CallbackStatistics {
+
+	// latencies up to 2^22 us (about 4 s) in separate buckets
+	static final int HISTOGRAM_BUCKETS = 24;
+
+	private static final Comparator<CallbackTimes> SLOWEST_FIRST = new Comparator<CallbackTimes>() {
+
+		@Override
+		public int compare(CallbackTimes o1, CallbackTimes o2) {
+			return Long.compare(o2.getMaxExecutionNanos(), o1.getMaxExecutionNanos());
+		}
+	};
+
+	private final String mode;
+	private final AtomicInteger queueDepth = new AtomicInteger();
+	private final AtomicInteger maxQueueDepth = new AtomicInteger();
+	private final AtomicLong executed = new AtomicLong();
+	private final AtomicLong totalLatencyNanos = new AtomicLong();
+	private final AtomicLong maxLatencyNanos = new AtomicLong();
+	private final AtomicLong totalExecutionNanos = new AtomicLong();
+	private final AtomicLong maxExecutionNanos = new AtomicLong();
+	private final AtomicLong dropped = new AtomicLong();
+	private final AtomicLong coalesced = new AtomicLong();
+	private final AtomicLongArray latencyHistogram = new AtomicLongArray(HISTOGRAM_BUCKETS);
+	private final ConcurrentMap<String, Times> callbacks = new ConcurrentHashMap<>();
+
+	ExecutorStatistics(String mode) {
+		this.mode = mode;
+	}
+
+	void submitted() {
+		final int depth = queueDepth.incrementAndGet();
+		updateMax(maxQueueDepth, depth);
+	}
+
+	void removed() {
+		queueDepth.decrementAndGet();
+	}
+
+	void started(long latencyNanos) {
+		queueDepth.decrementAndGet();
+		totalLatencyNanos.addAndGet(latencyNanos);
+		updateMax(maxLatencyNanos, latencyNanos);
+		latencyHistogram.incrementAndGet(bucket(latencyNanos / 1000));
+	}
+
+	static int bucket(long micros) {
+		return Math.min(HISTOGRAM_BUCKETS - 1, 64 - Long.numberOfLeadingZeros(Math.max(micros, 0)));
+	}
+
+	void finished(String callback, long executionNanos) {
+		executed.incrementAndGet();
+		totalExecutionNanos.addAndGet(executionNanos);
+		updateMax(maxExecutionNanos, executionNanos);
+		Times times = callbacks.get(callback);
+		if (times == null) {
+			final Times newTimes = new Times(callback);
+			times = callbacks.putIfAbsent(callback, newTimes);
+			if (times == null) {
+				times = newTimes;
+			}
+		}
+		times.add(executionNanos);
+	}
+
+	/*
+	 * returns the number of callbacks dropped so far
+	 */
+	long dropped() {
+		queueDepth.decrementAndGet();
+		return dropped.incrementAndGet();
+	}
+
+	/*
+	 * returns the number of callbacks coalesced so far, the callback has not been queued
+	 */
+	long coalesced() {
+		return coalesced.incrementAndGet();
+	}
+
+	private static void updateMax(AtomicInteger max, int value) {
+		int current;
+		while (value > (current = max.get()) && !max.compareAndSet(current, value));
+	}
+
+	private static void updateMax(AtomicLong max, long value) {
+		long current;
+		while (value > (current = max.get()) && !max.compareAndSet(current, value));
+	}
+
+	/**
+	 * @return execution mode of the application, see {@link ApplicationExecutor#PROP_MODE}.
+	 */
+	@Override
+	public String getMode() {
+		return mode;
+	}
+
+	/**
+	 * @return number of callbacks waiting for execution.
+	 */
+	@Override
+	public int getQueueDepth() {
+		return queueDepth.get();
+	}
+
+	@Override
+	public int getMaxQueueDepth() {
+		return maxQueueDepth.get();
+	}
+
+	/**
+	 * @return number of callbacks executed so far.
+	 */
+	@Override
+	public long getExecuted() {
+		return executed.get();
+	}
+
+	/**
+	 * @return average time between submission and start of a callback.
+	 */
+	@Override
+	public long getAverageLatencyNanos() {
+		final long n = executed.get();
+		return n == 0 ? 0 : totalLatencyNanos.get() / n;
+	}
+
+	@Override
+	public long getMaxLatencyNanos() {
+		return maxLatencyNanos.get();
+	}
+
+	@Override
+	public long getAverageExecutionNanos() {
+		final long n = executed.get();
+		return n == 0 ? 0 : totalExecutionNanos.get() / n;
+	}
+
+	@Override
+	public long getMaxExecutionNanos() {
+		return maxExecutionNanos.get();
+	}
+
+	@Override
+	public long getDropped() {
+		return dropped.get();
+	}
+
+	@Override
+	public long getCoalesced() {
+		return coalesced.get();
+	}
+
+	@Override
+	public long[] getLatencyHistogram() {
+		final long[] result = new long[HISTOGRAM_BUCKETS];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = latencyHistogram.get(i);
+		}
+		return result;
+	}
+
+	@Override
+	public List<CallbackTimes> getSlowestCallbacks(int n) {
+		final List<CallbackTimes> result = new ArrayList<CallbackTimes>(callbacks.values());
+		Collections.sort(result, SLOWEST_FIRST);
+		return result.size() > n ? new ArrayList<>(result.subList(0, Math.max(n, 0))) : result;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s executor: %d callbacks executed, %d dropped, %d coalesced, queue depth %d (max %d), "
+				+ "latency avg %d us (max %d us), execution avg %d us (max %d us)", mode, getExecuted(), getDropped(),
+				getCoalesced(), getQueueDepth(), getMaxQueueDepth(), getAverageLatencyNanos() / 1000,
+				getMaxLatencyNanos() / 1000, getAverageExecutionNanos() / 1000, getMaxExecutionNanos() / 1000);
+	}
+
+	/* execution times of the callbacks with the same name */
+	private static class Times implements CallbackTimes {
+
+		private final String name;
+		private final AtomicLong count = new AtomicLong();
+		private final AtomicLong total = new AtomicLong();
+		private final AtomicLong max = new AtomicLong();
+
+		Times(String name) {
+			this.name = name;
+		}
+
+		void add(long executionNanos) {
+			count.incrementAndGet();
+			total.addAndGet(executionNanos);
+			updateMax(max, executionNanos);
+		}
+
+		@Override
+		public String getName() {
+			return name;
+		}
+
+		@Override
+		public long getCount() {
+			return count.get();
+		}
+
+		@Override
+		public long getTotalExecutionNanos() {
+			return total.get();
+		}
+
+		@Override
+		public long getMaxExecutionNanos() {
+			return max.get();
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%s: %d calls, execution avg %d us (max %d us)", name, getCount(),
+					getCount() == 0 ? 0 : getTotalExecutionNanos() / getCount() / 1000, getMaxExecutionNanos() / 1000);
+		}
+
+	}
+
+}
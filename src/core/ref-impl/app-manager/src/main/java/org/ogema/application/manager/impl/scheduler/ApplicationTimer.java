@@ -22,6 +22,7 @@ import java.util.concurrent.Executor;
 
 import org.ogema.core.application.Timer;
 import org.ogema.core.application.TimerListener;
+import org.ogema.events.ListenerCallback;
 import org.ogema.timer.TimerRemovedListener;
 import org.slf4j.Logger;
 
@@ -32,7 +33,7 @@ import org.slf4j.Logger;
  * @author Jan Lapp, Fraunhofer IWES
  */
 public class ApplicationTimer implements Timer, Comparable<ApplicationTimer>,
-        Callable<Boolean>, Runnable {
+        Callable<Boolean>, Runnable, ListenerCallback {
 
     public static enum TimerState {
 
@@ -52,11 +53,17 @@ public class ApplicationTimer implements Timer, Comparable<ApplicationTimer>,
     private final DefaultTimerScheduler scheduler;
     
     /**
-     * These values must only be changed while holding the lock on scheduler.timers 
+     * These values must only be changed while holding the lock on this timer
      */
     protected volatile long period;
     protected volatile long nextRun;
 
+    /**
+     * Position in and run time according to the {@link TimerQueue}, only accessed by the dispatcher thread
+     */
+    int queueIndex = -1;
+    long scheduledRun;
+
     /**
      * false iff this timer's listener callbacks are currently being executed
      */
@@ -73,6 +80,11 @@ public class ApplicationTimer implements Timer, Comparable<ApplicationTimer>,
 
     protected volatile TimerState state = TimerState.RUNNING;
 
+    /**
+     * true if the run times are multiples of the period, see {@link DefaultTimerScheduler#createAlignedTimer}
+     */
+    protected final boolean aligned;
+
     protected ApplicationTimer(Executor exec, long period,
             DefaultTimerScheduler scheduler, Logger logger) {
     	this(exec, period, scheduler, logger, null);
@@ -80,6 +92,12 @@ public class ApplicationTimer implements Timer, Comparable<ApplicationTimer>,
     
     protected ApplicationTimer(Executor exec, long period,
             DefaultTimerScheduler scheduler, Logger logger, TimerRemovedListener timerRemovedListener) {
+    	this(exec, period, scheduler, logger, timerRemovedListener, false);
+    }
+
+    protected ApplicationTimer(Executor exec, long period,
+            DefaultTimerScheduler scheduler, Logger logger, TimerRemovedListener timerRemovedListener,
+            boolean aligned) {
         if (period < 1){
             throw new IllegalArgumentException("period must be > 0");
         }
@@ -88,13 +106,20 @@ public class ApplicationTimer implements Timer, Comparable<ApplicationTimer>,
         this.period = period;
         this.scheduler = scheduler;
         this.timerRemovedListener = timerRemovedListener;
-        long now = scheduler.getExecutionTime();
+        this.aligned = aligned;
+        nextRun = nextRunAfter(scheduler.getExecutionTime(), period);
+        scheduler.reschedule(this);
+    }
+
+    // first run time after now for the given period; for aligned timers the next multiple of the period
+    protected long nextRunAfter(long now, long period) {
         try {
-            nextRun = Math.addExact(now, period);
+            return aligned
+                    ? Math.multiplyExact(Math.floorDiv(now, period) + 1, period)
+                    : Math.addExact(now, period);
         } catch (ArithmeticException ae) {
-            nextRun = Long.MAX_VALUE;
+            return Long.MAX_VALUE;
         }
-        scheduler.reschedule(this);
     }
 
     @Override
@@ -139,7 +164,7 @@ public class ApplicationTimer implements Timer, Comparable<ApplicationTimer>,
     }
 
     // move nextRun time forward
-    // requires synchronization on scheduler.timers
+    // requires synchronization on this
     protected void forward() {
         try {
             nextRun = Math.addExact(nextRun, period);
@@ -188,6 +213,21 @@ public class ApplicationTimer implements Timer, Comparable<ApplicationTimer>,
         call();
     }
 
+    /**
+     * @return the first listener of this timer, which identifies the timer in the callback statistics.
+     */
+    @Override
+    public Object getListener() {
+        synchronized (listeners) {
+            return listeners.isEmpty() ? this : listeners.get(0);
+        }
+    }
+
+    @Override
+    public boolean isValueEvent() {
+        return false;
+    }
+
     /**
      * false iff this timer's listener callbacks are currently being executed
      */
@@ -222,6 +262,7 @@ public class ApplicationTimer implements Timer, Comparable<ApplicationTimer>,
         	}
         }
         state = TimerState.SHUTDOWN;
+        scheduler.reschedule(this);
     }
 
     @Override
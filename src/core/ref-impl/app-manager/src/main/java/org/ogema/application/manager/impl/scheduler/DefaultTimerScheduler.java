@@ -15,10 +15,16 @@
  */
 package org.ogema.application.manager.impl.scheduler;
 
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Executor;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 
 import org.apache.felix.scr.annotations.Activate;
 
@@ -26,19 +32,29 @@ import org.apache.felix.scr.annotations.Component;
 import org.apache.felix.scr.annotations.Deactivate;
 import org.apache.felix.scr.annotations.Reference;
 import org.apache.felix.scr.annotations.Service;
+import org.ogema.application.manager.impl.scheduler.ApplicationTimer.TimerState;
 import org.ogema.core.administration.FrameworkClock;
 import org.ogema.core.application.Timer;
 import org.ogema.core.application.TimerListener;
+import org.ogema.events.CallbackBatch;
 import org.ogema.timer.TimerRemovedListener;
 import org.ogema.timer.TimerScheduler;
 import org.slf4j.Logger;
 
+/**
+ * Timers are kept in a {@link TimerQueue} which is owned by the dispatcher thread. New and changed timers are
+ * handed over to the dispatcher through a non-blocking queue, so that creating and rescheduling timers never
+ * waits for the dispatcher, and updating the position of a timer costs O(log n).
+ */
 @Component
 @Service(TimerScheduler.class)
 public class DefaultTimerScheduler implements TimerScheduler, FrameworkClock.ClockChangeListener {
 
-    protected final PriorityQueue<ApplicationTimer> timers = new PriorityQueue<>();
-    protected Thread dispatchThread;
+    /* only accessed by the dispatcher thread */
+    private final TimerQueue timers = new TimerQueue();
+    /* new, rescheduled and destroyed timers, to be (re-) sorted by the dispatcher thread */
+    private final Queue<ApplicationTimer> pending = new ConcurrentLinkedQueue<>();
+    protected volatile Thread dispatchThread;
     
     //protected final Logger logger = LoggerFactory.getLogger(DefaultTimerScheduler.class);
 
@@ -48,47 +64,58 @@ public class DefaultTimerScheduler implements TimerScheduler, FrameworkClock.Clo
     private final Runnable dispatchImpl = new Runnable() {
         @Override
         public void run() {
-            while (!Thread.interrupted()) {
-                synchronized (timers) {
+            try {
+                while (!Thread.interrupted()) {
+                    drainPending();
                     // logger.trace("scheduling {} timers", timers.size());
-                    if (timers.isEmpty()) {
-                        try {
-                            timers.wait(1000);
-                        } catch (InterruptedException ex) {
-                            break;
-                        }
+                    final ApplicationTimer timer = timers.peek();
+                    if (timer == null) {
+                        LockSupport.parkNanos(this, TimeUnit.SECONDS.toNanos(1));
                         continue;
                     }
                     long now = clock.getExecutionTime();
-                    long next = timers.peek().getNextRunTime();
+                    long next = timer.scheduledRun;
                     // logger.trace("next run at {}", next);
                     if (next <= now) {
-                        processTimer(timers.poll(), now);
-                    }
-                    try {
-                        float factor = clock.getSimulationFactor();
-                        long waitTime = factor != 0
-                                ? (long) ((next - now) / factor)
-                                : next - now;
-                        if (waitTime > 0) {
-                            timers.wait(waitTime);
+                        if (timer.aligned) {
+                            processAligned(next, now);
+                        } else {
+                            processTimer(timers.poll(), now);
                         }
-                    } catch (InterruptedException ex) {
-                        // shut down
-                        break;
+                        continue;
+                    }
+                    float factor = clock.getSimulationFactor();
+                    long waitTime = factor != 0
+                            ? (long) ((next - now) / factor)
+                            : next - now;
+                    if (waitTime > 0) {
+                        LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(waitTime));
                     }
                 }
+            } finally {
+                // shut down
+                destroyAll();
             }
         }
 
     };
 
+    private void drainPending() {
+        ApplicationTimer timer;
+        while ((timer = pending.poll()) != null) {
+            if (timer.getState() == TimerState.SHUTDOWN) {
+                timers.remove(timer);
+            } else {
+                timers.schedule(timer, timer.nextRun);
+            }
+        }
+    }
+
     private void processTimer(ApplicationTimer timer, long executionTime) {
         //open synchronization issues: possible to enqueue callback for paused/stopped timer.
         switch (timer.getState()) {
             case PAUSED:
-                timer.forward();
-                timers.offer(timer);
+                forward(timer);
                 break;
             case RUNNING:
                 if (timer.isIdle()) {
@@ -103,14 +130,75 @@ public class DefaultTimerScheduler implements TimerScheduler, FrameworkClock.Clo
                                 timername, e.getMessage());
                 	}
                 }
-                timer.forward();
-                timers.offer(timer);
+                forward(timer);
                 break;
             case SHUTDOWN:
                 break;
         }
     }
 
+    /*
+     * Executes all timers due at runTime. Running aligned timers are collected per executor and submitted
+     * as one task, the other timers are processed individually.
+     */
+    private void processAligned(long runTime, long executionTime) {
+        final Map<Executor, TimerBatch> batches = new IdentityHashMap<>(4);
+        ApplicationTimer timer;
+        while ((timer = timers.peek()) != null && timer.scheduledRun == runTime) {
+            timers.poll();
+            if (!timer.aligned || timer.getState() != TimerState.RUNNING) {
+                processTimer(timer, executionTime);
+                continue;
+            }
+            if (timer.isIdle()) {
+                TimerBatch batch = batches.get(timer.exec);
+                if (batch == null) {
+                    batch = new TimerBatch();
+                    batches.put(timer.exec, batch);
+                }
+                batch.timers.add(timer);
+            }
+            forward(timer);
+        }
+        for (Map.Entry<Executor, TimerBatch> e : batches.entrySet()) {
+            try {
+                e.getKey().execute(e.getValue());
+            } catch (RejectedExecutionException ex) {
+                e.getValue().timers.get(0).logger.error("Failed to execute {} aligned timers: {}",
+                        e.getValue().timers.size(), ex.getMessage());
+            }
+        }
+    }
+
+    /* aligned timers with the same executor and run time, executed one after another */
+    private static class TimerBatch implements Runnable, CallbackBatch {
+
+        final List<ApplicationTimer> timers = new ArrayList<>();
+
+        @Override
+        public void run() {
+            for (ApplicationTimer t : timers) {
+                t.run();
+            }
+        }
+
+        @Override
+        public List<ApplicationTimer> getCallbacks() {
+            return timers;
+        }
+
+    }
+
+    private void forward(ApplicationTimer timer) {
+        synchronized (timer) {
+            // if the interval has been changed in the meantime, the new run time is already set
+            if (timer.nextRun == timer.scheduledRun) {
+                timer.forward();
+            }
+            timers.schedule(timer, timer.nextRun);
+        }
+    }
+
     @Activate
     protected void activate(Map<String, ?> config) {
         dispatchThread = new Thread(dispatchImpl);
@@ -138,25 +226,17 @@ public class DefaultTimerScheduler implements TimerScheduler, FrameworkClock.Clo
      * @param timer ApplicationTimer to be inserted into the scheduling queue.
      */
     protected void reschedule(ApplicationTimer timer) {
-        synchronized (timers) {
-            timers.remove(timer);
-            timers.offer(timer);
-            timers.notifyAll();
-        }
+        pending.offer(timer);
+        LockSupport.unpark(dispatchThread);
     }
 
      protected void setTimingInterval(ApplicationTimer timer, long period) {
         if (period < 1){
             throw new IllegalArgumentException("period must be > 0");
         }
-        synchronized(timers) {
+        synchronized(timer) {
 	        timer.period = period;
-            try {
-                timer.nextRun = Math.addExact(getExecutionTime(), period);
-            } catch (ArithmeticException ae) {
-                timer.nextRun = Long.MAX_VALUE;
-                
-            }
+	        timer.nextRun = timer.nextRunAfter(getExecutionTime(), period);
 	        reschedule(timer);
         }
     }
@@ -165,13 +245,21 @@ public class DefaultTimerScheduler implements TimerScheduler, FrameworkClock.Clo
      * Shut down this.
      */
     private void shutdown() {
-        synchronized (timers) {
-            for (ApplicationTimer t : timers) {
-                t.destroy();
-            }
-            timers.clear();
-            dispatchThread.interrupt();
+        dispatchThread.interrupt();
+        try {
+            dispatchThread.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // called by the dispatcher thread when it terminates
+    private void destroyAll() {
+        drainPending();
+        for (ApplicationTimer t : timers.clear()) {
+            t.destroy();
         }
+        pending.clear();
     }
 
     private void executeTimer(ApplicationTimer t, long time) {
@@ -197,11 +285,19 @@ public class DefaultTimerScheduler implements TimerScheduler, FrameworkClock.Clo
     	return new ApplicationTimer(executor, Long.MAX_VALUE, this, logger, listener);
     }
 
+    /**
+     * Creates a timer whose run times are multiples of its timing interval on the framework clock, e.g. full minutes
+     * for an interval of 60s. Aligned timers with the same executor which are due at the same time are executed
+     * together as a single task.
+     */
+    @Override
+    public Timer createAlignedTimer(Executor executor, Logger logger, TimerRemovedListener listener) {
+    	return new ApplicationTimer(executor, Long.MAX_VALUE, this, logger, listener, true);
+    }
+
     @Override
     public void clockChanged(FrameworkClock.ClockChangedEvent e) {
-        synchronized (timers) {
-            timers.notifyAll();
-        }
+        LockSupport.unpark(dispatchThread);
     }
 
 }
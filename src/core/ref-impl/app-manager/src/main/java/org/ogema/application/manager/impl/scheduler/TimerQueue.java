@@ -0,0 +1,147 @@
+/**
+ * Copyright 2011-2018 Fraunhofer-Gesellschaft zur Förderung der angewandten Wissenschaften e.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ogema.application.manager.impl.scheduler;
+
+import java.util.Arrays;
+
+/**
+ * Binary min-heap of timers ordered by their scheduled run time, used by {@link DefaultTimerScheduler}. Every
+ * timer knows its position in the heap, so that it can be removed or moved to a new run time in O(log n).
+ * Not thread safe, only accessed by the dispatcher thread.
+ */
+class TimerQueue {
+
+    private ApplicationTimer[] heap = new ApplicationTimer[64];
+    private int size;
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    ApplicationTimer peek() {
+        return size == 0 ? null : heap[0];
+    }
+
+    ApplicationTimer poll() {
+        if (size == 0) {
+            return null;
+        }
+        final ApplicationTimer first = heap[0];
+        removeAt(0);
+        return first;
+    }
+
+    /**
+     * Adds the timer, or moves it to the new position if it is already queued.
+     */
+    void schedule(ApplicationTimer timer, long runTime) {
+        final int idx = timer.queueIndex;
+        if (idx < 0) {
+            timer.scheduledRun = runTime;
+            if (size == heap.length) {
+                heap = Arrays.copyOf(heap, size * 2);
+            }
+            siftUp(size++, timer);
+            return;
+        }
+        final long previous = timer.scheduledRun;
+        timer.scheduledRun = runTime;
+        if (runTime < previous) {
+            siftUp(idx, timer);
+        } else if (runTime > previous) {
+            siftDown(idx, timer);
+        }
+    }
+
+    boolean remove(ApplicationTimer timer) {
+        final int idx = timer.queueIndex;
+        if (idx < 0 || idx >= size || heap[idx] != timer) {
+            return false;
+        }
+        removeAt(idx);
+        return true;
+    }
+
+    /**
+     * Removes all timers.
+     * @return the removed timers
+     */
+    ApplicationTimer[] clear() {
+        final ApplicationTimer[] result = Arrays.copyOf(heap, size);
+        for (ApplicationTimer t : result) {
+            t.queueIndex = -1;
+        }
+        Arrays.fill(heap, 0, size, null);
+        size = 0;
+        return result;
+    }
+
+    private void removeAt(int idx) {
+        heap[idx].queueIndex = -1;
+        final int last = --size;
+        if (idx == last) {
+            heap[last] = null;
+            return;
+        }
+        final ApplicationTimer moved = heap[last];
+        heap[last] = null;
+        siftDown(idx, moved);
+        if (heap[idx] == moved) {
+            siftUp(idx, moved);
+        }
+    }
+
+    private void siftUp(int idx, ApplicationTimer timer) {
+        while (idx > 0) {
+            final int parent = (idx - 1) >>> 1;
+            final ApplicationTimer p = heap[parent];
+            if (p.scheduledRun <= timer.scheduledRun) {
+                break;
+            }
+            heap[idx] = p;
+            p.queueIndex = idx;
+            idx = parent;
+        }
+        heap[idx] = timer;
+        timer.queueIndex = idx;
+    }
+
+    private void siftDown(int idx, ApplicationTimer timer) {
+        final int half = size >>> 1;
+        while (idx < half) {
+            int child = 2 * idx + 1;
+            ApplicationTimer c = heap[child];
+            final int right = child + 1;
+            if (right < size && heap[right].scheduledRun < c.scheduledRun) {
+                child = right;
+                c = heap[right];
+            }
+            if (timer.scheduledRun <= c.scheduledRun) {
+                break;
+            }
+            heap[idx] = c;
+            c.queueIndex = idx;
+            idx = child;
+        }
+        heap[idx] = timer;
+        timer.queueIndex = idx;
+    }
+
+}
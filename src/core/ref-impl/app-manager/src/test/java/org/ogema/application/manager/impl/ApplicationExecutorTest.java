@@ -0,0 +1,497 @@
+/**
+ * Copyright 2011-2018 Fraunhofer-Gesellschaft zur Förderung der angewandten Wissenschaften e.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ogema.application.manager.impl;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+import org.ogema.core.application.Application;
+import org.ogema.core.administration.CallbackStatistics.CallbackTimes;
+import org.ogema.core.application.ApplicationManager;
+import org.ogema.events.CallbackBatch;
+import org.ogema.events.ListenerCallback;
+import org.ogema.events.OrderedEvent;
+
+public class ApplicationExecutorTest {
+
+	private final Application app = new Application() {
+
+		@Override
+		public void start(ApplicationManager appManager) {
+		}
+
+		@Override
+		public void stop(AppStopReason reason) {
+		}
+	};
+
+	private ApplicationExecutor executor;
+
+	@After
+	public void after() throws InterruptedException {
+		System.clearProperty(ApplicationExecutor.PROP_MODE);
+		System.clearProperty(ApplicationExecutor.PROP_POOL_SIZE);
+		System.clearProperty(ApplicationExecutor.PROP_QUEUE_LIMIT);
+		System.clearProperty(ApplicationExecutor.PROP_OVERLOAD);
+		if (executor != null) {
+			executor.shutdown();
+			assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+		}
+	}
+
+	private ApplicationExecutor create(String mode) {
+		if (mode != null)
+			System.setProperty(ApplicationExecutor.PROP_MODE, mode);
+		System.setProperty(ApplicationExecutor.PROP_POOL_SIZE, "4");
+		executor = ApplicationExecutor.create(app, new ApplicationThreadFactory(app));
+		return executor;
+	}
+
+	private static class KeyedCall implements Callable<Void>, OrderedEvent {
+
+		final String key;
+		final int index;
+		final List<Integer> sequence;
+
+		KeyedCall(String key, int index, List<Integer> sequence) {
+			this.key = key;
+			this.index = index;
+			this.sequence = sequence;
+		}
+
+		@Override
+		public Void call() throws Exception {
+			sequence.add(index);
+			return null;
+		}
+
+		@Override
+		public Object getOrderingKey() {
+			return key;
+		}
+	}
+
+	private static class ValueCall implements Callable<Void>, ListenerCallback {
+
+		final Object listener;
+		final int index;
+		final List<Integer> sequence;
+
+		ValueCall(Object listener, int index, List<Integer> sequence) {
+			this.listener = listener;
+			this.index = index;
+			this.sequence = sequence;
+		}
+
+		@Override
+		public Void call() throws Exception {
+			sequence.add(index);
+			return null;
+		}
+
+		@Override
+		public Object getListener() {
+			return listener;
+		}
+
+		@Override
+		public boolean isValueEvent() {
+			return true;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof ValueCall && ((ValueCall) obj).listener == listener;
+		}
+
+		@Override
+		public int hashCode() {
+			return System.identityHashCode(listener);
+		}
+	}
+
+	/* occupies the executor until the latch is released */
+	private static class Blocker implements Runnable {
+
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+
+		@Override
+		public void run() {
+			started.countDown();
+			try {
+				release.await(10, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private Blocker block() throws InterruptedException {
+		final Blocker blocker = new Blocker();
+		executor.execute(blocker);
+		assertTrue(blocker.started.await(5, TimeUnit.SECONDS));
+		return blocker;
+	}
+
+	@Test
+	public void singleThreadIsDefault() throws Exception {
+		create(null);
+		assertEquals(ApplicationExecutor.Mode.SINGLE, executor.getMode());
+		final List<Integer> sequence = Collections.synchronizedList(new ArrayList<Integer>());
+		for (int i = 0; i < 1000; i++) {
+			executor.submit(new KeyedCall("key" + (i % 7), i, sequence));
+		}
+		assertTrue(executor.submit(new Callable<Boolean>() {
+
+			@Override
+			public Boolean call() throws Exception {
+				return executor.isExecutorThread();
+			}
+		}).get(5, TimeUnit.SECONDS));
+		assertFalse(executor.isExecutorThread());
+		for (int i = 0; i < 1000; i++) {
+			assertEquals(i, (int) sequence.get(i));
+		}
+	}
+
+	@Test
+	public void poolKeepsOrderPerKey() throws Exception {
+		create("pool");
+		assertEquals(ApplicationExecutor.Mode.POOL, executor.getMode());
+		final int keys = 8;
+		final List<List<Integer>> sequences = new ArrayList<>();
+		for (int k = 0; k < keys; k++) {
+			sequences.add(Collections.synchronizedList(new ArrayList<Integer>()));
+		}
+		for (int i = 0; i < 10000; i++) {
+			executor.submit(new KeyedCall("key" + (i % keys), i, sequences.get(i % keys)));
+		}
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+		for (int k = 0; k < keys; k++) {
+			List<Integer> sequence = sequences.get(k);
+			assertEquals(10000 / keys, sequence.size());
+			for (int i = 1; i < sequence.size(); i++) {
+				assertTrue(sequence.get(i) > sequence.get(i - 1));
+			}
+		}
+		assertEquals(10000, executor.getStatistics().getExecuted());
+		assertEquals(0, executor.getStatistics().getQueueDepth());
+	}
+
+	@Test
+	public void poolExecutesKeysConcurrently() throws Exception {
+		create("pool");
+		final CountDownLatch bothRunning = new CountDownLatch(2);
+		final AtomicBoolean concurrent = new AtomicBoolean(true);
+		for (int k = 0; k < 2; k++) {
+			final String key = "key" + k;
+			executor.submit(new KeyedCall(key, k, new ArrayList<Integer>()) {
+
+				@Override
+				public Void call() throws Exception {
+					bothRunning.countDown();
+					concurrent.compareAndSet(true, bothRunning.await(5, TimeUnit.SECONDS));
+					return null;
+				}
+			});
+		}
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+		assertTrue(concurrent.get());
+	}
+
+	@Test
+	public void sharedModeSerializesCallbacks() throws Exception {
+		create("shared");
+		assertEquals(ApplicationExecutor.Mode.SHARED, executor.getMode());
+		final AtomicInteger running = new AtomicInteger();
+		final AtomicBoolean overlap = new AtomicBoolean();
+		for (int i = 0; i < 200; i++) {
+			executor.submit(new KeyedCall("key" + i, i, new ArrayList<Integer>()) {
+
+				@Override
+				public Void call() throws Exception {
+					if (running.incrementAndGet() > 1)
+						overlap.set(true);
+					Thread.yield();
+					running.decrementAndGet();
+					return null;
+				}
+			});
+		}
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+		assertFalse(overlap.get());
+	}
+
+	@Test
+	public void shutdownNowReturnsQueuedCallbacks() throws Exception {
+		create("single");
+		final CountDownLatch started = new CountDownLatch(1);
+		final AtomicBoolean interrupted = new AtomicBoolean();
+		executor.execute(new Runnable() {
+
+			@Override
+			public void run() {
+				started.countDown();
+				try {
+					Thread.sleep(10000);
+				} catch (InterruptedException e) {
+					interrupted.set(true);
+				}
+			}
+		});
+		for (int i = 0; i < 5; i++) {
+			executor.execute(new Runnable() {
+
+				@Override
+				public void run() {
+				}
+			});
+		}
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+		assertEquals(5, executor.shutdownNow().size());
+		assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+		assertTrue(interrupted.get());
+		assertTrue(executor.isTerminated());
+		try {
+			executor.execute(new Runnable() {
+
+				@Override
+				public void run() {
+				}
+			});
+			fail("callback accepted after shutdown");
+		} catch (java.util.concurrent.RejectedExecutionException expected) {
+		}
+	}
+
+	@Test
+	public void dropOldestDropsWaitingValueEvents() throws Exception {
+		System.setProperty(ApplicationExecutor.PROP_QUEUE_LIMIT, "4");
+		System.setProperty(ApplicationExecutor.PROP_OVERLOAD, "drop_oldest");
+		create("single");
+		assertEquals(ApplicationExecutor.Overload.DROP_OLDEST, executor.getOverload());
+		final Blocker blocker = block();
+		final List<Integer> sequence = Collections.synchronizedList(new ArrayList<Integer>());
+		final List<Future<Void>> futures = new ArrayList<>();
+		for (int i = 0; i < 10; i++) {
+			futures.add(executor.submit(new ValueCall(sequence, i, sequence)));
+			assertTrue(executor.getStatistics().getQueueDepth() <= 4);
+		}
+		blocker.release.countDown();
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+		assertEquals(Arrays.asList(6, 7, 8, 9), sequence);
+		for (int i = 0; i < 6; i++) {
+			assertTrue(futures.get(i).isCancelled());
+		}
+		final ExecutorStatistics stats = executor.getStatistics();
+		assertEquals(6, stats.getDropped());
+		assertEquals(5, stats.getExecuted());
+		assertEquals(0, stats.getQueueDepth());
+		long histogramTotal = 0;
+		for (long count : stats.getLatencyHistogram()) {
+			histogramTotal += count;
+		}
+		assertEquals(5, histogramTotal);
+		final List<CallbackTimes> slowest = stats.getSlowestCallbacks(1);
+		assertEquals(1, slowest.size());
+		assertEquals(Blocker.class.getName(), slowest.get(0).getName());
+		assertEquals(2, stats.getSlowestCallbacks(5).size());
+	}
+
+	@Test
+	public void coalesceMergesEqualValueEvents() throws Exception {
+		System.setProperty(ApplicationExecutor.PROP_QUEUE_LIMIT, "2");
+		System.setProperty(ApplicationExecutor.PROP_OVERLOAD, "coalesce");
+		create("pool");
+		final Blocker blocker = block();
+		final Object listener = new Object();
+		final List<Integer> sequence = Collections.synchronizedList(new ArrayList<Integer>());
+		final List<Future<Void>> queued = new ArrayList<>();
+		executor.submit(new ValueCall(listener, 0, sequence), queued);
+		for (int i = 1; i < 10; i++) {
+			final Future<Void> f = executor.submit(new ValueCall(listener, i, sequence), queued);
+			if (i > 1) {
+				assertSame(queued.get(0), f);
+			}
+		}
+		// only the futures of queued callbacks are reported as new
+		assertEquals(2, queued.size());
+		blocker.release.countDown();
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+		assertEquals(Arrays.asList(0, 1), sequence);
+		assertEquals(8, executor.getStatistics().getCoalesced());
+		assertEquals(0, executor.getStatistics().getDropped());
+	}
+
+	@Test
+	public void blockWaitsForFreePlace() throws Exception {
+		System.setProperty(ApplicationExecutor.PROP_QUEUE_LIMIT, "1");
+		System.setProperty(ApplicationExecutor.PROP_OVERLOAD, "block");
+		create("single");
+		final Blocker blocker = block();
+		final List<Integer> sequence = Collections.synchronizedList(new ArrayList<Integer>());
+		executor.submit(new ValueCall(sequence, 0, sequence));
+		new Thread(new Runnable() {
+
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(200);
+				} catch (InterruptedException e) {
+				}
+				blocker.release.countDown();
+			}
+		}).start();
+		final long start = System.nanoTime();
+		executor.submit(new ValueCall(sequence, 1, sequence));
+		final long waited = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		assertTrue("submission not blocked: " + waited + " ms", waited >= 100);
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+		assertEquals(Arrays.asList(0, 1), sequence);
+	}
+
+	@Test
+	public void blockDoesNotDelayOtherCallbacks() throws Exception {
+		System.setProperty(ApplicationExecutor.PROP_QUEUE_LIMIT, "1");
+		System.setProperty(ApplicationExecutor.PROP_OVERLOAD, "block");
+		create("single");
+		final Blocker blocker = block();
+		final List<Integer> sequence = Collections.synchronizedList(new ArrayList<Integer>());
+		executor.submit(new ValueCall(sequence, 0, sequence));
+		final long start = System.nanoTime();
+		// e.g. a timer, submitted by the timer thread shared between all apps
+		executor.execute(new Runnable() {
+
+			@Override
+			public void run() {
+				sequence.add(1);
+			}
+		});
+		final long waited = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		assertTrue("submission blocked: " + waited + " ms", waited < 500);
+		blocker.release.countDown();
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+		assertEquals(Arrays.asList(0, 1), sequence);
+	}
+
+	private static class FirstTimer implements Runnable {
+
+		@Override
+		public void run() {
+		}
+	}
+
+	private static class SecondTimer implements Runnable {
+
+		@Override
+		public void run() {
+		}
+	}
+
+	private static class Batch implements Runnable, CallbackBatch {
+
+		final List<Runnable> callbacks;
+
+		Batch(List<Runnable> callbacks) {
+			this.callbacks = callbacks;
+		}
+
+		@Override
+		public void run() {
+			for (Runnable r : callbacks) {
+				r.run();
+			}
+		}
+
+		@Override
+		public List<Runnable> getCallbacks() {
+			return callbacks;
+		}
+	}
+
+	@Test
+	public void batchedCallbacksAreMeasuredIndividually() throws Exception {
+		create(null);
+		final List<Runnable> callbacks = Arrays.<Runnable> asList(new FirstTimer(), new SecondTimer());
+		final CountDownLatch done = new CountDownLatch(1);
+		executor.execute(new Batch(callbacks));
+		executor.execute(new Runnable() {
+
+			@Override
+			public void run() {
+				done.countDown();
+			}
+		});
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		final List<String> names = new ArrayList<>();
+		for (CallbackTimes times : executor.getStatistics().getSlowestCallbacks(10)) {
+			names.add(times.getName());
+		}
+		assertTrue(names.toString(), names.contains(FirstTimer.class.getName()));
+		assertTrue(names.toString(), names.contains(SecondTimer.class.getName()));
+	}
+
+	@Test
+	public void submittedBatchCompletes() throws Exception {
+		create(null);
+		final List<Integer> sequence = Collections.synchronizedList(new ArrayList<Integer>());
+		final List<Runnable> callbacks = Arrays.<Runnable> asList(new Runnable() {
+
+			@Override
+			public void run() {
+				sequence.add(0);
+			}
+		}, new Runnable() {
+
+			@Override
+			public void run() {
+				sequence.add(1);
+			}
+		});
+		final Future<String> future = executor.submit(new Batch(callbacks), "done");
+		assertEquals("done", future.get(5, TimeUnit.SECONDS));
+		// executed once, as individual callbacks
+		assertEquals(Arrays.asList(0, 1), sequence);
+		assertEquals(2, executor.getStatistics().getSlowestCallbacks(10).size());
+	}
+
+	@Test
+	public void unknownModeFallsBackToSingleThread() {
+		create("fnord");
+		assertEquals(ApplicationExecutor.Mode.SINGLE, executor.getMode());
+	}
+
+}
@@ -0,0 +1,107 @@
+/**
+ * Copyright 2011-2018 Fraunhofer-Gesellschaft zur Förderung der angewandten Wissenschaften e.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ogema.application.manager.impl.scheduler;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.ogema.application.manager.impl.SystemClock;
+import org.ogema.core.application.Timer;
+import org.ogema.core.application.TimerListener;
+import org.slf4j.LoggerFactory;
+
+public class AlignedTimerTest {
+
+	private static final int PERIOD = 200;
+	private static final int TIMERS = 20;
+
+	private final DefaultTimerScheduler scheduler = new DefaultTimerScheduler();
+	private final AtomicInteger tasks = new AtomicInteger();
+	private final Executor executor = new Executor() {
+
+		@Override
+		public void execute(Runnable command) {
+			tasks.incrementAndGet();
+			command.run();
+		}
+	};
+
+	@Before
+	public void before() {
+		scheduler.clock = new SystemClock();
+		scheduler.activate(null);
+	}
+
+	@After
+	public void after() {
+		scheduler.deactivate(null);
+	}
+
+	@Test
+	public void alignedTimersAreExecutedAsOneTask() throws InterruptedException {
+		final CountDownLatch latch = new CountDownLatch(2 * TIMERS);
+		final Set<Long> runTimes = Collections.synchronizedSet(new HashSet<Long>());
+		for (int i = 0; i < TIMERS; i++) {
+			Timer t = scheduler.createAlignedTimer(executor, LoggerFactory.getLogger(getClass()), null);
+			t.setTimingInterval(PERIOD);
+			assertEquals(0, t.getNextRunTime() % PERIOD);
+			t.addListener(new TimerListener() {
+
+				@Override
+				public void timerElapsed(Timer timer) {
+					runTimes.add(timer.getNextRunTime() - PERIOD);
+					latch.countDown();
+				}
+			});
+		}
+		assertTrue(latch.await(5, TimeUnit.SECONDS));
+		// timers created across a period boundary may start one tick apart
+		assertTrue("Too many tasks: " + tasks.get(), tasks.get() <= 4);
+		for (long runTime : runTimes) {
+			assertEquals(0, runTime % PERIOD);
+		}
+	}
+
+	@Test
+	public void otherTimersAreExecutedSeparately() throws InterruptedException {
+		final CountDownLatch latch = new CountDownLatch(2);
+		for (int i = 0; i < 2; i++) {
+			Timer t = scheduler.createTimer(executor, LoggerFactory.getLogger(getClass()));
+			t.addListener(new TimerListener() {
+
+				@Override
+				public void timerElapsed(Timer timer) {
+					timer.destroy();
+					latch.countDown();
+				}
+			});
+			t.setTimingInterval(10);
+		}
+		assertTrue(latch.await(5, TimeUnit.SECONDS));
+		assertEquals(2, tasks.get());
+	}
+
+}
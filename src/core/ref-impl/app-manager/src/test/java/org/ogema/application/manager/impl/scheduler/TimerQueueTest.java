@@ -0,0 +1,113 @@
+/**
+ * Copyright 2011-2018 Fraunhofer-Gesellschaft zur Förderung der angewandten Wissenschaften e.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ogema.application.manager.impl.scheduler;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executor;
+
+import org.junit.Test;
+import org.ogema.application.manager.impl.SystemClock;
+import org.slf4j.LoggerFactory;
+
+public class TimerQueueTest {
+
+	private final DefaultTimerScheduler scheduler = new DefaultTimerScheduler();
+	private final Executor executor = new Executor() {
+
+		@Override
+		public void execute(Runnable command) {
+			command.run();
+		}
+	};
+
+	public TimerQueueTest() {
+		scheduler.clock = new SystemClock();
+	}
+
+	private ApplicationTimer newTimer() {
+		return new ApplicationTimer(executor, 1000, scheduler, LoggerFactory.getLogger(getClass()));
+	}
+
+	@Test
+	public void timersArePolledInOrderOfRunTime() {
+		TimerQueue queue = new TimerQueue();
+		Random rnd = new Random(1);
+		List<Long> runTimes = new ArrayList<>();
+		for (int i = 0; i < 1000; i++) {
+			long runTime = rnd.nextInt(100000);
+			queue.schedule(newTimer(), runTime);
+			runTimes.add(runTime);
+		}
+		Collections.sort(runTimes);
+		assertEquals(1000, queue.size());
+		for (long runTime : runTimes) {
+			ApplicationTimer t = queue.poll();
+			assertEquals(runTime, t.scheduledRun);
+			assertEquals(-1, t.queueIndex);
+		}
+		assertTrue(queue.isEmpty());
+		assertNull(queue.poll());
+	}
+
+	@Test
+	public void rescheduledAndRemovedTimersKeepOrder() {
+		TimerQueue queue = new TimerQueue();
+		Random rnd = new Random(2);
+		List<ApplicationTimer> timers = new ArrayList<>();
+		for (int i = 0; i < 500; i++) {
+			ApplicationTimer t = newTimer();
+			queue.schedule(t, rnd.nextInt(100000));
+			timers.add(t);
+		}
+		for (int i = 0; i < 500; i++) {
+			queue.schedule(timers.get(rnd.nextInt(timers.size())), rnd.nextInt(100000));
+		}
+		for (int i = 0; i < 100; i++) {
+			ApplicationTimer t = timers.remove(rnd.nextInt(timers.size()));
+			assertTrue(queue.remove(t));
+			assertFalse(queue.remove(t));
+		}
+		assertEquals(timers.size(), queue.size());
+		long last = Long.MIN_VALUE;
+		while (!queue.isEmpty()) {
+			ApplicationTimer t = queue.poll();
+			assertTrue(timers.contains(t));
+			assertTrue(t.scheduledRun >= last);
+			last = t.scheduledRun;
+		}
+	}
+
+	@Test
+	public void clearRemovesAllTimers() {
+		TimerQueue queue = new TimerQueue();
+		ApplicationTimer t1 = newTimer();
+		ApplicationTimer t2 = newTimer();
+		queue.schedule(t1, 5);
+		queue.schedule(t2, 3);
+		assertSame(t2, queue.peek());
+		assertEquals(2, queue.clear().length);
+		assertTrue(queue.isEmpty());
+		assertEquals(-1, t1.queueIndex);
+		queue.schedule(t1, 7);
+		assertSame(t1, queue.peek());
+	}
+
+}
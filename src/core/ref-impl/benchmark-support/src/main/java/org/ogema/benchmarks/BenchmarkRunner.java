@@ -0,0 +1,75 @@
+/**
+ * Copyright 2011-2018 Fraunhofer-Gesellschaft zur Förderung der angewandten Wissenschaften e.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ogema.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point of the benchmarks jars. Accepts the usual JMH command line options, but writes the results 
+ * in JSON format to the file named by the manifest attribute {@value #RESULT_FILE_ATTRIBUTE} of the jar, 
+ * unless a result format or file is specified.
+ */
+public class BenchmarkRunner {
+
+	/**
+	 * Manifest attribute of the benchmarks jar with the default result file, set from the 
+	 * property <code>benchmark.results</code> of the module.
+	 */
+	public static final String RESULT_FILE_ATTRIBUTE = "Benchmark-Results";
+	static final String DEFAULT_RESULT_FILE = "benchmarks.json";
+
+	public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+		final CommandLineOptions cmd = new CommandLineOptions(args);
+		final ChainedOptionsBuilder options = new OptionsBuilder().parent(cmd);
+		if (!cmd.getResultFormat().hasValue())
+			options.resultFormat(ResultFormatType.JSON);
+		if (!cmd.getResult().hasValue())
+			options.result(getResultFile());
+		new Runner(options.build()).run();
+	}
+
+	static String getResultFile() {
+		try {
+			final URL location = BenchmarkRunner.class.getProtectionDomain().getCodeSource().getLocation();
+			final File file = new File(location.toURI());
+			if (file.isFile()) {
+				try (final JarFile jar = new JarFile(file)) {
+					final Manifest manifest = jar.getManifest();
+					final String name = manifest != null ? manifest.getMainAttributes().getValue(RESULT_FILE_ATTRIBUTE) : null;
+					if (name != null && !name.isEmpty())
+						return name;
+				}
+			}
+		} catch (IOException | URISyntaxException | RuntimeException e) {
+			// not started from a benchmarks jar
+		}
+		return DEFAULT_RESULT_FILE;
+	}
+
+}
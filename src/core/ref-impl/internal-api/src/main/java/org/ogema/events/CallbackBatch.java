@@ -0,0 +1,32 @@
+/**
+ * Copyright 2011-2018 Fraunhofer-Gesellschaft zur Förderung der angewandten Wissenschaften e.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ogema.events;
+
+import java.util.List;
+
+/**
+ * Callbacks of an application which are executed as one task, one after another, such as the aligned timers due at
+ * the same time. The executor measures the callbacks individually, so that they appear in the callback statistics
+ * of the application with their own execution times.
+ */
+public interface CallbackBatch {
+
+	/**
+	 * @return the callbacks in execution order, not null.
+	 */
+	List<? extends Runnable> getCallbacks();
+
+}
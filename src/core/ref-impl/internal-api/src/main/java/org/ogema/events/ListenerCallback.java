@@ -0,0 +1,36 @@
+/**
+ * Copyright 2011-2018 Fraunhofer-Gesellschaft zur Förderung der angewandten Wissenschaften e.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ogema.events;
+
+/**
+ * Callback of an application listener or timer, which is executed by the application's executor. Identifies the
+ * listener in the callback statistics of the application and tells the executor which callbacks may be skipped when
+ * the application cannot keep up with its events.
+ */
+public interface ListenerCallback {
+
+	/**
+	 * @return the listener called by this callback, not null.
+	 */
+	Object getListener();
+
+	/**
+	 * @return true if this callback only reports a changed value. An overloaded executor may drop such a callback,
+	 *         or merge it with an equal pending callback, see {@link Object#equals(Object)}.
+	 */
+	boolean isValueEvent();
+
+}
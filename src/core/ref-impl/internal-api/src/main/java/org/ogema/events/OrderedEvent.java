@@ -0,0 +1,33 @@
+/**
+ * Copyright 2011-2018 Fraunhofer-Gesellschaft zur Förderung der angewandten Wissenschaften e.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ogema.events;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Callback submitted to an application with
+ * {@link org.ogema.core.application.ApplicationManager#submitEvent(Callable)}, which must be executed in order with
+ * the other callbacks of the same key, e.g. the listener callbacks of one resource. Applications may be configured
+ * to execute their callbacks concurrently, the order is then only preserved among callbacks with equal keys.
+ */
+public interface OrderedEvent {
+
+	/**
+	 * @return key of the callbacks which have to be executed in order, not null.
+	 */
+	Object getOrderingKey();
+
+}
@@ -95,6 +95,16 @@ public class DBConstants {
 	public static final String PROP_NAME_PERSISTENCE_COMPACTION_START_SIZE = "org.ogema.persistence.compaction.start.size.file";
 	public static final String PROP_NAME_PERSISTENCE_COMPACTION_START_SIZE_GARBAGE = "org.ogema.persistence.compaction.start.size.garbage";
 	public static final String PROP_NAME_TIMEDPERSISTENCE_PERIOD = "org.ogema.timedpersistence.period";
+	/**
+	 * Number of threads decoding the persistent resources at startup, default is the number of processors.
+	 */
+	public static final String PROP_NAME_PERSISTENCE_LOADER_THREADS = "org.ogema.persistence.loader.threads";
+	/**
+	 * Directory of a snapshot written by {@link ResourceDB#snapshot(java.io.File)}, which replaces the persistent data
+	 * at startup. A restored snapshot is marked as consumed and is not restored again, even if the property is still
+	 * set. Writing a new snapshot into the directory removes the mark.
+	 */
+	public static final String PROP_NAME_PERSISTENCE_RESTORE = "org.ogema.persistence.restore";
 
 	/*
 	 * A constant value which indicates, that a node haven't yet a valid id.
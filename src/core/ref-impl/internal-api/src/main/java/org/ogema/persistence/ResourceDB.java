@@ -15,6 +15,8 @@
  */
 package org.ogema.persistence;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
@@ -186,6 +188,17 @@ public interface ResourceDB {
 	 */
 	Collection<TreeElement> getFilteredNodes(Map<String, String> dict);
 
+	/**
+	 * Get the nodes whose type is the given type or one of its sub types. The nodes are looked up while the result is
+	 * iterated, so no intermediate collection is created. References are not included.
+	 * 
+	 * @param type
+	 *            The type of the requested nodes, null for all nodes.
+	 * @return The matching nodes in the order of their ids. Nodes added or removed during the iteration may or may
+	 *         not be contained.
+	 */
+	Iterable<TreeElement> getNodesByType(Class<? extends Resource> type);
+
 	/**
 	 * Get a TreeElement object for the node specified by the given path string.
 	 * 
@@ -220,4 +233,19 @@ public interface ResourceDB {
 	 * Initiate an immediate storage loop asynchronously.
 	 */
 	void doStorage();
+
+	/**
+	 * Write a point-in-time copy of the persistent data into the given directory while the database stays in use.
+	 * Pending changes are stored before, changes made while the snapshot is written are not contained in it. The
+	 * snapshot can be restored at startup by setting the property
+	 * {@link DBConstants#PROP_NAME_PERSISTENCE_RESTORE} to the snapshot directory.
+	 * 
+	 * @param directory
+	 *            Directory the snapshot is written to, an existing snapshot therein is replaced.
+	 * @throws IOException
+	 *             if the snapshot couldn't be written.
+	 * @throws UnsupportedOperationException
+	 *             if the database isn't persistent.
+	 */
+	void snapshot(File directory) throws IOException;
 }
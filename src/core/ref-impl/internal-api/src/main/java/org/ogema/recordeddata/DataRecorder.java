@@ -15,9 +15,13 @@
  */
 package org.ogema.recordeddata;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
+import org.ogema.core.channelmanager.measurements.SampledValue;
 import org.ogema.core.recordeddata.RecordedDataConfiguration;
+import org.ogema.core.recordeddata.ReductionMode;
 
 /**
  * This interface provides access to the recorded data storage repository (time series database). It is provided as a
@@ -56,4 +60,29 @@ public interface DataRecorder {
 	boolean deleteRecordedDataStorage(String id);
 
 	List<String> getAllRecordedDataStorageIDs();
+
+	/**
+	 * Read several time series for the same time interval. The time series are read in parallel.
+	 * 
+	 * @param ids
+	 * 		time series ids; ids without a storage are ignored
+	 * @param startTime
+	 * 		inclusive
+	 * @param endTime
+	 * 		exclusive
+	 * @param intervalSize
+	 * 		ignored if mode is null
+	 * @param mode
+	 * 		null to get the logged values, otherwise the values are reduced as in 
+	 * 		{@link org.ogema.core.recordeddata.RecordedData#getValues(long, long, long, ReductionMode)}
+	 * @param listener
+	 * 		notified as soon as the values of an individual time series are available; may be null
+	 * @return
+	 * 		map from time series id to values, in the iteration order of ids
+	 * @throws DataRecorderException
+	 * 		if the query is interrupted or fails
+	 */
+	Map<String, List<SampledValue>> getValues(Collection<String> ids, long startTime, long endTime, long intervalSize, 
+			ReductionMode mode, TimeSeriesQueryListener listener) throws DataRecorderException;
+
 }
@@ -18,10 +18,11 @@ package org.ogema.recordeddata;
 import java.util.List;
 
 import org.ogema.core.channelmanager.measurements.SampledValue;
+import org.ogema.core.recordeddata.BulkReadable;
 import org.ogema.core.recordeddata.RecordedData;
 import org.ogema.core.recordeddata.RecordedDataConfiguration;
 
-public interface RecordedDataStorage extends RecordedData {
+public interface RecordedDataStorage extends RecordedData, BulkReadable {
 
 	/**
 	 * Insert a value into the database.
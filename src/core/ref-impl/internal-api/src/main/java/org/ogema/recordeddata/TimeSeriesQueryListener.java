@@ -0,0 +1,38 @@
+/**
+ * Copyright 2011-2018 Fraunhofer-Gesellschaft zur Förderung der angewandten Wissenschaften e.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ogema.recordeddata;
+
+import java.util.List;
+
+import org.ogema.core.channelmanager.measurements.SampledValue;
+
+/**
+ * Receives the results of a query for multiple time series, see 
+ * {@link DataRecorder#getValues(java.util.Collection, long, long, long, org.ogema.core.recordeddata.ReductionMode, TimeSeriesQueryListener)}.
+ */
+public interface TimeSeriesQueryListener {
+
+	/**
+	 * Called once per time series, as soon as its values are available. May be called concurrently 
+	 * from different threads.
+	 * 
+	 * @param id
+	 * 		the time series id
+	 * @param values
+	 */
+	void valuesAvailable(String id, List<SampledValue> values);
+
+}
@@ -43,6 +43,14 @@ public abstract class InternalValueChangedListenerRegistration implements Regist
 	public boolean isActive() {
 		return active;
 	}
+
+	/**
+	 * @return true if changes are merged into a waiting callback, see
+	 *         {@link Resource#addValueListener(org.ogema.core.resourcemanager.ResourceValueListener, boolean, boolean)}.
+	 */
+	public boolean isCoalescing() {
+		return false;
+	}
 	
 	public void dispose() {
 		this.active = false;
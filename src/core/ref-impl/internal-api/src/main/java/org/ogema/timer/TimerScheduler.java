@@ -47,5 +47,16 @@ public interface TimerScheduler {
 	 * @return new Timer that will use the given Executor.
 	 */
 	public Timer createTimer(Executor executor, Logger logger, TimerRemovedListener listener);
+
+	/**
+	 * Creates a timer whose run times are multiples of its timing interval on the framework clock,
+	 * e.g. full minutes for an interval of 60s. Aligned timers with the same executor which are due
+	 * at the same time are executed together as a single task on the executor.
+	 * @param logger Logger for uncaught exceptions.
+	 * @param executor Executor that will run the timer's listeners on an extra thread.
+	 * @param listener Listener that shall be informed when the timer is destroyed, may be null.
+	 * @return new Timer that will use the given Executor.
+	 */
+	public Timer createAlignedTimer(Executor executor, Logger logger, TimerRemovedListener listener);
 	
 }
@@ -0,0 +1,119 @@
+/**
+ * Copyright 2011-2018 Fraunhofer-Gesellschaft zur Förderung der angewandten Wissenschaften e.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ogema.impl.persistence;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.ogema.benchmarks.TempFolders;
+import org.ogema.core.model.simple.FloatResource;
+import org.ogema.core.model.simple.StringResource;
+import org.ogema.model.prototypes.PhysicalElement;
+import org.ogema.model.sensors.TemperatureSensor;
+import org.ogema.persistence.DBConstants;
+import org.ogema.resourcetree.TreeElement;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Heap retained by the resource tree after startup. Every device is a toplevel physical element with a name and two
+ * temperature sensors with readings, so most names are shared by all devices. The retained heap is reported by the
+ * auxiliary counters {@code bytesPerResource} and {@code retainedKBytes}; the score itself is the startup time.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx1g")
+public class FootprintBenchmark {
+
+	private static final String APP_ID = "persistenceBenchmark";
+
+	@Param({ "25000" })
+	public int devices;
+
+	private File folder;
+	private ResourceDBImpl db;
+	private long baseline;
+
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	@State(Scope.Thread)
+	public static class Footprint {
+		public long bytesPerResource;
+		public long retainedKBytes;
+	}
+
+	@Setup(Level.Trial)
+	public void createArchive() throws IOException {
+		baseline = usedHeap();
+		folder = TempFolders.create("persistenceFootprint");
+		System.setProperty(DBConstants.PROP_NAME_PERSISTENCE_ACTIVE, DBConstants.PROP_VALUE_PERSISTENCE_ACTIVE);
+		System.setProperty(DBConstants.DB_PATH_PROP, folder.getPath());
+		System.setProperty(DBConstants.PROP_NAME_TIMEDPERSISTENCE_PERIOD, "3600000");
+		db = new ResourceDBImpl();
+		db.setName("FootprintBenchmark");
+		for (int i = 0; i < devices; i++) {
+			TreeElement device = db.addResource("device" + i, PhysicalElement.class, APP_ID);
+			device.addChild("name", StringResource.class, false).getData().setString("device" + i);
+			for (String sensor : new String[] { "inside", "outside" }) {
+				TreeElement s = device.addChild(sensor, TemperatureSensor.class, true);
+				s.addChild("reading", FloatResource.class, false).getData().setFloat(i);
+			}
+			if (i % 1000 == 0)
+				db.doStorage();
+		}
+		db.doStorage();
+	}
+
+	@TearDown(Level.Trial)
+	public void deleteArchive() {
+		db.stopStorage();
+		db.removeFiles();
+		TempFolders.delete(folder);
+	}
+
+	private static long usedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++)
+			System.gc();
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	@Benchmark
+	public int start(Footprint footprint) {
+		db.restart();
+		int resources = db.resNodeByID.size();
+		long retained = usedHeap() - baseline;
+		footprint.bytesPerResource = retained / resources;
+		footprint.retainedKBytes = retained / 1024;
+		return resources;
+	}
+
+}
@@ -0,0 +1,105 @@
+/**
+ * Copyright 2011-2018 Fraunhofer-Gesellschaft zur Förderung der angewandten Wissenschaften e.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ogema.impl.persistence;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.ogema.benchmarks.TempFolders;
+import org.ogema.core.model.array.FloatArrayResource;
+import org.ogema.core.model.simple.FloatResource;
+import org.ogema.core.model.simple.StringResource;
+import org.ogema.model.prototypes.PhysicalElement;
+import org.ogema.persistence.DBConstants;
+import org.ogema.resourcetree.TreeElement;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Startup time of the resource database, i.e. parsing the persistent archive up to a fully linked resource tree. 
+ * Every device consists of a toplevel physical element with its name, a float and a float array decorator. 
+ * loaderThreads 0 means the default, one thread per processor.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 2)
+@Measurement(iterations = 10)
+@Fork(1)
+public class StartupBenchmark {
+
+	private static final String APP_ID = "persistenceBenchmark";
+
+	@Param({ "2500", "25000" })
+	public int devices;
+
+	@Param({ "1", "0" })
+	public int loaderThreads;
+
+	private File folder;
+	private ResourceDBImpl db;
+
+	@Setup(Level.Trial)
+	public void createArchive() throws IOException {
+		folder = TempFolders.create("persistenceStartup");
+		System.setProperty(DBConstants.PROP_NAME_PERSISTENCE_ACTIVE, DBConstants.PROP_VALUE_PERSISTENCE_ACTIVE);
+		System.setProperty(DBConstants.DB_PATH_PROP, folder.getPath());
+		System.setProperty(DBConstants.PROP_NAME_TIMEDPERSISTENCE_PERIOD, "3600000");
+		if (loaderThreads > 0)
+			System.setProperty(DBConstants.PROP_NAME_PERSISTENCE_LOADER_THREADS, String.valueOf(loaderThreads));
+		else
+			System.clearProperty(DBConstants.PROP_NAME_PERSISTENCE_LOADER_THREADS);
+		db = new ResourceDBImpl();
+		db.setName("StartupBenchmark");
+		for (int i = 0; i < devices; i++) {
+			TreeElement device = db.addResource("device" + i, PhysicalElement.class, APP_ID);
+			device.addChild("value", FloatResource.class, true).getData().setFloat(i);
+			device.addChild("name", StringResource.class, false).getData().setString("device" + i);
+			device.addChild("history", FloatArrayResource.class, true).getData()
+					.setFloatArr(new float[] { i, i + 1, i + 2, i + 3 });
+			if (i % 1000 == 0)
+				db.doStorage();
+		}
+		db.doStorage();
+	}
+
+	@TearDown(Level.Trial)
+	public void deleteArchive() {
+		db.stopStorage();
+		db.removeFiles();
+		TempFolders.delete(folder);
+		System.clearProperty(DBConstants.PROP_NAME_PERSISTENCE_LOADER_THREADS);
+	}
+
+	@Benchmark
+	public int start() {
+		db.restart();
+		return db.resNodeByID.size();
+	}
+
+}
@@ -0,0 +1,152 @@
+/**
+ * Copyright 2011-2018 Fraunhofer-Gesellschaft zur Förderung der angewandten Wissenschaften e.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ogema.impl.persistence;
+
+import java.util.Arrays;
+
+import org.ogema.persistence.PersistencePolicy.ChangeInfo;
+
+/**
+ * Set of the ids of the resources changed since the last storage, together with the kind of change. Repeated changes
+ * of a resource are coalesced into one entry, so the size of the set is bounded by the number of distinct resources
+ * changed. Open addressing on primitive arrays, no objects are allocated per change. Not thread-safe, access is
+ * guarded by the storage lock.
+ */
+final class ChangeSet {
+
+	private static final ChangeInfo[] INFOS = ChangeInfo.values();
+
+	private final int initialCapacity;
+	private int[] ids;
+	// ordinal of the ChangeInfo + 1, 0 marks a free slot
+	private byte[] kinds;
+	private int size;
+	private int mask;
+
+	ChangeSet(int initialCapacity) {
+		int capacity = Integer.highestOneBit(Math.max(initialCapacity, 8) - 1) << 1;
+		this.initialCapacity = capacity;
+		allocate(capacity);
+	}
+
+	private void allocate(int capacity) {
+		ids = new int[capacity];
+		kinds = new byte[capacity];
+		mask = capacity - 1;
+		size = 0;
+	}
+
+	private int slot(int id) {
+		int h = id * 0x9E3779B9;
+		return (h ^ (h >>> 16)) & mask;
+	}
+
+	/**
+	 * Register a change. A deletion is never overridden, and a value change doesn't override any other kind of change,
+	 * since only the value would be stored then.
+	 */
+	void add(int id, ChangeInfo change) {
+		int i = slot(id);
+		while (kinds[i] != 0) {
+			if (ids[i] == id) {
+				if (INFOS[kinds[i] - 1] != ChangeInfo.DELETED && change != ChangeInfo.VALUE_CHANGED)
+					kinds[i] = (byte) (change.ordinal() + 1);
+				return;
+			}
+			i = (i + 1) & mask;
+		}
+		ids[i] = id;
+		kinds[i] = (byte) (change.ordinal() + 1);
+		if (++size > (mask + 1) >> 1)
+			rehash((mask + 1) << 1);
+	}
+
+	private void rehash(int capacity) {
+		int[] oldIds = ids;
+		byte[] oldKinds = kinds;
+		allocate(capacity);
+		for (int i = 0; i < oldIds.length; i++) {
+			if (oldKinds[i] != 0) {
+				int j = slot(oldIds[i]);
+				while (kinds[j] != 0)
+					j = (j + 1) & mask;
+				ids[j] = oldIds[i];
+				kinds[j] = oldKinds[i];
+				size++;
+			}
+		}
+	}
+
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Removes all changes from the set. The arrays grown during a burst of changes are released again.
+	 *
+	 * @return the changes sorted by resource id, the id in the upper and the ordinal of the {@link ChangeInfo} in the
+	 *         lowest 8 bits of each element.
+	 */
+	long[] drain() {
+		long[] result = new long[size];
+		int n = 0;
+		for (int i = 0; i < kinds.length; i++) {
+			if (kinds[i] != 0)
+				result[n++] = ((long) ids[i] << 8) | (kinds[i] - 1);
+		}
+		Arrays.sort(result);
+		if (kinds.length > initialCapacity << 2)
+			allocate(initialCapacity);
+		else {
+			Arrays.fill(kinds, (byte) 0);
+			size = 0;
+		}
+		return result;
+	}
+
+	/**
+	 * Re-adds changes returned by {@link #drain()} which could not be stored. A change registered since then takes
+	 * precedence over a restored deletion of the same resource.
+	 */
+	void restore(long[] changes) {
+		for (long change : changes) {
+			int id = getId(change);
+			ChangeInfo info = getChangeInfo(change);
+			if (info == ChangeInfo.DELETED && contains(id))
+				continue;
+			add(id, info);
+		}
+	}
+
+	private boolean contains(int id) {
+		int i = slot(id);
+		while (kinds[i] != 0) {
+			if (ids[i] == id)
+				return true;
+			i = (i + 1) & mask;
+		}
+		return false;
+	}
+
+	static int getId(long change) {
+		return (int) (change >> 8);
+	}
+
+	static ChangeInfo getChangeInfo(long change) {
+		return INFOS[(int) (change & 0xFF)];
+	}
+
+}
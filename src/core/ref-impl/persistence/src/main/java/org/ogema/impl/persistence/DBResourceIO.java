@@ -18,6 +18,7 @@ package org.ogema.impl.persistence;
 import java.io.DataOutputStream;
 import java.io.EOFException;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.io.UTFDataFormatException;
@@ -29,22 +30,31 @@ import java.nio.file.Files;
 import java.nio.file.LinkOption;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.util.AbstractMap;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Queue;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.ogema.core.model.Resource;
 import org.ogema.core.model.ResourceList;
 import org.ogema.core.resourcemanager.InvalidResourceTypeException;
-import org.ogema.impl.persistence.TimedPersistence.Change;
 import org.ogema.persistence.DBConstants;
 import org.ogema.persistence.PersistencePolicy.ChangeInfo;
 import org.slf4j.Logger;
@@ -56,9 +66,15 @@ public class DBResourceIO {
 	PersistentFileSet resDataFiles, dirFiles;
 	int dirFileSuffix;
 
-	final ConcurrentHashMap<Integer, Integer> offsetByID;
+	/**
+	 * Location of the current entry of each resource in the archive.
+	 */
+	final ConcurrentHashMap<Integer, Location> offsetByID;
+	/**
+	 * Location of the latest value record of a resource, if it was written after the resource entry.
+	 */
+	final ConcurrentHashMap<Integer, Location> valueRecordByID;
 	int dbFileInitialOffset;
-	final MapValueSorter sorter;
 
 	final ConcurrentHashMap<String, TreeElementImpl> unsortedParents;
 	final ConcurrentHashMap<String, TreeElementImpl> unsortedRefs;
@@ -81,14 +97,68 @@ public class DBResourceIO {
 	// String currentDataFileName;
 
 	private static final int CHANGES_BUFFER_SIZE = 128;
+	/**
+	 * Value records start with an empty string where resource entries contain their type name.
+	 */
+	private static final int VALUE_RECORD_MARKER = 0;
 	private static final int DEFAULT_MIN_COMPACTION_FILE_SIZE = 1020 * 1024; // 1MB
 	private static final float DEFAULT_MIN_COMPACTION_GARBAGE_SIZE = .75f; // 75%
 
-	private int garbage;
+	/**
+	 * Segments of the resource archive by their file name suffix. New entries are appended to the active segment,
+	 * the others are sealed and only shrink (in terms of live data) until they are deleted.
+	 */
+	private final TreeMap<Integer, Segment> segments = new TreeMap<>();
+
+	private Segment activeSegment;
+
+	/**
+	 * Segments which have no live entries any more. They can be deleted as soon as the next map file is written,
+	 * since the previous map file, which serves as fallback, may still refer to them.
+	 */
+	private List<Segment> unreferencedSegments = new ArrayList<>();
+
+	/**
+	 * Number of snapshots which are being written, guarded by the storage lock. Segments aren't deleted as long as a
+	 * snapshot may read from them.
+	 */
+	private int snapshotsInProgress;
 
-	Queue<Change> fifo = new ArrayDeque<Change>(CHANGES_BUFFER_SIZE);
+	/**
+	 * Sealed segment which is currently compacted, and the ids of the resources whose entries are still to be copied
+	 * to the active segment.
+	 */
+	private Segment compactedSegment;
+	private final Queue<Integer> relocations = new ArrayDeque<>();
+	private final Map<Integer, TreeElementImpl> relocatedUCRs = new HashMap<>();
 
-	final ConcurrentHashMap<Integer, Change> changes;
+	/**
+	 * Nodes read from the archive by id, value records are merged into them. Only set while parsing.
+	 */
+	private Map<Integer, TreeElementImpl> parsedNodes;
+
+	/**
+	 * Names of the custom resource types which couldn't be loaded. Only set while parsing, so the class loading isn't
+	 * repeated for each node of such a type.
+	 */
+	private Set<String> unloadableTypes;
+
+	private static final int PARSE_CHUNK_SIZE = 4096;
+	// created in a snapshot directory once the snapshot has been restored
+	static final String SNAPSHOT_RESTORED_MARKER = "restored";
+	// created in a snapshot directory once the temporary files of a new snapshot are complete
+	static final String SNAPSHOT_PENDING_MARKER = "pending";
+	private static final String SNAPSHOT_TEMP_SUFFIX = ".tmp";
+
+	private final int loaderThreads;
+
+	/**
+	 * Resources changed since the last storage cycle, guarded by the storage lock.
+	 */
+	final ChangeSet changes;
+
+	// number of bytes appended to the archive
+	private long bytesWritten;
 
 	private int minimunCompationFileSize;
 	private float minimumCompationGarbageSize;
@@ -101,20 +171,59 @@ public class DBResourceIO {
 
 	private static String currentPath;
 
-	class MapValueSorter implements Comparator<Integer> {
+	/**
+	 * Position of a resource entry in the archive.
+	 */
+	static final class Location {
+		final int segment;
+		final int offset;
+		final int length;
+
+		Location(int segment, int offset, int length) {
+			this.segment = segment;
+			this.offset = offset;
+			this.length = length;
+		}
+	}
 
-		Map<Integer, Integer> base;
+	/**
+	 * Decoded value record, see {@link DBResourceIO#storeValue(TreeElementImpl)}.
+	 */
+	static final class ValueRecord {
+		final int id;
+		final int typeKey;
+		final long lastModified;
+		// the value, float as raw int bits, boolean as 0 or 1
+		final long value;
+
+		ValueRecord(int id, int typeKey, long lastModified, long value) {
+			this.id = id;
+			this.typeKey = typeKey;
+			this.lastModified = lastModified;
+			this.value = value;
+		}
+	}
 
-		public MapValueSorter(Map<Integer, Integer> base) {
-			this.base = base;
+	/**
+	 * One file of the resource archive.
+	 */
+	static final class Segment {
+		final int id;
+		final File file;
+		// number of bytes in the file
+		int size;
+		// number of bytes of the entries that are still referenced
+		int live;
+		int entries;
+
+		Segment(int id, File file) {
+			this.id = id;
+			this.file = file;
+			this.size = (int) file.length();
 		}
 
-		public int compare(Integer a, Integer b) {
-			int compare = base.get(a).compareTo(base.get(b));
-			if (compare == 0) {
-				return -1;
-			}
-			return compare;
+		int getGarbage() {
+			return size - live;
 		}
 	}
 
@@ -124,11 +233,11 @@ public class DBResourceIO {
 		unloadableCustomResources = new ConcurrentHashMap<>();
 		// resourceLists = new HashSet<>();
 
-		offsetByID = new ConcurrentHashMap<Integer, Integer>();
-		sorter = new MapValueSorter(offsetByID);
+		offsetByID = new ConcurrentHashMap<Integer, Location>();
+		valueRecordByID = new ConcurrentHashMap<Integer, Location>();
 		this.database = db;
 
-		this.changes = new ConcurrentHashMap<>(CHANGES_BUFFER_SIZE);
+		this.changes = new ChangeSet(CHANGES_BUFFER_SIZE);
 
 		// check if the property to activate persistence debugging is set
 		String persDebug = System.getProperty(DBConstants.PROP_NAME_PERSISTENCE_DEBUG, "false");
@@ -152,6 +261,9 @@ public class DBResourceIO {
 		} catch (NumberFormatException e) {
 			minimumCompationGarbageSize = DEFAULT_MIN_COMPACTION_GARBAGE_SIZE;
 		}
+		// number of threads decoding the archive at startup
+		loaderThreads = Math.max(1, Integer.getInteger(DBConstants.PROP_NAME_PERSISTENCE_LOADER_THREADS, Runtime
+				.getRuntime().availableProcessors()));
 		/*
 		 * Get the application specific file locations
 		 */
@@ -168,6 +280,9 @@ public class DBResourceIO {
 		if (!dir.exists()) {
 			dir.mkdirs();
 		}
+		String snapshot = System.getProperty(DBConstants.PROP_NAME_PERSISTENCE_RESTORE);
+		if (snapshot != null)
+			restoreSnapshot(new File(snapshot), dir);
 		/*
 		 * Initialize directory file
 		 */
@@ -185,17 +300,18 @@ public class DBResourceIO {
 		postInitFiles();
 
 		/*
-		 * If no valid map file is there but some valid data files, the biggest data file is parsed completely without
-		 * map file.
+		 * If no valid map file is there but some valid data files, all segments of the archive are parsed completely
+		 * without map file, oldest first, so that newer entries replace older ones.
 		 */
 		if (mapFile == null) {
-			File f = resDataFiles.getBiggest();
-			if (f != null) {
+			List<Integer> suffixes = resDataFiles.listSuffixes();
+			if (!suffixes.isEmpty()) {
+				Collections.sort(suffixes);
+				emergencyParser(suffixes);
+				File f = new File(resDataFiles.directory, dbResourcesFileName + suffixes.get(suffixes.size() - 1));
 				resDataFiles.fileNew = f;
 				dataFile = new DataFile(f);
-				emergencyParser(dataFile.input);
 				dataFile.close();
-				// dataFile = null;
 			}
 		}
 
@@ -210,25 +326,80 @@ public class DBResourceIO {
 			dbFileInitialOffset = 0;
 		else
 			dbFileInitialOffset = (int) resDataFiles.fileNew.length();
+		activeSegment = getSegment(resDataFiles.getSuffix(dataFile.fileName));
+		activeSegment.size = dbFileInitialOffset;
+	}
+
+	private Segment getSegment(int id) {
+		Segment segment = segments.get(id);
+		if (segment == null) {
+			segment = new Segment(id, new File(resDataFiles.directory, dbResourcesFileName + id));
+			segments.put(id, segment);
+		}
+		return segment;
+	}
+
+	/**
+	 * Sets the location of the entry of a resource and updates the live data statistics of the affected segments. A
+	 * value record written before the entry is obsolete afterwards.
+	 * 
+	 * @param location
+	 *            the new location or null if the entry is removed.
+	 */
+	private void setLocation(int id, Location location) {
+		setLocation(offsetByID, id, location);
+		setLocation(valueRecordByID, id, null);
+	}
+
+	private void setLocation(Map<Integer, Location> locations, int id, Location location) {
+		Location old = location == null ? locations.remove(id) : locations.put(id, location);
+		if (old != null) {
+			Segment segment = segments.get(old.segment);
+			if (segment != null) {
+				segment.live -= old.length;
+				segment.entries--;
+			}
+		}
+		if (location != null) {
+			Segment segment = getSegment(location.segment);
+			segment.live += location.length;
+			segment.entries++;
+		}
+	}
+
+	void removeEntry(int id) {
+		setLocation(id, null);
 	}
 
-	private void emergencyParser(ByteBufferDataInput raf) {
+	private boolean isStoredIn(int id, Segment segment) {
+		Location location = offsetByID.get(id);
+		if (location != null && location.segment == segment.id)
+			return true;
+		location = valueRecordByID.get(id);
+		return location != null && location.segment == segment.id;
+	}
+
+	/*
+	 * Parses the segments with the given suffixes in the given order.
+	 */
+	private void emergencyParser(List<Integer> suffixes) {
 		logger.debug("EmergencyParser parses Resources...");
 
 		// read the entries
-		this.garbage = 0;
-		try {
-			raf.seek(0);
-			while (true) {
-				int offset = (int) raf.getFilePointer();
-				TreeElementImpl node = readEntry(raf);
-				int key = node.resID;
-				offsetByID.put(key, offset);
+		parsedNodes = new HashMap<>();
+		for (int suffix : suffixes) {
+			File f = new File(resDataFiles.directory, dbResourcesFileName + suffix);
+			if (f.length() == 0)
+				continue;
+			activeSegment = getSegment(suffix);
+			DataFile df = new DataFile(f);
+			try {
+				emergencyParseSegment(df.input, suffix);
+			} finally {
+				df.close();
 			}
-		} catch (BufferUnderflowException | IOException e) {
-			if (Configuration.LOGGING)
-				logger.debug("...Resources parsing aborted with exception");
 		}
+		parsedNodes = null;
 		database.nextresourceID = maxID + 1;
 
 		postProcess();
@@ -238,6 +409,29 @@ public class DBResourceIO {
 		parsed = true;
 	}
 
+	private void emergencyParseSegment(ByteBufferDataInput raf, int segment) {
+		try {
+			raf.seek(0);
+			while (true) {
+				int offset = (int) raf.getFilePointer();
+				if (isValueRecord(raf)) {
+					ValueRecord record = decodeValueRecord(raf);
+					applyValueRecord(record);
+					int key = record.id;
+					setLocation(valueRecordByID, key, new Location(segment, offset, raf.getFilePointer() - offset));
+				}
+				else {
+					TreeElementImpl node = readEntry(raf);
+					int key = node.resID;
+					setLocation(key, new Location(segment, offset, raf.getFilePointer() - offset));
+				}
+			}
+		} catch (BufferUnderflowException | IOException e) {
+			if (Configuration.LOGGING)
+				logger.debug("...Parsing of segment {} aborted with exception", segment);
+		}
+	}
+
 	private void postInitFiles() {
 		/*
 		 * Case 1: no map file exists. This is the case if its the initial run or the last run was initial run and no
@@ -330,19 +524,34 @@ public class DBResourceIO {
 			return null;
 		DataFile df = new DataFile(dataFile);
 		this.dataFile = df;
-		@SuppressWarnings("unused")
-		RandomAccessFile ram = map.raf;
+		/*
+		 * The last entry of a segmented map may be located in a sealed segment, if no resource has been written to
+		 * the active segment since it was created.
+		 */
+		int segment = map.getLastSegment();
+		File lastFile = dataFile;
+		if (segment >= 0 && segment != resDataFiles.getSuffix(dataName)) {
+			lastFile = resDataFiles.getFileByName(dbResourcesFileName + segment);
+			if (lastFile == null) {
+				df.close();
+				return null;
+			}
+		}
 		int offset = map.getLastOffset();
-		int dataFileLength = (int) dataFile.length();
+		int dataFileLength = (int) lastFile.length();
 		if (dataFileLength <= offset)
 			return null;
+		DataFile lastDf = lastFile == dataFile ? df : new DataFile(lastFile);
 		try {
-			df.input.seek(offset);
-			tryReadEntry(df.input);
+			lastDf.input.seek(offset);
+			tryReadEntry(lastDf.input);
 		} catch (Exception e) {
 			df.close();
 			return null; // In this case resource data file is smaller than it's expected. The resource tree could be
 							// created in part only.
+		} finally {
+			if (lastDf != df)
+				lastDf.close();
 		}
 		return df;
 	}
@@ -413,7 +622,7 @@ public class DBResourceIO {
 			dataFile.out.writeUTF(name);
         } catch (IOException e) {
 			System.err.printf("Exception on node %s: %s %s%n",
-                    node.path, e.getClass().getSimpleName(), e.getMessage());
+                    node.getPath(), e.getClass().getSimpleName(), e.getMessage());
 		}
 	}
 
@@ -469,7 +678,7 @@ public class DBResourceIO {
 		setByte(typeKey);
 		tmpint += 10;
 		// 6. set name string
-		tmpstr = node.path;
+		tmpstr = node.getPath();
 		setUTF8(tmpstr);
 		tmpint += tmpstr.length();
 		// 7. set the owner app id
@@ -486,58 +695,115 @@ public class DBResourceIO {
 		node.footprint += tmpint;
 	}
 
+	/**
+	 * The archive is split into segments of about {@link #minimunCompationFileSize} bytes. Once the active segment
+	 * exceeds this size, a new one is started. Sealed segments whose share of garbage exceeds
+	 * {@link #minimumCompationGarbageSize} are compacted incrementally: on each storage cycle a bounded amount of
+	 * their live entries is copied to the active segment, so that a compaction never blocks the storage of changes
+	 * for longer than one batch. Segments without live entries are deleted after the next map file update.
+	 * 
+	 * @return true if the archive has been changed and the map file needs to be updated.
+	 */
 	boolean check4Compaction() {
-		int currentFileLength = getCurrentOffset();
-		if (currentFileLength == -1)
-			return false;
-		if (currentFileLength > minimunCompationFileSize
-				&& (garbage > currentFileLength * minimumCompationGarbageSize)) {
-			dataFile.close();
-			resDataFiles.shiftF();
-			dataFile = new DataFile(resDataFiles.fileNew, true);
-			dbFileInitialOffset = 0;
-			compact();
-			return true;
-		}
-		else {
+		if (getCurrentOffset() == -1)
 			return false;
+		boolean changed = false;
+		if (activeSegment.size > minimunCompationFileSize) {
+			startSegment();
+			changed = true;
 		}
+		if (relocations.isEmpty())
+			selectSegmentForCompaction();
+		if (!relocations.isEmpty())
+			changed |= relocate(Math.max(minimunCompationFileSize >> 2, 1));
+		return changed;
+	}
 
+	long getBytesWritten() {
+		return bytesWritten;
 	}
 
-	void compact() {
-		boolean fileChanged = false;
-		/*
-		 * Changes can be cleared, because all of the resources which are alive are to be stored into the new file.
-		 */
-		changes.clear();
-		fifo.clear();
-		offsetByID.clear();
-		Set<Entry<Integer, TreeElementImpl>> tlrs = database.resNodeByID.entrySet();
-		for (Map.Entry<Integer, TreeElementImpl> entry : tlrs) {
+	boolean isCompactionPending() {
+		return !relocations.isEmpty();
+	}
+
+	private void startSegment() {
+		writeEntry();
+		dataFile.close();
+		dataFile = new DataFile(resDataFiles.nextFile(), true);
+		dbFileInitialOffset = 0;
+		activeSegment = getSegment(resDataFiles.getSuffix(dataFile.fileName));
+		activeSegment.size = 0;
+		if (Configuration.LOGGING)
+			logger.debug("New archive segment " + dataFile.fileName);
+	}
 
-			TreeElementImpl e = entry.getValue();
-			storeResource(e);
-			fileChanged = true;
+	private void selectSegmentForCompaction() {
+		compactedSegment = null;
+		relocatedUCRs.clear();
+		float maxRatio = minimumCompationGarbageSize;
+		for (Segment segment : segments.values()) {
+			if (segment == activeSegment || segment.entries == 0 || segment.size == 0)
+				continue;
+			float ratio = (float) segment.getGarbage() / segment.size;
+			if (ratio > maxRatio) {
+				maxRatio = ratio;
+				compactedSegment = segment;
+			}
 		}
-		if (fileChanged) {
-			writeEntry();
-			updateDirectory();
+		if (compactedSegment == null)
+			return;
+		if (Configuration.LOGGING)
+			logger.debug("Compacting archive segment " + compactedSegment.file.getName());
+		for (Map.Entry<Integer, Location> entry : offsetByID.entrySet()) {
+			if (isStoredIn(entry.getKey(), compactedSegment))
+				relocations.add(entry.getKey());
+		}
+		for (TreeElementImpl ucr : unloadableCustomResources.values()) {
+			if (isStoredIn(ucr.resID, compactedSegment))
+				relocatedUCRs.put(ucr.resID, ucr);
 		}
-		garbage = 0;
 	}
 
-	void storeResource(TreeElementImpl node) {
-		// The old content is now garbage
-		garbage += node.footprint;
+	/**
+	 * Copies entries of the segment under compaction to the active segment.
+	 * 
+	 * @param budget
+	 *            number of bytes after which the relocation is interrupted until the next storage cycle.
+	 * @return true if the archive has been changed.
+	 */
+	private boolean relocate(int budget) {
+		boolean changed = false;
+		int start = getCurrentOffset();
+		Integer id;
+		while (getCurrentOffset() - start < budget && (id = relocations.poll()) != null) {
+			// skip entries which have been rewritten or removed meanwhile
+			if (!isStoredIn(id, compactedSegment))
+				continue;
+			TreeElementImpl node = database.resNodeByID.get(id);
+			if (node == null)
+				node = relocatedUCRs.get(id);
+			if (node == null)
+				removeEntry(id);
+			else
+				storeResource(node);
+			changed = true;
+		}
+		if (relocations.isEmpty()) {
+			compactedSegment = null;
+			relocatedUCRs.clear();
+		}
+		return changed;
+	}
 
+	void storeResource(TreeElementImpl node) {
 		if (Configuration.LOGGING)
-			logger.debug("Store Resource " + node.path);
+			logger.debug("Store Resource " + node.getPath());
 		/*
-		 * Determine the offset of the resource data in the archive and put it in the map of offsets.
+		 * Determine the offset of the resource data in the archive, the location is updated once the entry is
+		 * written.
 		 */
 		int offset = getCurrentOffset();
-		offsetByID.put(node.resID, offset);
 		// 1. store entry header
 		storeHeader(node);
 		int typeKey = node.typeKey;
@@ -645,6 +911,127 @@ public class DBResourceIO {
 			default:
 				break;
 			}
+		int end = getCurrentOffset();
+		activeSegment.size = end;
+		bytesWritten += end - offset;
+		// The old content is now garbage
+		setLocation(node.resID, new Location(activeSegment.id, offset, end - offset));
+	}
+
+	/**
+	 * Store the value of a simple resource of a primitive type as a value record, which consists of the marker, the
+	 * resource id, the type key, the last modified time stamp and the value only. Value records are merged into the
+	 * resource entry they follow when the archive is parsed.
+	 * 
+	 * @return false if the node has no primitive value or hasn't been stored yet. A full entry has to be written via
+	 *         {@link #storeResource(TreeElementImpl)} in this case.
+	 */
+	boolean storeValue(TreeElementImpl node) {
+		if (node.reference || node.isNonpersistent() || node.simpleValue == null
+				|| !offsetByID.containsKey(node.resID))
+			return false;
+		int typeKey = node.typeKey;
+		switch (typeKey) {
+		case DBConstants.TYPE_KEY_BOOLEAN:
+		case DBConstants.TYPE_KEY_FLOAT:
+		case DBConstants.TYPE_KEY_INT:
+		case DBConstants.TYPE_KEY_LONG:
+			break;
+		default:
+			return false;
+		}
+		if (Configuration.LOGGING)
+			logger.debug("Store value of " + node.getPath());
+		int offset = getCurrentOffset();
+		try {
+			dataFile.out.writeShort(VALUE_RECORD_MARKER);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		setIValue(node.resID);
+		setTypeKey(typeKey);
+		setJValue(node.lastModified);
+		LeafValue value = node.simpleValue;
+		switch (typeKey) {
+		case DBConstants.TYPE_KEY_BOOLEAN:
+			setBValue(value.Z);
+			break;
+		case DBConstants.TYPE_KEY_FLOAT:
+			setFValue(value.F);
+			break;
+		case DBConstants.TYPE_KEY_INT:
+			setIValue(value.I);
+			break;
+		default:
+			setJValue(value.J);
+			break;
+		}
+		int end = getCurrentOffset();
+		activeSegment.size = end;
+		bytesWritten += end - offset;
+		setLocation(valueRecordByID, node.resID, new Location(activeSegment.id, offset, end - offset));
+		return true;
+	}
+
+	private boolean isValueRecord(ByteBufferDataInput raf) throws IOException {
+		int marker = raf.readShort();
+		raf.seek(raf.getFilePointer() - 2);
+		return marker == VALUE_RECORD_MARKER;
+	}
+
+	/**
+	 * Read a value record written by {@link #storeValue(TreeElementImpl)}.
+	 */
+	private ValueRecord decodeValueRecord(ByteBufferDataInput raf) throws IOException {
+		raf.readShort();
+		int id = raf.readInt();
+		int typeKey = raf.readUnsignedByte();
+		long lastModified = raf.readLong();
+		long value;
+		switch (typeKey) {
+		case DBConstants.TYPE_KEY_BOOLEAN:
+			value = raf.readBoolean() ? 1 : 0;
+			break;
+		case DBConstants.TYPE_KEY_FLOAT:
+			value = Float.floatToRawIntBits(raf.readFloat());
+			break;
+		case DBConstants.TYPE_KEY_INT:
+			value = raf.readInt();
+			break;
+		case DBConstants.TYPE_KEY_LONG:
+			value = raf.readLong();
+			break;
+		default:
+			throw new IOException("Invalid value record for resource " + id);
+		}
+		return new ValueRecord(id, typeKey, lastModified, value);
+	}
+
+	/**
+	 * Set the value of a value record on the node read before.
+	 */
+	private void applyValueRecord(ValueRecord record) {
+		TreeElementImpl node = parsedNodes.get(record.id);
+		if (node == null || node.typeKey != record.typeKey || node.simpleValue == null) {
+			logger.warn("Value record without matching resource entry: " + record.id);
+			return;
+		}
+		node.lastModified = record.lastModified;
+		LeafValue value = node.simpleValue;
+		switch (record.typeKey) {
+		case DBConstants.TYPE_KEY_BOOLEAN:
+			value.Z = record.value != 0;
+			break;
+		case DBConstants.TYPE_KEY_FLOAT:
+			value.F = Float.intBitsToFloat((int) record.value);
+			break;
+		case DBConstants.TYPE_KEY_INT:
+			value.I = (int) record.value;
+			break;
+		default:
+			value.J = record.value;
+			break;
+		}
 	}
 
 	/**
@@ -662,35 +1049,47 @@ public class DBResourceIO {
 
 		// read the entries
 		ByteBufferDataInput dataRaf = dataFile.input;
-		this.garbage = 0;
-		int endGarbage = 0, beginGarbage = 0;
+		// the archive segments referenced by the map
+		Map<Integer, DataFile> files = new HashMap<>();
+		files.put(activeSegment.id, dataFile);
 		if (mapFile.raf != null) {
 			//RandomAccessFile dirRaf = mapFile.raf;
 			try (RandomAccessFile raf = mapFile.raf) {
 				ByteBuffer bb = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
 				ByteBufferDataInput dirRaf = new ByteBufferDataInput(bb);		
 				dirRaf.seek(0);
-				int dirEntryCount = mapFile.entryCount;
-				while (dirEntryCount > 0) {
-					int key = dirRaf.readInt();
-					int value = dirRaf.readInt();
-					dataRaf.seek(value);
-					endGarbage = (int) dataRaf.getFilePointer();
-					int tmpGarbage = endGarbage - beginGarbage;
-					if (tmpGarbage > 0)
-						garbage += tmpGarbage;
-					readEntry(dataRaf);
-					beginGarbage = (int) dataRaf.getFilePointer();
-					offsetByID.put(key, value);
-					dirEntryCount--;
+				int count = mapFile.entryCount;
+				int[] keys = new int[count];
+				int[] segmentIds = new int[count];
+				int[] offsets = new int[count];
+				for (int i = 0; i < count; i++) {
+					keys[i] = dirRaf.readInt();
+					segmentIds[i] = mapFile.segmented ? dirRaf.readInt() : activeSegment.id;
+					offsets[i] = dirRaf.readInt();
+					if (!files.containsKey(segmentIds[i]))
+						files.put(segmentIds[i], new DataFile(getSegment(segmentIds[i]).file));
 				}
+				/*
+				 * Phase 1: decode the entries from the mapped archive concurrently. Phase 2: set up the resource tree
+				 * from the decoded nodes.
+				 */
+				Object[] records = new Object[count];
+				int[] lengths = new int[count];
+				decodeEntries(files, segmentIds, offsets, records, lengths);
+				linkEntries(keys, segmentIds, offsets, records, lengths);
 			} catch (IOException e) {
 				e.printStackTrace();
+			} finally {
+				for (DataFile df : files.values()) {
+					if (df != dataFile)
+						df.close();
+				}
 			}
 		}
 		database.nextresourceID = maxID + 1;
 
 		postProcess();
+		collectOrphanedSegments();
 		if (Configuration.LOGGING) {
 			logger.debug("...Resources parsed");
 		}
@@ -699,6 +1098,151 @@ public class DBResourceIO {
 		}
 	}
 
+	/**
+	 * Decode the resource entries and value records at the given locations. The entries are split into chunks which
+	 * are decoded by up to {@link #loaderThreads} threads, each with its own view of the mapped segments.
+	 * 
+	 * @param records
+	 *            filled with the decoded {@link TreeElementImpl} or {@link ValueRecord}, or null if the entry couldn't
+	 *            be read.
+	 * @param lengths
+	 *            filled with the length of the entries.
+	 */
+	private void decodeEntries(final Map<Integer, DataFile> files, final int[] segmentIds, final int[] offsets,
+			final Object[] records, final int[] lengths) {
+		final int count = offsets.length;
+		final int chunks = (count + PARSE_CHUNK_SIZE - 1) / PARSE_CHUNK_SIZE;
+		final int threads = Math.min(loaderThreads, chunks);
+		if (threads <= 1) {
+			decodeEntries(files, segmentIds, offsets, records, lengths, 0, count);
+			return;
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+
+			private final AtomicInteger cnt = new AtomicInteger(0);
+
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "Persistence-Loader-" + database.name + "-" + cnt.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		try {
+			List<Future<?>> results = new ArrayList<>(chunks);
+			for (int c = 0; c < chunks; c++) {
+				final int from = c * PARSE_CHUNK_SIZE;
+				final int to = Math.min(count, from + PARSE_CHUNK_SIZE);
+				results.add(executor.submit(new Runnable() {
+
+					@Override
+					public void run() {
+						decodeEntries(files, segmentIds, offsets, records, lengths, from, to);
+					}
+				}));
+			}
+			for (Future<?> result : results) {
+				try {
+					result.get();
+				} catch (ExecutionException e) {
+					logger.error("Decoding of resource entries failed", e.getCause());
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			logger.error("Interrupted while decoding resource entries");
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private void decodeEntries(Map<Integer, DataFile> files, int[] segmentIds, int[] offsets, Object[] records,
+			int[] lengths, int from, int to) {
+		Map<Integer, ByteBufferDataInput> inputs = new HashMap<>();
+		for (int i = from; i < to; i++) {
+			int segment = segmentIds[i];
+			ByteBufferDataInput input = inputs.get(segment);
+			if (input == null) {
+				if (inputs.containsKey(segment))
+					continue;
+				DataFile df = files.get(segment);
+				input = df.newInput();
+				inputs.put(segment, input);
+				if (input == null) {
+					logger.error("Archive segment " + df.fileName + " is missing, its resources are lost.");
+					continue;
+				}
+			}
+			try {
+				input.seek(offsets[i]);
+				records[i] = isValueRecord(input) ? decodeValueRecord(input) : decodeEntry(input);
+				lengths[i] = input.getFilePointer() - offsets[i];
+			} catch (IOException | RuntimeException e) {
+				logger.error("Corrupt resource entry at offset " + offsets[i] + " of archive segment " + segment, e);
+			}
+		}
+	}
+
+	/**
+	 * Register the decoded entries and set up the resource tree.
+	 */
+	private void linkEntries(int[] keys, int[] segmentIds, int[] offsets, Object[] records, int[] lengths) {
+		parsedNodes = new HashMap<>();
+		unloadableTypes = new HashSet<>();
+		/*
+		 * The nodes are linked in the order of their depth in the tree, so the parent of each node is linked before
+		 * the node. Only references to nodes which are linked later remain unsorted.
+		 */
+		List<List<TreeElementImpl>> nodesByDepth = new ArrayList<>();
+		for (int i = 0; i < records.length; i++) {
+			Object record = records[i];
+			if (record == null)
+				continue;
+			Location location = new Location(segmentIds[i], offsets[i], lengths[i]);
+			if (record instanceof ValueRecord) {
+				// value records follow the entry of their resource, since the map is sorted by location
+				applyValueRecord((ValueRecord) record);
+				setLocation(valueRecordByID, keys[i], location);
+			}
+			else {
+				TreeElementImpl node = (TreeElementImpl) record;
+				registerEntry(node);
+				setLocation(keys[i], location);
+				int depth = getDepth(node.getPath());
+				while (nodesByDepth.size() <= depth)
+					nodesByDepth.add(new ArrayList<TreeElementImpl>());
+				nodesByDepth.get(depth).add(node);
+			}
+		}
+		for (List<TreeElementImpl> nodes : nodesByDepth) {
+			for (TreeElementImpl node : nodes)
+				linkEntry(node, resolveType(node));
+		}
+		parsedNodes = null;
+		unloadableTypes = null;
+	}
+
+	private static int getDepth(String path) {
+		int depth = 0;
+		for (int i = 0; i < path.length(); i++) {
+			if (path.charAt(i) == DBConstants.RESOURCE_PATH_DELIMITER)
+				depth++;
+		}
+		return depth;
+	}
+
+	/*
+	 * Segments older than the active one which are neither referenced by the map nor by a newer one are left over
+	 * from a compaction that has been interrupted. They are deleted after the next map update.
+	 */
+	private void collectOrphanedSegments() {
+		for (int suffix : resDataFiles.listSuffixes()) {
+			if (suffix < activeSegment.id && !segments.containsKey(suffix))
+				unreferencedSegments.add(new Segment(suffix, new File(resDataFiles.directory,
+						dbResourcesFileName + suffix)));
+		}
+	}
+
 	private void postProcess() {
 		/*
 		 * Place the unsorted node in the tree.
@@ -732,7 +1276,7 @@ public class DBResourceIO {
 			for (Map.Entry<String, TreeElementImpl> entry : tlrs) {
 				TreeElementImpl e = entry.getValue();
 				if (putResource(e))
-					map.remove(e.path);
+					map.remove(entry.getKey());
 			}
 			countAfter = map.size();
 			if (countBefore == countAfter)
@@ -749,14 +1293,22 @@ public class DBResourceIO {
 	 * @return
 	 */
 	TreeElementImpl readEntry(ByteBufferDataInput raf) throws IOException, EOFException {
-		boolean clsLoaded = true;
-		@SuppressWarnings("unused")
+		TreeElementImpl node = decodeEntry(raf);
+		registerEntry(node);
+		linkEntry(node, resolveType(node));
+		return node;
+	}
+
+	/**
+	 * Read the header and the value of a resource entry. The node isn't connected to the database yet, so this can be
+	 * done concurrently for different entries.
+	 */
+	TreeElementImpl decodeEntry(ByteBufferDataInput raf) throws IOException, EOFException {
 		// 1. read header of the entry
 		TreeElementImpl node = new TreeElementImpl(database);
 		readHeader(node, raf);
 		// if the node is a reference no own value container is needed
 		int typeKey = node.typeKey;
-		setNodeType(node);
 		// check if the resource is a simple or a complex one
 		if (!node.isReference()) {
 			node.initDataContainer();
@@ -782,33 +1334,46 @@ public class DBResourceIO {
 				break;
 			// read array resource
 			case DBConstants.TYPE_KEY_OPAQUE:
-				readAB(node);
+				readAB(node, raf);
 				break;
 			case DBConstants.TYPE_KEY_INT_ARR:
-				readAI(node);
+				readAI(node, raf);
 				break;
 			case DBConstants.TYPE_KEY_LONG_ARR:
-				readAJ(node);
+				readAJ(node, raf);
 				break;
 			case DBConstants.TYPE_KEY_FLOAT_ARR:
-				readAF(node);
+				readAF(node, raf);
 				break;
 			case DBConstants.TYPE_KEY_COMPLEX_ARR:
 				break;
 			case DBConstants.TYPE_KEY_BOOLEAN_ARR:
-				readAZ(node);
+				readAZ(node, raf);
 				break;
 			case DBConstants.TYPE_KEY_STRING_ARR:
-				readAS(node);
-				break;
-			case DBConstants.TYPE_KEY_COMPLEX:
-				clsLoaded = false;
+				readAS(node, raf);
 				break;
 			default:
 				break;
 			}
 		}
+		return node;
+	}
 
+	private void registerEntry(TreeElementImpl node) {
+		maxID = java.lang.Math.max(maxID, node.resID);
+		if (parsedNodes != null)
+			parsedNodes.put(node.resID, node);
+	}
+
+	/**
+	 * Set the type of a decoded node.
+	 * 
+	 * @return false if the node is a custom resource whose data model couldn't be loaded.
+	 */
+	private boolean resolveType(TreeElementImpl node) {
+		boolean clsLoaded = node.isReference() || node.typeKey != DBConstants.TYPE_KEY_COMPLEX;
+		setNodeType(node);
 		if (node.type != null) {
 			clsLoaded = true;
 			String clsName = node.type.getName();
@@ -820,15 +1385,18 @@ public class DBResourceIO {
 				}
 			}
 		}
+		return clsLoaded;
+	}
+
+	private void linkEntry(TreeElementImpl node, boolean clsLoaded) {
 		// register node only if its data model was found. If the data model couldn't be loaded, the resource is removed
 		// from persistent data storage.
 		if (clsLoaded)
 			putResource(node);
 		else {
-			unloadableCustomResources.put(node.path, node);
+			unloadableCustomResources.put(node.getPath(), node);
 			logger.debug("Type couldn't be loaded: " + node.typeName);
 		}
-		return node;
 	}
 
 	private void setNodeType(TreeElementImpl node) {
@@ -883,6 +1451,10 @@ public class DBResourceIO {
 	}
 
 	void tryReadEntry(ByteBufferDataInput raf) throws IOException, EOFException {
+		if (isValueRecord(raf)) {
+			decodeValueRecord(raf);
+			return;
+		}
 		// 1. read header of the entry
 		TreeElementImpl node = new TreeElementImpl(database);
 		readHeader(node, raf);
@@ -929,22 +1501,22 @@ public class DBResourceIO {
 		case DBConstants.TYPE_KEY_OPAQUE:
 			node.initDataContainer();
 			node.type = DBConstants.CLASS_OPAQUE_TYPE;
-			readAB(node);
+			readAB(node, raf);
 			break;
 		case DBConstants.TYPE_KEY_INT_ARR:
 			node.initDataContainer();
 			node.type = DBConstants.CLASS_INT_ARR_TYPE;
-			readAI(node);
+			readAI(node, raf);
 			break;
 		case DBConstants.TYPE_KEY_LONG_ARR:
 			node.initDataContainer();
 			node.type = DBConstants.CLASS_TIME_ARR_TYPE;
-			readAJ(node);
+			readAJ(node, raf);
 			break;
 		case DBConstants.TYPE_KEY_FLOAT_ARR:
 			node.initDataContainer();
 			node.type = DBConstants.CLASS_FLOAT_ARR_TYPE;
-			readAF(node);
+			readAF(node, raf);
 			break;
 		case DBConstants.TYPE_KEY_COMPLEX_ARR:
 			node.type = DBConstants.CLASS_COMPLEX_ARR_TYPE;
@@ -952,12 +1524,12 @@ public class DBResourceIO {
 		case DBConstants.TYPE_KEY_BOOLEAN_ARR:
 			node.initDataContainer();
 			node.type = DBConstants.CLASS_BOOL_ARR_TYPE;
-			readAZ(node);
+			readAZ(node, raf);
 			break;
 		case DBConstants.TYPE_KEY_STRING_ARR:
 			node.initDataContainer();
 			node.type = DBConstants.CLASS_STRING_ARR_TYPE;
-			readAS(node);
+			readAS(node, raf);
 			break;
 		default:
 			break;
@@ -971,12 +1543,16 @@ public class DBResourceIO {
 
 		if (typeName != null) {
 			Class<?> type = database.getResourceType(typeName);
+			if (type == null && unloadableTypes != null && unloadableTypes.contains(typeName))
+				return false;
 			if (type == null) {
 				try {
 					type = Class.forName(node.typeName).asSubclass(Resource.class);
 					type = database.addOrUpdateResourceType((Class<? extends Resource>) type);
 					result = true;
 				} catch (ClassNotFoundException e) {
+					if (unloadableTypes != null)
+						unloadableTypes.add(typeName);
 					// potentially this happens if a custom data model can no longer be loaded, because the
 					// exporter
 					// bundle is not at least installed.
@@ -1015,8 +1591,7 @@ public class DBResourceIO {
 		return false;
 	}
 
-	private void readAS(TreeElementImpl node) throws IOException {
-		ByteBufferDataInput raf = dataFile.input;
+	private void readAS(TreeElementImpl node, ByteBufferDataInput raf) throws IOException {
 		int length = raf.readInt();
 		String sArr[] = new String[length];
 		String val = null;
@@ -1036,8 +1611,7 @@ public class DBResourceIO {
 		}
 	}
 
-	private void readAZ(TreeElementImpl node) throws IOException {
-		ByteBufferDataInput raf = dataFile.input;
+	private void readAZ(TreeElementImpl node, ByteBufferDataInput raf) throws IOException {
 		int length = raf.readInt();
 		boolean zArr[] = new boolean[length];// node.simpleValue.aZ;
 		boolean val = false;
@@ -1054,8 +1628,7 @@ public class DBResourceIO {
 		}
 	}
 
-	private void readAF(TreeElementImpl node) throws IOException {
-		ByteBufferDataInput raf = dataFile.input;
+	private void readAF(TreeElementImpl node, ByteBufferDataInput raf) throws IOException {
 		int length = raf.readInt();
 		float fArr[] = new float[length];// node.simpleValue.aF;
 		float val = 0;
@@ -1072,8 +1645,7 @@ public class DBResourceIO {
 		}
 	}
 
-	private void readAJ(TreeElementImpl node) throws IOException {
-		ByteBufferDataInput raf = dataFile.input;
+	private void readAJ(TreeElementImpl node, ByteBufferDataInput raf) throws IOException {
 		int length = raf.readInt();
 		long jArr[] = new long[length];// node.simpleValue.aJ;
 		long val = 0;
@@ -1090,8 +1662,7 @@ public class DBResourceIO {
 		}
 	}
 
-	private void readAI(TreeElementImpl node) throws IOException {
-		ByteBufferDataInput raf = dataFile.input;
+	private void readAI(TreeElementImpl node, ByteBufferDataInput raf) throws IOException {
 		int length = raf.readInt();
 		int iArr[] = new int[length];// node.simpleValue.aI;
 		int val = 0;
@@ -1108,8 +1679,7 @@ public class DBResourceIO {
 		}
 	}
 
-	private void readAB(TreeElementImpl node) throws IOException {
-		ByteBufferDataInput raf = dataFile.input;
+	private void readAB(TreeElementImpl node, ByteBufferDataInput raf) throws IOException {
 		int length = raf.readInt();
 		byte bArr[] = new byte[length]; // node.simpleValue.aB;
 		int val = 0;
@@ -1133,7 +1703,7 @@ public class DBResourceIO {
 		if ((parent == null) && (!e.toplevel)) // parent not yet read from
 		// archive file
 		{
-			unsortedParents.put(e.path, e);
+			unsortedParents.put(e.getPath(), e);
 			unsorted = true;
 		} // temporarily its hold as unsorted
 			// node in order to be sorted in the
@@ -1157,7 +1727,7 @@ public class DBResourceIO {
 		if (e.reference) {
 			refered = database.resNodeByID.get(e.refID);
 			if (refered == null) {
-				unsortedRefs.put(e.path, e);
+				unsortedRefs.put(e.getPath(), e);
 				unsorted = true;
 			}
 			else {
@@ -1167,11 +1737,11 @@ public class DBResourceIO {
 
 		if (unsorted) {
 			if (Configuration.LOGGING)
-				logger.debug("Unsorted resource " + e.path);
+				logger.debug("Unsorted resource " + e.getPath());
 			return false;
 		}
 		else if (Configuration.LOGGING)
-			logger.debug("Hook up the resource " + e.path);
+			logger.debug("Hook up the resource " + e.getPath());
 
 		// setup the tree for this type only if itsn't a ComplexArrayResourse or
 		// a reference
@@ -1183,19 +1753,24 @@ public class DBResourceIO {
 			database.root.put(e.name, e);
 		else {
 			// e.parent.optionals.remove(e.name);
-			e.parent.getOrCreateRequireds(true).put(e.name, e);
+			e.parent.putRequired(e);
 		}
 		database.registerRes(e);
+		// from now on the path is computed from the parent
+		e.unlinkedPath = null;
 		return true;
 	}
 
 	private void readHeader(TreeElementImpl entry, ByteBufferDataInput raf) throws IOException, EOFException {
+		/*
+		 * The type names, owners and names of sub resources are interned, they are shared by many resources and
+		 * would be read as separate strings for each resource otherwise.
+		 */
 		/* 1. Set type ID */
-		entry.typeName = raf.readUTF();
+		entry.typeName = raf.readUTF().intern();
 		// 2. set resource ID
 		int id = raf.readInt();
 		entry.resID = id;
-		maxID = java.lang.Math.max(maxID, id);
 		// 3. set resources parent ID
 		entry.parentID = raf.readInt();
 		// 4. setFlags
@@ -1208,15 +1783,15 @@ public class DBResourceIO {
 		String path = raf.readUTF();
 		if (Configuration.LOGGING)
 			logger.debug("Resourcepath " + path);
-		entry.path = path;
+		entry.unlinkedPath = path;
 		// separate the name from path if its a sub resource
 		int index = path.lastIndexOf(DBConstants.RESOURCE_PATH_DELIMITER);
 		if (index != -1)
-			entry.name = path.substring(index + 1);
+			entry.name = path.substring(index + 1).intern();
 		else
 			entry.name = path;
 		// 7. set the owner app id
-		entry.appID = raf.readUTF();
+		entry.appID = raf.readUTF().intern();
 		// 8. set the id of any referenced node. If no node is referenced, the id is read as 0
 		entry.refID = raf.readInt();
 		// 9. set the lastmodified time stamp
@@ -1239,63 +1814,98 @@ public class DBResourceIO {
 	 *            the offset the directory is written at.
 	 */
 	void updateDirectory() {
+		/*
+		 * Segments which became empty before the previous map update are not referenced by any map file after this
+		 * update, the ones which became empty since then are still referenced by the previous map file.
+		 */
+		List<Segment> deletable = unreferencedSegments;
+		unreferencedSegments = new ArrayList<>();
+		Iterator<Segment> it = segments.values().iterator();
+		while (it.hasNext()) {
+			Segment segment = it.next();
+			if (segment != activeSegment && segment.entries == 0) {
+				it.remove();
+				unreferencedSegments.add(segment);
+			}
+		}
+
+		dirFiles.shiftF();
+		mapFile = new MapFile(dirFiles.fileNew, dataFile.fileName);
+		if (!writeMap(mapFile, getSortedLocations()))
+			return;
+		if (snapshotsInProgress > 0) {
+			// a snapshot being written may still read from these segments
+			unreferencedSegments.addAll(deletable);
+			return;
+		}
+		for (Segment segment : deletable) {
+			if (Configuration.LOGGING)
+				logger.debug("Deleting archive segment " + segment.file.getName());
+			if (segment.file.exists() && !segment.file.delete())
+				logger.info("File could not be deleted: " + segment.file.getName());
+		}
+	}
 
-		//TreeMap<Integer, Integer> sortedOffsets = new TreeMap<Integer, Integer>(sorter);
-		//sortedOffsets.putAll(offsetByID);
-		
-		List<Map.Entry<Integer,Integer>> sortedOffsets = new ArrayList<>(offsetByID.size());
+	/**
+	 * @return the locations of all resource entries and value records in the order they are stored in the archive.
+	 */
+	private List<Map.Entry<Integer, Location>> getSortedLocations() {
+		List<Map.Entry<Integer, Location>> sortedOffsets = new ArrayList<>(offsetByID.size() + valueRecordByID.size());
 		sortedOffsets.addAll(offsetByID.entrySet());
-		Collections.sort(sortedOffsets, new Comparator<Entry<Integer,Integer>>() {
+		sortedOffsets.addAll(valueRecordByID.entrySet());
+		Collections.sort(sortedOffsets, new Comparator<Entry<Integer, Location>>() {
 			@Override
-			public int compare(Entry<Integer, Integer> o1, Entry<Integer, Integer> o2) {
-				int rval = Integer.compare(o1.getValue(), o2.getValue());
-				return rval == 0 ? -1 : rval;
+			public int compare(Entry<Integer, Location> o1, Entry<Integer, Location> o2) {
+				Location l1 = o1.getValue();
+				Location l2 = o2.getValue();
+				int rval = Integer.compare(l1.segment, l2.segment);
+				return rval == 0 ? Integer.compare(l1.offset, l2.offset) : rval;
 			}
 		});
-		
-		// Save the previous length of the file.
-		int numOfEntries = sortedOffsets.size();
-		Iterator<Entry<Integer, Integer>> dirEntries = sortedOffsets.iterator();
-		dirFiles.shiftF();
-		mapFile = new MapFile(dirFiles.fileNew, dataFile.fileName);
+		return sortedOffsets;
+	}
+
+	/**
+	 * Writes the entries, the name of the data file and the trailer to a new map file.
+	 * 
+	 * @return false if the map file couldn't be written.
+	 */
+	private boolean writeMap(MapFile mapFile, List<Map.Entry<Integer, Location>> sortedOffsets) {
+		int numOfEntries = 0;
 		DataOutputStream dos = mapFile.out;
-		int lastOffset = -1;
-		while (dirEntries.hasNext()) {
-			Entry<Integer, Integer> currEntry = dirEntries.next();
-			if (currEntry.getValue() == lastOffset) {
-				System.out.println("-----------\ndup\n------------");
+		Location last = null;
+		for (Entry<Integer, Location> currEntry : sortedOffsets) {
+			Location location = currEntry.getValue();
+			if (last != null && location.segment == last.segment && location.offset == last.offset) {
+				logger.warn("Duplicate archive entry for resource " + currEntry.getKey());
 				continue;
 			}
 			// Put the ID
 			try {
 				dos.writeInt(currEntry.getKey());
-				/*
-				logger.debug(currEntry.getValue().toString());
-				logger.debug("=");
-				logger.debug(currEntry.getKey().toString());
-				logger.debug(",");
-				*/
-				dos.writeInt(currEntry.getValue());
+				dos.writeInt(location.segment);
+				dos.writeInt(location.offset);
 			} catch (IOException e) {
 				e.printStackTrace();
 			}
-			lastOffset = currEntry.getValue();
+			last = location;
+			numOfEntries++;
 		}
 		try {
 			dos.writeUTF(mapFile.dataFileName);
 			dos.writeInt(numOfEntries);
 			dos.writeInt(MapFile.MAGIC1);
-			dos.writeInt(MapFile.MAGIC2);
+			dos.writeInt(MapFile.MAGIC_SEGMENTED);
 			logger.debug(mapFile.dataFileName);
 			logger.debug(Integer.toString(numOfEntries));
-			logger.debug(Integer.toHexString(MapFile.MAGIC1));
-			logger.debug(Integer.toHexString(MapFile.MAGIC2));
 			dos.flush();
 			mapFile.fos.getFD().sync();
 			dos.close();
 		} catch (IOException e) {
 			e.printStackTrace();
+			return false;
 		}
+		return true;
 	}
 
 	int getCurrentOffset() {
@@ -1314,6 +1924,17 @@ public class DBResourceIO {
 	void reset() {
 		closeAll();
 		System.gc();
+		for (Segment segment : segments.values())
+			segment.file.delete();
+		for (Segment segment : unreferencedSegments)
+			segment.file.delete();
+		segments.clear();
+		unreferencedSegments.clear();
+		offsetByID.clear();
+		valueRecordByID.clear();
+		relocations.clear();
+		relocatedUCRs.clear();
+		compactedSegment = null;
 		dirFiles.reset();
 		resDataFiles.reset();
 		initFiles();
@@ -1349,6 +1970,216 @@ public class DBResourceIO {
 		}
 	}
 
+	/**
+	 * Writes a compacted copy of the archive as it is after the last storage cycle into the given directory. The
+	 * locations of the entries are captured under the storage lock, the entries are copied afterwards while the
+	 * storage continues. This works since archive segments are append only, entries are never overwritten and the
+	 * segments which are read by the snapshot are not deleted before it is finished.
+	 * 
+	 * The snapshot is written to temporary files, which replace the files of an existing snapshot only once they
+	 * are complete. If the replacement is interrupted, it is completed by {@link #restoreSnapshot(File, File)}.
+	 * 
+	 * @param directory
+	 *            the snapshot directory, an existing snapshot therein is replaced.
+	 * @throws IOException
+	 *             if the snapshot couldn't be written completely.
+	 */
+	void snapshot(File directory) throws IOException {
+		List<Map.Entry<Integer, Location>> entries;
+		Map<Integer, File> files = new HashMap<>();
+		synchronized (database.persistence.getStorageLock()) {
+			writeEntry();
+			entries = getSortedLocations();
+			for (Segment segment : segments.values())
+				files.put(segment.id, segment.file);
+			snapshotsInProgress++;
+		}
+		try {
+			writeSnapshot(directory, entries, files);
+		} finally {
+			synchronized (database.persistence.getStorageLock()) {
+				snapshotsInProgress--;
+			}
+		}
+	}
+
+	private void writeSnapshot(File directory, List<Map.Entry<Integer, Location>> entries, Map<Integer, File> files)
+			throws IOException {
+		if (!directory.isDirectory() && !directory.mkdirs())
+			throw new IOException("Snapshot directory couldn't be created: " + directory);
+		File data = new File(directory, dbResourcesFileName + 0);
+		File map = new File(directory, dbDirFileName + 0);
+		// complete an interrupted replacement first, its temporary files are reused below
+		completeSnapshot(directory);
+		File dataTemp = new File(directory, data.getName() + SNAPSHOT_TEMP_SUFFIX);
+		File mapTemp = new File(directory, map.getName() + SNAPSHOT_TEMP_SUFFIX);
+		// left over by an incomplete snapshot, the files are opened for appending
+		Files.deleteIfExists(dataTemp.toPath());
+		Files.deleteIfExists(mapTemp.toPath());
+
+		List<Map.Entry<Integer, Location>> copied = new ArrayList<>(entries.size());
+		Map<Integer, DataFile> inputs = new HashMap<>();
+		DataFile snapshotFile = new DataFile(dataTemp, true);
+		boolean complete = false;
+		try {
+			if (snapshotFile.out == null)
+				throw new IOException("Snapshot file couldn't be created: " + dataTemp);
+			byte[] buffer = new byte[DataFile.BUFFER_SIZE];
+			int offset = 0;
+			for (Map.Entry<Integer, Location> entry : entries) {
+				Location location = entry.getValue();
+				DataFile segment = inputs.get(location.segment);
+				if (segment == null) {
+					File f = files.get(location.segment);
+					segment = new DataFile(f);
+					inputs.put(location.segment, segment);
+					if (segment.input == null)
+						throw new IOException("Archive segment couldn't be read: " + f);
+				}
+				if (buffer.length < location.length)
+					buffer = new byte[Math.max(location.length, buffer.length << 1)];
+				segment.input.seek(location.offset);
+				segment.input.readFully(buffer, 0, location.length);
+				snapshotFile.out.write(buffer, 0, location.length);
+				copied.add(new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), new Location(0, offset,
+						location.length)));
+				offset += location.length;
+			}
+			snapshotFile.out.flush();
+			snapshotFile.fos.getChannel().force(true);
+			// the map refers to the data file by its final name
+			if (!writeMap(new MapFile(mapTemp, data.getName()), copied))
+				throw new IOException("Snapshot map file couldn't be written: " + mapTemp);
+			complete = true;
+		} catch (BufferUnderflowException e) {
+			throw new IOException("Archive segment is shorter than expected", e);
+		} finally {
+			for (DataFile segment : inputs.values())
+				segment.close();
+			snapshotFile.close();
+			if (!complete) {
+				dataTemp.delete();
+				mapTemp.delete();
+			}
+		}
+		// the previous snapshot is valid until here
+		File pending = new File(directory, SNAPSHOT_PENDING_MARKER);
+		try (FileOutputStream out = new FileOutputStream(pending)) {
+			out.getChannel().force(true);
+		}
+		completeSnapshot(directory);
+		if (Configuration.LOGGING)
+			logger.debug("Snapshot with " + copied.size() + " entries written to " + directory);
+	}
+
+	/**
+	 * Moves the temporary files of a new snapshot into place, if they are complete. Each file replaces its
+	 * predecessor atomically, and the pending marker is removed only once all files have been moved, so an
+	 * interrupted replacement is completed by the next call.
+	 */
+	private void completeSnapshot(File directory) throws IOException {
+		File pending = new File(directory, SNAPSHOT_PENDING_MARKER);
+		if (!pending.exists())
+			return;
+		// the new snapshot hasn't been restored yet
+		Files.deleteIfExists(new File(directory, SNAPSHOT_RESTORED_MARKER).toPath());
+		for (String name : new String[] { dbResourcesFileName + 0, dbDirFileName + 0 }) {
+			File temp = new File(directory, name + SNAPSHOT_TEMP_SUFFIX);
+			// missing if it has been moved already
+			if (temp.exists())
+				Files.move(temp.toPath(), new File(directory, name).toPath(), StandardCopyOption.REPLACE_EXISTING,
+						StandardCopyOption.ATOMIC_MOVE);
+		}
+		Files.delete(pending.toPath());
+	}
+
+	/**
+	 * Replaces the archive in the database directory by a snapshot written by {@link #snapshot(File)}. The snapshot
+	 * is copied into temporary files first, then the files of the current archive are renamed to backup files and
+	 * the copies take their place. If any step fails, the current archive is kept. A restored snapshot is marked as
+	 * consumed, so it is not restored again on the next start. The snapshot is not replayed, its data file is parsed
+	 * like any other archive.
+	 * 
+	 * @return true if the snapshot has been installed, false if it is incomplete or has been restored already.
+	 */
+	boolean restoreSnapshot(File snapshot, File dir) {
+		File data = new File(snapshot, dbResourcesFileName + 0);
+		File map = new File(snapshot, dbDirFileName + 0);
+		File marker = new File(snapshot, SNAPSHOT_RESTORED_MARKER);
+		try {
+			completeSnapshot(snapshot);
+		} catch (IOException e) {
+			logger.error("Interrupted snapshot in " + snapshot + " could not be completed, the current archive is kept.",
+					e);
+			return false;
+		}
+		if (marker.exists()) {
+			logger.info("Snapshot " + snapshot + " has been restored already, the current archive is kept.");
+			return false;
+		}
+		boolean valid = data.isFile() && map.isFile();
+		if (valid) {
+			MapFile snapshotMap = new MapFile(map);
+			valid = snapshotMap.isValid() && data.getName().equals(snapshotMap.dataFileName);
+			snapshotMap.close();
+		}
+		if (!valid) {
+			logger.error("No valid snapshot found in " + snapshot + ", the current archive is kept.");
+			return false;
+		}
+		File dataCopy = new File(dir, "restore_" + data.getName());
+		File mapCopy = new File(dir, "restore_" + map.getName());
+		try {
+			Files.copy(data.toPath(), dataCopy.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			Files.copy(map.toPath(), mapCopy.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			logger.error("Snapshot could not be copied from " + snapshot + ", the current archive is kept.", e);
+			dataCopy.delete();
+			mapCopy.delete();
+			return false;
+		}
+		// move the current archive out of the way
+		long now = System.currentTimeMillis();
+		Map<File, File> backups = new HashMap<>();
+		boolean success = true;
+		for (String name : dir.list()) {
+			if (name.startsWith(dbResourcesFileName) || name.startsWith(dbDirFileName)) {
+				File f = new File(dir, name);
+				File backup = new File(dir, "backup_" + name + now);
+				if (!f.renameTo(backup)) {
+					logger.error("File could not be renamed: " + name);
+					success = false;
+					break;
+				}
+				backups.put(f, backup);
+			}
+		}
+		File dataTarget = new File(dir, data.getName());
+		File mapTarget = new File(dir, map.getName());
+		if (success)
+			success = dataCopy.renameTo(dataTarget) && mapCopy.renameTo(mapTarget);
+		if (!success) {
+			dataTarget.delete();
+			mapTarget.delete();
+			dataCopy.delete();
+			mapCopy.delete();
+			for (Map.Entry<File, File> backup : backups.entrySet()) {
+				if (!backup.getValue().renameTo(backup.getKey()))
+					logger.error("Archive file could not be restored from backup: " + backup.getValue());
+			}
+			logger.error("Snapshot could not be restored from " + snapshot + ", the current archive is kept.");
+			return false;
+		}
+		try {
+			Files.createFile(marker.toPath());
+		} catch (IOException e) {
+			logger.warn("Snapshot " + snapshot + " could not be marked as restored, it will be restored again on the "
+					+ "next start unless " + DBConstants.PROP_NAME_PERSISTENCE_RESTORE + " is removed.", e);
+		}
+		logger.info("Archive restored from snapshot " + snapshot);
+		return true;
+	}
+
 	public TreeElementImpl handleUCR(String name, Class<? extends Resource> type) {
 		// Is there an UCR with this name
 		TreeElementImpl tei = unloadableCustomResources.remove(name);
@@ -53,6 +53,13 @@ public class DataFile {
 		}
 	}
 
+	/**
+	 * @return an independent input on the mapped content of the file, or null if the file couldn't be mapped.
+	 */
+	ByteBufferDataInput newInput() {
+		return bb == null ? null : new ByteBufferDataInput(bb.duplicate());
+	}
+
 	public DataFile(File f, boolean b) {
 		this.fileName = f.getName();
 		this.file = f;
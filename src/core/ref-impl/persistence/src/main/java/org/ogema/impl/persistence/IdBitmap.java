@@ -0,0 +1,83 @@
+/**
+ * Copyright 2011-2018 Fraunhofer-Gesellschaft zur Förderung der angewandten Wissenschaften e.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ogema.impl.persistence;
+
+import java.util.Arrays;
+
+/**
+ * Set of resource ids as a bit map. Modifications are to be synchronized by the caller, readers don't need to lock:
+ * they see each id either before or after a concurrent modification.
+ */
+class IdBitmap {
+
+	private volatile long[] words;
+
+	IdBitmap() {
+		words = new long[1];
+	}
+
+	void set(int id) {
+		int index = id >>> 6;
+		long[] w = words;
+		if (index >= w.length)
+			w = Arrays.copyOf(w, Math.max(index + 1, w.length << 1));
+		w[index] |= 1L << id;
+		words = w;
+	}
+
+	void clear(int id) {
+		int index = id >>> 6;
+		long[] w = words;
+		if (index < w.length)
+			w[index] &= ~(1L << id);
+	}
+
+	boolean get(int id) {
+		int index = id >>> 6;
+		long[] w = words;
+		return index < w.length && (w[index] & (1L << id)) != 0;
+	}
+
+	/**
+	 * @return the smallest id equal to or greater than from, or -1 if there is none.
+	 */
+	int nextSetBit(int from) {
+		long[] w = words;
+		int index = from >>> 6;
+		if (index >= w.length)
+			return -1;
+		long word = w[index] & (-1L << from);
+		while (true) {
+			if (word != 0)
+				return (index << 6) + Long.numberOfTrailingZeros(word);
+			if (++index == w.length)
+				return -1;
+			word = w[index];
+		}
+	}
+
+	int size() {
+		int size = 0;
+		for (long word : words)
+			size += Long.bitCount(word);
+		return size;
+	}
+
+	boolean isEmpty() {
+		return nextSetBit(0) < 0;
+	}
+
+}
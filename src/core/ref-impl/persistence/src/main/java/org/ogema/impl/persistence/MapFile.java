@@ -34,6 +34,13 @@ public class MapFile {
 
 	static final int MAGIC2 = 0xFEEDFACE;
 
+	/**
+	 * Replaces MAGIC2 in map files whose entries contain the segment of the resource archive the entry is stored in
+	 * (id, segment, offset). Map files ending with MAGIC2 consist of (id, offset) entries which all refer to the data
+	 * file named in the map.
+	 */
+	static final int MAGIC_SEGMENTED = 0xFEEDBEEF;
+
 	private static final int ENTRY_COUNT_OFFSET = 12;
 
 	@SuppressWarnings("unused")
@@ -45,6 +52,10 @@ public class MapFile {
 
 	int entryCount;
 
+	boolean segmented;
+
+	private int entrySize = 8;
+
 	@SuppressWarnings("unused")
 	private int fileLen;
 
@@ -83,16 +94,19 @@ public class MapFile {
 			fileLen = (int) raf.length();
 			raf.seek(fileLen - ENTRY_COUNT_OFFSET);
 			entryCount = raf.readInt();
+			raf.readInt();
+			segmented = raf.readInt() == MAGIC_SEGMENTED;
+			entrySize = segmented ? 12 : 8;
 			/*
 			 * Read name of the data archive which is corresponding to the directory file.
 			 */
-			dataFileNameOffset = (entryCount << 3);
+			dataFileNameOffset = entryCount * entrySize;
 			raf.seek(dataFileNameOffset);
 			fileName = raf.readUTF();
 
-			// 8 bytes each entry + 4 bytes entry count + 8 bytes magic + utf8
+			// 8 (or 12) bytes each entry + 4 bytes entry count + 8 bytes magic + utf8
 			// data file name including 2 bytes for the length information
-			if (((entryCount << 3) + 12 + fileName.length() + 2) != fileLen)
+			if ((dataFileNameOffset + 12 + fileName.length() + 2) != fileLen)
 				this.valid = false;
 			raf.seek(fileLen - 8);
 			if ((raf.readInt() != MAGIC1) && (raf.readInt() != MAGIC2))
@@ -112,7 +126,7 @@ public class MapFile {
 	}
 
 	public int getLastOffset() {
-		int mapOffset = ((entryCount - 1) << 3) + 4;
+		int mapOffset = (entryCount - 1) * entrySize + entrySize - 4;
 		int dataOffset = -1;
 		try {
 			raf.seek(mapOffset);
@@ -122,6 +136,21 @@ public class MapFile {
 		return dataOffset;
 	}
 
+	/**
+	 * @return the segment of the last entry, or -1 if the map has no segment information or is unreadable.
+	 */
+	public int getLastSegment() {
+		if (!segmented)
+			return -1;
+		int segment = -1;
+		try {
+			raf.seek((entryCount - 1) * entrySize + 4);
+			segment = raf.readInt();
+		} catch (IOException e) {
+		}
+		return segment;
+	}
+
 	public void close() {
 		try {
 			if (raf != null) {
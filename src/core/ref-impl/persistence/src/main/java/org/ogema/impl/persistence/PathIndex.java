@@ -0,0 +1,287 @@
+/**
+ * Copyright 2011-2018 Fraunhofer-Gesellschaft zur Förderung der angewandten Wissenschaften e.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ogema.impl.persistence;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.ogema.persistence.DBConstants;
+
+/**
+ * Ids of the resources by path as a trie of path segments. Resources with a common path prefix share the nodes of
+ * the prefix, and the segments are interned, so equal names of sub resources are stored once. Exact lookups, subtree
+ * and prefix queries visit the matching nodes only. Modifications are synchronized, readers don't lock.
+ */
+class PathIndex {
+
+	interface Visitor {
+		void visit(int id);
+	}
+
+	/*
+	 * Nodes with up to this number of children keep them in a sorted array, larger ones (e.g. the elements of a big
+	 * ResourceList) in a map, so adding a child doesn't copy all of its siblings.
+	 */
+	static final int MAX_ARRAY_CHILDREN = 32;
+
+	private static final Node[] NO_CHILDREN = new Node[0];
+
+	private static final class Node {
+		final String segment;
+		volatile int id = DBConstants.INVALID_ID;
+		// sorted by segment, replaced on modification
+		volatile Node[] children = NO_CHILDREN;
+		// replaces the array if there are more than MAX_ARRAY_CHILDREN children
+		volatile ConcurrentHashMap<String, Node> childMap;
+
+		Node(String segment) {
+			this.segment = segment;
+		}
+
+		/*
+		 * The child named by the path segment between begin and end.
+		 */
+		Node getChild(String path, int begin, int end) {
+			ConcurrentHashMap<String, Node> map = childMap;
+			if (map != null)
+				return map.get(path.substring(begin, end));
+			Node[] c = children;
+			int index = indexOf(c, path, begin, end);
+			return index < 0 ? null : c[index];
+		}
+
+		Node[] getChildren() {
+			ConcurrentHashMap<String, Node> map = childMap;
+			return map == null ? children : map.values().toArray(NO_CHILDREN);
+		}
+
+		void addChild(Node child) {
+			ConcurrentHashMap<String, Node> map = childMap;
+			if (map != null) {
+				map.put(child.segment, child);
+				return;
+			}
+			Node[] c = children;
+			if (c.length == MAX_ARRAY_CHILDREN) {
+				map = new ConcurrentHashMap<>(MAX_ARRAY_CHILDREN * 4);
+				for (Node n : c)
+					map.put(n.segment, n);
+				map.put(child.segment, child);
+				childMap = map;
+				children = NO_CHILDREN;
+				return;
+			}
+			int index = -indexOf(c, child.segment, 0, child.segment.length()) - 1;
+			Node[] copy = new Node[c.length + 1];
+			System.arraycopy(c, 0, copy, 0, index);
+			copy[index] = child;
+			System.arraycopy(c, index, copy, index + 1, c.length - index);
+			children = copy;
+		}
+
+		void removeChild(Node child) {
+			ConcurrentHashMap<String, Node> map = childMap;
+			if (map != null) {
+				map.remove(child.segment);
+				return;
+			}
+			Node[] c = children;
+			int index = indexOf(c, child.segment, 0, child.segment.length());
+			if (index < 0)
+				return;
+			Node[] copy = c.length == 1 ? NO_CHILDREN : new Node[c.length - 1];
+			System.arraycopy(c, 0, copy, 0, index);
+			System.arraycopy(c, index + 1, copy, index, c.length - index - 1);
+			children = copy;
+		}
+
+		boolean isEmpty() {
+			ConcurrentHashMap<String, Node> map = childMap;
+			return id == DBConstants.INVALID_ID && (map == null ? children.length == 0 : map.isEmpty());
+		}
+	}
+
+	private final Node root = new Node("");
+
+	synchronized void put(String path, int id) {
+		Node node = root;
+		int begin = 0;
+		while (begin <= path.length()) {
+			int end = nextDelimiter(path, begin);
+			Node child = node.getChild(path, begin, end);
+			if (child == null) {
+				child = new Node(path.substring(begin, end).intern());
+				node.addChild(child);
+			}
+			node = child;
+			begin = end + 1;
+		}
+		node.id = id;
+	}
+
+	/**
+	 * Removes the entry of the path if it belongs to the given id. Nodes which neither have an id nor children are
+	 * removed too.
+	 */
+	synchronized boolean remove(String path, int id) {
+		ArrayDeque<Node> nodes = new ArrayDeque<>();
+		Node node = root;
+		int begin = 0;
+		while (node != null && begin <= path.length()) {
+			nodes.push(node);
+			int end = nextDelimiter(path, begin);
+			node = node.getChild(path, begin, end);
+			begin = end + 1;
+		}
+		if (node == null || node.id != id)
+			return false;
+		node.id = DBConstants.INVALID_ID;
+		while (!nodes.isEmpty() && node.isEmpty()) {
+			Node parent = nodes.pop();
+			parent.removeChild(node);
+			node = parent;
+		}
+		return true;
+	}
+
+	/**
+	 * @return the id registered for the path, or {@link DBConstants#INVALID_ID}.
+	 */
+	int get(String path) {
+		Node node = find(path);
+		return node == null ? DBConstants.INVALID_ID : node.id;
+	}
+
+	/**
+	 * Visits the resource with the given path and all of the resources below it. An empty path visits all
+	 * resources.
+	 */
+	void visitSubtree(String path, Visitor visitor) {
+		Node node = path.isEmpty() ? root : find(path);
+		if (node != null)
+			visit(node, visitor);
+	}
+
+	/**
+	 * Visits the resources whose path starts with the given prefix, including the resources below them.
+	 */
+	void visitPrefix(String prefix, Visitor visitor) {
+		int slash = prefix.lastIndexOf(DBConstants.RESOURCE_PATH_DELIMITER);
+		Node parent = slash < 0 ? root : find(prefix.substring(0, slash));
+		if (parent == null)
+			return;
+		String partial = prefix.substring(slash + 1);
+		for (Node child : parent.getChildren()) {
+			if (child.segment.startsWith(partial))
+				visit(child, visitor);
+		}
+	}
+
+	/**
+	 * @return the ids of all resources by path.
+	 */
+	Map<String, Integer> getAll() {
+		Map<String, Integer> result = new HashMap<>();
+		ArrayDeque<Node> nodes = new ArrayDeque<>();
+		ArrayDeque<String> paths = new ArrayDeque<>();
+		for (Node child : root.getChildren()) {
+			nodes.push(child);
+			paths.push(child.segment);
+		}
+		while (!nodes.isEmpty()) {
+			Node node = nodes.pop();
+			String path = paths.pop();
+			int id = node.id;
+			if (id != DBConstants.INVALID_ID)
+				result.put(path, id);
+			for (Node child : node.getChildren()) {
+				nodes.push(child);
+				paths.push(path + DBConstants.RESOURCE_PATH_DELIMITER + child.segment);
+			}
+		}
+		return result;
+	}
+
+	synchronized void clear() {
+		root.childMap = null;
+		root.children = NO_CHILDREN;
+	}
+
+	private Node find(String path) {
+		Node node = root;
+		int begin = 0;
+		while (node != null && begin <= path.length()) {
+			int end = nextDelimiter(path, begin);
+			node = node.getChild(path, begin, end);
+			begin = end + 1;
+		}
+		return node;
+	}
+
+	private static void visit(Node start, Visitor visitor) {
+		ArrayDeque<Node> stack = new ArrayDeque<>();
+		stack.push(start);
+		while (!stack.isEmpty()) {
+			Node node = stack.pop();
+			int id = node.id;
+			if (id != DBConstants.INVALID_ID)
+				visitor.visit(id);
+			for (Node child : node.getChildren())
+				stack.push(child);
+		}
+	}
+
+	/*
+	 * Binary search for the segment between begin and end of the path, without creating a substring. Returns
+	 * -(insertion point) - 1 if there is no such child.
+	 */
+	private static int indexOf(Node[] children, String path, int begin, int end) {
+		int low = 0;
+		int high = children.length - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int cmp = compare(children[mid].segment, path, begin, end);
+			if (cmp < 0)
+				low = mid + 1;
+			else if (cmp > 0)
+				high = mid - 1;
+			else
+				return mid;
+		}
+		return -(low + 1);
+	}
+
+	// same order as String#compareTo
+	private static int compare(String segment, String path, int begin, int end) {
+		int length = end - begin;
+		int n = Math.min(segment.length(), length);
+		for (int i = 0; i < n; i++) {
+			char c1 = segment.charAt(i);
+			char c2 = path.charAt(begin + i);
+			if (c1 != c2)
+				return c1 - c2;
+		}
+		return segment.length() - length;
+	}
+
+	private static int nextDelimiter(String path, int begin) {
+		int end = path.indexOf(DBConstants.RESOURCE_PATH_DELIMITER, begin);
+		return end < 0 ? path.length() : end;
+	}
+
+}
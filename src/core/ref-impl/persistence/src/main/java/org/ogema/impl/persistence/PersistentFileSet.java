@@ -16,6 +16,8 @@
 package org.ogema.impl.persistence;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.slf4j.Logger;
 
@@ -115,9 +117,46 @@ class PersistentFileSet {
 			if (fileName.equals(name))
 				return fileOld;
 		}
+		/*
+		 * Sealed segments of the resource archive are older than fileOld.
+		 */
+		if (name != null && name.startsWith(namePrefix) && getSuffix(name) >= 0) {
+			File f = new File(directory, name);
+			if (f.isFile())
+				return f;
+		}
 		return null;
 	}
 
+	/**
+	 * @return the counter suffix of a file of this set, or -1 if the name does not belong to the set.
+	 */
+	int getSuffix(String name) {
+		if (!name.startsWith(namePrefix))
+			return -1;
+		try {
+			return Integer.parseInt(name.substring(namePrefix.length()));
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * @return the suffixes of all files of this set found in the directory.
+	 */
+	List<Integer> listSuffixes() {
+		List<Integer> result = new ArrayList<>();
+		String files[] = directory.list();
+		if (files == null)
+			return result;
+		for (String name : files) {
+			int suffix = getSuffix(name);
+			if (suffix >= 0)
+				result.add(suffix);
+		}
+		return result;
+	}
+
 	/*
 	 * Used by the tests only
 	 */
@@ -139,26 +178,22 @@ class PersistentFileSet {
 		}
 	}
 
+	/*
+	 * Moves all files of the set out of the way, including the sealed segments of the resource archive, so that they
+	 * are not mixed with a new file set.
+	 */
 	void backup() {
 		System.gc();
-		if (fileNew != null) {
-			fileNew.setWritable(true);
-			if (fileNew.length() == 0) {
-				if (!fileNew.delete())
-					logger.info("File could not be deleted: " + fileNew.getName());
+		String backupSuffix = String.valueOf(System.currentTimeMillis());
+		for (int suffix : listSuffixes()) {
+			File f = new File(directory, namePrefix + suffix);
+			f.setWritable(true);
+			if (f.length() == 0) {
+				if (!f.delete())
+					logger.info("File could not be deleted: " + f.getName());
 			}
-			else {
-				fileNew.renameTo(new File(directory, "backup_" + fileNew.getName() + System.currentTimeMillis()));
-			}
-		}
-		if (fileOld != null) {
-			fileOld.setWritable(true);
-			if (fileOld.length() == 0) {
-				if (!fileOld.delete())
-					logger.info("File could not be deleted: " + fileOld.getName());
-			}
-			else {
-				fileOld.renameTo(new File(directory, "backup_" + fileOld.getName() + System.currentTimeMillis()));
+			else if (!f.renameTo(new File(directory, "backup_" + f.getName() + backupSuffix))) {
+				logger.warn("File could not be moved to backup: " + f.getName());
 			}
 		}
 		fileOld = fileNew = null;
@@ -196,21 +231,17 @@ class PersistentFileSet {
 		fileNew = newFile;
 	}
 
-	public File getBiggest() {
-		int maxlength = 0;
-		File result = null;
-		String files[] = directory.list();
-
-		for (String name : files) {
-			if (name.startsWith(namePrefix)) {
-				File f = new File(directory, name);
-				int length = (int) f.length();
-				if (length > maxlength) {
-					maxlength = length;
-					result = f;
-				}
-			}
-		}
-		return result;
+	/**
+	 * Like {@link #shiftF()}, but the old file is kept. Used for the segments of the resource archive, which are
+	 * deleted separately once they don't contain live entries any more.
+	 */
+	public File nextFile() {
+		File newFile = new File(directory, namePrefix + String.valueOf(nameSuffix));
+		nameSuffix++;
+		if (Configuration.LOGGING)
+			logger.debug("Create new file: {}", newFile.getName());
+		fileOld = fileNew;
+		fileNew = newFile;
+		return newFile;
 	}
 }
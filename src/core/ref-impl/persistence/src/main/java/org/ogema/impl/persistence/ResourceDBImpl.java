@@ -16,6 +16,7 @@
 package org.ogema.impl.persistence;
 
 import java.io.File;
+import java.io.IOException;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Method;
 import java.security.AccessController;
@@ -32,6 +33,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.Vector;
 import java.util.concurrent.ConcurrentHashMap;
@@ -92,9 +94,16 @@ public class ResourceDBImpl implements ResourceDB, BundleActivator {
 
 	// FIXME make these final?
 	ConcurrentHashMap<String, Class<?>> typeClassByName;
-	ConcurrentHashMap<String, Integer> resIDByName; // actually by path
 	ConcurrentHashMap<Integer, TreeElementImpl> resNodeByID;
 	ConcurrentHashMap<String, Set<Integer>> resIDsByType; // TODO replace Vector?
+	/**
+	 * Ids of the resources by type including the sub types.
+	 */
+	final TypeIndex typeIndex = new TypeIndex();
+	/**
+	 * Ids of the resources by path, answers the subtree and prefix queries of the path wildcards.
+	 */
+	final PathIndex pathIndex = new PathIndex();
 
 	final boolean activatePersistence;
 
@@ -121,7 +130,6 @@ public class ResourceDBImpl implements ResourceDB, BundleActivator {
 
 		// Allocate enough memory for all entries in the archive and some memory
 		// as reserves.
-		resIDByName = new ConcurrentHashMap<>(INITIAL_MAP_SIZE);
 		resNodeByID = new ConcurrentHashMap<>(INITIAL_MAP_SIZE);
 		resIDsByType = new ConcurrentHashMap<>(INITIAL_MAP_SIZE);
 
@@ -247,10 +255,7 @@ public class ResourceDBImpl implements ResourceDB, BundleActivator {
 			// iterate over all of the non-optional direct children and
 			// create a
 			// sub tree each child and hook it on the parent tree.
-			Set<Entry<String, TreeElementImpl>> tlrs = node.getOrCreateRequireds(false).entrySet();
-			for (Map.Entry<String, TreeElementImpl> entry : tlrs) {
-
-				TreeElementImpl res = entry.getValue();
+			for (TreeElementImpl res : node.getRequireds()) {
 				createTree(res);
 			}
 			ifaces = superModel.getInterfaces();
@@ -469,7 +474,6 @@ public class ResourceDBImpl implements ResourceDB, BundleActivator {
 		}
 		e.appID = appID;
 		e.name = name;
-		e.path = name;
 		e.parent = null;
 		e.parentID = DBConstants.INVALID_ID;
 		e.resRef = null;
@@ -504,8 +508,8 @@ public class ResourceDBImpl implements ResourceDB, BundleActivator {
 	 * each resource created via addResource or addChild in these tables.
 	 */
 	synchronized void registerRes(TreeElementImpl e) {
-		// register in table of id's by name as key
-		resIDByName.put(e.path, e.resID);
+		// register in the trie of id's by path
+		pathIndex.put(e.getPath(), e.resID);
 
 		/*
 		 * If e is a node of type ResourceList the type info is not yet known.
@@ -526,6 +530,7 @@ public class ResourceDBImpl implements ResourceDB, BundleActivator {
 
 			//if (!v.contains(e.resID))
 			v.add(e.resID);
+			typeIndex.add(type, e.resID);
 		}
 
 		// register in table of nodes by id as type
@@ -541,10 +546,10 @@ public class ResourceDBImpl implements ResourceDB, BundleActivator {
 		if (activatePersistence)
 			persistence.store(e.resID, ChangeInfo.DELETED);
 
-		// unregister in table of id's by name as key
-		boolean exist = resIDByName.remove(e.path, e.resID);
+		// unregister in the trie of id's by path
+		boolean exist = pathIndex.remove(e.getPath(), e.resID);
 		if (!exist)
-			logger.error("Registration table resIDByName is corrupted!");
+			logger.error("Registration table pathIndex is corrupted!");
 		/*
 		 * If e is a node of type ResourceList the type info is not yet known.
 		 */
@@ -563,9 +568,10 @@ public class ResourceDBImpl implements ResourceDB, BundleActivator {
 			else {
 				exist = v.remove(e.resID);
 				if (!exist)
-					logger.error("Registration table resIDByName is corrupted!");
+					logger.error("Registration table resIDsByType is corrupted!");
 			}
 		}
+		typeIndex.remove(e.resID);
 		synchronized (storageLock) {
 			// register in table of nodes by id as type
 			exist = resNodeByID.remove(e.resID, e);
@@ -645,14 +651,10 @@ public class ResourceDBImpl implements ResourceDB, BundleActivator {
 
 		unRegisterRes(node);
 
-		if (!node.getOrCreateRequireds(false).isEmpty()) {
-			// iterate over all of the children (optionals and requireds) and
-			// delete their nodes.
-			Set<Entry<String, TreeElementImpl>> tlrs = node.getOrCreateRequireds(false).entrySet();
-			for (Map.Entry<String, TreeElementImpl> entry : tlrs) {
-				TreeElementImpl res = entry.getValue();
-				removeTree(res, delete);
-			}
+		// iterate over all of the children (optionals and requireds) and
+		// delete their nodes.
+		for (TreeElementImpl res : node.getRequireds()) {
+			removeTree(res, delete);
 		}
 
 		if (!delete && !node.decorator && parent != null) {
@@ -666,8 +668,8 @@ public class ResourceDBImpl implements ResourceDB, BundleActivator {
 		if (root.containsKey(name))
 			return true;
 		// 2. check if there is a sub resource with the given name
-		// Integer id = resIDByName.get(name);
-		// if (id != null)
+		// int id = pathIndex.get(name);
+		// if (id != DBConstants.INVALID_ID)
 		// return true;
 		return false;
 	}
@@ -691,6 +693,63 @@ public class ResourceDBImpl implements ResourceDB, BundleActivator {
 //		return (Collection<TreeElement>) result.clone();
 	}
 
+	@Override
+	public Iterable<TreeElement> getNodesByType(Class<? extends Resource> type) {
+		final IdBitmap ids = typeIndex.get(type == null ? Resource.class : type);
+		if (ids == null)
+			return Collections.emptyList();
+		return new Iterable<TreeElement>() {
+
+			@Override
+			public Iterator<TreeElement> iterator() {
+				return new NodeIterator(ids);
+			}
+		};
+	}
+
+	/**
+	 * Iterates the registered nodes with the ids of the bit map, references are skipped.
+	 */
+	private class NodeIterator implements Iterator<TreeElement> {
+
+		private final IdBitmap ids;
+		private int nextId = -1;
+		private TreeElementImpl next;
+
+		NodeIterator(IdBitmap ids) {
+			this.ids = ids;
+			advance();
+		}
+
+		private void advance() {
+			next = null;
+			while (next == null && (nextId = ids.nextSetBit(nextId + 1)) >= 0) {
+				TreeElementImpl e = resNodeByID.get(nextId);
+				if (e != null && !e.reference)
+					next = e;
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			return next != null;
+		}
+
+		@Override
+		public TreeElement next() {
+			if (next == null)
+				throw new NoSuchElementException();
+			TreeElement result = next;
+			advance();
+			return result;
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+
 	@Override
 	public Collection<TreeElement> getFilteredNodes(Map<String, String> dict) {
 		HashSet<TreeElement> result = new HashSet<TreeElement>();
@@ -757,10 +816,16 @@ public class ResourceDBImpl implements ResourceDB, BundleActivator {
 				return result;
 			}
 
+			// path/* matches the subtree of path, path* all paths with this prefix
+			if (wc) {
+				collectByPath(path, lastindex - end == 2, type, owner, result);
+				return result;
+			}
+
 			// path has an unique value
-			Integer id = resIDByName.get(path);
+			int id = pathIndex.get(path);
 			TreeElementImpl te = null;
-			if (id != null) {
+			if (id != DBConstants.INVALID_ID) {
 				te = resNodeByID.get(id);
 				if (!te.reference)
 					result.add(te);
@@ -820,6 +885,37 @@ public class ResourceDBImpl implements ResourceDB, BundleActivator {
 		return result;
 	}
 
+	private void collectByPath(String path, boolean subtree, String type, final String owner,
+			final Collection<TreeElement> result) {
+		Class<?> filtercls = null;
+		if (type != null) {
+			try {
+				filtercls = Class.forName(type);
+			} catch (ClassNotFoundException e) {
+				return;
+			}
+		}
+		final Class<?> cls = filtercls;
+		PathIndex.Visitor visitor = new PathIndex.Visitor() {
+
+			@Override
+			public void visit(int id) {
+				TreeElementImpl te = resNodeByID.get(id);
+				if (te == null || te.reference)
+					return;
+				if (owner != null && !te.appID.equals(owner))
+					return;
+				if (cls != null && !cls.isAssignableFrom(te.getType()))
+					return;
+				result.add(te);
+			}
+		};
+		if (subtree)
+			pathIndex.visitSubtree(path, visitor);
+		else
+			pathIndex.visitPrefix(path, visitor);
+	}
+
 	private void filterByOwner(HashSet<TreeElement> result, String owner) {
 		Iterator<TreeElement> it = result.iterator();
 		while (it.hasNext()) {
@@ -941,9 +1037,10 @@ public class ResourceDBImpl implements ResourceDB, BundleActivator {
 		storageLock = null;
 		root.clear();
 		typeClassByName.clear();
-		resIDByName.clear();
 		resNodeByID.clear();
 		resIDsByType.clear();
+		typeIndex.clear();
+		pathIndex.clear();
 		// resTable.clear();
 	}
 
@@ -973,9 +1070,10 @@ public class ResourceDBImpl implements ResourceDB, BundleActivator {
 		root.clear();
 		this.inited = false;
 		typeClassByName = new ConcurrentHashMap<>(INITIAL_MAP_SIZE);
-		resIDByName = new ConcurrentHashMap<>(INITIAL_MAP_SIZE);
 		resNodeByID = new ConcurrentHashMap<>(INITIAL_MAP_SIZE);
 		resIDsByType = new ConcurrentHashMap<>(INITIAL_MAP_SIZE);
+		typeIndex.clear();
+		pathIndex.clear();
 		init();
 	}
 
@@ -1060,8 +1158,8 @@ public class ResourceDBImpl implements ResourceDB, BundleActivator {
 			end = lastindex;
 
 			// path has an unique value
-			Integer id = resIDByName.get(path);
-			if (id != null) {
+			int id = pathIndex.get(path);
+			if (id != DBConstants.INVALID_ID) {
 				te = resNodeByID.get(id);
 				if (!te.reference)
 					return te;
@@ -1224,4 +1322,13 @@ public class ResourceDBImpl implements ResourceDB, BundleActivator {
 		if (activatePersistence)
 			persistence.triggerStorage();
 	}
+
+	@Override
+	public void snapshot(File directory) throws IOException {
+		if (!activatePersistence)
+			throw new UnsupportedOperationException("Persistence is not active.");
+		// store pending changes first, the snapshot contains the state of the last storage cycle
+		persistence.triggerStorage();
+		resourceIO.snapshot(directory);
+	}
 }
@@ -0,0 +1,94 @@
+/**
+ * Copyright 2011-2018 Fraunhofer-Gesellschaft zur Förderung der angewandten Wissenschaften e.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ogema.impl.persistence;
+
+/**
+ * Metrics of the storage cycles of {@link TimedPersistence}. Updated by the storage thread, may be read by any thread.
+ */
+public class StorageStatistics {
+
+	private volatile long cycles;
+	private volatile int lastQueueDepth;
+	private volatile int maxQueueDepth;
+	private volatile long lastFlushNanos;
+	private volatile long maxFlushNanos;
+	private volatile long totalFlushNanos;
+	private volatile long lastBytesWritten;
+	private volatile long totalBytesWritten;
+
+	void update(int queueDepth, long flushNanos, long bytesWritten) {
+		cycles++;
+		lastQueueDepth = queueDepth;
+		if (queueDepth > maxQueueDepth)
+			maxQueueDepth = queueDepth;
+		lastFlushNanos = flushNanos;
+		if (flushNanos > maxFlushNanos)
+			maxFlushNanos = flushNanos;
+		totalFlushNanos += flushNanos;
+		lastBytesWritten = bytesWritten;
+		totalBytesWritten += bytesWritten;
+	}
+
+	/**
+	 * @return number of storage cycles which found changes to be stored.
+	 */
+	public long getCycles() {
+		return cycles;
+	}
+
+	/**
+	 * @return number of distinct resources changed in the last storage cycle.
+	 */
+	public int getLastQueueDepth() {
+		return lastQueueDepth;
+	}
+
+	public int getMaxQueueDepth() {
+		return maxQueueDepth;
+	}
+
+	public long getLastFlushNanos() {
+		return lastFlushNanos;
+	}
+
+	public long getMaxFlushNanos() {
+		return maxFlushNanos;
+	}
+
+	public long getTotalFlushNanos() {
+		return totalFlushNanos;
+	}
+
+	/**
+	 * @return number of bytes appended to the resource archive in the last storage cycle, including compaction.
+	 */
+	public long getLastBytesWritten() {
+		return lastBytesWritten;
+	}
+
+	public long getTotalBytesWritten() {
+		return totalBytesWritten;
+	}
+
+	@Override
+	public String toString() {
+		return "StorageStatistics [cycles=" + cycles + ", lastQueueDepth=" + lastQueueDepth + ", maxQueueDepth="
+				+ maxQueueDepth + ", lastFlushNanos=" + lastFlushNanos + ", maxFlushNanos=" + maxFlushNanos
+				+ ", totalFlushNanos=" + totalFlushNanos + ", lastBytesWritten=" + lastBytesWritten
+				+ ", totalBytesWritten=" + totalBytesWritten + "]";
+	}
+
+}
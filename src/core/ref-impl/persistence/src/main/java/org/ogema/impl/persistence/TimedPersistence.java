@@ -20,6 +20,7 @@ import java.util.TimerTask;
 
 import org.ogema.persistence.DBConstants;
 import org.ogema.persistence.PersistencePolicy;
+import org.slf4j.Logger;
 
 public class TimedPersistence implements PersistencePolicy {
 
@@ -32,6 +33,8 @@ public class TimedPersistence implements PersistencePolicy {
 	volatile boolean inTX;
 	volatile boolean running;
 
+	private final Logger logger = org.slf4j.LoggerFactory.getLogger("persistence");
+
 	public TimedPersistence(ResourceDBImpl db) {
 		this.db = db;
 		// check if the property to activate persistence debugging is set
@@ -39,6 +42,8 @@ public class TimedPersistence implements PersistencePolicy {
 		this.timer = new Timer("Storage-TimedPersistence-" + db.name);
 	}
 
+	private final StorageStatistics statistics = new StorageStatistics();
+
 	TimerTask storageTask = new TimerTask() {
 
 		@Override
@@ -47,45 +52,74 @@ public class TimedPersistence implements PersistencePolicy {
 			 * If the previous storage not yet finished or resource management has reported a transaction, no storage
 			 * must be triggered.
 			 */
-			if (running || inTX || db.resourceIO == null || db.resourceIO.changes.size() <= 0)
+			if (running || inTX || db.resourceIO == null
+					|| (db.resourceIO.changes.size() <= 0 && !db.resourceIO.isCompactionPending()))
 				return;
 			running = true;
+			long[] changes = null;
 			try {
+				long start = System.nanoTime();
+				long bytesBefore = db.resourceIO.getBytesWritten();
+				boolean fileChanged = false;
 				/*
-				 * The policy for the compaction of the data archive file decides if a compaction is required.
+				 * The changes are written in the order of the resource ids, which is mostly the order of creation, so
+				 * parents are stored before their sub resources.
 				 */
-				db.resourceIO.check4Compaction();
-
-				boolean fileChanged = false;
-				Change ch = null;
-				while ((ch = db.resourceIO.fifo.poll()) != null) {
-					if (ch.status == ChangeInfo.DELETED) {
-						db.resourceIO.offsetByID.remove(ch.id);
-						// db.resourceIO.changes.remove(ch.id);
+				changes = db.resourceIO.changes.drain();
+				for (long ch : changes) {
+					int id = ChangeSet.getId(ch);
+					ChangeInfo status = ChangeSet.getChangeInfo(ch);
+					if (status == ChangeInfo.DELETED) {
+						db.resourceIO.removeEntry(id);
 						fileChanged = true;
 						continue;
 					}
-					TreeElementImpl e = db.resNodeByID.get(ch.id);
-                    if (e.isNonpersistent() && ch.status == ChangeInfo.VALUE_CHANGED) {
+					TreeElementImpl e = db.resNodeByID.get(id);
+					if (e == null)
+						continue;
+                    if (e.isNonpersistent() && status == ChangeInfo.VALUE_CHANGED) {
                         assert false : "NonPersistent resource has ChangeInfo.VALUE_CHANGED";
                         continue;
                     }
-					db.resourceIO.storeResource(e);
+					// a value change of a primitive resource is stored as a small value record
+					if (status != ChangeInfo.VALUE_CHANGED || !db.resourceIO.storeValue(e))
+						db.resourceIO.storeResource(e);
 					fileChanged = true;
 				}
+				/*
+				 * The policy for the compaction of the data archive file decides if a compaction is required. A
+				 * compaction copies a limited amount of data per storage cycle only.
+				 */
+				fileChanged |= db.resourceIO.check4Compaction();
 				if (fileChanged) {
 					db.resourceIO.writeEntry();
 					db.resourceIO.updateDirectory();
 				}
+				statistics.update(changes.length, System.nanoTime() - start, db.resourceIO.getBytesWritten()
+						- bytesBefore);
+				if (Configuration.LOGGING)
+					logger.debug("Storage cycle: {}", statistics);
 				running = false;
-				db.resourceIO.changes.clear();
 			} catch (Throwable e) {
 				e.printStackTrace();
+				/*
+				 * Nothing of this cycle is committed before the directory has been updated, so all changes are stored
+				 * again in the next cycle.
+				 */
+				if (changes != null)
+					db.resourceIO.changes.restore(changes);
 				running = false;
 			}
 		}
 	};
 
+	/**
+	 * @return metrics of the storage cycles: number of changed resources, flush duration and bytes written.
+	 */
+	public StorageStatistics getStatistics() {
+		return statistics;
+	}
+
 	public int getStorePeriod() {
 		return storePeriod;
 	}
@@ -97,19 +131,8 @@ public class TimedPersistence implements PersistencePolicy {
 	@Override
 	public void store(int resID, org.ogema.persistence.PersistencePolicy.ChangeInfo changeInfo) {
 		synchronized (storageTask) {
-			// check if the resource with this is is already queued
-			Change change = db.resourceIO.changes.get(resID);
-			if (change != null) {
-				// change the status of the change object only if it wasn't deleted before
-				if (change.status != ChangeInfo.DELETED)
-					change.status = changeInfo;
-			}
-			else {
-				change = new Change(resID, changeInfo);
-				db.resourceIO.changes.put(resID, change);
-				db.resourceIO.fifo.offer(change);
-
-			}
+			// repeated changes of the same resource are coalesced
+			db.resourceIO.changes.add(resID, changeInfo);
 		}
 	}
 
@@ -125,16 +148,6 @@ public class TimedPersistence implements PersistencePolicy {
 		}
 	}
 
-	class Change {
-		public Change(int resID, org.ogema.persistence.PersistencePolicy.ChangeInfo changeInfo) {
-			id = resID;
-			status = changeInfo;
-		}
-
-		int id;
-		org.ogema.persistence.PersistencePolicy.ChangeInfo status;
-	}
-
 	@Override
 	public void startStorage() {
 		timer.schedule(storageTask, storePeriod, storePeriod);
@@ -37,10 +37,22 @@ import org.slf4j.LoggerFactory;
 
 public class TreeElementImpl implements TreeElement {
 
+	private static final TreeElementImpl[] NO_CHILDREN = new TreeElementImpl[0];
+
+	/*
+	 * Nodes with up to this number of children keep them in a sorted array, larger ones (e.g. big ResourceLists) in a
+	 * map, so adding a child doesn't copy all of its siblings.
+	 */
+	static final int MAX_ARRAY_CHILDREN = 32;
+
 	/*
 	 * List of children which are defined as non-optional in the type definition or added as optional or decorator.
+	 * Sorted by name, replaced on modification, so readers don't need to lock. The typical node has only a few
+	 * children, which are found by binary search with less memory than a map would need.
 	 */
-	private volatile ConcurrentHashMap<String, TreeElementImpl> requireds;
+	private volatile TreeElementImpl[] requireds = NO_CHILDREN;
+	// replaces requireds if there are more than MAX_ARRAY_CHILDREN children
+	private volatile ConcurrentHashMap<String, TreeElementImpl> requiredMap;
 	/*
 	 * List of all children which are part of the type definition.
 	 */
@@ -72,9 +84,11 @@ public class TreeElementImpl implements TreeElement {
 	public boolean reference;
 	public boolean complexArray;
 
-	// resource path information which consists of the names of all parents up
-	// to the top level resource in the tree
-	public String path;
+	/*
+	 * The path consists of the names of all parents up to the top level resource and is computed from the parent
+	 * pointers on demand. Only nodes read from the archive, which aren't hooked into the tree yet, hold the path read.
+	 */
+	String unlinkedPath;
 
 	// The following fields both are the same Reference where dataContainer is
 	// the interface with the getter/setter to the primitive values and
@@ -93,7 +107,6 @@ public class TreeElementImpl implements TreeElement {
 
 	public TreeElementImpl(ResourceDBImpl db) {
 		this.db = db;
-//		requireds = new ConcurrentHashMap<>(4, 0.75F, 4);
 		typeKey = DBConstants.TYPE_KEY_INVALID;
 	}
 
@@ -331,8 +344,7 @@ public class TreeElementImpl implements TreeElement {
 			result.appID = topLevelParent.appID;
 			result.type = refimpl.type;
 			result.typeName = refimpl.typeName;
-			result.name = refName;
-			result.path = this.path + DBConstants.PATH_SEPARATOR + refName;
+			result.name = refName.intern();
 			result.parent = this;
 			result.parentID = this.resID;
 			result.resRef = null;
@@ -370,7 +382,7 @@ public class TreeElementImpl implements TreeElement {
 		// db.createTree(result);
 		db.registerRes(result);
 
-		getOrCreateRequireds(true).put(result.name, result);
+		putRequired(result);
 		if (db.activatePersistence)
 			db.persistence.store(id, PersistencePolicy.ChangeInfo.NEW_SUBRESOURCE);
 		return result;
@@ -410,7 +422,7 @@ public class TreeElementImpl implements TreeElement {
 		// Check if an unloadable custom resource (UCR) is pending
 		TreeElementImpl e;
 		if (db.activatePersistence) {
-			e = db.resourceIO.handleUCR(this.path + "/" + chName, chType);
+			e = db.resourceIO.handleUCR(getPath() + "/" + chName, chType);
 			if (e != null)
 				return e;
 		}
@@ -459,8 +471,7 @@ public class TreeElementImpl implements TreeElement {
 				result.complexArray = true;
 				result.typeKey = DBConstants.TYPE_KEY_COMPLEX_ARR;
 			}
-			result.name = chName;
-			result.path = node.path + DBConstants.PATH_SEPARATOR + chName;
+			result.name = chName.intern();
 			result.parent = node;
 			result.parentID = node.resID;
 			result.resRef = null;
@@ -488,7 +499,7 @@ public class TreeElementImpl implements TreeElement {
 
 		db.registerRes(result);
 
-		node.getOrCreateRequireds(true).put(result.name, result);
+		node.putRequired(result);
 		if (db.activatePersistence)
 			db.persistence.store(id, PersistencePolicy.ChangeInfo.NEW_SUBRESOURCE);
 		return result;
@@ -528,8 +539,7 @@ public class TreeElementImpl implements TreeElement {
 			result.typeName = chType.getName();
 		}
 		result.appID = this.topLevelParent.appID;
-		result.name = chName;
-		result.path = this.path + DBConstants.PATH_SEPARATOR + chName;
+		result.name = chName.intern();
 		result.parent = this;
 		result.parentID = this.resID;
 		result.resRef = null;
@@ -545,7 +555,7 @@ public class TreeElementImpl implements TreeElement {
 		db.createTree(result);
 		db.registerRes(result);
 
-		this.getOrCreateRequireds(true).put(result.name, result);
+		this.putRequired(result);
 		if (db.activatePersistence)
 			db.persistence.store(id, PersistencePolicy.ChangeInfo.NEW_SUBRESOURCE);
 		return result;
@@ -564,8 +574,7 @@ public class TreeElementImpl implements TreeElement {
 		result.appID = topLevelParent.appID;
 		result.type = refimpl.type;
 		result.typeName = refimpl.typeName;
-		result.name = refName;
-		result.path = this.path + DBConstants.PATH_SEPARATOR + refName;
+		result.name = refName.intern();
 		result.parent = this;
 		result.parentID = this.resID;
 		result.resRef = null;
@@ -586,7 +595,7 @@ public class TreeElementImpl implements TreeElement {
 		result.resID = id;
 		db.registerRes(result);
 
-		this.getOrCreateRequireds(true).put(result.name, result);
+		this.putRequired(result);
 		if (db.activatePersistence)
 			db.persistence.store(id, PersistencePolicy.ChangeInfo.NEW_SUBRESOURCE);
 		return result;
@@ -639,7 +648,7 @@ public class TreeElementImpl implements TreeElement {
 		TreeElementImpl node = this;
 		if (reference)
 			return refered.getChildren();
-		return new ArrayList<TreeElement>(node.getOrCreateRequireds(false).values());
+		return new ArrayList<TreeElement>(node.getRequireds());
 	}
 
 	@Override
@@ -703,7 +712,7 @@ public class TreeElementImpl implements TreeElement {
 	}
 
 	public String toString() {
-		return "ResourceType: " + typeName + " ResourcePath: " + path;
+		return "ResourceType: " + typeName + " ResourcePath: " + getPath();
 	}
 
 	public void reset() {
@@ -755,7 +764,7 @@ public class TreeElementImpl implements TreeElement {
 			return false;
 		if (e.complexArray != complexArray)
 			return false;
-		if (!e.path.equals(path))
+		if (!e.getPath().equals(getPath()))
 			return false;
 		return true;
 	}
@@ -773,7 +782,12 @@ public class TreeElementImpl implements TreeElement {
 
 	@Override
 	public String getPath() {
-		return path;
+		TreeElementImpl p = parent;
+		if (p == null) {
+			String path = unlinkedPath;
+			return path != null ? path : name;
+		}
+		return p.getPath() + DBConstants.PATH_SEPARATOR + name;
 	}
 
 	@Override
@@ -831,7 +845,7 @@ public class TreeElementImpl implements TreeElement {
 
 	@Override
 	public String getLocation() {
-		String result = path;
+		String result = null;
 		TreeElement te = this;
 		while (true) {
 			if (te.isReference()) {
@@ -885,8 +899,7 @@ public class TreeElementImpl implements TreeElement {
 			// top level
 			e.topLevelParent = this.topLevelParent;
 			e.appID = this.appID;
-			e.name = chName;
-			e.path = this.path + DBConstants.PATH_SEPARATOR + chName;
+			e.name = chName.intern();
 			e.active = false;
 
 			Integer flags = flagsChildren.get(chName);
@@ -903,38 +916,94 @@ public class TreeElementImpl implements TreeElement {
 	}
 	
 	boolean requiredsContainsKey(final String key) {
-		final ConcurrentHashMap<String, TreeElementImpl> map = this.requireds;
-		return map != null && map.containsKey(key);
+		return getRequired(key) != null;
 	}
-	
+
 	TreeElementImpl getRequired(final String key) {
-		final ConcurrentHashMap<String, TreeElementImpl> map = this.requireds;
-		if (map == null)
-			return null;
-		return map.get(key);
+		final ConcurrentHashMap<String, TreeElementImpl> map = this.requiredMap;
+		if (map != null)
+			return map.get(key);
+		final TreeElementImpl[] children = this.requireds;
+		int index = indexOf(children, key);
+		return index < 0 ? null : children[index];
 	}
-	
-	Map<String, TreeElementImpl> getOrCreateRequireds(boolean doCreate) {
-		ConcurrentHashMap<String, TreeElementImpl> map = this.requireds;
-		if (!doCreate)
-			return map != null ? map : Collections.<String, TreeElementImpl> emptyMap();
-		if (map == null) {
-			synchronized (this) { // double checking pattern to avoid synchronization in the generic case
-				map = this.requireds;
-				if (map == null) {
-					map = new ConcurrentHashMap<>(4, 0.75F, 4);
-					this.requireds = map;
-				}
-			}
-		}
-		return map;
+
+	/**
+	 * @return the children of this node, the list isn't modified by later changes of the children.
+	 */
+	List<TreeElementImpl> getRequireds() {
+		final ConcurrentHashMap<String, TreeElementImpl> map = this.requiredMap;
+		if (map != null)
+			return Collections.unmodifiableList(new ArrayList<>(map.values()));
+		return Collections.unmodifiableList(Arrays.asList(requireds));
 	}
-	
-	TreeElementImpl removeRequired(String name) {
-		ConcurrentHashMap<String, TreeElementImpl> map = this.requireds;
-		if (map == null)
+
+	/**
+	 * Adds the child or replaces the child with the same name.
+	 */
+	synchronized void putRequired(TreeElementImpl child) {
+		ConcurrentHashMap<String, TreeElementImpl> map = this.requiredMap;
+		if (map != null) {
+			map.put(child.name, child);
+			return;
+		}
+		final TreeElementImpl[] children = this.requireds;
+		int index = indexOf(children, child.name);
+		if (index >= 0) {
+			TreeElementImpl[] copy = children.clone();
+			copy[index] = child;
+			this.requireds = copy;
+			return;
+		}
+		if (children.length == MAX_ARRAY_CHILDREN) {
+			map = new ConcurrentHashMap<>(MAX_ARRAY_CHILDREN * 4);
+			for (TreeElementImpl c : children)
+				map.put(c.name, c);
+			map.put(child.name, child);
+			this.requiredMap = map;
+			this.requireds = NO_CHILDREN;
+			return;
+		}
+		index = -index - 1;
+		TreeElementImpl[] copy = new TreeElementImpl[children.length + 1];
+		System.arraycopy(children, 0, copy, 0, index);
+		copy[index] = child;
+		System.arraycopy(children, index, copy, index + 1, children.length - index);
+		this.requireds = copy;
+	}
+
+	synchronized TreeElementImpl removeRequired(String name) {
+		final ConcurrentHashMap<String, TreeElementImpl> map = this.requiredMap;
+		if (map != null)
+			return map.remove(name);
+		final TreeElementImpl[] children = this.requireds;
+		int index = indexOf(children, name);
+		if (index < 0)
 			return null;
-		return map.remove(name);
+		TreeElementImpl[] copy = children.length == 1 ? NO_CHILDREN : new TreeElementImpl[children.length - 1];
+		System.arraycopy(children, 0, copy, 0, index);
+		System.arraycopy(children, index + 1, copy, index, children.length - index - 1);
+		this.requireds = copy;
+		return children[index];
 	}
-	
+
+	/*
+	 * Binary search by name, returns -(insertion point) - 1 if there is no child of that name.
+	 */
+	private static int indexOf(TreeElementImpl[] children, String name) {
+		int low = 0;
+		int high = children.length - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int cmp = children[mid].name.compareTo(name);
+			if (cmp < 0)
+				low = mid + 1;
+			else if (cmp > 0)
+				high = mid - 1;
+			else
+				return mid;
+		}
+		return -(low + 1);
+	}
+
 }
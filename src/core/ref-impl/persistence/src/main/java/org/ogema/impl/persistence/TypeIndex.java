@@ -0,0 +1,92 @@
+/**
+ * Copyright 2011-2018 Fraunhofer-Gesellschaft zur Förderung der angewandten Wissenschaften e.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ogema.impl.persistence;
+
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Ids of the resources by type, where the entry of a type contains the resources of this type and of all its sub
+ * types. So a query for a super type like Sensor doesn't have to merge the entries of the installed sub types.
+ */
+class TypeIndex {
+
+	private final ConcurrentHashMap<Class<?>, IdBitmap> idsByType = new ConcurrentHashMap<>();
+
+	/**
+	 * Bit maps of a type and of all its super types, i.e. the bit maps to be updated for a resource of the type.
+	 * Guarded by this.
+	 */
+	private final Map<Class<?>, IdBitmap[]> hierarchy = new HashMap<>();
+
+	synchronized void add(Class<?> type, int id) {
+		for (IdBitmap ids : getHierarchy(type))
+			ids.set(id);
+	}
+
+	/**
+	 * Removes the id from the entries of all types, so it doesn't depend on the type the resource had when it was
+	 * added.
+	 */
+	synchronized void remove(int id) {
+		for (IdBitmap ids : idsByType.values())
+			ids.clear(id);
+	}
+
+	/**
+	 * @return the ids of the resources of the type and its sub types, or null if there is no such resource.
+	 */
+	IdBitmap get(Class<?> type) {
+		return idsByType.get(type);
+	}
+
+	synchronized void clear() {
+		idsByType.clear();
+		hierarchy.clear();
+	}
+
+	private IdBitmap[] getHierarchy(Class<?> type) {
+		IdBitmap[] result = hierarchy.get(type);
+		if (result == null) {
+			Set<Class<?>> types = new LinkedHashSet<>();
+			addSuperTypes(type, types);
+			result = new IdBitmap[types.size()];
+			int i = 0;
+			for (Class<?> t : types) {
+				IdBitmap ids = idsByType.get(t);
+				if (ids == null) {
+					ids = new IdBitmap();
+					idsByType.put(t, ids);
+				}
+				result[i++] = ids;
+			}
+			hierarchy.put(type, result);
+		}
+		return result;
+	}
+
+	private static void addSuperTypes(Class<?> type, Set<Class<?>> types) {
+		if (type == null || type == Object.class || !types.add(type))
+			return;
+		for (Class<?> i : type.getInterfaces())
+			addSuperTypes(i, types);
+		addSuperTypes(type.getSuperclass(), types);
+	}
+
+}
@@ -206,7 +206,7 @@ public class BootupTest {
 		db.stopStorage();
 		ConcurrentHashMap<String, TreeElementImpl> root = db.root;
 		ConcurrentHashMap<String, Class<?>> typeClassByName = db.typeClassByName;
-		ConcurrentHashMap<String, Integer> resIDByName = db.resIDByName;
+		Map<String, Integer> resIDByName = db.pathIndex.getAll();
 		ConcurrentHashMap<Integer, TreeElementImpl> resNodeByID = db.resNodeByID;
 		ConcurrentHashMap<String, Set<Integer>> resIDsByType = db.resIDsByType;
 		// reinit the resource db
@@ -262,15 +262,15 @@ public class BootupTest {
 				String key = entry.getKey();
 				int newVal = -1;
 				try {
-					Integer i = db.resIDByName.get(key);
-					if (i == null)
+					int i = db.pathIndex.get(key);
+					if (i == DBConstants.INVALID_ID)
 						success = false;
 					else
-						newVal = i.intValue();
+						newVal = i;
 				} catch (Throwable e) {
 					// System.out.println(key);
 					// System.out.println(db);
-					// System.out.println(db.resIDByName);
+					// System.out.println(db.pathIndex.getAll());
 					e.printStackTrace();
 				}
 
@@ -0,0 +1,89 @@
+/**
+ * Copyright 2011-2018 Fraunhofer-Gesellschaft zur Förderung der angewandten Wissenschaften e.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ogema.impl.persistence;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+import org.ogema.persistence.PersistencePolicy.ChangeInfo;
+
+public class ChangeSetTest {
+
+	@Test
+	public void repeatedChangesAreCoalesced() {
+		ChangeSet set = new ChangeSet(16);
+		for (int i = 0; i < 50; i++)
+			set.add(7, ChangeInfo.VALUE_CHANGED);
+		set.add(3, ChangeInfo.NEW_RESOURCE);
+		TestCase.assertEquals(2, set.size());
+		long[] changes = set.drain();
+		TestCase.assertEquals(2, changes.length);
+		TestCase.assertEquals(3, ChangeSet.getId(changes[0]));
+		TestCase.assertEquals(ChangeInfo.NEW_RESOURCE, ChangeSet.getChangeInfo(changes[0]));
+		TestCase.assertEquals(7, ChangeSet.getId(changes[1]));
+		TestCase.assertEquals(ChangeInfo.VALUE_CHANGED, ChangeSet.getChangeInfo(changes[1]));
+		TestCase.assertEquals(0, set.size());
+		TestCase.assertEquals(0, set.drain().length);
+	}
+
+	@Test
+	public void valueChangeDoesNotOverrideOtherChanges() {
+		ChangeSet set = new ChangeSet(16);
+		set.add(1, ChangeInfo.STATUS_CHANGED);
+		set.add(1, ChangeInfo.VALUE_CHANGED);
+		set.add(2, ChangeInfo.VALUE_CHANGED);
+		set.add(2, ChangeInfo.NEW_SUBRESOURCE);
+		set.add(3, ChangeInfo.DELETED);
+		set.add(3, ChangeInfo.STATUS_CHANGED);
+		long[] changes = set.drain();
+		TestCase.assertEquals(ChangeInfo.STATUS_CHANGED, ChangeSet.getChangeInfo(changes[0]));
+		TestCase.assertEquals(ChangeInfo.NEW_SUBRESOURCE, ChangeSet.getChangeInfo(changes[1]));
+		TestCase.assertEquals(ChangeInfo.DELETED, ChangeSet.getChangeInfo(changes[2]));
+	}
+
+	@Test
+	public void restoredChangesAreMergedWithNewOnes() {
+		ChangeSet set = new ChangeSet(16);
+		set.add(1, ChangeInfo.NEW_RESOURCE);
+		set.add(2, ChangeInfo.VALUE_CHANGED);
+		set.add(3, ChangeInfo.DELETED);
+		long[] failed = set.drain();
+		set.add(1, ChangeInfo.VALUE_CHANGED);
+		set.add(3, ChangeInfo.NEW_RESOURCE);
+		set.restore(failed);
+		TestCase.assertEquals(3, set.size());
+		long[] changes = set.drain();
+		TestCase.assertEquals(ChangeInfo.NEW_RESOURCE, ChangeSet.getChangeInfo(changes[0]));
+		TestCase.assertEquals(ChangeInfo.VALUE_CHANGED, ChangeSet.getChangeInfo(changes[1]));
+		TestCase.assertEquals(ChangeInfo.NEW_RESOURCE, ChangeSet.getChangeInfo(changes[2]));
+	}
+
+	@Test
+	public void setGrowsAndDrainsInIdOrder() {
+		ChangeSet set = new ChangeSet(8);
+		int n = 10000;
+		for (int round = 0; round < 3; round++) {
+			for (int i = n; i > 0; i--)
+				set.add(i * 31, ChangeInfo.VALUE_CHANGED);
+			TestCase.assertEquals(n, set.size());
+			long[] changes = set.drain();
+			TestCase.assertEquals(n, changes.length);
+			for (int i = 0; i < n; i++)
+				TestCase.assertEquals((i + 1) * 31, ChangeSet.getId(changes[i]));
+		}
+	}
+
+}
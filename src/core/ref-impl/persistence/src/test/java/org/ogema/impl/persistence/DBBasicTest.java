@@ -36,7 +36,7 @@ public class DBBasicTest {
 		// get current maps of the resources
 		ConcurrentHashMap<String, TreeElementImpl> root = db.root;
 		ConcurrentHashMap<String, Class<?>> typeClassByName = db.typeClassByName;
-		ConcurrentHashMap<String, Integer> resIDByName = db.resIDByName;
+		Map<String, Integer> resIDByName = db.pathIndex.getAll();
 		ConcurrentHashMap<Integer, TreeElementImpl> resNodeByID = db.resNodeByID;
 		ConcurrentHashMap<String, Set<Integer>> resIDsByType = db.resIDsByType;
 		// check the consistency of the maps
@@ -73,7 +73,7 @@ public class DBBasicTest {
 				int val = entry.getValue();
 				String path = entry.getKey();
 				TreeElementImpl res = resNodeByID.get(val);
-				if (!path.equals(res.path)) {
+				if (!path.equals(res.getPath())) {
 					success = false;
 					break;
 				}
@@ -116,7 +116,7 @@ public class DBBasicTest {
 		db.stopStorage();
 		ConcurrentHashMap<String, TreeElementImpl> root = db.root;
 		ConcurrentHashMap<String, Class<?>> typeClassByName = db.typeClassByName;
-		ConcurrentHashMap<String, Integer> resIDByName = db.resIDByName;
+		Map<String, Integer> resIDByName = db.pathIndex.getAll();
 		ConcurrentHashMap<Integer, TreeElementImpl> resNodeByID = db.resNodeByID;
 		ConcurrentHashMap<String, Set<Integer>> resIDsByType = db.resIDsByType;
 		// reinit the resource db
@@ -178,11 +178,11 @@ public class DBBasicTest {
 				String key = entry.getKey();
 				int newVal = -1;
 				try {
-					Integer i = db.resIDByName.get(key);
-					if (i == null)
+					int i = db.pathIndex.get(key);
+					if (i == DBConstants.INVALID_ID)
 						success = false;
 					else
-						newVal = i.intValue();
+						newVal = i;
 				} catch (Throwable e) {
 					e.printStackTrace();
 				}
@@ -0,0 +1,107 @@
+/**
+ * Copyright 2011-2018 Fraunhofer-Gesellschaft zur Förderung der angewandten Wissenschaften e.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ogema.impl.persistence;
+
+import java.io.File;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.ogema.core.model.array.FloatArrayResource;
+import org.ogema.core.model.simple.FloatResource;
+import org.ogema.core.model.simple.StringResource;
+import org.ogema.impl.persistence.testmodels.TestPhysicalDevice;
+import org.ogema.persistence.DBConstants;
+import org.ogema.resourcetree.TreeElement;
+
+public class ParallelLoaderTest extends DBBasicTest {
+
+	private static final String DB_PATH = "./src/test/resources/parallelLoaderTest";
+	// more than one chunk of entries
+	private static final int RESOURCES = 3000;
+
+	private String testAppID = "/persistence/target/persistence-2.1.1-SNAPSHOT.jar";
+
+	@Before
+	public void before() throws InterruptedException {
+		System.setProperty("org.ogema.persistence", "active");
+		System.setProperty(DBConstants.DB_PATH_PROP, DB_PATH);
+		System.setProperty(DBConstants.PROP_NAME_TIMEDPERSISTENCE_PERIOD, "3600000");
+		// 64 KB segments
+		System.setProperty(DBConstants.PROP_NAME_PERSISTENCE_COMPACTION_START_SIZE, "64");
+		System.setProperty(DBConstants.PROP_NAME_PERSISTENCE_LOADER_THREADS, "4");
+		File dir = new File(DB_PATH);
+		if (!dir.exists())
+			dir.mkdirs();
+		for (File f : dir.listFiles())
+			f.delete();
+		db = new ResourceDBImpl();
+		db.setName("ParallelLoaderTest");
+		db.restart();
+	}
+
+	@After
+	public void after() throws InterruptedException {
+		System.clearProperty(DBConstants.PROP_NAME_TIMEDPERSISTENCE_PERIOD);
+		System.clearProperty(DBConstants.PROP_NAME_PERSISTENCE_COMPACTION_START_SIZE);
+		System.clearProperty(DBConstants.PROP_NAME_PERSISTENCE_LOADER_THREADS);
+	}
+
+	private static float[] array(int i) {
+		return new float[] { i, i + 0.5f, -i };
+	}
+
+	@Test
+	public void resourcesAreRestoredByParallelLoader() {
+		for (int i = 0; i < RESOURCES; i++) {
+			db.addResource("loaderArray" + i, FloatArrayResource.class, testAppID).getData().setFloatArr(array(i));
+			db.addResource("loaderString" + i, StringResource.class, testAppID).getData().setString("s" + i);
+			db.addResource("loaderFloat" + i, FloatResource.class, testAppID).getData().setFloat(i);
+			if (i % 500 == 0)
+				db.doStorage();
+		}
+		// some sub resources, so the tree has to be linked
+		TreeElement device = db.addResource("loaderDevice", TestPhysicalDevice.class, testAppID);
+		TreeElement child = device.addChild("label", StringResource.class, true);
+		child.getData().setString("device");
+		// value records in the newest segment, array entries in sealed ones
+		for (int i = 0; i < RESOURCES; i += 10)
+			db.getToplevelResource("loaderFloat" + i).getData().setFloat(-i);
+		db.doStorage();
+		TestCase.assertTrue(db.resourceIO.offsetByID.size() > 2 * 4096);
+
+		restartAndCompareDynamicData();
+		checkDynamicData();
+		for (int i = 0; i < RESOURCES; i++) {
+			TestCase.assertTrue(Arrays.equals(array(i), db.getToplevelResource("loaderArray" + i).getData()
+					.getFloatArr()));
+			TestCase.assertEquals("s" + i, db.getToplevelResource("loaderString" + i).getData().getString());
+			TestCase.assertEquals(i % 10 == 0 ? -i : i, (int) db.getToplevelResource("loaderFloat" + i).getData()
+					.getFloat());
+		}
+		TestCase.assertEquals("device", db.getToplevelResource("loaderDevice").getChild("label").getData()
+				.getString());
+
+		// the sequential loader yields the same tree
+		System.setProperty(DBConstants.PROP_NAME_PERSISTENCE_LOADER_THREADS, "1");
+		restartAndCompareDynamicData();
+		checkDynamicData();
+	}
+
+}
@@ -0,0 +1,173 @@
+/**
+ * Copyright 2011-2018 Fraunhofer-Gesellschaft zur Förderung der angewandten Wissenschaften e.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ogema.impl.persistence;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.ogema.core.model.simple.FloatResource;
+import org.ogema.impl.persistence.testmodels.TestPhysicalDevice;
+import org.ogema.model.sensors.TemperatureSensor;
+import org.ogema.persistence.DBConstants;
+import org.ogema.resourcetree.TreeElement;
+
+public class PathIndexTest extends DBBasicTest {
+
+	private static final String DB_PATH = "./src/test/resources/pathIndexTest";
+
+	private String testAppID = "/persistence/target/persistence-2.1.1-SNAPSHOT.jar";
+
+	@Before
+	public void before() throws InterruptedException {
+		System.setProperty("org.ogema.persistence", "active");
+		System.setProperty(DBConstants.DB_PATH_PROP, DB_PATH);
+		System.setProperty(DBConstants.PROP_NAME_TIMEDPERSISTENCE_PERIOD, "3600000");
+		File dir = new File(DB_PATH);
+		if (!dir.exists())
+			dir.mkdirs();
+		for (File f : dir.listFiles())
+			f.delete();
+		db = new ResourceDBImpl();
+		db.setName("PathIndexTest");
+		db.restart();
+	}
+
+	@After
+	public void after() throws InterruptedException {
+		System.clearProperty(DBConstants.PROP_NAME_TIMEDPERSISTENCE_PERIOD);
+	}
+
+	private Set<String> getPaths(String path, String type) {
+		Map<String, String> dict = new HashMap<>();
+		dict.put("path", path);
+		if (type != null)
+			dict.put("type", type);
+		Set<String> result = new HashSet<>();
+		for (TreeElement e : db.getFilteredNodes(dict))
+			result.add(e.getPath());
+		return result;
+	}
+
+	private static Set<String> set(String... paths) {
+		Set<String> result = new HashSet<>();
+		for (String path : paths)
+			result.add(path);
+		return result;
+	}
+
+	private static Set<Integer> visitSubtree(PathIndex index, String path) {
+		final Set<Integer> result = new HashSet<>();
+		index.visitSubtree(path, new PathIndex.Visitor() {
+
+			@Override
+			public void visit(int id) {
+				result.add(id);
+			}
+		});
+		return result;
+	}
+
+	@Test
+	public void indexAnswersExactSubtreeAndPrefixQueries() {
+		PathIndex index = new PathIndex();
+		index.put("a", 1);
+		index.put("a/b", 2);
+		index.put("a/b/c", 3);
+		index.put("a/bc", 4);
+		index.put("ab", 5);
+		TestCase.assertEquals(3, index.get("a/b/c"));
+		TestCase.assertEquals(DBConstants.INVALID_ID, index.get("a/b/d"));
+		TestCase.assertEquals(DBConstants.INVALID_ID, index.get("b"));
+		TestCase.assertEquals(new HashSet<>(Arrays.asList(2, 3)), visitSubtree(index, "a/b"));
+		TestCase.assertEquals(5, visitSubtree(index, "").size());
+
+		final Set<Integer> prefixed = new HashSet<>();
+		index.visitPrefix("a/b", new PathIndex.Visitor() {
+
+			@Override
+			public void visit(int id) {
+				prefixed.add(id);
+			}
+		});
+		TestCase.assertEquals(new HashSet<>(Arrays.asList(2, 3, 4)), prefixed);
+
+		// an entry of another id is kept
+		TestCase.assertFalse(index.remove("a/b", 7));
+		TestCase.assertTrue(index.remove("a/b", 2));
+		TestCase.assertEquals(3, index.get("a/b/c"));
+		TestCase.assertTrue(index.remove("a/b/c", 3));
+		TestCase.assertTrue(visitSubtree(index, "a/b").isEmpty());
+		TestCase.assertEquals(new HashSet<>(Arrays.asList(1, 4)), visitSubtree(index, "a"));
+	}
+
+	@Test
+	public void largeFanOutIsIndexed() {
+		PathIndex index = new PathIndex();
+		int n = PathIndex.MAX_ARRAY_CHILDREN * 4;
+		for (int i = n - 1; i >= 0; i--)
+			index.put("list/element_" + i, i + 1);
+		index.put("listA", n + 1);
+		for (int i = 0; i < n; i++)
+			TestCase.assertEquals(i + 1, index.get("list/element_" + i));
+		TestCase.assertEquals(n, visitSubtree(index, "list").size());
+		Map<String, Integer> all = index.getAll();
+		TestCase.assertEquals(n + 1, all.size());
+		TestCase.assertEquals(Integer.valueOf(n + 1), all.get("listA"));
+		TestCase.assertEquals(Integer.valueOf(1), all.get("list/element_0"));
+		for (int i = 0; i < n; i++)
+			TestCase.assertTrue(index.remove("list/element_" + i, i + 1));
+		TestCase.assertEquals(DBConstants.INVALID_ID, index.get("list/element_0"));
+		TestCase.assertEquals(set("listA"), index.getAll().keySet());
+	}
+
+	@Test
+	public void wildcardPathsAreResolvedByIndex() {
+		TreeElement device = db.addResource("pathDevice", TestPhysicalDevice.class, testAppID);
+		TreeElement sensor = device.addChild("extraSensor", TemperatureSensor.class, true);
+		sensor.addChild("reading", FloatResource.class, false);
+		TreeElement other = db.addResource("pathDevice2", TestPhysicalDevice.class, testAppID);
+		TreeElement otherSensor = db.addResource("pathOther", TemperatureSensor.class, testAppID);
+		// references are not contained
+		other.addReference(otherSensor, "sensorRef", true);
+
+		TestCase.assertEquals(set("pathDevice"), getPaths("pathDevice", null));
+		TestCase.assertEquals(set("pathDevice", "pathDevice/extraSensor", "pathDevice/extraSensor/reading"),
+				getPaths("pathDevice/*", null));
+		TestCase.assertEquals(set("pathDevice/extraSensor", "pathDevice/extraSensor/reading"),
+				getPaths("/pathDevice/extraSensor/*", null));
+		TestCase.assertEquals(set("pathDevice", "pathDevice/extraSensor", "pathDevice/extraSensor/reading",
+				"pathDevice2"), getPaths("pathDev*", null));
+		TestCase.assertEquals(set("pathDevice/extraSensor", "pathOther"), getPaths("path*",
+				TemperatureSensor.class.getName()));
+		TestCase.assertTrue(getPaths("noSuchPath/*", null).isEmpty());
+
+		db.deleteResource(sensor);
+		TestCase.assertEquals(set("pathDevice"), getPaths("pathDevice/*", null));
+
+		restartAndCompareDynamicData();
+		TestCase.assertEquals(set("pathDevice", "pathDevice2"), getPaths("pathDev*", null));
+	}
+
+}
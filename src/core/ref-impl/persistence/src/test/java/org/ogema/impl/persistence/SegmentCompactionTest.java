@@ -0,0 +1,179 @@
+/**
+ * Copyright 2011-2018 Fraunhofer-Gesellschaft zur Förderung der angewandten Wissenschaften e.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ogema.impl.persistence;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.ogema.core.model.simple.StringResource;
+import org.ogema.persistence.DBConstants;
+import org.ogema.resourcetree.TreeElement;
+
+public class SegmentCompactionTest extends DBBasicTest {
+
+	private static final String DB_PATH = "./src/test/resources/segmentCompactionTest";
+	private static final int RESOURCES = 20;
+	private static final int ROUNDS = 10;
+
+	private String testAppID = "/persistence/target/persistence-2.1.1-SNAPSHOT.jar";
+
+	@Before
+	public void before() throws InterruptedException {
+		System.setProperty("org.ogema.persistence", "active");
+		System.setProperty(DBConstants.DB_PATH_PROP, DB_PATH);
+		// 4 KB segments
+		System.setProperty(DBConstants.PROP_NAME_PERSISTENCE_COMPACTION_START_SIZE, "4");
+		System.setProperty(DBConstants.PROP_NAME_TIMEDPERSISTENCE_PERIOD, "3600000");
+		removeFiles();
+		db = new ResourceDBImpl();
+		db.setName("SegmentCompactionTest");
+		db.restart();
+	}
+
+	@After
+	public void after() throws InterruptedException {
+		System.clearProperty(DBConstants.PROP_NAME_PERSISTENCE_COMPACTION_START_SIZE);
+		System.clearProperty(DBConstants.PROP_NAME_TIMEDPERSISTENCE_PERIOD);
+	}
+
+	private void removeFiles() {
+		File dir = new File(DB_PATH);
+		if (!dir.exists())
+			dir.mkdirs();
+		for (File f : dir.listFiles())
+			f.delete();
+	}
+
+	private long getArchiveSize() {
+		long size = 0;
+		for (File f : new File(DB_PATH).listFiles()) {
+			if (f.getName().startsWith(DBConstants.RESOURCES_ARCHIVE_NAME))
+				size += f.length();
+		}
+		return size;
+	}
+
+	private static String value(int resource, int round) {
+		return BootupTest.text + resource + "/" + round;
+	}
+
+	@Test
+	public void archiveIsCompactedIncrementally() {
+		TreeElement[] resources = new TreeElement[RESOURCES];
+		for (int i = 0; i < RESOURCES; i++) {
+			resources[i] = db.addResource("segmentTest" + i, StringResource.class, testAppID);
+			resources[i].getData().setString(value(i, 0));
+		}
+		db.doStorage();
+		long liveSize = getArchiveSize();
+		/*
+		 * Every fifth resource is never updated again, so that the older segments contain a few live entries which
+		 * are to be relocated.
+		 */
+		for (int round = 1; round <= ROUNDS; round++) {
+			for (int i = 0; i < RESOURCES; i++) {
+				if (i % 5 != 0)
+					resources[i].getData().setString(value(i, round));
+			}
+			db.doStorage();
+		}
+		// let the pending relocations finish
+		for (int i = 0; i < 20 && db.resourceIO.isCompactionPending(); i++)
+			db.doStorage();
+		TestCase.assertFalse(db.resourceIO.isCompactionPending());
+		TestCase.assertTrue("Archive not compacted: " + getArchiveSize() + " bytes",
+				getArchiveSize() < liveSize * ROUNDS / 2);
+
+		restartAndCompareDynamicData();
+		checkDynamicData();
+		for (int i = 0; i < RESOURCES; i++) {
+			TreeElement res = db.getToplevelResource("segmentTest" + i);
+			TestCase.assertNotNull(res);
+			TestCase.assertEquals(value(i, i % 5 == 0 ? 0 : ROUNDS), res.getData().getString());
+		}
+	}
+
+	@Test
+	public void deletedResourcesDoNotSurviveCompaction() {
+		for (int i = 0; i < RESOURCES; i++) {
+			db.addResource("segmentTest" + i, StringResource.class, testAppID).getData().setString(value(i, 0));
+		}
+		db.doStorage();
+		for (int i = 0; i < RESOURCES; i++) {
+			if (i % 2 == 0)
+				db.deleteResource(db.getToplevelResource("segmentTest" + i));
+		}
+		db.doStorage();
+		for (int round = 1; round <= ROUNDS; round++) {
+			db.getToplevelResource("segmentTest1").getData().setString(value(1, round));
+			db.doStorage();
+		}
+		for (int i = 0; i < 20 && db.resourceIO.isCompactionPending(); i++)
+			db.doStorage();
+		restartAndCompareDynamicData();
+		for (int i = 0; i < RESOURCES; i++) {
+			TreeElement res = db.getToplevelResource("segmentTest" + i);
+			if (i % 2 == 0)
+				TestCase.assertNull(res);
+			else
+				TestCase.assertNotNull(res);
+		}
+		TestCase.assertEquals(value(1, ROUNDS), db.getToplevelResource("segmentTest1").getData().getString());
+	}
+
+	@Test
+	public void allSegmentsAreParsedWithoutMapFile() throws IOException {
+		TreeElement[] resources = new TreeElement[RESOURCES];
+		for (int i = 0; i < RESOURCES; i++) {
+			resources[i] = db.addResource("segmentTest" + i, StringResource.class, testAppID);
+			resources[i].getData().setString(value(i, 0));
+		}
+		db.doStorage();
+		for (int round = 1; round <= ROUNDS; round++) {
+			for (int i = 0; i < RESOURCES; i++) {
+				if (i % 5 != 0)
+					resources[i].getData().setString(value(i, round));
+			}
+			db.doStorage();
+		}
+		db.stopStorage();
+		int segments = 0;
+		for (File f : new File(DB_PATH).listFiles()) {
+			if (f.getName().startsWith(DBConstants.RESOURCES_ARCHIVE_NAME))
+				segments++;
+			// invalidate all map files, the archive has to be parsed completely
+			if (f.getName().startsWith(DBConstants.DIR_FILE_NAME)) {
+				try (FileOutputStream out = new FileOutputStream(f)) {
+					out.write(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 });
+				}
+			}
+		}
+		TestCase.assertTrue("Only " + segments + " segments", segments > 1);
+		db.restart();
+		for (int i = 0; i < RESOURCES; i++) {
+			TreeElement res = db.getToplevelResource("segmentTest" + i);
+			TestCase.assertNotNull("Resource lost: segmentTest" + i, res);
+			TestCase.assertEquals(value(i, i % 5 == 0 ? 0 : ROUNDS), res.getData().getString());
+		}
+	}
+
+}
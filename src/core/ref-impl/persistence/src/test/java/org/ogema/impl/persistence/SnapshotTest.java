@@ -0,0 +1,203 @@
+/**
+ * Copyright 2011-2018 Fraunhofer-Gesellschaft zur Förderung der angewandten Wissenschaften e.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ogema.impl.persistence;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import junit.framework.TestCase;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.ogema.core.model.simple.FloatResource;
+import org.ogema.core.model.simple.StringResource;
+import org.ogema.persistence.DBConstants;
+
+public class SnapshotTest extends DBBasicTest {
+
+	private static final String DB_PATH = "./src/test/resources/snapshotTest";
+	private static final String SNAPSHOT_PATH = "./src/test/resources/snapshotTestSnapshot";
+	private static final int RESOURCES = 2000;
+
+	private String testAppID = "/persistence/target/persistence-2.1.1-SNAPSHOT.jar";
+
+	@Before
+	public void before() throws InterruptedException {
+		System.setProperty("org.ogema.persistence", "active");
+		System.setProperty(DBConstants.DB_PATH_PROP, DB_PATH);
+		System.setProperty(DBConstants.PROP_NAME_TIMEDPERSISTENCE_PERIOD, "3600000");
+		// 64 KB segments, so the segments are rotated and compacted while the snapshot is written
+		System.setProperty(DBConstants.PROP_NAME_PERSISTENCE_COMPACTION_START_SIZE, "64");
+		clear(new File(DB_PATH));
+		clear(new File(SNAPSHOT_PATH));
+		db = new ResourceDBImpl();
+		db.setName("SnapshotTest");
+		db.restart();
+	}
+
+	@After
+	public void after() throws InterruptedException {
+		System.clearProperty(DBConstants.PROP_NAME_TIMEDPERSISTENCE_PERIOD);
+		System.clearProperty(DBConstants.PROP_NAME_PERSISTENCE_COMPACTION_START_SIZE);
+		System.clearProperty(DBConstants.PROP_NAME_PERSISTENCE_RESTORE);
+	}
+
+	private static void clear(File dir) {
+		if (!dir.exists())
+			dir.mkdirs();
+		for (File f : dir.listFiles())
+			f.delete();
+	}
+
+	private void setValues(int round) {
+		db.startTransaction();
+		for (int i = 0; i < RESOURCES; i++)
+			db.getToplevelResource("snapshotFloat" + i).getData().setFloat(round);
+		db.finishTransaction();
+		db.doStorage();
+	}
+
+	@Test
+	public void snapshotIsConsistentWhileWritesContinue() throws Exception {
+		for (int i = 0; i < RESOURCES; i++) {
+			db.addResource("snapshotFloat" + i, FloatResource.class, testAppID);
+			db.addResource("snapshotString" + i, StringResource.class, testAppID).getData().setString("s" + i);
+		}
+		setValues(0);
+
+		final AtomicBoolean stop = new AtomicBoolean();
+		Thread writer = new Thread(new Runnable() {
+
+			@Override
+			public void run() {
+				int round = 1;
+				while (!stop.get())
+					setValues(round++);
+			}
+		});
+		writer.start();
+		Thread.sleep(200);
+		db.snapshot(new File(SNAPSHOT_PATH));
+		Thread.sleep(200);
+		stop.set(true);
+		writer.join();
+		int lastRound = (int) db.getToplevelResource("snapshotFloat0").getData().getFloat();
+		db.deleteResource(db.getToplevelResource("snapshotString0"));
+		db.doStorage();
+
+		System.setProperty(DBConstants.PROP_NAME_PERSISTENCE_RESTORE, SNAPSHOT_PATH);
+		db.restart();
+		int round = (int) db.getToplevelResource("snapshotFloat0").getData().getFloat();
+		TestCase.assertTrue("Snapshot should be taken while the values are changed", round > 0 && round < lastRound);
+		for (int i = 0; i < RESOURCES; i++) {
+			TestCase.assertEquals(round, (int) db.getToplevelResource("snapshotFloat" + i).getData().getFloat());
+			TestCase.assertEquals("s" + i, db.getToplevelResource("snapshotString" + i).getData().getString());
+		}
+		// the restored archive is used and extended as usual, the snapshot is not restored again
+		setValues(-1);
+		restartAndCompareDynamicData();
+		TestCase.assertEquals(-1f, db.getToplevelResource("snapshotFloat" + (RESOURCES - 1)).getData().getFloat());
+	}
+
+	@Test
+	public void snapshotIsCompact() throws Exception {
+		for (int i = 0; i < RESOURCES; i++)
+			db.addResource("snapshotFloat" + i, FloatResource.class, testAppID);
+		for (int round = 0; round < 5; round++)
+			setValues(round);
+		db.snapshot(new File(SNAPSHOT_PATH));
+		long live = 0;
+		for (DBResourceIO.Location location : db.resourceIO.offsetByID.values())
+			live += location.length;
+		for (DBResourceIO.Location location : db.resourceIO.valueRecordByID.values())
+			live += location.length;
+		TestCase.assertEquals(live, new File(SNAPSHOT_PATH, DBConstants.RESOURCES_ARCHIVE_NAME + 0).length());
+	}
+
+	@Test
+	public void invalidSnapshotIsNotRestored() throws Exception {
+		db.addResource("snapshotFloat", FloatResource.class, testAppID).getData().setFloat(1);
+		db.doStorage();
+		System.setProperty(DBConstants.PROP_NAME_PERSISTENCE_RESTORE, SNAPSHOT_PATH);
+		db.restart();
+		TestCase.assertEquals(1f, db.getToplevelResource("snapshotFloat").getData().getFloat());
+	}
+
+	@Test
+	public void failedRestoreKeepsArchive() throws Exception {
+		db.addResource("snapshotFloat", FloatResource.class, testAppID).getData().setFloat(1);
+		db.doStorage();
+		db.snapshot(new File(SNAPSHOT_PATH));
+		db.getToplevelResource("snapshotFloat").getData().setFloat(2);
+		db.doStorage();
+		// a non empty directory in place of the temporary copy lets the restore fail
+		File blocker = new File(DB_PATH, "restore_" + DBConstants.RESOURCES_ARCHIVE_NAME + 0);
+		new File(blocker, "x").mkdirs();
+		try {
+			System.setProperty(DBConstants.PROP_NAME_PERSISTENCE_RESTORE, SNAPSHOT_PATH);
+			db.restart();
+			TestCase.assertEquals(2f, db.getToplevelResource("snapshotFloat").getData().getFloat());
+			TestCase.assertFalse(new File(SNAPSHOT_PATH, DBResourceIO.SNAPSHOT_RESTORED_MARKER).exists());
+		} finally {
+			new File(blocker, "x").delete();
+			blocker.delete();
+		}
+	}
+
+	@Test
+	public void incompleteSnapshotKeepsPreviousOne() throws Exception {
+		db.addResource("snapshotFloat", FloatResource.class, testAppID).getData().setFloat(1);
+		db.doStorage();
+		db.snapshot(new File(SNAPSHOT_PATH));
+		db.getToplevelResource("snapshotFloat").getData().setFloat(2);
+		db.doStorage();
+		// temporary files of a snapshot interrupted while writing
+		Files.write(new File(SNAPSHOT_PATH, DBConstants.RESOURCES_ARCHIVE_NAME + "0.tmp").toPath(), new byte[] { 1, 2 });
+		Files.write(new File(SNAPSHOT_PATH, DBConstants.DIR_FILE_NAME + "0.tmp").toPath(), new byte[] { 3 });
+		System.setProperty(DBConstants.PROP_NAME_PERSISTENCE_RESTORE, SNAPSHOT_PATH);
+		db.restart();
+		TestCase.assertEquals(1f, db.getToplevelResource("snapshotFloat").getData().getFloat());
+	}
+
+	@Test
+	public void interruptedReplacementIsCompleted() throws Exception {
+		File snapshot = new File(SNAPSHOT_PATH);
+		File map = new File(snapshot, DBConstants.DIR_FILE_NAME + 0);
+		db.addResource("snapshotFloat", FloatResource.class, testAppID).getData().setFloat(1);
+		db.doStorage();
+		db.snapshot(snapshot);
+		byte[] previousMap = Files.readAllBytes(map.toPath());
+		db.getToplevelResource("snapshotFloat").getData().setFloat(2);
+		db.doStorage();
+		db.snapshot(snapshot);
+		TestCase.assertFalse(new File(snapshot, DBResourceIO.SNAPSHOT_PENDING_MARKER).exists());
+		// state after a crash while the new files replaced those of the previous, already restored snapshot: the
+		// data file has been moved, the map file not yet
+		Files.move(map.toPath(), new File(snapshot, map.getName() + ".tmp").toPath());
+		Files.write(map.toPath(), previousMap);
+		Files.write(new File(snapshot, DBResourceIO.SNAPSHOT_PENDING_MARKER).toPath(), new byte[0]);
+		Files.write(new File(snapshot, DBResourceIO.SNAPSHOT_RESTORED_MARKER).toPath(), new byte[0]);
+		db.getToplevelResource("snapshotFloat").getData().setFloat(3);
+		db.doStorage();
+		System.setProperty(DBConstants.PROP_NAME_PERSISTENCE_RESTORE, SNAPSHOT_PATH);
+		db.restart();
+		TestCase.assertEquals(2f, db.getToplevelResource("snapshotFloat").getData().getFloat());
+		TestCase.assertFalse(new File(snapshot, DBResourceIO.SNAPSHOT_PENDING_MARKER).exists());
+	}
+
+}
@@ -184,7 +184,7 @@ public class TreeElementTest extends DBBasicTest {
 
 		System.out.println("Inside deleteTopLevelResource");
 		int id = resource_PhysicalElement_id_0.resID;
-		String name = resource_PhysicalElement_id_0.path;
+		String name = resource_PhysicalElement_id_0.getPath();
 		String cls = resource_PhysicalElement_id_0.type.getName();
 		TestCase.assertTrue(db.hasResource("resource_PhysicalElement_name_0"));
 		// delete resource
@@ -192,7 +192,7 @@ public class TreeElementTest extends DBBasicTest {
 		TestCase.assertFalse(db.hasResource("resource_PhysicalElement_name_0"));
 		TestCase.assertNull(db.getToplevelResource(name));
 		// is the deleted resource removed from all internal tables too?
-		TestCase.assertTrue(db.resIDByName.get(name) == null);
+		TestCase.assertTrue(db.pathIndex.get(name) == DBConstants.INVALID_ID);
 		TestCase.assertTrue(db.resNodeByID.get(id) == null);
 		TestCase.assertFalse(db.resIDsByType.get(cls).contains(new Integer(id)));
 	}
@@ -534,16 +534,16 @@ public class TreeElementTest extends DBBasicTest {
 		TestCase.assertTrue(switchCap == (TreeElementImpl) node_tempSensCool.getChild("switchCap"));
 		// TestCase.assertTrue(freezeCombi.typeChildren.get(name_tempSensCool) == null);
 		// TestCase.assertTrue(node_tempSensCool.typeChildren.get("switchCap") == null);
-		TestCase.assertTrue(freezeCombi.getOrCreateRequireds(false).get(name_tempSensCool) != null);
-		TestCase.assertTrue(node_tempSensCool.getOrCreateRequireds(false).get("switchCap") != null);
+		TestCase.assertTrue(freezeCombi.getRequired(name_tempSensCool) != null);
+		TestCase.assertTrue(node_tempSensCool.getRequired("switchCap") != null);
 
 		// delete sub resource
 		db.deleteResource(switchCap);
 		// TestCase.assertTrue(freezeCombi.typeChildren.get(name_tempSensCool) == null);
 		// TestCase.assertTrue(node_tempSensCool.typeChildren.get("switchCap") != null); // switchCap is no longer an
 		// optional element of a TemperatureSensor, but only a test-model in persistence
-		TestCase.assertTrue(freezeCombi.getOrCreateRequireds(false).get(name_tempSensCool) != null);
-		TestCase.assertTrue(node_tempSensCool.getOrCreateRequireds(false).get("switchCap") == null);
+		TestCase.assertTrue(freezeCombi.getRequired(name_tempSensCool) != null);
+		TestCase.assertTrue(node_tempSensCool.getRequired("switchCap") == null);
 		TestCase.assertTrue(node_tempSensCool == (TreeElementImpl) freezeCombi.getChild(name_tempSensCool));
 		TestCase.assertFalse(switchCap == (TreeElementImpl) node_tempSensCool.getChild("switchCap"));
 
@@ -553,8 +553,8 @@ public class TreeElementTest extends DBBasicTest {
 		TestCase.assertTrue(switchCap == (TreeElementImpl) node_tempSensCool.getChild("switchCap"));
 		// TestCase.assertTrue(freezeCombi.typeChildren.get(name_tempSensCool) == null);
 		// TestCase.assertTrue(node_tempSensCool.typeChildren.get("switchCap") == null);
-		TestCase.assertTrue(freezeCombi.getOrCreateRequireds(false).get(name_tempSensCool) != null);
-		TestCase.assertTrue(node_tempSensCool.getOrCreateRequireds(false).get("switchCap") != null);
+		TestCase.assertTrue(freezeCombi.getRequired(name_tempSensCool) != null);
+		TestCase.assertTrue(node_tempSensCool.getRequired("switchCap") != null);
 
 		// delete child of top level resource which is parent of a child
 		db.deleteResource(node_tempSensCool);
@@ -1580,7 +1580,7 @@ public class TreeElementTest extends DBBasicTest {
 		TestCase.assertTrue(e.appID.equals(testAppID));
 		// TestCase.assertTrue((e.parent.optionals.get(e.name) == e) || (e.parent.getRequired(e.name) == e));
 		TestCase.assertTrue(db.hasResourceType(e.type.getName()));
-		TestCase.assertTrue(e == db.resNodeByID.get(db.resIDByName.get(e.path)));
+		TestCase.assertTrue(e == db.resNodeByID.get(db.pathIndex.get(e.getPath())));
 		TestCase.assertTrue(e.resRef == null);
 		// e.nonpersistent = false;
 		// e.optional = false;
@@ -1604,6 +1604,29 @@ public class TreeElementTest extends DBBasicTest {
 		checkDynamicData();
 	}
 
+	@Test
+	public void largeFanOutIsSupported() {
+		checkDynamicData();
+		TreeElement parent = db.addResource("manyDecorators", OnOffSwitch.class, testAppID);
+		int before = parent.getChildren().size();
+		int n = TreeElementImpl.MAX_ARRAY_CHILDREN * 4;
+		for (int i = n - 1; i >= 0; i--)
+			parent.addChild("decorator_" + i, BooleanResource.class, true);
+		TestCase.assertEquals(before + n, parent.getChildren().size());
+		for (int i = 0; i < n; i++) {
+			TreeElement child = parent.getChild("decorator_" + i);
+			TestCase.assertEquals("manyDecorators/decorator_" + i, child.getPath());
+			TestCase.assertTrue(child == db.resNodeByID.get(db.pathIndex.get(child.getPath())));
+		}
+		for (int i = 0; i < n; i += 2)
+			db.deleteResource(parent.getChild("decorator_" + i));
+		TestCase.assertEquals(before + n / 2, parent.getChildren().size());
+		TestCase.assertNull(parent.getChild("decorator_0"));
+		TestCase.assertEquals(DBConstants.INVALID_ID, db.pathIndex.get("manyDecorators/decorator_0"));
+		TestCase.assertNotNull(parent.getChild("decorator_1"));
+		checkDynamicData();
+	}
+
 	@Test
 	public void testModelImplNonResourceInterface() {
 		System.out.println("Inside testModelInplNonResourceInterface");
@@ -0,0 +1,130 @@
+/**
+ * Copyright 2011-2018 Fraunhofer-Gesellschaft zur Förderung der angewandten Wissenschaften e.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ogema.impl.persistence;
+
+import java.io.File;
+import java.util.HashSet;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.ogema.core.model.Resource;
+import org.ogema.impl.persistence.testmodels.TestPhysicalDevice;
+import org.ogema.model.sensors.ElectricPowerSensor;
+import org.ogema.model.sensors.Sensor;
+import org.ogema.model.sensors.SmokeDetector;
+import org.ogema.model.sensors.TemperatureSensor;
+import org.ogema.persistence.DBConstants;
+import org.ogema.resourcetree.TreeElement;
+
+public class TypeIndexTest extends DBBasicTest {
+
+	private static final String DB_PATH = "./src/test/resources/typeIndexTest";
+
+	private String testAppID = "/persistence/target/persistence-2.1.1-SNAPSHOT.jar";
+
+	@Before
+	public void before() throws InterruptedException {
+		System.setProperty("org.ogema.persistence", "active");
+		System.setProperty(DBConstants.DB_PATH_PROP, DB_PATH);
+		System.setProperty(DBConstants.PROP_NAME_TIMEDPERSISTENCE_PERIOD, "3600000");
+		File dir = new File(DB_PATH);
+		if (!dir.exists())
+			dir.mkdirs();
+		for (File f : dir.listFiles())
+			f.delete();
+		db = new ResourceDBImpl();
+		db.setName("TypeIndexTest");
+		db.restart();
+	}
+
+	@After
+	public void after() throws InterruptedException {
+		System.clearProperty(DBConstants.PROP_NAME_TIMEDPERSISTENCE_PERIOD);
+	}
+
+	private Set<String> getPaths(Class<? extends Resource> type) {
+		Set<String> result = new HashSet<>();
+		for (TreeElement e : db.getNodesByType(type))
+			TestCase.assertTrue("Duplicate node " + e.getPath(), result.add(e.getPath()));
+		return result;
+	}
+
+	private static Set<String> set(String... paths) {
+		Set<String> result = new HashSet<>();
+		for (String path : paths)
+			result.add(path);
+		return result;
+	}
+
+	@Test
+	public void nodesOfSubTypesAreFound() {
+		TreeElement temp0 = db.addResource("indexTemp0", TemperatureSensor.class, testAppID);
+		db.addResource("indexTemp1", TemperatureSensor.class, testAppID);
+		db.addResource("indexPower", ElectricPowerSensor.class, testAppID);
+		TreeElement device = db.addResource("indexDevice", TestPhysicalDevice.class, testAppID);
+		device.addChild("extraSensor", TemperatureSensor.class, true);
+		// references are not contained
+		device.addReference(temp0, "sensorRef", true);
+
+		TestCase.assertEquals(set("indexTemp0", "indexTemp1", "indexPower", "indexDevice/extraSensor"),
+				getPaths(Sensor.class));
+		TestCase.assertEquals(set("indexTemp0", "indexTemp1", "indexDevice/extraSensor"),
+				getPaths(TemperatureSensor.class));
+		TestCase.assertEquals(set("indexPower"), getPaths(ElectricPowerSensor.class));
+		TestCase.assertTrue(getPaths(SmokeDetector.class).isEmpty());
+
+		int nodes = 0;
+		for (TreeElementImpl e : db.resNodeByID.values()) {
+			if (!e.reference)
+				nodes++;
+		}
+		TestCase.assertEquals(nodes, getPaths(Resource.class).size());
+		TestCase.assertEquals(nodes, getPaths(null).size());
+
+		db.deleteResource(db.getToplevelResource("indexTemp1"));
+		TestCase.assertEquals(set("indexTemp0", "indexPower", "indexDevice/extraSensor"), getPaths(Sensor.class));
+
+		restartAndCompareDynamicData();
+		TestCase.assertEquals(set("indexTemp0", "indexPower", "indexDevice/extraSensor"), getPaths(Sensor.class));
+		TestCase.assertEquals(set("indexPower"), getPaths(ElectricPowerSensor.class));
+	}
+
+	@Test
+	public void idBitmapIteratesSetBits() {
+		IdBitmap ids = new IdBitmap();
+		TestCase.assertTrue(ids.isEmpty());
+		int[] values = { 0, 1, 63, 64, 65, 1000, 100000 };
+		for (int id : values)
+			ids.set(id);
+		TestCase.assertEquals(values.length, ids.size());
+		int id = -1;
+		for (int value : values) {
+			id = ids.nextSetBit(id + 1);
+			TestCase.assertEquals(value, id);
+		}
+		TestCase.assertEquals(-1, ids.nextSetBit(id + 1));
+		ids.clear(64);
+		ids.clear(200000);
+		TestCase.assertFalse(ids.get(64));
+		TestCase.assertTrue(ids.get(65));
+		TestCase.assertEquals(65, ids.nextSetBit(64));
+	}
+
+}
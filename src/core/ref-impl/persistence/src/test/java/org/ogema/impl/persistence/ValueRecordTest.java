@@ -0,0 +1,110 @@
+/**
+ * Copyright 2011-2018 Fraunhofer-Gesellschaft zur Förderung der angewandten Wissenschaften e.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ogema.impl.persistence;
+
+import java.io.File;
+
+import junit.framework.TestCase;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.ogema.core.model.simple.BooleanResource;
+import org.ogema.core.model.simple.FloatResource;
+import org.ogema.core.model.simple.IntegerResource;
+import org.ogema.core.model.simple.TimeResource;
+import org.ogema.persistence.DBConstants;
+import org.ogema.resourcetree.TreeElement;
+
+public class ValueRecordTest extends DBBasicTest {
+
+	private static final String DB_PATH = "./src/test/resources/valueRecordTest";
+
+	private String testAppID = "/persistence/target/persistence-2.1.1-SNAPSHOT.jar";
+
+	@Before
+	public void before() throws InterruptedException {
+		System.setProperty("org.ogema.persistence", "active");
+		System.setProperty(DBConstants.DB_PATH_PROP, DB_PATH);
+		System.setProperty(DBConstants.PROP_NAME_TIMEDPERSISTENCE_PERIOD, "3600000");
+		File dir = new File(DB_PATH);
+		if (!dir.exists())
+			dir.mkdirs();
+		for (File f : dir.listFiles())
+			f.delete();
+		db = new ResourceDBImpl();
+		db.setName("ValueRecordTest");
+		db.restart();
+	}
+
+	@After
+	public void after() throws InterruptedException {
+		System.clearProperty(DBConstants.PROP_NAME_TIMEDPERSISTENCE_PERIOD);
+	}
+
+	@Test
+	public void valueChangesAreStoredAsValueRecords() {
+		TreeElement f = db.addResource("valueRecordFloat", FloatResource.class, testAppID);
+		TreeElement i = db.addResource("valueRecordInt", IntegerResource.class, testAppID);
+		TreeElement j = db.addResource("valueRecordTime", TimeResource.class, testAppID);
+		TreeElement z = db.addResource("valueRecordBoolean", BooleanResource.class, testAppID);
+		db.doStorage();
+		int entryLength = db.resourceIO.offsetByID.get(f.getResID()).length;
+		for (int round = 1; round <= 10; round++) {
+			int offset = db.resourceIO.getCurrentOffset();
+			f.getData().setFloat(round * 1.5f);
+			i.getData().setInt(round);
+			j.getData().setLong(round * 1000L);
+			z.getData().setBoolean(round % 2 == 0);
+			db.doStorage();
+			TestCase.assertEquals(4, db.resourceIO.valueRecordByID.size());
+			int written = db.resourceIO.getCurrentOffset() - offset;
+			TestCase.assertTrue("Too many bytes written for 4 value changes: " + written, written < 4 * 30);
+		}
+		TestCase.assertTrue(db.resourceIO.valueRecordByID.get(f.getResID()).length < entryLength);
+		StorageStatistics statistics = ((TimedPersistence) db.persistence).getStatistics();
+		TestCase.assertEquals(4, statistics.getLastQueueDepth());
+		TestCase.assertTrue(statistics.getLastBytesWritten() > 0 && statistics.getLastBytesWritten() < 4 * 30);
+
+		restartAndCompareDynamicData();
+		TestCase.assertEquals(15f, db.getToplevelResource("valueRecordFloat").getData().getFloat());
+		TestCase.assertEquals(10, db.getToplevelResource("valueRecordInt").getData().getInt());
+		TestCase.assertEquals(10000L, db.getToplevelResource("valueRecordTime").getData().getLong());
+		TestCase.assertTrue(db.getToplevelResource("valueRecordBoolean").getData().getBoolean());
+	}
+
+	@Test
+	public void fullEntryReplacesValueRecord() {
+		TreeElement f = db.addResource("valueRecordFloat2", FloatResource.class, testAppID);
+		db.doStorage();
+		f.getData().setFloat(1f);
+		db.doStorage();
+		TestCase.assertNotNull(db.resourceIO.valueRecordByID.get(f.getResID()));
+		// status change and value change in the same storage period need a full entry
+		f.setActive(true);
+		f.getData().setFloat(2f);
+		db.doStorage();
+		TestCase.assertNull(db.resourceIO.valueRecordByID.get(f.getResID()));
+		f.getData().setFloat(3f);
+		db.doStorage();
+
+		restartAndCompareDynamicData();
+		TreeElement f2 = db.getToplevelResource("valueRecordFloat2");
+		TestCase.assertTrue(f2.isActive());
+		TestCase.assertEquals(3f, f2.getData().getFloat());
+	}
+
+}
@@ -0,0 +1,94 @@
+/**
+ * Copyright 2011-2018 Fraunhofer-Gesellschaft zur Förderung der angewandten Wissenschaften e.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ogema.recordeddata.slotsdb;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.ogema.benchmarks.TempFolders;
+import org.ogema.core.channelmanager.measurements.Quality;
+import org.ogema.core.recordeddata.RecordedDataConfiguration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of {@link FileObjectProxy#appendValue(String, double, long, byte, RecordedDataConfiguration)}, 
+ * with values distributed round robin over a number of time series. Values are flushed immediately, 
+ * which is the default configuration.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class AppendBenchmark {
+
+	@Param({ "1", "100", "1000" })
+	public int seriesCount;
+
+	@Param({ "false", "true" })
+	public boolean compressed;
+
+	private File folder;
+	private FileObjectProxy proxy;
+	private RecordedDataConfiguration configuration;
+	private String[] ids;
+	private long timestamp;
+	private int next;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		folder = TempFolders.create("slotsdbAppend");
+		proxy = new FileObjectProxy(folder.getPath(), null);
+		configuration = BenchmarkData.configuration(compressed);
+		ids = new String[seriesCount];
+		for (int i = 0; i < seriesCount; i++) {
+			ids[i] = "benchmark/series_" + i;
+		}
+		timestamp = BenchmarkData.START;
+		next = 0;
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		proxy.close();
+		TempFolders.delete(folder);
+	}
+
+	@Benchmark
+	public void appendValue() throws IOException {
+		final int idx = next++;
+		if (next == seriesCount) {
+			next = 0;
+			timestamp += 1000;
+		}
+		proxy.appendValue(ids[idx], idx, timestamp, (byte) Quality.GOOD.getQuality(), configuration);
+	}
+
+}
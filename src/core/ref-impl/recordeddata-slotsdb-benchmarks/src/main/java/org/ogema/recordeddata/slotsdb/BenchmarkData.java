@@ -0,0 +1,64 @@
+/**
+ * Copyright 2011-2018 Fraunhofer-Gesellschaft zur Förderung der angewandten Wissenschaften e.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ogema.recordeddata.slotsdb;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.ogema.core.channelmanager.measurements.Quality;
+import org.ogema.core.channelmanager.measurements.SampledValue;
+import org.ogema.core.recordeddata.RecordedDataConfiguration;
+import org.ogema.core.recordeddata.RecordedDataConfiguration.StorageType;
+import org.ogema.recordeddata.DataRecorderException;
+import org.ogema.recordeddata.RecordedDataStorage;
+
+/**
+ * Helper methods for the creation of synthetic databases.
+ */
+final class BenchmarkData {
+
+	static final long ONE_HOUR = 3600 * 1000L;
+	static final long ONE_DAY = 24 * ONE_HOUR;
+	// 2017-01-01T00:00:00Z
+	static final long START = 1483228800000L;
+	private static final int CHUNK_SIZE = 10000;
+
+	private BenchmarkData() {}
+
+	static RecordedDataConfiguration configuration(boolean compressed) {
+		final RecordedDataConfiguration conf = new RecordedDataConfiguration();
+		conf.setStorageType(StorageType.ON_VALUE_UPDATE);
+		conf.setCompressed(compressed);
+		return conf;
+	}
+
+	/**
+	 * Writes a sine wave with values every interval ms, for start &lt;= t &lt; end.
+	 */
+	static void fill(RecordedDataStorage rds, long start, long end, long interval) throws DataRecorderException {
+		final List<SampledValue> values = new ArrayList<>(CHUNK_SIZE);
+		for (long t = start; t < end; t += interval) {
+			values.add(new SampledValue(DoubleValues.of(Math.sin(t / (double) ONE_HOUR)), t, Quality.GOOD));
+			if (values.size() == CHUNK_SIZE) {
+				rds.insertValues(values);
+				values.clear();
+			}
+		}
+		if (!values.isEmpty())
+			rds.insertValues(values);
+	}
+
+}
@@ -0,0 +1,101 @@
+/**
+ * Copyright 2011-2018 Fraunhofer-Gesellschaft zur Förderung der angewandten Wissenschaften e.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ogema.recordeddata.slotsdb;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.ogema.benchmarks.TempFolders;
+import org.ogema.core.channelmanager.measurements.SampledValue;
+import org.ogema.recordeddata.DataRecorderException;
+import org.ogema.recordeddata.RecordedDataStorage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Latency of {@link RecordedDataStorage#getNextValue(long)} and {@link RecordedDataStorage#getPreviousValue(long)} 
+ * for random timestamps within a year. A sample interval of 10 days means that most lookups have
+ * to skip empty days.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class NextPreviousValueBenchmark {
+
+	static final String ID = "benchmark/nextPrevious";
+	private static final int NR_TIMESTAMPS = 1024;
+
+	@Param({ "60000", "864000000" })
+	public long sampleInterval;
+
+	private File folder;
+	private SlotsDb slotsDb;
+	private RecordedDataStorage rds;
+	private final long[] timestamps = new long[NR_TIMESTAMPS];
+	private int next;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException, DataRecorderException {
+		folder = TempFolders.create("slotsdbNextPrevious");
+		slotsDb = new SlotsDb(folder.getPath());
+		rds = slotsDb.createRecordedDataStorage(ID, BenchmarkData.configuration(false));
+		final long end = BenchmarkData.START + 365 * BenchmarkData.ONE_DAY;
+		BenchmarkData.fill(rds, BenchmarkData.START, end, sampleInterval);
+		final Random random = new Random(42);
+		for (int i = 0; i < NR_TIMESTAMPS; i++) {
+			timestamps[i] = BenchmarkData.START + (long) (random.nextDouble() * (end - BenchmarkData.START));
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		slotsDb.deactivate(null);
+		TempFolders.delete(folder);
+	}
+
+	private long nextTimestamp() {
+		final long t = timestamps[next];
+		next = (next + 1) % NR_TIMESTAMPS;
+		return t;
+	}
+
+	@Benchmark
+	public SampledValue getNextValue() {
+		return rds.getNextValue(nextTimestamp());
+	}
+
+	@Benchmark
+	public SampledValue getPreviousValue() {
+		return rds.getPreviousValue(nextTimestamp());
+	}
+
+}
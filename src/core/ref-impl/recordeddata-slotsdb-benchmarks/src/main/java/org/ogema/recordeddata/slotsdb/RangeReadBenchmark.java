@@ -0,0 +1,98 @@
+/**
+ * Copyright 2011-2018 Fraunhofer-Gesellschaft zur Förderung der angewandten Wissenschaften e.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ogema.recordeddata.slotsdb;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.ogema.benchmarks.TempFolders;
+import org.ogema.core.channelmanager.measurements.SampledValue;
+import org.ogema.core.recordeddata.TimestampedDoubleBlock;
+import org.ogema.recordeddata.DataRecorderException;
+import org.ogema.recordeddata.RecordedDataStorage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Reads of 1 h, 1 d and 30 d from a series covering 31 days, at different sample rates. 
+ * The requested interval starts at noon, so reads of a day or more span several day folders.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class RangeReadBenchmark {
+
+	static final String ID = "benchmark/rangeRead";
+
+	@Param({ "1000", "60000" })
+	public long sampleInterval;
+
+	@Param({ "3600000", "86400000", "2592000000" })
+	public long range;
+
+	@Param({ "false", "true" })
+	public boolean compressed;
+
+	private File folder;
+	private SlotsDb slotsDb;
+	private RecordedDataStorage rds;
+	private TimestampedDoubleBlock block;
+	private long start;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException, DataRecorderException {
+		folder = TempFolders.create("slotsdbRangeRead");
+		slotsDb = new SlotsDb(folder.getPath());
+		rds = slotsDb.createRecordedDataStorage(ID, BenchmarkData.configuration(compressed));
+		BenchmarkData.fill(rds, BenchmarkData.START, BenchmarkData.START + 31 * BenchmarkData.ONE_DAY, sampleInterval);
+		block = new TimestampedDoubleBlock();
+		start = BenchmarkData.START + 12 * BenchmarkData.ONE_HOUR;
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		slotsDb.deactivate(null);
+		TempFolders.delete(folder);
+	}
+
+	@Benchmark
+	public List<SampledValue> getValues() {
+		return rds.getValues(start, start + range);
+	}
+
+	@Benchmark
+	public int getValuesIntoBlock() {
+		block.clear();
+		return rds.getValues(start, start + range, block);
+	}
+
+}
@@ -0,0 +1,88 @@
+/**
+ * Copyright 2011-2018 Fraunhofer-Gesellschaft zur Förderung der angewandten Wissenschaften e.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ogema.recordeddata.slotsdb;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.ogema.benchmarks.TempFolders;
+import org.ogema.core.channelmanager.measurements.SampledValue;
+import org.ogema.core.recordeddata.ReductionMode;
+import org.ogema.recordeddata.DataRecorderException;
+import org.ogema.recordeddata.RecordedDataStorage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Reduced queries over 1 d and 30 d for every {@link ReductionMode}, with 96 intervals per query.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ReductionBenchmark {
+
+	static final String ID = "benchmark/reduction";
+	private static final int INTERVALS = 96;
+
+	@Param({ "AVERAGE", "MAXIMUM_VALUE", "MINIMUM_VALUE", "MIN_MAX_VALUE", "NONE" })
+	public ReductionMode mode;
+
+	@Param({ "86400000", "2592000000" })
+	public long range;
+
+	@Param({ "10000" })
+	public long sampleInterval;
+
+	private File folder;
+	private SlotsDb slotsDb;
+	private RecordedDataStorage rds;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException, DataRecorderException {
+		folder = TempFolders.create("slotsdbReduction");
+		slotsDb = new SlotsDb(folder.getPath());
+		rds = slotsDb.createRecordedDataStorage(ID, BenchmarkData.configuration(false));
+		BenchmarkData.fill(rds, BenchmarkData.START, BenchmarkData.START + 31 * BenchmarkData.ONE_DAY, sampleInterval);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		slotsDb.deactivate(null);
+		TempFolders.delete(folder);
+	}
+
+	@Benchmark
+	public List<SampledValue> getReducedValues() {
+		return rds.getValues(BenchmarkData.START, BenchmarkData.START + range, range / INTERVALS, mode);
+	}
+
+}
@@ -0,0 +1,113 @@
+/**
+ * Copyright 2011-2018 Fraunhofer-Gesellschaft zur Förderung der angewandten Wissenschaften e.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ogema.recordeddata.slotsdb;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.ogema.benchmarks.TempFolders;
+import org.ogema.core.channelmanager.measurements.Quality;
+import org.ogema.core.channelmanager.measurements.SampledValue;
+import org.ogema.recordeddata.DataRecorderException;
+import org.ogema.recordeddata.RecordedDataStorage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Startup time over a synthetic multi-year database, with one value per series and day, 
+ * up to the first query. If persistedIndex is false, the folder index is removed before 
+ * every start, which corresponds to a start after a crash.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 2)
+@Measurement(iterations = 10)
+@Fork(1)
+public class StartupBenchmark {
+
+	@Param({ "1", "5" })
+	public int years;
+
+	@Param({ "20" })
+	public int seriesCount;
+
+	@Param({ "true", "false" })
+	public boolean persistedIndex;
+
+	private File folder;
+	private SlotsDb slotsDb;
+
+	@Setup(Level.Trial)
+	public void createTree() throws IOException, DataRecorderException {
+		folder = TempFolders.create("slotsdbStartup");
+		final SlotsDb slotsDb = new SlotsDb(folder.getPath());
+		final int days = 365 * years;
+		final List<SampledValue> values = new ArrayList<>(days);
+		for (int i = 0; i < seriesCount; i++) {
+			final RecordedDataStorage rds = slotsDb.createRecordedDataStorage(getId(i), BenchmarkData.configuration(false));
+			values.clear();
+			for (int d = 0; d < days; d++) {
+				values.add(new SampledValue(DoubleValues.of(d), BenchmarkData.START + d * BenchmarkData.ONE_DAY + 12 * BenchmarkData.ONE_HOUR, Quality.GOOD));
+			}
+			rds.insertValues(values);
+		}
+		slotsDb.deactivate(null);
+	}
+
+	private static String getId(int i) {
+		return "benchmark/startup_" + i;
+	}
+
+	@Setup(Level.Invocation)
+	public void prepareStart() {
+		if (!persistedIndex)
+			new File(folder, FolderIndex.FILE_NAME).delete();
+	}
+
+	@TearDown(Level.Invocation)
+	public void stop() {
+		if (slotsDb != null)
+			slotsDb.deactivate(null);
+		slotsDb = null;
+	}
+
+	@TearDown(Level.Trial)
+	public void deleteTree() {
+		TempFolders.delete(folder);
+	}
+
+	@Benchmark
+	public SampledValue startAndQuery() {
+		slotsDb = new SlotsDb(folder.getPath());
+		return slotsDb.getRecordedDataStorage(getId(seriesCount - 1)).getPreviousValue(Long.MAX_VALUE);
+	}
+
+}
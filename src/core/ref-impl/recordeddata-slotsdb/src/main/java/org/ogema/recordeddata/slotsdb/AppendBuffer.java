@@ -0,0 +1,189 @@
+/**
+ * Copyright 2011-2018 Fraunhofer-Gesellschaft zur Förderung der angewandten Wissenschaften e.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ogema.recordeddata.slotsdb;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+
+import org.ogema.core.recordeddata.TimestampedDoubleBlock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * In-memory buffer for appended values, written to disk by a periodic group commit. Instead of resolving
+ * the log file and flushing it for every single value, all values pending for a time series are appended 
+ * in one pass, and the log file is flushed once per commit period. Values not yet committed are lost on 
+ * a crash; this window is bounded by the commit period, and by {@link #MAX_PENDING_VALUES} per time series.<br>
+ * The buffer is striped by storage, so that concurrent appends to different time series rarely contend.
+ */
+final class AppendBuffer {
+
+	/**
+	 * If this number of values is pending for a single time series, the values are committed synchronously
+	 * by the appending thread.
+	 */
+	static final int MAX_PENDING_VALUES = 4096;
+	private static final int NR_STRIPES = 16;
+
+	private final static Logger logger = LoggerFactory.getLogger(AppendBuffer.class);
+	private final Stripe[] stripes = new Stripe[NR_STRIPES];
+	private final Timer timer;
+
+	AppendBuffer(long commitPeriod) {
+		for (int i = 0; i < NR_STRIPES; i++) {
+			stripes[i] = new Stripe();
+		}
+		timer = new Timer("SlotsDB group commit", true);
+		timer.schedule(new GroupCommitter(), commitPeriod, commitPeriod);
+	}
+
+	private Stripe getStripe(SlotsDbStorage storage) {
+		int h = System.identityHashCode(storage);
+		h ^= (h >>> 16);
+		return stripes[h & (NR_STRIPES - 1)];
+	}
+
+	/**
+	 * @return
+	 * 		the number of values pending for the storage, including the new one, or -1 if the buffer 
+	 * 		has been closed; in this case the caller must write the value itself
+	 */
+	int add(SlotsDbStorage storage, long t, double value, byte quality) {
+		final Stripe stripe = getStripe(storage);
+		synchronized (stripe) {
+			if (stripe.closed)
+				return -1;
+			final TimestampedDoubleBlock block = stripe.get(storage);
+			block.add(t, value, quality);
+			return block.size();
+		}
+	}
+
+	/**
+	 * @return
+	 * 		the number of values pending for the storage, including the new ones, or -1 if the buffer
+	 * 		has been closed; in this case the caller must write the values itself
+	 */
+	int addAll(SlotsDbStorage storage, TimestampedDoubleBlock values) {
+		final int size = values.size();
+		final long[] t = values.getTimestamps();
+		final double[] v = values.getValues();
+		final byte[] q = values.getQualities();
+		final Stripe stripe = getStripe(storage);
+		synchronized (stripe) {
+			if (stripe.closed)
+				return -1;
+			final TimestampedDoubleBlock block = stripe.get(storage);
+			block.ensureAdditionalCapacity(size);
+			for (int i = 0; i < size; i++) {
+				block.add(t[i], v[i], q[i]);
+			}
+			return block.size();
+		}
+	}
+
+	boolean hasPending(SlotsDbStorage storage) {
+		final Stripe stripe = getStripe(storage);
+		synchronized (stripe) {
+			return stripe.pending.containsKey(storage);
+		}
+	}
+
+	/**
+	 * Removes the values pending for a storage; the caller must hold the storage's write lock until the values 
+	 * have been appended, so that concurrent commits cannot reorder them.
+	 * 
+	 * @return
+	 * 		the pending values, or null
+	 */
+	TimestampedDoubleBlock drain(SlotsDbStorage storage) {
+		final Stripe stripe = getStripe(storage);
+		synchronized (stripe) {
+			return stripe.pending.remove(storage);
+		}
+	}
+
+	/**
+	 * Commits the pending values of all storages.
+	 */
+	void commit() {
+		final List<SlotsDbStorage> storages = new ArrayList<>();
+		for (Stripe stripe : stripes) {
+			synchronized (stripe) {
+				storages.addAll(stripe.pending.keySet());
+			}
+		}
+		for (SlotsDbStorage storage : storages) {
+			storage.commitPending(this);
+		}
+	}
+
+	/**
+	 * Stops accepting new values and commits the pending ones.
+	 */
+	void close() {
+		for (Stripe stripe : stripes) {
+			synchronized (stripe) {
+				stripe.closed = true;
+			}
+		}
+		timer.cancel();
+		commit();
+		for (Stripe stripe : stripes) {
+			synchronized (stripe) {
+				for (Map.Entry<SlotsDbStorage, TimestampedDoubleBlock> entry : stripe.pending.entrySet()) {
+					logger.warn("Discarding {} values for {}, which could not be committed", entry.getValue().size(), entry.getKey().getPath());
+				}
+			}
+		}
+	}
+
+	private static final class Stripe {
+
+		// guarded by this
+		final Map<SlotsDbStorage, TimestampedDoubleBlock> pending = new IdentityHashMap<>();
+		// guarded by this
+		boolean closed;
+
+		TimestampedDoubleBlock get(SlotsDbStorage storage) {
+			TimestampedDoubleBlock block = pending.get(storage);
+			if (block == null) {
+				block = new TimestampedDoubleBlock();
+				pending.put(storage, block);
+			}
+			return block;
+		}
+
+	}
+
+	private final class GroupCommitter extends TimerTask {
+
+		@Override
+		public void run() {
+			try {
+				commit();
+			} catch (Exception e) {
+				logger.error("Group commit failed", e);
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,536 @@
+/**
+ * Copyright 2011-2018 Fraunhofer-Gesellschaft zur Förderung der angewandten Wissenschaften e.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ogema.recordeddata.slotsdb;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import org.ogema.core.channelmanager.measurements.SampledValue;
+import org.ogema.core.recordeddata.TimestampedDoubleBlock;
+
+/**
+ * Log file storing timestamps as delta-of-deltas and values as XOR of their predecessor, similar to the 
+ * encoding used by Facebook's Gorilla time series database. The data section is a sequence of independent 
+ * chunks of at most {@link #MAX_CHUNK_SIZE} values, each with a 24 byte header
+ * <ul>
+ *   <li>payload size in bytes (int)
+ *   <li>number of values (int)
+ *   <li>first timestamp (long)
+ *   <li>last timestamp (long)
+ * </ul>
+ * followed by the bit stream. Reads only decode the chunks overlapping the requested interval.<br>
+ * The last chunk is kept in memory while being filled; on flush the changed payload bytes are written first, 
+ * then the chunk header, so that a partially written chunk is never visible. Like in the other formats, 
+ * timestamps are strictly increasing within a file.
+ */
+public class CompressedFileObject extends FileObject {
+
+	static final int MAX_CHUNK_SIZE = 1024;
+	private static final int CHUNK_HEADER_SIZE = 24;
+
+	// total number of values in the file, including pending ones; -1 if not yet determined
+	private int count = -1;
+	private long lastTimestamp;
+	// chunk currently being filled, null if the next value starts a new chunk
+	private ChunkEncoder encoder;
+	// offset of the open chunk relative to the data section
+	private long chunkOffset;
+	// payload bytes of the open chunk written to disk
+	private int persistedBytes;
+	private boolean dirty;
+	private FileChannel channel;
+
+	protected CompressedFileObject(File file, RecordedDataCache cache) throws IOException {
+		super(file, cache);
+	}
+
+	protected CompressedFileObject(String fileName, RecordedDataCache cache) throws IOException {
+		super(fileName, cache);
+	}
+
+	@Override
+	void readHeader(DataInputStream dis) throws IOException {
+		startTimeStamp = dis.readLong();
+		storagePeriod = dis.readLong();
+	}
+
+	@Override
+	public void createFileAndHeader(long startTimeStamp, long stepIntervall) throws IOException {
+		super.createFileAndHeader(startTimeStamp, stepIntervall);
+		// the header is written through the output streams, the data section through the channel
+		super.close();
+	}
+
+	@Override
+	public synchronized void append(double value, long timestamp, byte flag) throws IOException {
+		if (getDataSetCountInternal() > 0 && timestamp <= getTimestampForLatestValueInternal())
+			return;
+		if (encoder == null)
+			openChunk();
+		else if (encoder.size == MAX_CHUNK_SIZE) {
+			flush();
+			chunkOffset += CHUNK_HEADER_SIZE + encoder.byteLength();
+			encoder = new ChunkEncoder();
+			persistedBytes = 0;
+		}
+		encoder.add(timestamp, value, flag);
+		dirty = true;
+		count++;
+		lastTimestamp = timestamp;
+		// the value is pending, the file itself is unchanged
+		invalidate(Long.MAX_VALUE);
+	}
+
+	/**
+	 * Continues the last chunk of the file if it is not full yet, by re-encoding its values; 
+	 * the encoding is deterministic, so this reproduces the persisted payload. Otherwise a new chunk 
+	 * is started after the last complete one.
+	 */
+	private void openChunk() throws IOException {
+		final Chunks chunks = new Chunks(getDataBuffer());
+		final int last = chunks.count - 1;
+		if (last >= 0 && chunks.sizes[last] < MAX_CHUNK_SIZE) {
+			final TimestampedDoubleBlock block = new TimestampedDoubleBlock();
+			chunks.decode(last, block);
+			final ChunkEncoder enc = new ChunkEncoder();
+			for (int i = 0; i < block.size(); i++) {
+				enc.add(block.getTimestamp(i), block.getValue(i), block.getQualities()[i]);
+			}
+			if (enc.byteLength() == chunks.bytes[last]) {
+				encoder = enc;
+				chunkOffset = chunks.offsets[last];
+				persistedBytes = enc.byteLength();
+				return;
+			}
+			logger.warn("Failed to continue last chunk of {}, starting a new one", dataFile);
+		}
+		encoder = new ChunkEncoder();
+		chunkOffset = chunks.end;
+		persistedBytes = 0;
+	}
+
+	@Override
+	public synchronized void flush() throws IOException {
+		super.flush();
+		if (!dirty)
+			return;
+		if (channel == null)
+			channel = FileChannel.open(dataFile.toPath(), StandardOpenOption.WRITE);
+		final int byteLength = encoder.byteLength();
+		final long payloadStart = 16 + chunkOffset + CHUNK_HEADER_SIZE;
+		// the last persisted byte may have been incomplete
+		final int from = Math.max(0, persistedBytes - 1);
+		writeFully(ByteBuffer.wrap(encoder.buffer, from, byteLength - from), payloadStart + from);
+		final ByteBuffer header = ByteBuffer.allocate(CHUNK_HEADER_SIZE);
+		header.putInt(byteLength).putInt(encoder.size).putLong(encoder.firstTimestamp).putLong(encoder.lastTimestamp);
+		header.flip();
+		writeFully(header, 16 + chunkOffset);
+		persistedBytes = byteLength;
+		length = Math.max(length, payloadStart + byteLength);
+		dirty = false;
+		// the header of the open chunk and its payload have been rewritten
+		invalidate(chunkOffset);
+	}
+
+	@Override
+	public synchronized void sync() throws IOException {
+		flush();
+		if (channel != null)
+			channel.force(false);
+		else
+			super.sync();
+	}
+
+	private void writeFully(ByteBuffer bb, long position) throws IOException {
+		while (bb.hasRemaining()) {
+			position += channel.write(bb, position);
+		}
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		try {
+			flush();
+		} finally {
+			encoder = null;
+			if (channel != null) {
+				channel.close();
+				channel = null;
+			}
+			super.close();
+		}
+	}
+
+	/**
+	 * Flushes pending values and indexes the chunks of the file.
+	 */
+	private synchronized Chunks chunks() throws IOException {
+		flush();
+		return new Chunks(getDataBuffer());
+	}
+
+	private synchronized void initCount() {
+		if (count >= 0)
+			return;
+		try {
+			final Chunks chunks = new Chunks(getDataBuffer());
+			int cnt = 0;
+			for (int i = 0; i < chunks.count; i++) {
+				cnt += chunks.sizes[i];
+			}
+			count = cnt;
+			lastTimestamp = chunks.count > 0 ? chunks.lastTimestamps[chunks.count - 1] : startTimeStamp;
+		} catch (IOException e) {
+			logger.error(e.getMessage(), e);
+			count = 0;
+			lastTimestamp = startTimeStamp;
+		}
+	}
+
+	@Override
+	protected long getTimestampForLatestValueInternal() {
+		initCount();
+		return count == 0 ? startTimeStamp : lastTimestamp;
+	}
+
+	@Override
+	protected void readInternal(long start, long end, TimestampedDoubleBlock target) throws IOException {
+		final Chunks chunks = chunks();
+		final TimestampedDoubleBlock block = new TimestampedDoubleBlock();
+		for (int c = chunks.firstEndingAtOrAfter(start); c < chunks.count && chunks.firstTimestamps[c] <= end; c++) {
+			block.clear();
+			chunks.decode(c, block);
+			final int size = block.size();
+			final long[] t = block.getTimestamps();
+			final double[] v = block.getValues();
+			final byte[] q = block.getQualities();
+			target.ensureAdditionalCapacity(size);
+			for (int i = 0; i < size; i++) {
+				if (t[i] < start || Double.isNaN(v[i]))
+					continue;
+				if (t[i] > end)
+					break;
+				target.add(t[i], v[i], q[i]);
+			}
+		}
+	}
+
+	@Override
+	protected void readFullyInternal(TimestampedDoubleBlock target) throws IOException {
+		readInternal(Long.MIN_VALUE, Long.MAX_VALUE, target);
+	}
+
+	@Override
+	public SampledValue read(long timestamp) throws IOException {
+		final TimestampedDoubleBlock block = new TimestampedDoubleBlock();
+		readInternal(timestamp, timestamp, block);
+		if (block.isEmpty())
+			return null;
+		return new SampledValue(DoubleValues.of(block.getValue(0)), timestamp, block.getQuality(0));
+	}
+
+	@Override
+	public SampledValue readNextValue(long timestamp) throws IOException {
+		final Chunks chunks = chunks();
+		final TimestampedDoubleBlock block = new TimestampedDoubleBlock();
+		for (int c = chunks.firstEndingAtOrAfter(timestamp); c < chunks.count; c++) {
+			block.clear();
+			chunks.decode(c, block);
+			for (int i = 0; i < block.size(); i++) {
+				final double d = block.getValue(i);
+				if (block.getTimestamp(i) >= timestamp && !Double.isNaN(d))
+					return new SampledValue(DoubleValues.of(d), block.getTimestamp(i), block.getQuality(i));
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public SampledValue readPreviousValue(long timestamp) throws IOException {
+		final Chunks chunks = chunks();
+		final TimestampedDoubleBlock block = new TimestampedDoubleBlock();
+		for (int c = chunks.firstEndingAtOrAfter(timestamp); c >= 0; c--) {
+			if (c == chunks.count || chunks.firstTimestamps[c] > timestamp)
+				continue;
+			block.clear();
+			chunks.decode(c, block);
+			for (int i = block.size() - 1; i >= 0; i--) {
+				final double d = block.getValue(i);
+				if (block.getTimestamp(i) <= timestamp && !Double.isNaN(d))
+					return new SampledValue(DoubleValues.of(d), block.getTimestamp(i), block.getQuality(i));
+			}
+		}
+		return null;
+	}
+
+	@Override
+	protected int getDataSetCountInternal() {
+		initCount();
+		return count;
+	}
+
+	@Override
+	protected int getDataSetCountInternal(long start, long end) throws IOException {
+		final TimestampedDoubleBlock block = new TimestampedDoubleBlock();
+		readInternal(start, end, block);
+		return block.size();
+	}
+
+	@Override
+	public long getStoringPeriod() {
+		return storagePeriod;
+	}
+
+	/**
+	 * Chunk index of a data section. A truncated trailing chunk, e.g. after a crash, is ignored.
+	 */
+	private static final class Chunks {
+
+		private final ByteBuffer bb;
+		private int count;
+		private long[] offsets = new long[8];
+		private int[] bytes = new int[8];
+		private int[] sizes = new int[8];
+		private long[] firstTimestamps = new long[8];
+		private long[] lastTimestamps = new long[8];
+		// offset after the last complete chunk
+		private final long end;
+
+		Chunks(ByteBuffer bb) {
+			this.bb = bb;
+			final int limit = bb.limit();
+			int pos = 0;
+			while (pos + CHUNK_HEADER_SIZE <= limit) {
+				final int byteLength = bb.getInt(pos);
+				final int size = bb.getInt(pos + 4);
+				if (byteLength <= 0 || size <= 0 || byteLength > limit - pos - CHUNK_HEADER_SIZE)
+					break;
+				if (count == offsets.length) {
+					final int newLength = 2 * count;
+					offsets = Arrays.copyOf(offsets, newLength);
+					bytes = Arrays.copyOf(bytes, newLength);
+					sizes = Arrays.copyOf(sizes, newLength);
+					firstTimestamps = Arrays.copyOf(firstTimestamps, newLength);
+					lastTimestamps = Arrays.copyOf(lastTimestamps, newLength);
+				}
+				offsets[count] = pos;
+				bytes[count] = byteLength;
+				sizes[count] = size;
+				firstTimestamps[count] = bb.getLong(pos + 8);
+				lastTimestamps[count] = bb.getLong(pos + 16);
+				count++;
+				pos += CHUNK_HEADER_SIZE + byteLength;
+			}
+			this.end = pos;
+		}
+
+		/**
+		 * @return
+		 * 		index of the first chunk whose last timestamp is &gt;= t, or count if there is no such chunk
+		 */
+		int firstEndingAtOrAfter(long t) {
+			int lo = 0;
+			int hi = count;
+			while (lo < hi) {
+				final int mid = (lo + hi) >>> 1;
+				if (lastTimestamps[mid] < t)
+					lo = mid + 1;
+				else
+					hi = mid;
+			}
+			return lo;
+		}
+
+		void decode(int chunk, TimestampedDoubleBlock target) {
+			final int size = sizes[chunk];
+			target.ensureAdditionalCapacity(size);
+			final BitReader in = new BitReader(bb, (int) offsets[chunk] + CHUNK_HEADER_SIZE);
+			long t = firstTimestamps[chunk];
+			long bits = in.read(64);
+			byte quality = (byte) in.read(8);
+			target.add(t, Double.longBitsToDouble(bits), quality);
+			long delta = 0;
+			int leading = 0;
+			int trailing = 0;
+			for (int i = 1; i < size; i++) {
+				delta += readDeltaOfDelta(in);
+				t += delta;
+				if (in.read(1) != 0) {
+					if (in.read(1) != 0) {
+						leading = (int) in.read(5);
+						trailing = 64 - leading - ((int) in.read(6) + 1);
+					}
+					bits ^= in.read(64 - leading - trailing) << trailing;
+				}
+				if (in.read(1) != 0)
+					quality = (byte) in.read(8);
+				target.add(t, Double.longBitsToDouble(bits), quality);
+			}
+		}
+
+		private static long readDeltaOfDelta(BitReader in) {
+			if (in.read(1) == 0)
+				return 0;
+			if (in.read(1) == 0)
+				return in.readSigned(7);
+			if (in.read(1) == 0)
+				return in.readSigned(9);
+			if (in.read(1) == 0)
+				return in.readSigned(12);
+			if (in.read(1) == 0)
+				return in.readSigned(32);
+			return in.read(64);
+		}
+
+	}
+
+	private static final class ChunkEncoder {
+
+		private byte[] buffer = new byte[64];
+		private int bitPosition;
+		private int size;
+		private long firstTimestamp;
+		private long lastTimestamp;
+		private long lastDelta;
+		private long lastBits;
+		private int lastLeading = -1;
+		private int lastTrailing;
+		private byte lastQuality;
+
+		int byteLength() {
+			return (bitPosition + 7) >>> 3;
+		}
+
+		void add(long t, double value, byte quality) {
+			final long bits = Double.doubleToRawLongBits(value);
+			if (size == 0) {
+				firstTimestamp = t;
+				write(bits, 64);
+				write(quality, 8);
+			} else {
+				final long delta = t - lastTimestamp;
+				writeDeltaOfDelta(delta - lastDelta);
+				lastDelta = delta;
+				writeXor(bits ^ lastBits);
+				if (quality == lastQuality) {
+					write(0, 1);
+				} else {
+					write(1, 1);
+					write(quality, 8);
+				}
+			}
+			lastTimestamp = t;
+			lastBits = bits;
+			lastQuality = quality;
+			size++;
+		}
+
+		private void writeDeltaOfDelta(long dod) {
+			if (dod == 0)
+				write(0, 1);
+			else if (dod >= -64 && dod < 64) {
+				write(0b10, 2);
+				write(dod, 7);
+			} else if (dod >= -256 && dod < 256) {
+				write(0b110, 3);
+				write(dod, 9);
+			} else if (dod >= -2048 && dod < 2048) {
+				write(0b1110, 4);
+				write(dod, 12);
+			} else if (dod >= Integer.MIN_VALUE && dod <= Integer.MAX_VALUE) {
+				write(0b11110, 5);
+				write(dod, 32);
+			} else {
+				write(0b11111, 5);
+				write(dod, 64);
+			}
+		}
+
+		private void writeXor(long xor) {
+			if (xor == 0) {
+				write(0, 1);
+				return;
+			}
+			final int leading = Math.min(Long.numberOfLeadingZeros(xor), 31);
+			final int trailing = Long.numberOfTrailingZeros(xor);
+			if (lastLeading >= 0 && leading >= lastLeading && trailing >= lastTrailing) {
+				write(0b10, 2);
+				write(xor >>> lastTrailing, 64 - lastLeading - lastTrailing);
+			} else {
+				final int significant = 64 - leading - trailing;
+				write(0b11, 2);
+				write(leading, 5);
+				write(significant - 1, 6);
+				write(xor >>> trailing, significant);
+				lastLeading = leading;
+				lastTrailing = trailing;
+			}
+		}
+
+		// writes the lowest nrBits bits of value, most significant first
+		private void write(long value, int nrBits) {
+			final int required = (bitPosition + nrBits + 7) >>> 3;
+			if (required > buffer.length)
+				buffer = Arrays.copyOf(buffer, Math.max(required, 2 * buffer.length));
+			while (nrBits > 0) {
+				final int free = 8 - (bitPosition & 7);
+				final int take = Math.min(free, nrBits);
+				final int chunk = (int) (value >>> (nrBits - take)) & ((1 << take) - 1);
+				buffer[bitPosition >>> 3] |= chunk << (free - take);
+				bitPosition += take;
+				nrBits -= take;
+			}
+		}
+
+	}
+
+	private static final class BitReader {
+
+		private final ByteBuffer bb;
+		private final int start;
+		private int bitPosition;
+
+		BitReader(ByteBuffer bb, int start) {
+			this.bb = bb;
+			this.start = start;
+		}
+
+		long read(int nrBits) {
+			long result = 0;
+			while (nrBits > 0) {
+				final int available = 8 - (bitPosition & 7);
+				final int take = Math.min(available, nrBits);
+				final int b = bb.get(start + (bitPosition >>> 3)) & 0xFF;
+				result = (result << take) | ((b >>> (available - take)) & ((1 << take) - 1));
+				bitPosition += take;
+				nrBits -= take;
+			}
+			return result;
+		}
+
+		long readSigned(int nrBits) {
+			final int shift = 64 - nrBits;
+			return (read(nrBits) << shift) >> shift;
+		}
+
+	}
+
+}
@@ -18,15 +18,12 @@ package org.ogema.recordeddata.slotsdb;
 import java.io.DataInputStream;
 import java.io.File;
 import java.io.IOException;
-import java.nio.Buffer;
 import java.nio.ByteBuffer;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
 
 import org.ogema.core.channelmanager.measurements.DoubleValue;
 import org.ogema.core.channelmanager.measurements.Quality;
 import org.ogema.core.channelmanager.measurements.SampledValue;
+import org.ogema.core.recordeddata.TimestampedDoubleBlock;
 
 public class ConstantIntervalFileObject extends FileObject {
 
@@ -160,14 +157,13 @@ public class ConstantIntervalFileObject extends FileObject {
 
 		if ((timestamp - startTimeStamp) % storagePeriod == 0) {
 			if (timestamp >= startTimeStamp && timestamp <= getTimestampForLatestValueInternal()) {
-				if (!canRead) {
-					enableInput();
-				}
-				fis.getChannel().position(getBytePosition(timestamp));
-				Double toReturn = dis.readDouble();
+				final ByteBuffer bb = getDataBuffer();
+				final int pos = getBufferPosition(timestamp);
+				if (pos + 9 > bb.limit())
+					return null;
+				final double toReturn = bb.getDouble(pos);
 				if (!Double.isNaN(toReturn)) {
-
-					return new SampledValue(DoubleValues.of(toReturn), timestamp, Quality.getQuality(dis.readByte()));
+					return new SampledValue(DoubleValues.of(toReturn), timestamp, Quality.getQuality(bb.get(pos + 8)));
 				}
 			}
 		}
@@ -175,23 +171,20 @@ public class ConstantIntervalFileObject extends FileObject {
 	}
 
 	/**
-	 * Returns a List of Value Objects containing the measured Values between provided start and end timestamp
+	 * Decodes the measured Values between provided start and end timestamp into the target columns
 	 *
 	 * @param start
 	 * @param end
-	 * @return
+	 * @param target
 	 * @throws IOException
 	 */
 	@Override
-	protected List<SampledValue> readInternal(long start, long end) throws IOException {
+	protected void readInternal(long start, long end, TimestampedDoubleBlock target) throws IOException {
 		start = getClosestTimestamp(start); // round to: startTimestamp +
 		// n*stepIntervall
 		long endRounded = getClosestTimestamp(end); // round to: startTimestamp +
 		// n*stepIntervall
 
-//		List<SampledValue> toReturn = new Vector<>();
-		final List<SampledValue> toReturn = new ArrayList<>();
-
 		if (start < end) {
 			if (start < startTimeStamp) {
 				// of this file.
@@ -200,65 +193,46 @@ public class ConstantIntervalFileObject extends FileObject {
 			if (endRounded > getTimestampForLatestValueInternal()) {
 				endRounded = getTimestampForLatestValueInternal();
 			}
-
-			if (!canRead) {
-				enableInput();
-			}
-			long timestampcounter = start;
-			long startPos = getBytePosition(start);
-			long endPos = getBytePosition(endRounded);
-
-			fis.getChannel().position(startPos);
-
-			byte[] b = new byte[(int) (endPos - startPos) + 9];
-			dis.read(b, 0, b.length);
-			ByteBuffer bb = ByteBuffer.wrap(b);
-			// casting is a hack to avoid incompatibility when building this on Java >=9 and run on Java <=8
-			// ByteBuffer#rewind used to return a Buffer in Jdk8, but from Java 9 on returns a ByteBuffer
-			((Buffer) bb).rewind();
-
-			for (int i = 0; i <= (endPos - startPos) / 9; i++) {
-				double d = bb.getDouble();
-				Quality s = Quality.getQuality(bb.get());
+			if (endRounded < start)
+				return;
+			final ByteBuffer bb = getDataBuffer();
+			int pos = getBufferPosition(start);
+			final int endPos = Math.min(getBufferPosition(endRounded), bb.limit() - 9);
+			if (endPos < pos)
+				return;
+			target.ensureAdditionalCapacity((endPos - pos) / 9 + 1);
+			for (long timestampcounter = start; pos <= endPos && timestampcounter <= end; pos += 9, timestampcounter += storagePeriod) {
+				final double d = bb.getDouble(pos);
 				if (!Double.isNaN(d)) {
-					if (timestampcounter <= end) {
-						toReturn.add(new SampledValue(DoubleValues.of(d), timestampcounter, s));
-					}
+					target.add(timestampcounter, d, bb.get(pos + 8));
 				}
-				timestampcounter += storagePeriod;
 			}
-
 		}
 		else if (start == end) {
-			toReturn.add(read(start));
-			toReturn.removeAll(Collections.singleton(null)); // ?
+			final SampledValue sv = read(start);
+			if (sv != null)
+				target.add(start, sv.getValue().getDoubleValue(), (byte) sv.getQuality().getQuality());
 		}
-		return toReturn; // Always return a list -> might be empty -> never is
-		// null, to avoid NP's
 	}
 
 	@Override
-	protected List<SampledValue> readFullyInternal() throws IOException {
-		return readInternal(startTimeStamp, getTimestampForLatestValueInternal());
+	protected void readFullyInternal(TimestampedDoubleBlock target) throws IOException {
+		readInternal(startTimeStamp, getTimestampForLatestValueInternal(), target);
 	}
 
 	@Override
 	public SampledValue readNextValue(long timestamp) throws IOException {
 		// Calculate next Value, round Timestamp to next Value
 		timestamp = timestamp + (storagePeriod - ((timestamp - startTimeStamp) % storagePeriod));
-		long startPos = getBytePosition(timestamp);
-		long endPos = getBytePosition(getTimestampForLatestValueInternal());
-		for (int i = 0; i <= (endPos - startPos) / 9; i++) {
-			if (timestamp >= startTimeStamp && timestamp <= getTimestampForLatestValueInternal()) {
-				if (!canRead) {
-					enableInput();
-				}
-				fis.getChannel().position(getBytePosition(timestamp));
-				Double toReturn = dis.readDouble();
-				if (!Double.isNaN(toReturn)) {
-					return new SampledValue(DoubleValues.of(toReturn), timestamp, Quality.getQuality(dis.readByte()));
-				}
-				timestamp += storagePeriod;
+		final long latest = getTimestampForLatestValueInternal();
+		if (timestamp < startTimeStamp || timestamp > latest)
+			return null;
+		final ByteBuffer bb = getDataBuffer();
+		final int lastPos = bb.limit() - 9;
+		for (int pos = getBufferPosition(timestamp); timestamp <= latest && pos <= lastPos; pos += 9, timestamp += storagePeriod) {
+			final double d = bb.getDouble(pos);
+			if (!Double.isNaN(d)) {
+				return new SampledValue(DoubleValues.of(d), timestamp, Quality.getQuality(bb.get(pos + 8)));
 			}
 		}
 		return null;
@@ -266,27 +240,32 @@ public class ConstantIntervalFileObject extends FileObject {
 
 	@Override
 	public SampledValue readPreviousValue(long timestamp) throws IOException {
-		// Calculate next Value, round Timestamp to next Value
-		timestamp = timestamp + (storagePeriod - ((timestamp - startTimeStamp) % storagePeriod)); // what if storagePeriod changes?
-		long startPos = getBytePosition(startTimeStamp);
-		long endPos = getBytePosition(timestamp);
-
-		for (int i = 0; i <= (endPos - startPos) / 9; i++) {
-			if (timestamp >= startTimeStamp && timestamp <= getTimestampForLatestValueInternal()) {
-				if (!canRead) {
-					enableInput();
-				}
-				fis.getChannel().position(getBytePosition(timestamp));
-				Double toReturn = dis.readDouble();
-				if (!Double.isNaN(toReturn)) {
-					return new SampledValue(DoubleValues.of(toReturn), timestamp, Quality.getQuality(dis.readByte()));
-				}
-				timestamp -= storagePeriod;
+		// round Timestamp down to the previous slot
+		final long latest = getTimestampForLatestValueInternal();
+		if (timestamp > latest)
+			timestamp = latest;
+		timestamp = timestamp - ((timestamp - startTimeStamp) % storagePeriod);
+		if (timestamp < startTimeStamp)
+			return null;
+		final ByteBuffer bb = getDataBuffer();
+		for (int pos = getBufferPosition(timestamp); timestamp >= startTimeStamp; pos -= 9, timestamp -= storagePeriod) {
+			if (pos + 9 > bb.limit())
+				continue;
+			final double d = bb.getDouble(pos);
+			if (!Double.isNaN(d)) {
+				return new SampledValue(DoubleValues.of(d), timestamp, Quality.getQuality(bb.get(pos + 8)));
 			}
 		}
 		return null;
 	}
 
+	/*
+	 * position of the record for the passed timestamp in the buffer returned by getDataBuffer()
+	 */
+	private int getBufferPosition(long timestamp) {
+		return (int) (getBytePosition(timestamp) - 16);
+	}
+
     @Override
     public int getDataSetCount() {
     	return (int) ((length - 16) / 9);
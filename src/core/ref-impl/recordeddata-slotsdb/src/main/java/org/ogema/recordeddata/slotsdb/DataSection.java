@@ -0,0 +1,216 @@
+/**
+ * Copyright 2011-2018 Fraunhofer-Gesellschaft zur Förderung der angewandten Wissenschaften e.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ogema.recordeddata.slotsdb;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.StandardOpenOption;
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.util.Queue;
+
+import org.slf4j.LoggerFactory;
+
+/**
+ * Read-only view of the data section of a log file, i.e. everything after the 16 byte header, shared by all
+ * FileObjects of the file. Large files are memory-mapped once. When a file grows, its section is copied to the heap
+ * and only the bytes appended since the last access are read, instead of mapping the whole file again on every read.
+ */
+final class DataSection {
+
+	/*
+	 * Files with a smaller data section are copied to the heap for reading; mapping 
+	 * them would not pay off.
+	 */
+	static final int MMAP_THRESHOLD = 64 * 1024;
+	// weight of a mapped section in the cache; the mapped memory is not part of the heap
+	private static final int MAPPING_WEIGHT = 1024;
+
+	private final File file;
+	private final Queue<ByteBuffer> retired;
+	// guarded by this; position 0, limit equal to the number of bytes read
+	private ByteBuffer buffer;
+	private boolean mapped;
+
+	/**
+	 * @param file
+	 * @param retired
+	 * 		mappings which are no longer used by this section are added here; readers may still access them
+	 */
+	DataSection(File file, Queue<ByteBuffer> retired) {
+		this.file = file;
+		this.retired = retired;
+	}
+
+	File getFile() {
+		return file;
+	}
+
+	/**
+	 * @param dataLength
+	 * 		the size of the data section
+	 * @return
+	 * 		a buffer with position 0 and limit equal to dataLength, or less if the file is shorter; 
+	 * 		use absolute get methods on it
+	 * @throws IOException
+	 */
+	synchronized ByteBuffer get(long dataLength) throws IOException {
+		final ByteBuffer bb = buffer;
+		if (bb != null && bb.limit() == dataLength)
+			return bb.duplicate();
+		if (dataLength <= 0 || !file.exists())
+			return ByteBuffer.allocate(0);
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			final int length = (int) Math.min(Math.min(dataLength, channel.size() - 16), Integer.MAX_VALUE - 8);
+			if (length <= 0)
+				return ByteBuffer.allocate(0);
+			if (bb == null || length < bb.limit())
+				load(channel, length);
+			else if (length > bb.limit())
+				append(channel, length);
+		}
+		return buffer.duplicate();
+	}
+
+	private void load(FileChannel channel, int length) throws IOException {
+		release();
+		if (SlotsDb.MEMORY_MAPPED_READS && length >= MMAP_THRESHOLD) {
+			buffer = channel.map(MapMode.READ_ONLY, 16, length);
+			mapped = true;
+			return;
+		}
+		final ByteBuffer bb = ByteBuffer.allocate(length);
+		// casting is a hack to avoid incompatibility when building this on Java >=9 and run on Java <=8
+		((Buffer) bb).limit(0);
+		buffer = read(channel, bb, length);
+	}
+
+	/*
+	 * Reads the appended bytes only. Readers of the old buffer are not affected, since the bytes 
+	 * within their limit remain unchanged.
+	 */
+	private void append(FileChannel channel, int length) throws IOException {
+		final ByteBuffer old = buffer;
+		if (!mapped && old.capacity() >= length) {
+			buffer = read(channel, old, length);
+			return;
+		}
+		final int oldLength = old.limit();
+		final ByteBuffer bb = ByteBuffer.allocate((int) Math.min(Integer.MAX_VALUE - 8, 
+				Math.max(length, oldLength + (long) (oldLength >> 1))));
+		bb.put(old.duplicate());
+		((Buffer) bb).flip();
+		release();
+		buffer = read(channel, bb, length);
+	}
+
+	// reads the bytes from the limit of bb up to length, and returns bb with the new limit
+	private static ByteBuffer read(FileChannel channel, ByteBuffer bb, int length) throws IOException {
+		final ByteBuffer target = bb.duplicate();
+		((Buffer) target).limit(length);
+		((Buffer) target).position(bb.limit());
+		while (target.hasRemaining()) {
+			if (channel.read(target, 16 + target.position()) < 0)
+				break;
+		}
+		((Buffer) bb).limit(target.position());
+		return bb;
+	}
+
+	/**
+	 * Drops the bytes from offset on, they are read again on the next access. The remaining bytes are
+	 * copied, so that buffers returned before are not affected by the new content.
+	 * 
+	 * @param offset
+	 */
+	synchronized void truncate(long offset) {
+		final ByteBuffer bb = buffer;
+		if (bb == null || offset >= bb.limit())
+			return;
+		final int capacity = mapped ? (int) Math.min(Integer.MAX_VALUE - 8, bb.limit() + (long) (bb.limit() >> 1)) : bb.capacity();
+		final ByteBuffer copy = ByteBuffer.allocate(capacity);
+		final ByteBuffer source = bb.duplicate();
+		((Buffer) source).limit((int) offset);
+		copy.put(source);
+		((Buffer) copy).flip();
+		release();
+		buffer = copy;
+	}
+
+	/**
+	 * @return approximate number of heap bytes retained by this section
+	 */
+	synchronized int getWeight() {
+		final ByteBuffer bb = buffer;
+		if (bb == null || mapped)
+			return MAPPING_WEIGHT;
+		return MAPPING_WEIGHT + bb.capacity();
+	}
+
+	/**
+	 * Drops the buffer; a mapping is retired, since readers may still use it.
+	 */
+	synchronized void release() {
+		if (mapped)
+			retired.add(buffer);
+		buffer = null;
+		mapped = false;
+	}
+
+	/**
+	 * Releases a mapping immediately instead of on garbage collection. Neither the buffer nor any view of it
+	 * must be accessed afterwards. If this is not supported by the JVM, the mapping is left to the garbage
+	 * collector.
+	 * 
+	 * @param buffer
+	 * 		a buffer returned by {@link FileChannel#map(MapMode, long, long)}
+	 */
+	static void unmap(final ByteBuffer buffer) {
+		AccessController.doPrivileged(new PrivilegedAction<Void>() {
+
+			@Override
+			public Void run() {
+				try {
+					try {
+						// Java 9 and later
+						final Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+						final Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+						final Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+						theUnsafe.setAccessible(true);
+						invokeCleaner.invoke(theUnsafe.get(null), buffer);
+					} catch (NoSuchMethodException e) {
+						// Java 8
+						final Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+						cleanerMethod.setAccessible(true);
+						final Object cleaner = cleanerMethod.invoke(buffer);
+						if (cleaner != null)
+							cleaner.getClass().getMethod("clean").invoke(cleaner);
+					}
+				} catch (Exception | LinkageError e) {
+					LoggerFactory.getLogger(DataSection.class).debug("Could not unmap log file, leaving it to the garbage collector", e);
+				}
+				return null;
+			}
+		});
+	}
+
+}
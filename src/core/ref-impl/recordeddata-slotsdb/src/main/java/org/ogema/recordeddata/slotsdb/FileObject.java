@@ -22,11 +22,15 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 
+import org.ogema.core.channelmanager.measurements.Quality;
 import org.ogema.core.channelmanager.measurements.SampledValue;
+import org.ogema.core.recordeddata.TimestampedDoubleBlock;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -183,6 +187,23 @@ public abstract class FileObject {
 		canRead = true;
 	}
 
+	/**
+	 * Returns a read-only buffer over the data section of the file, i.e. everything after the 16 byte header.
+	 * Buffered appends are flushed first, but the output streams remain open, so that alternating read and
+	 * write accesses do not require the file to be reopened. The view is cached per file, see
+	 * {@link RecordedDataCache#getDataBuffer(File, long)}; the returned buffer is private to the caller,
+	 * use absolute get methods on it.
+	 * 
+	 * @return
+	 * 		a buffer with position 0 and limit equal to the size of the data section
+	 * @throws IOException
+	 */
+	protected ByteBuffer getDataBuffer() throws IOException {
+		if (dos != null) 
+			flush();
+		return cache.getDataBuffer(dataFile, Math.max(0, length - 16));
+	}
+
 	/**
 	 * creates the file, if it doesn't exist.
 	 * 
@@ -221,12 +242,21 @@ public abstract class FileObject {
 	}
 	
 	public List<SampledValue> readFully() throws IOException {
-		List<SampledValue> values = cache.getCache();
+		return toSampledValues(readFullyCached());
+	}
+
+	/**
+	 * @return
+	 * 		all values of the file; must not be modified
+	 */
+	private TimestampedDoubleBlock readFullyCached() throws IOException {
+		TimestampedDoubleBlock values = cache.getCache();
 		if (values != null)
 			return values;
-		values = readFullyInternal();
+		values = new TimestampedDoubleBlock();
+		readFullyInternal(values);
 		// store until next write access
-		cache.cache(Collections.unmodifiableList(values));
+		cache.cache(values);
 		return values;
 	}
 	
@@ -234,25 +264,47 @@ public abstract class FileObject {
 		if (start <= startTimeStamp && end >= getTimestampForLatestValue()) {
 			return readFully(); // caches values
 		}
-		final List<SampledValue> values = cache.getCache();
+		final TimestampedDoubleBlock values = cache.getCache();
 		if (values != null) {
-			final List<SampledValue> copy = new ArrayList<>(values.size());
-			for (final SampledValue sv : values) {
-				final long t = sv.getTimestamp();
-				if (t < start)
-					continue;
-				if (t > end)
-					break;
-				copy.add(sv);
-			}
-			return copy;
+			final TimestampedDoubleBlock copy = new TimestampedDoubleBlock();
+			copyRange(values, start, end, copy);
+			return toSampledValues(copy);
 		}
 		return readInternal(start, end);
 	};
 
+	/**
+	 * Decodes all values with timestamps in the interval [start, end] into the passed block. 
+	 * Unlike {@link #read(long, long)}, this does not create any per-value objects.
+	 * 
+	 * @param start
+	 * @param end
+	 * @param target
+	 * @throws IOException
+	 */
+	public void read(long start, long end, TimestampedDoubleBlock target) throws IOException {
+		final TimestampedDoubleBlock values = cache.getCache();
+		if (values != null) {
+			copyRange(values, start, end, target);
+			return;
+		}
+		readInternal(start, end, target);
+	}
+
+	private static void copyRange(TimestampedDoubleBlock values, long start, long end, TimestampedDoubleBlock target) {
+		final long[] t = values.getTimestamps();
+		final double[] v = values.getValues();
+		final byte[] q = values.getQualities();
+		final int from = lowerBound(t, values.size(), start);
+		final int to = upperBound(t, values.size(), end);
+		target.ensureAdditionalCapacity(to - from);
+		for (int i = from; i < to; i++) {
+			target.add(t[i], v[i], q[i]);
+		}
+	}
 
 	public int getDataSetCount() {
-		final List<SampledValue> values = cache.getCache();
+		final TimestampedDoubleBlock values = cache.getCache();
 		if (values != null) {	
 			return values.size();
 		}
@@ -260,42 +312,80 @@ public abstract class FileObject {
 	};
 	
 	public int getDataSetCount(long start, long end) throws IOException {
-		final List<SampledValue> values = cache.getCache();
+		final TimestampedDoubleBlock values = cache.getCache();
 		if (values != null) {
-			if (start <= startTimeStamp && !values.isEmpty()) {
-				long endTimeStamp = values.get(values.size()-1).getTimestamp();
-				if (end >= endTimeStamp) {
-					return values.size();
-				}
-			}
-			int cnt = 0;
-			for (final SampledValue sv : values) {
-				final long t = sv.getTimestamp();
-				if (t < start)
-					continue;
-				if (t > end)
-					break;
-				cnt++;
-			}
-			return cnt;
+			final int size = values.size();
+			return Math.max(0, upperBound(values.getTimestamps(), size, end) - lowerBound(values.getTimestamps(), size, start));
 		}
 		return getDataSetCountInternal(start, end);
 	};
 
+	/**
+	 * @return
+	 * 		index of the first entry &gt;= key, or size if there is no such entry
+	 */
+	private static int lowerBound(final long[] t, final int size, final long key) {
+		int lo = 0;
+		int hi = size;
+		while (lo < hi) {
+			final int mid = (lo + hi) >>> 1;
+			if (t[mid] < key)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return lo;
+	}
+
+	/**
+	 * @return
+	 * 		index of the first entry &gt; key, or size if there is no such entry
+	 */
+	private static int upperBound(final long[] t, final int size, final long key) {
+		int lo = 0;
+		int hi = size;
+		while (lo < hi) {
+			final int mid = (lo + hi) >>> 1;
+			if (t[mid] <= key)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return lo;
+	}
+
 
 	public long getTimestampForLatestValue() {
-		final List<SampledValue> values = cache.getCache();
+		final TimestampedDoubleBlock values = cache.getCache();
 		if (values != null && !values.isEmpty()) {
-			return values.get(values.size()-1).getTimestamp();
+			return values.getTimestamp(values.size() - 1);
 		}
 		return getTimestampForLatestValueInternal();
 	};
 
 	public abstract void append(double value, long timestamp, byte flag) throws IOException;
 
-	protected abstract List<SampledValue> readInternal(long start, long end) throws IOException;
+	protected List<SampledValue> readInternal(long start, long end) throws IOException {
+		final TimestampedDoubleBlock block = new TimestampedDoubleBlock();
+		readInternal(start, end, block);
+		return toSampledValues(block);
+	}
+
+	protected abstract void readInternal(long start, long end, TimestampedDoubleBlock target) throws IOException;
 
-	protected abstract List<SampledValue> readFullyInternal() throws IOException;
+	static List<SampledValue> toSampledValues(TimestampedDoubleBlock block) {
+		final int size = block.size();
+		final long[] t = block.getTimestamps();
+		final double[] v = block.getValues();
+		final byte[] q = block.getQualities();
+		final List<SampledValue> list = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			list.add(new SampledValue(DoubleValues.of(v[i]), t[i], Quality.getQuality(q[i])));
+		}
+		return list;
+	}
+
+	protected abstract void readFullyInternal(TimestampedDoubleBlock target) throws IOException;
 	
 	public abstract SampledValue read(long timestamp) throws IOException;
 
@@ -339,6 +429,26 @@ public abstract class FileObject {
 		}
 	}
 
+	/**
+	 * Drops cached values and the cached view of the data section. Subclasses that modify the file 
+	 * without using the output streams must call this after each write.
+	 */
+	protected void invalidate() {
+		invalidate(0);
+	}
+
+	/**
+	 * Like {@link #invalidate()}, but keeps the cached view of the data section up to offset, 
+	 * for writes which do not modify the file before.
+	 * 
+	 * @param offset
+	 * 		first modified byte, relative to the data section
+	 */
+	protected void invalidate(long offset) {
+		cache.invalidateDataBuffer(offset);
+		cache.invalidate();
+	}
+
 	/**
 	 * Flushes the underlying Data Streams.
 	 * 
@@ -352,6 +462,26 @@ public abstract class FileObject {
 		}
 	}
 
+	/**
+	 * Flushes the underlying Data Streams and forces the file content to the storage device. 
+	 * If the file has been closed already, it is forced through a new channel.
+	 * 
+	 * @throws IOException
+	 */
+	public void sync() throws IOException {
+		flush();
+		final FileOutputStream fos = this.fos;
+		if (fos != null) {
+			fos.getChannel().force(false);
+			return;
+		}
+		if (!dataFile.exists())
+			return;
+		try (FileChannel channel = FileChannel.open(dataFile.toPath(), StandardOpenOption.WRITE)) {
+			channel.force(false);
+		}
+	}
+
 	/**
 	 * Return the Timestamp of the first stored Value in this File.
 	 */
@@ -366,6 +496,9 @@ public abstract class FileObject {
 		else if (fileName.startsWith("f")) {
 			return new FlexibleIntervalFileObject(fileName, cache);
 		}
+		else if (fileName.startsWith("z")) {
+			return new CompressedFileObject(fileName, cache);
+		}
 		else {
 			throw new IOException("Invalid filename for SlotsDB-File");
 		}
@@ -378,6 +511,9 @@ public abstract class FileObject {
 		else if (file.getName().startsWith("f")) {
 			return new FlexibleIntervalFileObject(file, cache);
 		}
+		else if (file.getName().startsWith("z")) {
+			return new CompressedFileObject(file, cache);
+		}
 		else {
 			throw new IOException("Invalid file for SlotsDB-File. Invalid filename.");
 		}
@@ -18,22 +18,20 @@ package org.ogema.recordeddata.slotsdb;
 import java.io.File;
 import java.io.IOException;
 import java.net.URLEncoder;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.Vector;
@@ -46,7 +44,9 @@ import org.ogema.core.administration.FrameworkClock;
 import org.ogema.core.channelmanager.measurements.SampledValue;
 import org.ogema.core.recordeddata.RecordedDataConfiguration;
 import org.ogema.core.recordeddata.RecordedDataConfiguration.StorageType;
+import org.ogema.core.recordeddata.TimestampedDoubleBlock;
 import org.ogema.recordeddata.DataRecorderException;
+import org.ogema.recordeddata.slotsdb.reduction.IntervalReducer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -55,6 +55,8 @@ import org.slf4j.LoggerFactory;
 public final class FileObjectProxy {
 
 	private static final int FLEXIBLE_STORING_PERIOD = -1;
+	// in ms
+	private static final int ROLLUP_FLUSH_PERIOD = 60000;
 
 	final static Logger logger = LoggerFactory.getLogger(FileObjectProxy.class);
 	
@@ -83,10 +85,15 @@ public final class FileObjectProxy {
 	private final Timer timer;
 	// guarded by folder lock TODO check
 	private List<File> days;
+	private final FolderIndex index;
 	// can be null, if data is written to disk immediately
 	private final Flusher flusher;
 	private final DeleteJob deleteJob;
 	private final SizeWatcher sizeWatcher;
+	// null if rollups are disabled
+	private final Rollups rollups;
+	// null if rollups are disabled or flushed by the flusher
+	private final RollupFlusher rollupFlusher;
 	// guarded by folderLock
 	private long size;
 	private final FrameworkClock clock;
@@ -96,6 +103,7 @@ public final class FileObjectProxy {
 	 */
 	private final int flush_period;
 	private final int limit_days;
+	private final int limit_rollup_days;
 	private final int limit_size;
 	private final int max_open_files;
 
@@ -143,6 +151,7 @@ public final class FileObjectProxy {
 		rootNode = new File(rootNodePath);
 		rootNode.mkdirs();
 
+		index = FolderIndex.open(rootNode);
 		loadDays();
 		
 		Integer flush_period = Integer.getInteger(SlotsDb.class.getPackage().getName().toLowerCase() + ".flushperiod");
@@ -157,16 +166,29 @@ public final class FileObjectProxy {
 			this.flush_period = 0;
 		}
 
+		if (Boolean.getBoolean(SlotsDb.ROLLUPS_PROPERTY)) {
+			rollups = new Rollups(new File(rootNode, SlotsDb.ROLLUPS_FOLDER));
+			final Integer limit_rollup_days = Integer.getInteger(SlotsDb.ROLLUPS_LIFETIME_PROPERTY);
+			this.limit_rollup_days = limit_rollup_days != null && limit_rollup_days > 0 ? limit_rollup_days : 0;
+			logger.info("Rollups enabled, maximum lifetime: " + (this.limit_rollup_days > 0 ? this.limit_rollup_days : "UNLIMITED") + " Days.");
+			rollupFlusher = flusher == null ? createScheduledRollupFlusher() : null;
+		} else {
+			rollups = null;
+			limit_rollup_days = 0;
+			rollupFlusher = null;
+		}
 		if (SlotsDb.DATA_LIFETIME_IN_DAYS != null) {
 			limit_days = Integer.parseInt(SlotsDb.DATA_LIFETIME_IN_DAYS);
 			logger.info("Maximum lifetime of stored Values: " + limit_days + " Days.");
-			deleteJob = createScheduledDeleteJob();
 		}
 		else {
 			logger.info("Maximum lifetime of stored Values: UNLIMITED Days.");
-			deleteJob = null;
 			limit_days = 0;
 		}
+		if (SlotsDb.DATA_LIFETIME_IN_DAYS != null || limit_rollup_days > 0)
+			deleteJob = createScheduledDeleteJob();
+		else
+			deleteJob = null;
 		int limit_size = 0;
 		if (SlotsDb.MAX_DATABASE_SIZE != null) {
 			limit_size = Integer.parseInt(SlotsDb.MAX_DATABASE_SIZE);
@@ -194,6 +216,7 @@ public final class FileObjectProxy {
 	
 	public void close() {
 		stopTask(flusher);
+		stopTask(rollupFlusher);
 		stopTask(deleteJob);
 		stopTask(sizeWatcher);
 		timer.cancel();
@@ -201,6 +224,9 @@ public final class FileObjectProxy {
 		try {
 			cache.clearCache();
 			clearOpenFilesHashMap();
+			index.close();
+			if (rollups != null)
+				rollups.close();
 		} catch (IOException e) {
 			logger.warn("Closing log files failed",e);
 		} finally {
@@ -237,40 +263,14 @@ public final class FileObjectProxy {
 	}
 
 	/*
-	 * loads a sorted list of all days in SLOTSDB. Necessary for search- and delete jobs.
+	 * loads a sorted list of all days in SLOTSDB from the index. Necessary for search- and delete jobs.
 	 */
 	private void loadDays() {
-		final SimpleDateFormat sdf = getDateFormat();
-		days = new Vector<File>();
-		for (File f : rootNode.listFiles()) {
-			if (f.isDirectory()) {
-				try {
-					sdf.parse(f.getName()).getTime();
-				} catch (Exception e) {
-					continue;
-				}
-				days.add(f);
-			}
+		final List<File> days = new Vector<File>();
+		for (String day : index.getDays()) {
+			days.add(new File(rootNode, day));
 		}
-		days = sortFolders(days);
-	}
-
-	private List<File> sortFolders(List<File> days) {
-		final SimpleDateFormat sdf = getDateFormat();
-		Collections.sort(days, new Comparator<File>() {
-
-			@Override
-			public int compare(File f1, File f2) {
-				int i = 0;
-				try {
-					i = Long.valueOf(sdf.parse(f1.getName()).getTime()).compareTo(sdf.parse(f2.getName()).getTime());
-				} catch (ParseException | NumberFormatException e) {
-					logger.error("Error during sorting Files: Folder doesn't match yyyymmdd Format?");
-				}
-				return i;
-			}
-		});
-		return days;
+		this.days = days;
 	}
 
 	/**
@@ -312,6 +312,38 @@ public final class FileObjectProxy {
 		
 	}
 
+	private RollupFlusher createScheduledRollupFlusher() {
+		final RollupFlusher f = new RollupFlusher();
+		timer.schedule(f, ROLLUP_FLUSH_PERIOD, ROLLUP_FLUSH_PERIOD);
+		return f;
+	}
+
+	/**
+	 * Writes open rollup buckets to disk, if there is no {@link Flusher}
+	 */
+	class RollupFlusher extends InfoTask {
+
+		private volatile boolean running = false;
+		
+		@Override
+		public void run() {
+			running = true;
+			try {
+				rollups.flush();
+			} catch (IOException e) {
+				logger.error("Flushing rollups failed in IOException: " + e.getMessage());
+			} finally {
+				running = false;
+			}
+		}
+		
+		@Override
+		boolean isRunning() {
+			return running;
+		}
+		
+	}
+
 	private DeleteJob createScheduledDeleteJob() {
 		DeleteJob dj = new DeleteJob();
 		timer.schedule(dj, SlotsDb.INITIAL_DELAY, SlotsDb.DATA_EXPIRATION_CHECK_INTERVAL);
@@ -332,7 +364,12 @@ public final class FileObjectProxy {
 			running = true;
 			folderLock.writeLock().lock();
 			try {
-				deleteFoldersOlderThen(limit_days);
+				if (SlotsDb.DATA_LIFETIME_IN_DAYS != null)
+					deleteFoldersOlderThen(limit_days);
+				if (rollups != null && limit_rollup_days > 0) {
+					final long now = clock != null ? clock.getExecutionTime() : System.currentTimeMillis();
+					rollups.deleteOlderThan(now - 86400000L * limit_rollup_days);
+				}
 			} catch (IOException e) {
 				logger.error("Deleting old Data failed in IOException: " + e.getMessage());
 			} finally {
@@ -368,7 +405,9 @@ public final class FileObjectProxy {
 							logger.info("Folder: " + curElement.getName() + " is older then " + limit_days + " Days. Will be deleted.");
 						else
 							logger.info("Folder: " + curElement.getName() + " is in the future. Will be deleted");
+						cache.release(curElement);
 						deleteRecursiveFolder(curElement);
+						index.removeDay(curElement.getName());
 						if (curElement.exists()) {
 							logger.warn("Folder deletion failed... still exists: {}", curElement);
 						}
@@ -391,11 +430,14 @@ public final class FileObjectProxy {
 	 */
 	void deleteFutureFolders() throws IOException {
 		clearOpenFilesHashMap();
+		index.rebuild();
 		loadDays();
 		final long now = clock != null ? clock.getExecutionTime() : System.currentTimeMillis();
 		final DeleteJob delete = deleteJob != null ? deleteJob : new DeleteJob();
 		delete.deleteFoldersFrom(now, false);
 		cache.clearCache();
+		if (rollups != null)
+			rollups.deleteAll(); // may contain future data; use rebuildRollups to restore them
 	}
 
 	private SizeWatcher createScheduledSizeWatcher() {
@@ -436,8 +478,9 @@ public final class FileObjectProxy {
 			if (days.size() >= 2) {
 				logger.info("Exceeded Maximum Database Size: " + limit_size + " MB. Current size: " + (size / 1000000)
 						+ " MB. Deleting: " + days.get(0).getCanonicalPath());
+				cache.release(days.get(0));
 				deleteRecursiveFolder(days.get(0));
-				days.remove(0);
+				index.removeDay(days.remove(0).getName());
 				clearOpenFilesHashMap();
 			}
 		}
@@ -489,11 +532,148 @@ public final class FileObjectProxy {
 	 * @throws IOException
 	 */
 	public void appendValue(String id, double value, long timestamp, byte state, RecordedDataConfiguration configuration) throws IOException {
-		appendValue(id, value, timestamp, state, configuration, false);
+		appendValue(id, value, timestamp, state, configuration, false, flusher == null);
+		appendRollup(id, value, timestamp, state, configuration);
+	}
+
+	/**
+	 * Appends a sequence of values to Slots Database. Unlike {@link #appendValue(String, double, long, byte, RecordedDataConfiguration)},
+	 * this resolves the folder and log file only once per day covered by the values, and flushes and forces each 
+	 * modified log file only once, after the last value.
+	 * 
+	 * @param id
+	 * @param values
+	 * @param configuration
+	 * @throws IOException
+	 */
+	void appendValues(String id, TimestampedDoubleBlock values, RecordedDataConfiguration configuration) throws IOException {
+		final int size = values.size();
+		if (size == 0)
+			return;
+		final long[] t = values.getTimestamps();
+		final double[] v = values.getValues();
+		final byte[] q = values.getQualities();
+		final String labelEncoded = encodeLabel(id);
+		final long storingPeriod = configuration.getStorageType().equals(StorageType.FIXED_INTERVAL) ? 
+				configuration.getFixedInterval() : FLEXIBLE_STORING_PERIOD;
+		final Set<FileObject> modified = Collections.newSetFromMap(new IdentityHashMap<FileObject, Boolean>());
+		final long[] dayBounds = new long[2];
+		try {
+			int start = 0;
+			while (start < size) {
+				final String strDate = getStrDate(t[start], dayBounds);
+				int end = start + 1;
+				while (end < size && t[end] >= dayBounds[0] && t[end] <= dayBounds[1]) {
+					end++;
+				}
+				appendValues(id, labelEncoded, strDate, t, v, q, start, end, storingPeriod, configuration, modified);
+				start = end;
+			}
+		} finally {
+			for (FileObject file : modified) {
+				file.sync();
+			}
+		}
+		final Rollups rollups = this.rollups;
+		if (rollups != null) {
+			for (int i = 0; i < size; i++) {
+				appendRollup(rollups, id, labelEncoded, v[i], t[i], q[i], configuration);
+			}
+		}
+	}
+
+	/**
+	 * Appends the values with indices from start (inclusive) to end (exclusive), which must all belong to the day strDate.
+	 * Falls back to {@link #appendValue(String, double, long, byte, RecordedDataConfiguration, boolean, boolean)} if the
+	 * folder does not exist yet, or if the current log file does not match the configuration.
+	 */
+	private void appendValues(final String id, final String labelEncoded, final String strDate, final long[] t, final double[] v, final byte[] q,
+			int start, final int end, final long storingPeriod, final RecordedDataConfiguration configuration, 
+			final Set<FileObject> modified) throws IOException {
+		final String key = labelEncoded + strDate;
+		boolean requiresNewFolder;
+		folderLock.readLock().lock();
+		try {
+			final FileObjectList list = openFilesHM.get(key);
+			requiresNewFolder = list == null || list.size() == 0;
+		} finally {
+			folderLock.readLock().unlock();
+		}
+		if (requiresNewFolder) {
+			// creates the folder and log file for this day
+			appendValue(id, v[start], t[start], q[start], configuration, false, false);
+			start++;
+		}
+		boolean formatMatches = true;
+		folderLock.readLock().lock();
+		try {
+			final FileObjectList list = openFilesHM.get(key);
+			if (list == null || list.size() == 0) {
+				throw new IllegalStateException("could not find log file"); 
+			}
+			final FileObject toStoreIn = list.getCurrentFileObject();
+			modified.add(toStoreIn);
+			formatMatches = (toStoreIn instanceof CompressedFileObject) == configuration.isCompressed()
+					&& (toStoreIn.getStoringPeriod() == storingPeriod || toStoreIn.getStoringPeriod() == 0);
+			if (formatMatches) {
+				final long fileStart = toStoreIn.getStartTimeStamp();
+				long first = Long.MAX_VALUE;
+				long last = Long.MIN_VALUE;
+				for (; start < end; start++) {
+					final long roundedTimestamp = getRoundedTimestamp(t[start], configuration);
+					// values older than the log file cannot be stored
+					if (fileStart > roundedTimestamp) 
+						continue;
+					toStoreIn.append(v[start], roundedTimestamp, q[start]);
+					if (roundedTimestamp < first)
+						first = roundedTimestamp;
+					if (roundedTimestamp > last)
+						last = roundedTimestamp;
+				}
+				if (first <= last) {
+					index.add(strDate, labelEncoded, first);
+					index.add(strDate, labelEncoded, last);
+				}
+			}
+		} finally {
+			folderLock.readLock().unlock();
+		}
+		if (formatMatches)
+			return;
+		// interval or file format changed -> a new log file is created by the single value path
+		for (; start < end; start++) {
+			appendValue(id, v[start], t[start], q[start], configuration, false, false);
+		}
+		folderLock.readLock().lock();
+		try {
+			final FileObjectList list = openFilesHM.get(key);
+			if (list != null && list.size() > 0)
+				modified.add(list.getCurrentFileObject());
+		} finally {
+			folderLock.readLock().unlock();
+		}
+	}
+
+	private void appendRollup(String id, double value, long timestamp, byte state, RecordedDataConfiguration configuration) throws IOException {
+		final Rollups rollups = this.rollups;
+		if (rollups != null) 
+			appendRollup(rollups, id, encodeLabel(id), value, timestamp, state, configuration);
+	}
+
+	private void appendRollup(Rollups rollups, String id, String label, double value, long timestamp, byte state, 
+			RecordedDataConfiguration configuration) throws IOException {
+		final long t = getRoundedTimestamp(timestamp, configuration);
+		long previous = Long.MIN_VALUE;
+		if (!rollups.isTracked(label)) {
+			final SampledValue sv = readPreviousValue(id, t - 1, configuration);
+			if (sv != null)
+				previous = sv.getTimestamp();
+		}
+		rollups.append(label, t, value, state, previous);
 	}
 
 	private void appendValue(final String label0, double value, long timestamp, byte state,
-			RecordedDataConfiguration configuration, boolean hasWriteLock) throws IOException {
+			RecordedDataConfiguration configuration, boolean hasWriteLock, boolean immediateFlush) throws IOException {
 
 		long storingPeriod;
 		if (configuration.getStorageType().equals(StorageType.FIXED_INTERVAL)) {
@@ -520,7 +700,7 @@ public final class FileObjectProxy {
 				folderLock.readLock().unlock();
 				folderLock.writeLock().lock();
 				try {
-					appendValue(label0, value, timestamp, state, configuration, true);
+					appendValue(label0, value, timestamp, state, configuration, true, immediateFlush);
 				} finally {
 					folderLock.writeLock().unlock();
 				}
@@ -544,20 +724,12 @@ public final class FileObjectProxy {
 				 */
 				if (first.size() == 0) {
 	
-					if (configuration.getStorageType().equals(StorageType.FIXED_INTERVAL)) {
-						// fixed interval
-						toStoreIn = new ConstantIntervalFileObject(rootNode.getPath() + "/" + strDate + "/" + labelEncoded + "/c"
-								+ timestamp + SlotsDb.FILE_EXTENSION, cache.getCache(labelEncoded, "c" + timestamp  + SlotsDb.FILE_EXTENSION));
-					}
-					else {
-						/* flexible interval */
-						toStoreIn = new FlexibleIntervalFileObject(rootNode.getPath() + "/" + strDate + "/" + labelEncoded + "/f"
-								+ timestamp + SlotsDb.FILE_EXTENSION, cache.getCache(labelEncoded, "f" + timestamp  + SlotsDb.FILE_EXTENSION));
-					}
+					toStoreIn = newFileObject(strDate, labelEncoded, timestamp, storingPeriod, configuration.isCompressed());
 	
 					long roundedTimestamp = getRoundedTimestamp(timestamp, configuration);
 					toStoreIn.createFileAndHeader(roundedTimestamp, storingPeriod);
 					toStoreIn.append(value, roundedTimestamp, state);
+					index.add(strDate, labelEncoded, roundedTimestamp);
 					
 					toStoreIn.close(); /* close() also calls flush(). */
 					
@@ -589,35 +761,27 @@ public final class FileObjectProxy {
 			/*
 			 * The storing Period may have changed. In this case, a new FileObject must be created.
 			 */
-			if (toStoreIn.getStoringPeriod() == storingPeriod || toStoreIn.getStoringPeriod() == 0) {
+			final boolean formatMatches = (toStoreIn instanceof CompressedFileObject) == configuration.isCompressed();
+			if (formatMatches && (toStoreIn.getStoringPeriod() == storingPeriod || toStoreIn.getStoringPeriod() == 0)) {
 				toStoreIn = openFilesHM.get(labelEncoded + strDate).getCurrentFileObject();
 				long roundedTimestamp = getRoundedTimestamp(timestamp, configuration);
 				toStoreIn.append(value, roundedTimestamp, state);
-				if (flusher == null) {
+				index.add(strDate, labelEncoded, roundedTimestamp);
+				if (immediateFlush) {
 					toStoreIn.flush();
 				}
-				else {
-					return;
-				}
 			}
 			else {
 				/*
-				 * Intervall changed -> create new File (if there are no newer values for this day, or file)
+				 * Intervall or file format changed -> create new File (if there are no newer values for this day, or file)
 				 */
 				if (toStoreIn.getTimestampForLatestValue() < timestamp) {
-					if (storingPeriod != FLEXIBLE_STORING_PERIOD) { /* constant intervall */
-						toStoreIn = new ConstantIntervalFileObject(rootNode.getPath() + "/" + strDate + "/" + labelEncoded + "/c"
-								+ timestamp + SlotsDb.FILE_EXTENSION, cache.getCache(labelEncoded, "c" + timestamp  + SlotsDb.FILE_EXTENSION));
-					}
-					else { /* flexible intervall */
-						toStoreIn = new FlexibleIntervalFileObject(rootNode.getPath() + "/" + strDate + "/" + labelEncoded + "/f"
-								+ timestamp + SlotsDb.FILE_EXTENSION, cache.getCache(labelEncoded, "f" + timestamp  + SlotsDb.FILE_EXTENSION));
-					}
+					toStoreIn = newFileObject(strDate, labelEncoded, timestamp, storingPeriod, configuration.isCompressed());
 					toStoreIn.createFileAndHeader(timestamp, storingPeriod);
 					toStoreIn.append(value, timestamp, state);
-					if (flusher == null) {
-						toStoreIn.flush();
-					}
+					index.add(strDate, labelEncoded, timestamp);
+					// the list is reloaded below, so this instance is not used any more
+					toStoreIn.close();
 					openFilesHM.get(labelEncoded + strDate).reLoadFolder(cache, labelEncoded);
 				}
 			}
@@ -627,6 +791,23 @@ public final class FileObjectProxy {
 		}
 	}
 
+	/**
+	 * Creates the file object for a new log file; the file itself is created by 
+	 * {@link FileObject#createFileAndHeader(long, long)}.
+	 */
+	private FileObject newFileObject(String strDate, String labelEncoded, long timestamp, long storingPeriod, boolean compressed) throws IOException {
+		final String prefix = compressed ? "z" : storingPeriod != FLEXIBLE_STORING_PERIOD ? "c" : "f";
+		final String filename = prefix + timestamp + SlotsDb.FILE_EXTENSION;
+		final String path = rootNode.getPath() + "/" + strDate + "/" + labelEncoded + "/" + filename;
+		final RecordedDataCache fileCache = cache.getCache(labelEncoded, filename);
+		if (compressed)
+			return new CompressedFileObject(path, fileCache);
+		else if (storingPeriod != FLEXIBLE_STORING_PERIOD)
+			return new ConstantIntervalFileObject(path, fileCache);
+		else
+			return new FlexibleIntervalFileObject(path, fileCache);
+	}
+
 	/**
 	 * Rounds the timestamp to the next matching interval.
 	 * 
@@ -845,42 +1026,64 @@ public final class FileObjectProxy {
 		return null;
 	}
 	
-	// requires folder read lock 
-	private List<FileObjectList> getFoldersForIntervalSorted(String label, long start, long end) throws IOException {
-		List<FileObjectList> days = new Vector<FileObjectList>();
-		/*
-		 * Check for Folders matching criteria: Folder contains data between start & end timestamp. Folder contains
-		 * label.
-		 */
-		String strSubfolder;
-		for (File folder : rootNode.listFiles()) {
-			if (folder.isDirectory()) {
-				if (isFolderBetweenStartAndEnd(folder.getName(), start, end)) {
-					if (Arrays.asList(folder.list()).contains(label)) {
-						strSubfolder = rootNode.getPath() + "/" + folder.getName() + "/" + label;
-						days.add(new FileObjectList(strSubfolder, cache, label));
-						logger.trace(strSubfolder + " contains " + SlotsDb.FILE_EXTENSION + " files to read from.");
-					}
-					else if (Arrays.asList(folder.list()).contains(URLEncoder.encode(label,"UTF-8"))) {
-						strSubfolder = rootNode.getPath() + "/" + folder.getName() + "/" + URLEncoder.encode(label,"UTF-8");
-						days.add(new FileObjectList(strSubfolder, cache, label));
-						logger.trace(strSubfolder + " contains " + SlotsDb.FILE_EXTENSION + " files to read from.");
-					}
-				}
+	/**
+	 * Snapshot of the day folders in a time interval, and of the time series folders they contain. 
+	 * Queries for many time series over the same interval can share a snapshot, instead of listing
+	 * the day folders once per time series. Folders created after the snapshot was taken are not seen.
+	 */
+	static final class DayFolders {
+
+		// sorted by day
+		private final List<File> days = new ArrayList<>();
+		private final List<Set<String>> contents = new ArrayList<>();
+
+	}
+
+	DayFolders listDayFolders(long start, long end) throws IOException {
+		final DayFolders snapshot = new DayFolders();
+		start = checkForExtremeValues(start);
+		end = checkForExtremeValues(end);
+		folderLock.readLock().lock();
+		try {
+			for (Map.Entry<String, Set<String>> entry : index.getContent(getDayName(start), getDayName(end)).entrySet()) {
+				snapshot.days.add(new File(rootNode, entry.getKey()));
+				snapshot.contents.add(entry.getValue());
 			}
+		} finally {
+			folderLock.readLock().unlock();
 		}
-		/*
-		 * Sort days, because rootNode.listFiles() is unsorted. FileObjectLists MUST be sorted, otherwise data
-		 * output wouldn't be sorted.
-		 */
-		Collections.sort(days, new Comparator<FileObjectList>() {
+		return snapshot;
+	}
 
-			@Override
-			public int compare(FileObjectList f1, FileObjectList f2) {
-				return Long.valueOf(f1.getFirstTS()).compareTo(f2.getFirstTS());
-			}
-		});
+	// requires folder read lock 
+	private List<FileObjectList> getFoldersForIntervalSorted(String label, long start, long end) throws IOException {
+		return getFoldersForIntervalSorted(label, start, end, null);
+	}
 
+	// requires folder read lock 
+	private List<FileObjectList> getFoldersForIntervalSorted(String label, long start, long end, DayFolders snapshot) throws IOException {
+		if (snapshot != null) {
+			final List<FileObjectList> days = new ArrayList<>();
+			final String urlEncoded = URLEncoder.encode(label, "UTF-8");
+			for (int i = 0; i < snapshot.days.size(); i++) {
+				final File folder = snapshot.days.get(i);
+				if (!isFolderBetweenStartAndEnd(folder.getName(), start, end))
+					continue;
+				final Set<String> content = snapshot.contents.get(i);
+				final String sub = content.contains(label) ? label : content.contains(urlEncoded) ? urlEncoded : null;
+				if (sub != null)
+					days.add(new FileObjectList(rootNode.getPath() + "/" + folder.getName() + "/" + sub, cache, label));
+			}
+			return days;
+		}
+		final List<FileObjectList> days = new ArrayList<>();
+		start = checkForExtremeValues(start);
+		end = checkForExtremeValues(end);
+		for (String folder : index.getFolders(label, URLEncoder.encode(label, "UTF-8"), getDayName(start), getDayName(end), start, end)) {
+			final String strSubfolder = rootNode.getPath() + "/" + folder;
+			days.add(new FileObjectList(strSubfolder, cache, label));
+			logger.trace(strSubfolder + " contains " + SlotsDb.FILE_EXTENSION + " files to read from.");
+		}
 		return days;
 	}
 	
@@ -888,77 +1091,24 @@ public final class FileObjectProxy {
 	// requires folder read lock
 	// label must be encoded already
 	FileObjectList getNextFolder(String label, long start) throws IOException {
-		/*
-		 * Check for Folders matching criteria: Folder contains data between start & end timestamp. Folder contains
-		 * label.
-		 */
-		String strSubfolder;
-		List<File> folders = Arrays.asList(rootNode.listFiles());
-		Collections.sort(folders);
-		// TODO avoid iteration over all folders, use heuristics to guess start element, in case of large lists of folders
-		for (File folder : folders) {
-			if (folder.isDirectory()) {
-				if (isFolderBetweenStartAndEnd(folder.getName(), start, Long.MAX_VALUE)) {
-					if (Arrays.asList(folder.list()).contains(label)) {
-						strSubfolder = rootNode.getPath() + "/" + folder.getName() + "/" + label;
-						if (logger.isTraceEnabled())
-							logger.trace(strSubfolder + " contains " + SlotsDb.FILE_EXTENSION + " files to read from.");
-						return new FileObjectList(strSubfolder, cache, label);
-					}
-					else if (Arrays.asList(folder.list()).contains(URLEncoder.encode(label,"UTF-8"))) {
-						strSubfolder = rootNode.getPath() + "/" + folder.getName() + "/" + URLEncoder.encode(label,"UTF-8");
-						if (logger.isTraceEnabled())
-							logger.trace(strSubfolder + " contains " + SlotsDb.FILE_EXTENSION + " files to read from.");
-						return new FileObjectList(strSubfolder, cache, label);
-					}
-				}
-			}
-		}
-		return null;
+		start = checkForExtremeValues(start);
+		return getFolder(label, index.getNextFolder(label, URLEncoder.encode(label, "UTF-8"), getDayName(start), true, start));
 	}
 
 	// requires folder read lock 
 	// label must be encoded
 	FileObjectList getNextFolder(String label, FileObjectList folder) throws IOException {
-		String currentDate = folder.getFolderName();
-		int lastIdx = currentDate.lastIndexOf('/');
-		if (lastIdx < 0)
-			lastIdx = currentDate.lastIndexOf('\\');
-		if (lastIdx < 0) // XXX isn't his an error?
-			return null;
-		currentDate = currentDate.substring(0, lastIdx);
-		Path current = Paths.get(currentDate);
-		
-		List<File> folders = Arrays.asList(rootNode.listFiles());
-		Collections.sort(folders);
-		File f;
-		int i = Integer.MIN_VALUE;
-		for (int idx = 0; idx < folders.size(); idx++) {
-			f = folders.get(idx);
-			if (Files.isSameFile(current, Paths.get(f.toString()))) {
-				i = idx;
-				break;
-			}
-		}
-		if (i < 0)
+		final String currentDay = new File(folder.getFolderName()).getParentFile().getName();
+		return getFolder(label, index.getNextFolder(label, URLEncoder.encode(label, "UTF-8"), currentDay, false, Long.MIN_VALUE));
+	}
+
+	private FileObjectList getFolder(String label, String folder) throws IOException {
+		if (folder == null)
 			return null;
-		for (int j=i+1;j<folders.size();j++) {
-			f = folders.get(j);
-			if (f.isDirectory() && Arrays.asList(f.list()).contains(label)) {
-				String strSubfolder = rootNode.getPath() + "/" + f.getName() + "/" + label;
-				if (logger.isTraceEnabled())
-					logger.trace(strSubfolder + " contains " + SlotsDb.FILE_EXTENSION + " files to read from.");
-				return new FileObjectList(strSubfolder, cache, label);
-			} else if (f.isDirectory() && Arrays.asList(f.list()).contains(URLEncoder.encode(label,"UTF-8"))) {
-				String strSubfolder = rootNode.getPath() + "/" + f.getName() + "/" + URLEncoder.encode(label,"UTF-8");
-				if (logger.isTraceEnabled())
-					logger.trace(strSubfolder + " contains " + SlotsDb.FILE_EXTENSION + " files to read from.");
-				return new FileObjectList(strSubfolder, cache, label);
-			}
-		}
-		
-		return null;
-		
+		final String strSubfolder = rootNode.getPath() + "/" + folder;
+		if (logger.isTraceEnabled())
+			logger.trace(strSubfolder + " contains " + SlotsDb.FILE_EXTENSION + " files to read from.");
+		return new FileObjectList(strSubfolder, cache, label);
 	}
 	
 	static List<SampledValue> readFolder(FileObjectList folder) throws IOException {
@@ -977,6 +1127,79 @@ public final class FileObjectProxy {
 	 */
 	public List<SampledValue> read(String label, long start, long end,
 			RecordedDataConfiguration configuration) throws IOException {
+		final TimestampedDoubleBlock block = new TimestampedDoubleBlock();
+		read(label, start, end, configuration, block);
+		return FileObject.toSampledValues(block);
+	}
+
+	/**
+	 * Decodes all values of the time series between start and end (both inclusive) into the 
+	 * passed block. Only the file sections that contain the requested interval are accessed.
+	 * 
+	 * @param label
+	 * @param start
+	 * @param end
+	 * @param configuration
+	 * @param target
+	 * @throws IOException
+	 */
+	void read(String label, long start, long end, RecordedDataConfiguration configuration, 
+			TimestampedDoubleBlock target) throws IOException {
+		read(label, start, end, configuration, target, null);
+	}
+
+	/**
+	 * Callback for file-by-file reads
+	 */
+	interface BlockConsumer {
+
+		/**
+		 * @param block
+		 * 		the values of a single file section, in chronological order. The block is 
+		 * 		cleared and reused after the method returns.
+		 * @throws IOException
+		 */
+		void accept(TimestampedDoubleBlock block) throws IOException;
+
+	}
+
+	/**
+	 * Like {@link #read(String, long, long, RecordedDataConfiguration, TimestampedDoubleBlock)}, but if a 
+	 * consumer is passed, the values are handed over file by file and the buffer is cleared 
+	 * in between. This way, only the content of a single file is kept in memory.
+	 * The consumer is called while the folder read lock is held.
+	 * 
+	 * @param label
+	 * @param start
+	 * @param end
+	 * @param configuration
+	 * @param target
+	 * @param consumer
+	 * 		may be null
+	 * @throws IOException
+	 */
+	void read(String label, long start, long end, RecordedDataConfiguration configuration, 
+			TimestampedDoubleBlock target, BlockConsumer consumer) throws IOException {
+		read(label, start, end, configuration, target, consumer, null);
+	}
+
+	/**
+	 * Like {@link #read(String, long, long, RecordedDataConfiguration, TimestampedDoubleBlock, BlockConsumer)},
+	 * using a shared snapshot of the day folders.
+	 * 
+	 * @param label
+	 * @param start
+	 * @param end
+	 * @param configuration
+	 * @param target
+	 * @param consumer
+	 * 		may be null
+	 * @param dayFolders
+	 * 		may be null, in which case the day folders are listed
+	 * @throws IOException
+	 */
+	void read(String label, long start, long end, RecordedDataConfiguration configuration, 
+			TimestampedDoubleBlock target, BlockConsumer consumer, DayFolders dayFolders) throws IOException {
 		if (logger.isTraceEnabled()) {
 			logger.trace("Called: read(" + label + ", " + start + ", " + end + ")");
 		}
@@ -984,22 +1207,18 @@ public final class FileObjectProxy {
 		start = getRoundedTimestamp(start, configuration);
 		end = getRoundedTimestamp(end, configuration);
 
-		List<SampledValue> toReturn = new Vector<SampledValue>();
-
 		if (start > end) {
 			logger.trace("Invalid Read Request: startTS > endTS");
-			return toReturn;
+			return;
 		}
 
 		if (start == end) {
-			toReturn.add(read(label, start, configuration)); // let other read function handle.
-			toReturn.removeAll(Collections.singleton(null));
-			return toReturn;
-		}
-/*		if (end > 50000000000000L) { // to prevent buffer overflows. in cases of multiplication -> see checkForExtremeValues below
-			end = 50000000000000L;
-		} 
-*/
+			final SampledValue sv = read(label, start, configuration); // let other read function handle.
+			if (sv != null)
+				target.add(sv.getTimestamp(), sv.getValue().getDoubleValue(), (byte) sv.getQuality().getQuality());
+			passOn(target, consumer);
+			return;
+		}
 		// label = URLEncoder.encode(label,Charset.defaultCharset().toString());
 		// //encodes label to supported String for Filenames.
 		label = encodeLabel(label);
@@ -1011,19 +1230,20 @@ public final class FileObjectProxy {
 
 		String strStartDate = getStrDate(start);
 		String strEndDate = getStrDate(end);
-		List<FileObject> toRead = new Vector<FileObject>();
+		List<FileObject> toRead = new ArrayList<FileObject>();
+		final int sizeBefore = target.size();
 
 		folderLock.readLock().lock();
 		try {
 			if (!strStartDate.equals(strEndDate)) {
 				logger.trace("Reading Multiple Days. Scanning for Folders.");
-				List<FileObjectList> days = getFoldersForIntervalSorted(label, start, end);
+				List<FileObjectList> days = getFoldersForIntervalSorted(label, start, end, dayFolders);
 	
 				/*
 				 * Create a list with all file-objects that must be read for this reading request.
 				 */
 				if (days.size() == 0) {
-					return toReturn;
+					return;
 				}
 				else if (days.size() == 1) {
 					toRead.addAll(days.get(0).getFileObjectsFromTo(start, end));
@@ -1055,34 +1275,38 @@ public final class FileObjectProxy {
 			 * Read all FileObjects: first (2nd,3rd,4th....n-1) last first and last will be read separately, to not exceed
 			 * timestamp range.
 			 */
-			if (toRead != null) {
-				if (toRead.size() > 1) {
-					toReturn.addAll(toRead.get(0).read(start, toRead.get(0).getTimestampForLatestValue()));
-					toRead.get(0).close();
-					for (int i = 1; i < toRead.size() - 1; i++) {
-						toReturn.addAll(toRead.get(i).readFully());
-						toRead.get(i).close();
-					}
-					toReturn.addAll(toRead.get(toRead.size() - 1).read(toRead.get(toRead.size() - 1).getStartTimeStamp(),
-							end));
-					toRead.get(toRead.size() - 1).close();
-	
-					/*
-					 * Some Values might be null -> remove
-					 */
-					toReturn.removeAll(Collections.singleton(null));
-	
-				}
-				else if (toRead.size() == 1) { // single FileObject
-					toReturn.addAll(toRead.get(0).read(start, end));
-					toReturn.removeAll(Collections.singleton(null));
+			if (toRead.size() > 1) {
+				final FileObject first = toRead.get(0);
+				first.read(start, first.getTimestampForLatestValue(), target);
+				first.close();
+				passOn(target, consumer);
+				for (int i = 1; i < toRead.size() - 1; i++) {
+					final FileObject fo = toRead.get(i);
+					fo.read(fo.getStartTimeStamp(), fo.getTimestampForLatestValue(), target);
+					fo.close();
+					passOn(target, consumer);
 				}
+				final FileObject last = toRead.get(toRead.size() - 1);
+				last.read(last.getStartTimeStamp(), end, target);
+				last.close();
+				passOn(target, consumer);
+			}
+			else if (toRead.size() == 1) { // single FileObject
+				toRead.get(0).read(start, end, target);
+				passOn(target, consumer);
 			}
 		} finally {
 			folderLock.readLock().unlock();
 		}
-		logger.trace("Selected " + SlotsDb.FILE_EXTENSION + " files contain " + toReturn.size() + " Values.");
-		return toReturn;
+		if (consumer == null && logger.isTraceEnabled())
+			logger.trace("Selected " + SlotsDb.FILE_EXTENSION + " files contain " + (target.size() - sizeBefore) + " Values.");
+	}
+
+	private static void passOn(TimestampedDoubleBlock block, BlockConsumer consumer) throws IOException {
+		if (consumer == null || block.isEmpty())
+			return;
+		consumer.accept(block);
+		block.clear();
 	}
 
 	/**
@@ -1102,7 +1326,9 @@ public final class FileObjectProxy {
 		try {
 			sdf.parse(name);
 		} catch (ParseException e) {
-			logger.error("Unable to parse Timestamp from: " + name + " folder. " + e.getMessage());
+			// e.g. the rollups folder
+			logger.trace("Unable to parse Timestamp from: " + name + " folder. " + e.getMessage());
+			return false;
 		}
 		if (start <= sdf.getCalendar().getTimeInMillis() + 86399999 && sdf.getCalendar().getTimeInMillis() <= end) { // if
 			// start
@@ -1123,9 +1349,21 @@ public final class FileObjectProxy {
 	 * range, strCurrentDay, currentDayFirstTS, currentDayLastTS will be updated.
 	 */
 	private String getStrDate(long timestamp) throws IOException {
+		return getStrDate(timestamp, null);
+	}
+
+	/**
+	 * @param dayBounds
+	 * 		if not null, the first and last timestamp of the day are written to this array
+	 */
+	private String getStrDate(long timestamp, long[] dayBounds) throws IOException {
 		synchronized (currentDayLock) {
 			if (strCurrentDay != null) {
 				if (timestamp >= currentDayFirstTS && timestamp <= currentDayLastTS) {
+					if (dayBounds != null) {
+						dayBounds[0] = currentDayFirstTS;
+						dayBounds[1] = currentDayLastTS;
+					}
 					return strCurrentDay;
 				}
 			}
@@ -1142,6 +1380,10 @@ public final class FileObjectProxy {
 				logger.error("Unable to parse Timestamp from: " + currentDayFirstTS + " String.");
 			}
 			currentDayLastTS = currentDayFirstTS + 86399999;
+			if (dayBounds != null) {
+				dayBounds[0] = currentDayFirstTS;
+				dayBounds[1] = currentDayLastTS;
+			}
 			return strCurrentDay;
 		}
 	}
@@ -1222,6 +1464,10 @@ public final class FileObjectProxy {
 		}
 	}
 
+	final SlotsDbCache getValueCache() {
+		return cache;
+	}
+
 	/**
 	 * Flushes all Datastreams from all FileObjectLists and FileObjects
 	 * 
@@ -1235,12 +1481,114 @@ public final class FileObjectProxy {
 				itr.next().flush();
 			}
 			logger.debug("Data from {} folders flushed to disk.",openFilesHM.size());
+			// no reads are running, so mappings which are no longer cached can be released
+			cache.releaseRetired();
 		} finally {
 			folderLock.writeLock().unlock();
 		}
+		if (rollups != null)
+			rollups.flush();
+	}
+
+	static BlockConsumer getReducingConsumer(final IntervalReducer reducer) {
+		return new BlockConsumer() {
+			
+			@Override
+			public void accept(TimestampedDoubleBlock block) {
+				reducer.addAll(block);
+			}
+		};
+	}
+
+	/**
+	 * Passes the data between start and end (both inclusive) to the reducer, using the coarsest rollup 
+	 * tier that matches the requested intervals, and raw data for the remainder of the period. 
+	 * 
+	 * @param label0
+	 * @param start
+	 * @param end
+	 * @param intervalSize
+	 * @param configuration
+	 * @param reducer
+	 * @return
+	 * 		false, if no rollup tier can be used for the request, or if the rollups cannot be read; in this 
+	 * 		case the reducer is empty.
+	 * @throws IOException
+	 * 		if the raw data cannot be read
+	 */
+	boolean readReduced(String label0, long start, long end, long intervalSize, RecordedDataConfiguration configuration, 
+			IntervalReducer reducer) throws IOException {
+		final Rollups rollups = this.rollups;
+		if (rollups == null)
+			return false;
+		final String label = encodeLabel(label0);
+		Long latest = null;
+		for (int tier = Rollups.TIERS.length - 1; tier >= 0; tier--) {
+			final long length = Rollups.TIERS[tier];
+			if (intervalSize % length != 0 || start % length != 0)
+				continue;
+			// exclusive
+			final long rollupEnd = end == Long.MAX_VALUE ? Rollups.floor(end, length) : Rollups.floor(end + 1, length);
+			if (rollupEnd <= start)
+				continue;
+			if (latest == null) {
+				if (rollups.isTracked(label)) {
+					latest = Long.MIN_VALUE;
+				} else {
+					final SampledValue sv = readPreviousValue(label0, Long.MAX_VALUE, configuration);
+					latest = sv != null ? sv.getTimestamp() : Long.MIN_VALUE;
+				}
+			}
+			try {
+				if (rollups.getCoverageStart(label, tier, latest) > start)
+					continue;
+				if (logger.isTraceEnabled())
+					logger.trace("Reading rollups of {} for tier {}", label, length);
+				rollups.read(label, tier, start, rollupEnd, reducer);
+			} catch (IOException e) {
+				// the raw data is still intact
+				logger.warn("Rollups of {} cannot be read, reducing the raw data instead", label0, e);
+				reducer.reset();
+				return false;
+			}
+			if (rollupEnd <= end) {
+				reducer.skipUntil(rollupEnd);
+				read(label0, rollupEnd, end, configuration, new TimestampedDoubleBlock(), getReducingConsumer(reducer));
+			}
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Recreates the rollups of a time series from its raw data. Appends to the time series
+	 * must be blocked in the meantime.
+	 * 
+	 * @param label0
+	 * @param configuration
+	 * @throws IOException
+	 * @throws IllegalStateException if rollups are disabled
+	 */
+	void rebuildRollups(String label0, RecordedDataConfiguration configuration) throws IOException {
+		final Rollups rollups = this.rollups;
+		if (rollups == null)
+			throw new IllegalStateException("Rollups are disabled, set property " + SlotsDb.ROLLUPS_PROPERTY + " to enable them");
+		final Rollups.Builder builder = rollups.rebuild(encodeLabel(label0));
+		read(label0, Long.MIN_VALUE, Long.MAX_VALUE, configuration, new TimestampedDoubleBlock(), builder);
+		builder.finish();
 	}
 	
 	// ensure year strings have no more than four digits and are positive
+	/**
+	 * Like {@link #getStrDate(long)}, but without affecting the current day used for appends.
+	 * @param timestamp
+	 * 		must be within the range covered by {@link #checkForExtremeValues(long)}
+	 * @return
+	 */
+	private static String getDayName(long timestamp) {
+		return getDateFormat().format(new Date(timestamp));
+	}
+
 	private static long checkForExtremeValues(long timestamp) {
 		if (timestamp < minL)
 			timestamp = minL;
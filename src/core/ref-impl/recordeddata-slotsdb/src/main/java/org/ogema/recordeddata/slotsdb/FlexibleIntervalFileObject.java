@@ -18,186 +18,113 @@ package org.ogema.recordeddata.slotsdb;
 import java.io.DataInputStream;
 import java.io.File;
 import java.io.IOException;
-import java.nio.Buffer;
 import java.nio.ByteBuffer;
-import java.nio.MappedByteBuffer;
-import java.nio.channels.FileChannel;
-import java.util.ArrayList;
-import java.util.List;
 
-import org.ogema.core.channelmanager.measurements.DoubleValue;
 import org.ogema.core.channelmanager.measurements.Quality;
 import org.ogema.core.channelmanager.measurements.SampledValue;
+import org.ogema.core.recordeddata.TimestampedDoubleBlock;
 
+/**
+ * Log file with one record per value, consisting of timestamp, value and quality (17 bytes). 
+ * Timestamps are strictly increasing within a file, which allows for binary search on reads.
+ */
 public class FlexibleIntervalFileObject extends FileObject {
 
-	private long lastTimestamp;
 	private static final long headerend = 16;
+	private static final int RECORD_SIZE = getDataSetSize();
+	// timestamp of the last record, valid if lastTimestampCount equals the current number of records
+	private long lastTimestamp;
+	private int lastTimestampCount = 0;
 
 	protected FlexibleIntervalFileObject(File file, RecordedDataCache cache) throws IOException {
 		super(file, cache);
-		lastTimestamp = startTimeStamp;
 	}
 
 	protected FlexibleIntervalFileObject(String fileName, RecordedDataCache cache) throws IOException {
 		super(fileName, cache);
-		lastTimestamp = startTimeStamp;
 	}
 
 	@Override
 	void readHeader(DataInputStream dis) throws IOException {
 		startTimeStamp = dis.readLong();
 		storagePeriod = dis.readLong(); /* is -1 for disabled storagePeriod */
-		lastTimestamp = startTimeStamp;
 		// line below should be obsolete, since flexible interval needs no rounded timestamp
 		//startTimeStamp = FileObjectProxy.getRoundedTimestamp(startTimeStamp, storagePeriod);
 	}
 
 	@Override
 	public void append(double value, long timestamp, byte flag) throws IOException {
-		// long writePosition = dataFile.length();
+		// only write to time series if new values timestamp is greater than last one; this keeps the file sorted
+		final int count = getDataSetCountInternal();
+		if (count > 0 && timestamp <= getTimestampForLatestValueInternal())
+			return;
 		if (!canWrite) {
 			enableOutput();
 		}
-
-		// FIXME really? only write to time series if new values timestamp is greater than last one? -> this is for log data, so it makes sense
-		if (timestamp > lastTimestamp) {
-			dos.writeLong(timestamp);
-			dos.writeDouble(value);
-			dos.writeByte(flag);
-			lastTimestamp = timestamp;
-		}
-
+		dos.writeLong(timestamp);
+		dos.writeDouble(value);
+		dos.writeByte(flag);
+		length += RECORD_SIZE;
+		lastTimestamp = timestamp;
+		lastTimestampCount = count + 1;
 	}
 
 	@Override
 	protected long getTimestampForLatestValueInternal() {
-		// FIXME: this won't work ... if read(String, long, long) is invoked a new
-		// FileObject is created and lastTimestamp is set to startTimeStamp ...
-		// return lastTimestamp;
-
-		// this is only a quickfix so that it works... @author of this class: if there
-		// is a better solution pls fix this... otherwise delete all comments in here
-		// and lets stick to this solution for now:
-		int dataSetCount = getDataSetCountInternal();
-		if (dataSetCount > 1) {
+		final int dataSetCount = getDataSetCountInternal();
+		if (dataSetCount == 0)
+			return startTimeStamp;
+		if (lastTimestampCount != dataSetCount) {
 			try {
-				if (!canRead) {
-					enableInput();
-				}
-				fis.getChannel().position(headerend);
-				byte[] b = new byte[(int) (dataFile.length() - headerend)];
-				dis.read(b, 0, b.length);
-				ByteBuffer bb = ByteBuffer.wrap(b);
-				// set position to last entries timestamp (Long, Double and Byte size in bits
-				// so divide through Byte.SIZE to get size in bytes)
-				// casting is a hack to avoid incompatibility when building this on Java 9 and run on Java 8
-				// ByteBuffer#position used to return a Buffer in Jdk8, but from Java 9 on returns a ByteBuffer
-				((Buffer) bb).position((dataSetCount - 1) * getDataSetSize());
-				long l = bb.getLong();
-				return l;
+				final ByteBuffer bb = getDataBuffer();
+				final int count = Math.min(dataSetCount, bb.limit() / RECORD_SIZE);
+				if (count == 0)
+					return startTimeStamp;
+				lastTimestamp = bb.getLong((count - 1) * RECORD_SIZE);
+				lastTimestampCount = dataSetCount;
 			} catch (IOException e) {
 				logger.error(e.getMessage(), e);
 				// FIXME return negative value to signalize error? for now simply
 				// return startTimeStamp ...
+				return startTimeStamp;
 			}
 		}
-		return startTimeStamp;
+		return lastTimestamp;
 	}
 
 	@Override
-	protected List<SampledValue> readInternal(long start, long end) throws IOException {
-
-//		List<SampledValue> toReturn = new Vector<SampledValue>();
-		final List<SampledValue> toReturn = new ArrayList<>(getDataSetCount());
-		if (!canRead) {
-			enableInput();
-		}
-
-		long startpos = headerend;
-
-		fis.getChannel().position(startpos);
-		byte[] b = new byte[(int) (dataFile.length() - headerend)];
-		dis.read(b, 0, b.length);
-		ByteBuffer bb = ByteBuffer.wrap(b);
-		// casting is a hack to avoid incompatibility when building this on Java 9 and run on Java 8
-		// ByteBuffer#rewind used to return a Buffer in Jdk8, but from Java 9 on returns a ByteBuffer
-		((Buffer) bb).rewind();
-
-		for (int i = 0; i < getDataSetCountInternal(); i++) {
-			long timestamp = bb.getLong();
-			double d = bb.getDouble();
-			Quality s = Quality.getQuality(bb.get());
+	protected void readInternal(long start, long end, TimestampedDoubleBlock target) throws IOException {
+		final ByteBuffer bb = getDataBuffer();
+		final int count = bb.limit() / RECORD_SIZE;
+		final int from = lowerBound(bb, count, start);
+		final int to = upperBound(bb, count, end);
+		if (to <= from)
+			return;
+		target.ensureAdditionalCapacity(to - from);
+		for (int i = from, pos = from * RECORD_SIZE; i < to; i++, pos += RECORD_SIZE) {
+			final double d = bb.getDouble(pos + 8);
 			if (!Double.isNaN(d)) {
-				if (timestamp >= start && timestamp <= end) {
-					toReturn.add(new SampledValue(DoubleValues.of(d), timestamp, s));
-				}
-
+				target.add(bb.getLong(pos), d, bb.get(pos + 16));
 			}
 		}
-
-		// TODO iterate through file and extract the required values.
-		return toReturn;
 	}
 
 	@Override
-	protected List<SampledValue> readFullyInternal() throws IOException {
-//		List<SampledValue> toReturn = new Vector<SampledValue>();
-		final List<SampledValue> toReturn = new ArrayList<>(getDataSetCountInternal());
-
-		if (!canRead) {
-			enableInput();
-		}
-
-		long startpos = headerend;
-
-        //System.out.println("direct BB");
-        /*
-		fis.getChannel().position(startpos);
-		byte[] b = new byte[(int) (dataFile.length() - headerend)];
-		dis.read(b, 0, b.length);
-		ByteBuffer bb = ByteBuffer.wrap(b);
-		((Buffer) bb).rewind();
-        */
-        MappedByteBuffer bb = fis.getChannel().map(FileChannel.MapMode.READ_ONLY, startpos, dataFile.length() - headerend);
-		int countOfDataSets = (int) ((dataFile.length() - headerend) / getDataSetSize());
-		for (int i = 0; i < countOfDataSets; i++) {
-			long timestamp = bb.getLong();
-			double d = bb.getDouble();
-			Quality s = Quality.getQuality(bb.get());
-
-			if (!Double.isNaN(d)) {
-				toReturn.add(new SampledValue(DoubleValues.of(d), timestamp, s));
-			}
-		}
-		return toReturn;
+	protected void readFullyInternal(TimestampedDoubleBlock target) throws IOException {
+		readInternal(Long.MIN_VALUE, Long.MAX_VALUE, target);
 	}
 
 	@Override
 	public SampledValue read(long timestamp) throws IOException {
-		// TODO Search the special value
-		if (!canRead) {
-			enableInput();
-		}
-
-		long startpos = headerend;
-
-		fis.getChannel().position(startpos);
-		byte[] b = new byte[(int) (dataFile.length() - headerend)];
-		dis.read(b, 0, b.length);
-		ByteBuffer bb = ByteBuffer.wrap(b);
-		((Buffer) bb).rewind();
-		int countOfDataSets = (int) ((dataFile.length() - headerend) / 17);
-		for (int i = 0; i < countOfDataSets; i++) {
-			long timestamp2 = bb.getLong();
-			double d = bb.getDouble();
-			Quality s = Quality.getQuality(bb.get());
-			if (timestamp < timestamp2) {
-				return null;
-			}
-			if (!Double.isNaN(d) && timestamp == timestamp2) {
-				return new SampledValue(DoubleValues.of(d), timestamp2, s);
-			}
+		final ByteBuffer bb = getDataBuffer();
+		final int count = bb.limit() / RECORD_SIZE;
+		final int idx = lowerBound(bb, count, timestamp);
+		if (idx == count)
+			return null;
+		final int pos = idx * RECORD_SIZE;
+		final double d = bb.getDouble(pos + 8);
+		if (!Double.isNaN(d) && bb.getLong(pos) == timestamp) {
+			return new SampledValue(DoubleValues.of(d), timestamp, Quality.getQuality(bb.get(pos + 16)));
 		}
 		return null;
 	}
@@ -209,24 +136,12 @@ public class FlexibleIntervalFileObject extends FileObject {
 
 	@Override
 	public SampledValue readNextValue(long timestamp) throws IOException {
-		if (!canRead) {
-			enableInput();
-		}
-
-		long startpos = headerend;
-
-		fis.getChannel().position(startpos);
-		byte[] b = new byte[(int) (dataFile.length() - headerend)];
-		dis.read(b, 0, b.length);
-		ByteBuffer bb = ByteBuffer.wrap(b);
-		((Buffer) bb).rewind();
-		int countOfDataSets = (int) ((dataFile.length() - headerend) / getDataSetSize());
-		for (int i = 0; i < countOfDataSets; i++) {
-			long timestamp2 = bb.getLong();
-			double d = bb.getDouble();
-			Quality s = Quality.getQuality(bb.get());
-			if (!Double.isNaN(d) && timestamp <= timestamp2) {
-				return new SampledValue(DoubleValues.of(d), timestamp2, s);
+		final ByteBuffer bb = getDataBuffer();
+		final int count = bb.limit() / RECORD_SIZE;
+		for (int i = lowerBound(bb, count, timestamp), pos = i * RECORD_SIZE; i < count; i++, pos += RECORD_SIZE) {
+			final double d = bb.getDouble(pos + 8);
+			if (!Double.isNaN(d)) {
+				return new SampledValue(DoubleValues.of(d), bb.getLong(pos), Quality.getQuality(bb.get(pos + 16)));
 			}
 		}
 		return null;
@@ -234,41 +149,20 @@ public class FlexibleIntervalFileObject extends FileObject {
 
 	@Override
 	public SampledValue readPreviousValue(long timestamp) throws IOException {
-		if (!canRead) {
-			enableInput();
-		}
-		long startpos = headerend;
-
-		fis.getChannel().position(startpos);
-		byte[] b = new byte[(int) (dataFile.length() - headerend)];
-		dis.read(b, 0, b.length);
-		ByteBuffer bb = ByteBuffer.wrap(b);
-		((Buffer) bb).rewind();
-		int countOfDataSets = (int) ((dataFile.length() - headerend) / getDataSetSize());
-		long tcand = Long.MIN_VALUE;
-		double dcand = Double.NaN;
-		Quality qcand = null;
-		for (int i = 0; i < countOfDataSets; i++) {
-			long timestamp2 = bb.getLong();
-			double d = bb.getDouble();
-			Quality s = Quality.getQuality(bb.get());
-			if (!Double.isNaN(d) && timestamp >= timestamp2) {
-				tcand = timestamp2;
-				dcand = d;
-				qcand = s;
-//				candidate = new SampledValue(DoubleValues.of(d), timestamp2, s);
+		final ByteBuffer bb = getDataBuffer();
+		final int count = bb.limit() / RECORD_SIZE;
+		for (int i = upperBound(bb, count, timestamp) - 1, pos = i * RECORD_SIZE; i >= 0; i--, pos -= RECORD_SIZE) {
+			final double d = bb.getDouble(pos + 8);
+			if (!Double.isNaN(d)) {
+				return new SampledValue(DoubleValues.of(d), bb.getLong(pos), Quality.getQuality(bb.get(pos + 16)));
 			}
-			else if (timestamp < timestamp2)
-				break;
 		}
-		if (!Double.isNaN(dcand))
-			return new SampledValue(DoubleValues.of(dcand), tcand, qcand);
 		return null;
 	}
 
 	@Override
 	protected int getDataSetCountInternal() {
-		return (int) ((dataFile.length() - headerend) / getDataSetSize());
+		return (int) Math.max(0, (length - headerend) / RECORD_SIZE);
 	}
 
 	@Override
@@ -278,30 +172,52 @@ public class FlexibleIntervalFileObject extends FileObject {
 			return getDataSetCountInternal();
 		else if (start > fileEnd || end < startTimeStamp)
 			return 0;
-		if (!canRead) {
-			enableInput();
-		}
-		long startpos = headerend;
-		fis.getChannel().position(startpos);
-		byte[] b = new byte[(int) (dataFile.length() - headerend)];
-		dis.read(b, 0, b.length);
-		ByteBuffer bb = ByteBuffer.wrap(b);
-		((Buffer) bb).rewind();
+		final ByteBuffer bb = getDataBuffer();
+		final int count = bb.limit() / RECORD_SIZE;
+		final int to = upperBound(bb, count, end);
 		int cnt = 0;
-		int countOfDataSets = getDataSetCountInternal();
-		for (int i = 0; i < countOfDataSets; i++) {
-			long timestamp2 = bb.getLong();
-			double d = bb.getDouble();
-			if (timestamp2 > end)
-				return cnt;
-			if (!Double.isNaN(d) && timestamp2 >= start) {
+		for (int i = lowerBound(bb, count, start), pos = i * RECORD_SIZE; i < to; i++, pos += RECORD_SIZE) {
+			if (!Double.isNaN(bb.getDouble(pos + 8))) {
 				cnt++;
 			}
-			bb.get();
 		}
 		return cnt;
 	}
 
+	/**
+	 * @return
+	 * 		index of the first record with timestamp &gt;= t, or count if there is no such record
+	 */
+	private static int lowerBound(final ByteBuffer bb, final int count, final long t) {
+		int lo = 0;
+		int hi = count;
+		while (lo < hi) {
+			final int mid = (lo + hi) >>> 1;
+			if (bb.getLong(mid * RECORD_SIZE) < t)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return lo;
+	}
+
+	/**
+	 * @return
+	 * 		index of the first record with timestamp &gt; t, or count if there is no such record
+	 */
+	private static int upperBound(final ByteBuffer bb, final int count, final long t) {
+		int lo = 0;
+		int hi = count;
+		while (lo < hi) {
+			final int mid = (lo + hi) >>> 1;
+			if (bb.getLong(mid * RECORD_SIZE) <= t)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return lo;
+	}
+
 	private final static int getDataSetSize() {
 		return (Long.SIZE + Double.SIZE + Byte.SIZE) / Byte.SIZE;
 	}
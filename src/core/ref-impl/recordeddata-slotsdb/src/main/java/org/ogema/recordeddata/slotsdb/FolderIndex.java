@@ -0,0 +1,497 @@
+/**
+ * Copyright 2011-2018 Fraunhofer-Gesellschaft zur Förderung der angewandten Wissenschaften e.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ogema.recordeddata.slotsdb;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * In-memory index of the day folders of a SlotsDB, and of the time series folders they contain, so that
+ * queries need not list the database folders. For every time series and day, conservative bounds for the
+ * timestamps stored in the folder are kept: they are exact for data appended while the index was
+ * maintained, and unknown (<code>Long.MIN_VALUE</code>, <code>Long.MAX_VALUE</code>) otherwise.<br>
+ * The index is persisted as a snapshot in {@link #FILE_NAME}, plus a journal {@link #JOURNAL_NAME} of the 
+ * changes since the snapshot: a record is appended when a folder is created, when a day is removed, and 
+ * when a folder is written to for the first time since the index has been opened. After a crash, the journal
+ * is replayed on the next start, and the upper bounds of the folders written to are treated as unknown. 
+ * The snapshot is rewritten when the journal has grown larger than the index, and on {@link #close()}.<br>
+ * Only the creation of a folder requires a lock; values appended to an existing folder update its bounds 
+ * without locking.<br>
+ * Thread-safe.
+ */
+final class FolderIndex {
+
+	static final String FILE_NAME = "slotsdb.index";
+	static final String JOURNAL_NAME = "slotsdb.index.journal";
+	private static final int MAGIC = 0x534c4958; // "SLIX"
+	private static final int VERSION = 2;
+	private static final int MIN_JOURNAL_SIZE = 1024;
+	// journal records
+	private static final byte RECORD_NEW = 1;
+	private static final byte RECORD_OPEN = 2;
+	private static final byte RECORD_REMOVE_DAY = 3;
+	private static final Logger logger = LoggerFactory.getLogger(FolderIndex.class);
+
+	private final File rootNode;
+	private final File file;
+	private final File journalFile;
+	// day (yyyyMMdd) -> encoded label -> bounds; the bounds are shared with bySeries and entries
+	// guarded by this
+	private final NavigableMap<String, Map<String, Bounds>> byDay = new TreeMap<>();
+	// guarded by this
+	private final Map<String, NavigableMap<String, Bounds>> bySeries = new HashMap<>();
+	// day/label -> bounds, for appends without locking
+	private final ConcurrentMap<String, Bounds> entries = new ConcurrentHashMap<>();
+	// guarded by this
+	private DataOutputStream journal;
+	// guarded by this
+	private int journalSize;
+
+	private FolderIndex(File rootNode) {
+		this.rootNode = rootNode;
+		this.file = new File(rootNode, FILE_NAME);
+		this.journalFile = new File(rootNode, JOURNAL_NAME);
+	}
+
+	/**
+	 * Loads the persisted index and replays the journal, or scans the folder structure if there is no index.
+	 */
+	static FolderIndex open(File rootNode) {
+		final FolderIndex index = new FolderIndex(rootNode);
+		synchronized (index) {
+			boolean loaded = false;
+			boolean replayed = false;
+			if (index.file.isFile()) {
+				try {
+					index.load();
+					if (index.journalFile.isFile()) {
+						index.replayJournal();
+						replayed = true;
+					}
+					loaded = true;
+				} catch (IOException | RuntimeException e) {
+					logger.warn("SlotsDB index file corrupt, rebuilding it", e);
+					index.clear();
+				}
+			}
+			if (!loaded)
+				index.rebuild();
+			else if (replayed)
+				index.writeSnapshot();
+		}
+		return index;
+	}
+
+	private void load() throws IOException {
+		try (final DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			if (dis.readInt() != MAGIC)
+				throw new IOException("Unknown index format");
+			final int version = dis.readInt();
+			if (version != 1 && version != VERSION)
+				throw new IOException("Unknown index version " + version);
+			final int nrDays = dis.readInt();
+			for (int i = 0; i < nrDays; i++) {
+				final String day = dis.readUTF();
+				final int nrSeries = dis.readInt();
+				for (int j = 0; j < nrSeries; j++) {
+					final String label = dis.readUTF();
+					final Bounds bounds = put(day, label, dis.readLong(), dis.readLong());
+					// the folder has been written to after the snapshot
+					if (version > 1 && dis.readBoolean())
+						bounds.last = Long.MAX_VALUE;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Applies the changes recorded after the snapshot. The upper bounds of all folders which have been written to
+	 * are unknown. A truncated last record is ignored.
+	 */
+	private void replayJournal() throws IOException {
+		logger.info("SlotsDB has not been shut down properly, replaying the index journal");
+		try (final DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(journalFile)))) {
+			while (true) {
+				final byte type;
+				try {
+					type = dis.readByte();
+				} catch (EOFException e) {
+					return;
+				}
+				try {
+					switch (type) {
+					case RECORD_NEW:
+					case RECORD_OPEN:
+						final String day = dis.readUTF();
+						final String label = dis.readUTF();
+						final long first = type == RECORD_NEW ? dis.readLong() : Long.MIN_VALUE;
+						Bounds bounds = entries.get(key(day, label));
+						if (bounds == null)
+							bounds = put(day, label, first, Long.MAX_VALUE);
+						else if (first < bounds.first)
+							bounds.first = first;
+						bounds.last = Long.MAX_VALUE;
+						break;
+					case RECORD_REMOVE_DAY:
+						removeDayInternal(dis.readUTF());
+						break;
+					default:
+						throw new IOException("Unknown journal record " + type);
+					}
+				} catch (EOFException e) {
+					logger.debug("Ignoring truncated last record of the SlotsDB index journal");
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Discards the index and scans the folder structure.
+	 */
+	synchronized void rebuild() {
+		clear();
+		final File[] folders = rootNode.listFiles();
+		if (folders != null) {
+			for (File folder : folders) {
+				final String day = folder.getName();
+				if (!isDayFolder(day) || !folder.isDirectory())
+					continue;
+				final String[] labels = folder.list();
+				if (labels == null)
+					continue;
+				for (String label : labels) {
+					put(day, label, Long.MIN_VALUE, Long.MAX_VALUE);
+				}
+			}
+		}
+		writeSnapshot();
+	}
+
+	private void clear() {
+		byDay.clear();
+		bySeries.clear();
+		entries.clear();
+	}
+
+	private static boolean isDayFolder(String name) {
+		if (name.length() != 8)
+			return false;
+		for (int i = 0; i < 8; i++) {
+			if (!Character.isDigit(name.charAt(i)))
+				return false;
+		}
+		return true;
+	}
+
+	private static String key(String day, String label) {
+		return day + "/" + label;
+	}
+
+	private Bounds put(String day, String label, long first, long last) {
+		final Bounds bounds = new Bounds(first, last);
+		Map<String, Bounds> series = byDay.get(day);
+		if (series == null) {
+			series = new HashMap<>(4);
+			byDay.put(day, series);
+		}
+		series.put(label, bounds);
+		NavigableMap<String, Bounds> days = bySeries.get(label);
+		if (days == null) {
+			days = new TreeMap<>();
+			bySeries.put(label, days);
+		}
+		days.put(day, bounds);
+		entries.put(key(day, label), bounds);
+		return bounds;
+	}
+
+	/**
+	 * Registers a value written to the folder <code>day/label</code>. Requires a lock only if the folder is 
+	 * new, or written to for the first time since the index has been opened.
+	 *
+	 * @param day
+	 * 		yyyyMMdd
+	 * @param label
+	 * 		encoded label
+	 * @param timestamp
+	 */
+	void add(String day, String label, long timestamp) {
+		final Bounds bounds = entries.get(key(day, label));
+		if (bounds == null || !bounds.journaled)
+			addSynchronized(day, label, timestamp);
+		else
+			bounds.update(timestamp);
+	}
+
+	private synchronized void addSynchronized(String day, String label, long timestamp) {
+		Bounds bounds = entries.get(key(day, label));
+		if (bounds == null) {
+			bounds = put(day, label, timestamp, timestamp);
+			bounds.journaled = true;
+			appendRecord(RECORD_NEW, day, label, timestamp);
+		} else {
+			if (!bounds.journaled) {
+				bounds.journaled = true;
+				appendRecord(RECORD_OPEN, day, label, 0);
+			}
+			bounds.update(timestamp);
+		}
+	}
+
+	synchronized void removeDay(String day) {
+		if (removeDayInternal(day))
+			appendRecord(RECORD_REMOVE_DAY, day, null, 0);
+	}
+
+	private boolean removeDayInternal(String day) {
+		final Map<String, Bounds> series = byDay.remove(day);
+		if (series == null)
+			return false;
+		for (String label : series.keySet()) {
+			entries.remove(key(day, label));
+			final Map<String, Bounds> days = bySeries.get(label);
+			if (days == null)
+				continue;
+			days.remove(day);
+			if (days.isEmpty())
+				bySeries.remove(label);
+		}
+		return true;
+	}
+
+	/**
+	 * @return
+	 * 		all days, sorted
+	 */
+	synchronized List<String> getDays() {
+		return new ArrayList<>(byDay.keySet());
+	}
+
+	/**
+	 * @return
+	 * 		a map day -&gt; time series folder names, for all days between fromDay and toDay (inclusive), sorted by day
+	 */
+	synchronized NavigableMap<String, Set<String>> getContent(String fromDay, String toDay) {
+		final NavigableMap<String, Set<String>> result = new TreeMap<>();
+		for (Map.Entry<String, Map<String, Bounds>> entry : byDay.subMap(fromDay, true, toDay, true).entrySet()) {
+			result.put(entry.getKey(), new HashSet<>(entry.getValue().keySet()));
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the folders of a time series, relative to the database folder, which may contain data between
+	 * start and end. If both label and alternativeLabel exist for a day, label is preferred.
+	 *
+	 * @param label
+	 * @param alternativeLabel
+	 * 		may be null
+	 * @param fromDay
+	 * 		yyyyMMdd, inclusive
+	 * @param toDay
+	 * 		yyyyMMdd, inclusive
+	 * @param start
+	 * @param end
+	 * @return
+	 * 		folders day/label, sorted by day
+	 */
+	synchronized List<String> getFolders(String label, String alternativeLabel, String fromDay, String toDay, long start, long end) {
+		final NavigableMap<String, String> folders = new TreeMap<>();
+		if (alternativeLabel != null && !alternativeLabel.equals(label))
+			collect(alternativeLabel, fromDay, toDay, start, end, folders);
+		collect(label, fromDay, toDay, start, end, folders);
+		return new ArrayList<>(folders.values());
+	}
+
+	private void collect(String label, String fromDay, String toDay, long start, long end, Map<String, String> folders) {
+		final NavigableMap<String, Bounds> days = bySeries.get(label);
+		if (days == null)
+			return;
+		for (Map.Entry<String, Bounds> entry : days.subMap(fromDay, true, toDay, true).entrySet()) {
+			final Bounds bounds = entry.getValue();
+			if (bounds.last >= start && bounds.first <= end)
+				folders.put(entry.getKey(), entry.getKey() + "/" + label);
+		}
+	}
+
+	/**
+	 * Like {@link #getFolders(String, String, String, String, long, long)}, but only returns the first matching
+	 * folder after day.
+	 *
+	 * @return
+	 * 		the folder day/label, or null
+	 */
+	synchronized String getNextFolder(String label, String alternativeLabel, String day, boolean inclusive, long start) {
+		final String next = next(label, day, inclusive, start);
+		if (alternativeLabel == null || alternativeLabel.equals(label))
+			return next;
+		final String nextAlternative = next(alternativeLabel, day, inclusive, start);
+		if (next == null)
+			return nextAlternative;
+		if (nextAlternative == null)
+			return next;
+		// compare the day part
+		return nextAlternative.substring(0, 8).compareTo(next.substring(0, 8)) < 0 ? nextAlternative : next;
+	}
+
+	private String next(String label, String day, boolean inclusive, long start) {
+		final NavigableMap<String, Bounds> days = bySeries.get(label);
+		if (days == null)
+			return null;
+		for (Map.Entry<String, Bounds> entry : days.tailMap(day, inclusive).entrySet()) {
+			if (entry.getValue().last >= start)
+				return entry.getKey() + "/" + label;
+		}
+		return null;
+	}
+
+	/**
+	 * Appends a record to the journal, and flushes it. If the journal has grown larger than the index, 
+	 * the snapshot is rewritten instead.
+	 * 
+	 * @param label
+	 * 		null for {@link #RECORD_REMOVE_DAY}
+	 * @param first
+	 * 		only for {@link #RECORD_NEW}
+	 */
+	private void appendRecord(byte type, String day, String label, long first) {
+		if (++journalSize > Math.max(MIN_JOURNAL_SIZE, entries.size())) {
+			writeSnapshot();
+			return;
+		}
+		try {
+			if (journal == null)
+				journal = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(journalFile, true)));
+			journal.writeByte(type);
+			journal.writeUTF(day);
+			if (label != null)
+				journal.writeUTF(label);
+			if (type == RECORD_NEW)
+				journal.writeLong(first);
+			journal.flush();
+		} catch (IOException e) {
+			logger.warn("Failed to write the SlotsDB index journal; rewriting the index", e);
+			writeSnapshot();
+		}
+	}
+
+	/**
+	 * Writes the index to a temporary file, replaces the snapshot and truncates the journal. Folders written to 
+	 * since the index has been opened are marked in the snapshot, unless the index is being closed.
+	 */
+	private void writeSnapshot() {
+		writeSnapshot(false);
+	}
+
+	private void writeSnapshot(boolean closing) {
+		final File tmp = new File(rootNode, FILE_NAME + ".tmp");
+		try {
+			try (final FileOutputStream fos = new FileOutputStream(tmp); 
+					final DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(fos))) {
+				dos.writeInt(MAGIC);
+				dos.writeInt(VERSION);
+				dos.writeInt(byDay.size());
+				for (Map.Entry<String, Map<String, Bounds>> day : byDay.entrySet()) {
+					dos.writeUTF(day.getKey());
+					dos.writeInt(day.getValue().size());
+					for (Map.Entry<String, Bounds> series : day.getValue().entrySet()) {
+						final Bounds bounds = series.getValue();
+						dos.writeUTF(series.getKey());
+						dos.writeLong(bounds.first);
+						dos.writeLong(bounds.last);
+						dos.writeBoolean(!closing && bounds.journaled);
+					}
+				}
+				dos.flush();
+				fos.getFD().sync();
+			}
+			Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			logger.warn("Failed to write the SlotsDB index; it will be rebuilt on the next start", e);
+			tmp.delete();
+			file.delete();
+		}
+		truncateJournal();
+	}
+
+	private void truncateJournal() {
+		journalSize = 0;
+		if (journal != null) {
+			try {
+				journal.close();
+			} catch (IOException ignore) {}
+			journal = null;
+		}
+		if (journalFile.exists() && !journalFile.delete())
+			logger.warn("Failed to delete the SlotsDB index journal {}", journalFile);
+	}
+
+	/**
+	 * Persists the index. It must not be modified afterwards.
+	 */
+	synchronized void close() {
+		writeSnapshot(true);
+	}
+
+	private static final class Bounds {
+
+		private static final AtomicLongFieldUpdater<Bounds> FIRST = AtomicLongFieldUpdater.newUpdater(Bounds.class, "first");
+		private static final AtomicLongFieldUpdater<Bounds> LAST = AtomicLongFieldUpdater.newUpdater(Bounds.class, "last");
+
+		volatile long first;
+		volatile long last;
+		// written to since the index has been opened; guarded by the index
+		volatile boolean journaled;
+
+		Bounds(long first, long last) {
+			this.first = first;
+			this.last = last;
+		}
+
+		void update(long timestamp) {
+			long f;
+			while (timestamp < (f = first) && !FIRST.compareAndSet(this, f, timestamp));
+			long l;
+			while (timestamp > (l = last) && !LAST.compareAndSet(this, l, timestamp));
+		}
+
+	}
+
+}
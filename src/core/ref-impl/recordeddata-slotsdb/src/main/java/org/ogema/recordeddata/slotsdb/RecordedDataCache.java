@@ -15,20 +15,49 @@
  */
 package org.ogema.recordeddata.slotsdb;
 
-import java.util.List;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 
-import org.ogema.core.channelmanager.measurements.SampledValue;
+import org.ogema.core.recordeddata.TimestampedDoubleBlock;
 
 public interface RecordedDataCache {
 	
-	void cache(List<SampledValue> values);
+	/**
+	 * @param values
+	 * 		must not be modified afterwards
+	 */
+	void cache(TimestampedDoubleBlock values);
 	
 	void invalidate();
 	
 	/**
 	 * @return
-	 * 		null, if no cached information is available
+	 * 		null, if no cached information is available; must not be modified
+	 */
+	TimestampedDoubleBlock getCache();
+
+	/**
+	 * Returns a read-only view of the data section of the file, i.e. everything after the 16 byte header. 
+	 * The view is shared by all FileObjects of the file, and only the bytes appended since the last access are read.
+	 * 
+	 * @param file
+	 * @param dataLength
+	 * 		size of the data section
+	 * @return
+	 * 		a buffer with position 0 and limit equal to dataLength, or less if the file is shorter;
+	 * 		use absolute get methods on it
+	 * @throws IOException
+	 */
+	ByteBuffer getDataBuffer(File file, long dataLength) throws IOException;
+
+	/**
+	 * Drops the view of the data section from the given offset on, after the file has been modified there.
+	 * Views returned before are not affected.
+	 * 
+	 * @param offset
+	 * 		first modified byte, relative to the data section
 	 */
-	List<SampledValue> getCache();
+	void invalidateDataBuffer(long offset);
 
 }
@@ -0,0 +1,612 @@
+/**
+ * Copyright 2011-2018 Fraunhofer-Gesellschaft zur Förderung der angewandten Wissenschaften e.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ogema.recordeddata.slotsdb;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.ogema.core.channelmanager.measurements.Quality;
+import org.ogema.core.recordeddata.TimestampedDoubleBlock;
+import org.ogema.recordeddata.slotsdb.reduction.IntervalReducer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pre-aggregated rollup tiers (1 min, 15 min, 1 h, 1 d) for all time series. For every bucket of a tier,
+ * minimum, maximum, sum and count of the values with quality {@link Quality#GOOD} are stored, plus the
+ * total number of values.<br>
+ * Folder layout: <code>&lt;rollup folder&gt;/&lt;encoded label&gt;/&lt;tier in ms&gt;/&lt;span start&gt;.rollup</code>, 
+ * where each file covers {@link #BUCKETS_PER_FILE} buckets, aligned to the epoch. 
+ * Buckets of a file are stored at fixed positions, so that an open bucket can be written repeatedly. 
+ * Every series folder contains a <code>state</code> file which holds the start of the period covered 
+ * by the rollups, and the timestamp of the last value added.<br>
+ * Thread-safe. Appends for a single series must be ordered chronologically; older values are ignored.
+ */
+final class Rollups {
+
+	static final long[] TIERS = { 60000L, 900000L, 3600000L, 86400000L };
+	static final int BUCKETS_PER_FILE = 1440;
+	static final String FILE_EXTENSION = ".rollup";
+	private static final String STATE_FILE = "state";
+	// min, max, sum (double), good count, total count (int)
+	private static final int RECORD_SIZE = 32;
+	private static final Logger logger = LoggerFactory.getLogger(Rollups.class);
+
+	private final File rootNode;
+	private final ConcurrentMap<String, Series> series = new ConcurrentHashMap<>();
+
+	Rollups(File rootNode) {
+		this.rootNode = rootNode;
+		rootNode.mkdirs();
+	}
+
+	/**
+	 * @param label
+	 * 		encoded label
+	 * @return
+	 * 		true if the series has been loaded in this session, i.e. if {@link #append(String, long, double, byte, long)} 
+	 * 		does not evaluate its last argument.
+	 */
+	boolean isTracked(String label) {
+		return series.containsKey(label);
+	}
+
+	/**
+	 * @param label
+	 * 		encoded label
+	 * @param timestamp
+	 * 		rounded timestamp, as stored in the raw data
+	 * @param value
+	 * @param quality
+	 * @param previousRawTimestamp
+	 * 		timestamp of the raw value preceding this one, or Long.MIN_VALUE if there is none. Only evaluated
+	 * 		if the series is not tracked yet, to determine whether the persistent rollups are consistent 
+	 * 		with the raw data.
+	 * @throws IOException
+	 */
+	void append(String label, long timestamp, double value, byte quality, long previousRawTimestamp) throws IOException {
+		Series s = series.get(label);
+		if (s == null) {
+			s = new Series(new File(rootNode, label));
+			final Series existing = series.putIfAbsent(label, s);
+			if (existing != null)
+				s = existing;
+		}
+		synchronized (s) {
+			s.init(previousRawTimestamp);
+			s.add(timestamp, value, quality);
+		}
+	}
+
+	/**
+	 * Write all open buckets to disk
+	 * @throws IOException
+	 */
+	void flush() throws IOException {
+		for (Series s : series.values()) {
+			synchronized (s) {
+				s.flush();
+			}
+		}
+	}
+
+	void close() throws IOException {
+		flush();
+		series.clear();
+	}
+
+	/**
+	 * Start of the period for which the given tier is complete, or Long.MAX_VALUE if the
+	 * tier cannot be used. 
+	 * 
+	 * @param label
+	 * 		encoded label
+	 * @param tier
+	 * 		index in {@link #TIERS}
+	 * @param latestRawTimestamp
+	 * 		timestamp of the latest raw value, used to detect values that have been logged while 
+	 * 		rollups were disabled.
+	 */
+	long getCoverageStart(String label, int tier, long latestRawTimestamp) {
+		final long since;
+		final Series s = series.get(label);
+		if (s != null) {
+			synchronized (s) {
+				if (s.initialized) {
+					since = s.since;
+				} else {
+					since = getSince(new File(rootNode, label), latestRawTimestamp);
+				}
+			}
+		} else {
+			since = getSince(new File(rootNode, label), latestRawTimestamp);
+		}
+		if (since == Long.MIN_VALUE || since == Long.MAX_VALUE)
+			return since;
+		final long length = TIERS[tier];
+		final long start = floor(since, length);
+		return start == since ? start : start + length;
+	}
+
+	private static long getSince(File folder, long latestRawTimestamp) {
+		final long[] state = readState(folder);
+		if (state == null || state[1] < latestRawTimestamp)
+			return Long.MAX_VALUE;
+		return state[0];
+	}
+
+	/**
+	 * Passes the buckets of the given tier in the interval [start, end) to the reducer.
+	 * 
+	 * @param label
+	 * 		encoded label
+	 * @param tier
+	 * 		index in {@link #TIERS}
+	 * @param start
+	 * 		must be aligned with the tier
+	 * @param end
+	 * 		must be aligned with the tier
+	 * @param reducer
+	 * @throws IOException
+	 */
+	void read(String label, int tier, long start, long end, IntervalReducer reducer) throws IOException {
+		final Series s = series.get(label);
+		if (s != null) {
+			synchronized (s) {
+				s.flush();
+			}
+		}
+		final long length = TIERS[tier];
+		final long span = length * BUCKETS_PER_FILE;
+		final File folder = new File(new File(rootNode, label), String.valueOf(length));
+		final long firstSpan = floor(start, span);
+		final List<Long> spans = new ArrayList<>();
+		final File[] files = folder.listFiles();
+		if (files == null)
+			return;
+		for (File f : files) {
+			final long spanStart = getSpanStart(f);
+			if (spanStart != Long.MIN_VALUE && spanStart >= firstSpan && spanStart < end)
+				spans.add(spanStart);
+		}
+		Collections.sort(spans);
+		final ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE * BUCKETS_PER_FILE);
+		for (long spanStart : spans) {
+			buffer.clear();
+			try (final FileChannel channel = new FileInputStream(new File(folder, spanStart + FILE_EXTENSION)).getChannel()) {
+				while (buffer.hasRemaining() && channel.read(buffer) >= 0) {}
+			}
+			final int records = buffer.position() / RECORD_SIZE;
+			final int first = start > spanStart ? (int) ((start - spanStart) / length) : 0;
+			final int last = end >= spanStart + span ? records : (int) Math.min(records, (end - spanStart + length - 1) / length);
+			for (int i = first; i < last; i++) {
+				final int pos = i * RECORD_SIZE;
+				final int total = buffer.getInt(pos + 28);
+				if (total == 0)
+					continue;
+				reducer.addAggregate(spanStart + i * length, buffer.getDouble(pos), buffer.getDouble(pos + 8), 
+						buffer.getDouble(pos + 16), buffer.getInt(pos + 24), total);
+			}
+		}
+	}
+
+	/**
+	 * @return
+	 * 		the start time of the period covered by the rollup file, or Long.MIN_VALUE if 
+	 * 		this is not a rollup file
+	 */
+	private static long getSpanStart(File file) {
+		final String name = file.getName();
+		if (!name.endsWith(FILE_EXTENSION))
+			return Long.MIN_VALUE;
+		try {
+			return Long.parseLong(name.substring(0, name.length() - FILE_EXTENSION.length()));
+		} catch (NumberFormatException e) {
+			return Long.MIN_VALUE;
+		}
+	}
+
+	/**
+	 * Deletes the existing rollups of a series and returns a builder for new ones. All raw values 
+	 * of the series must be passed to the builder in chronological order, then {@link Builder#finish()}
+	 * must be called. Appends for the series must be blocked in the meantime.
+	 * 
+	 * @param label
+	 * 		encoded label
+	 * @return
+	 */
+	Builder rebuild(String label) {
+		delete(label);
+		return new Builder(new File(rootNode, label));
+	}
+
+	/**
+	 * Delete the rollups of a series, e.g. before rebuilding them.
+	 * 
+	 * @param label
+	 * 		encoded label
+	 */
+	void delete(String label) {
+		final Series s = series.remove(label);
+		if (s != null) {
+			synchronized (s) {
+				s.deleted = true;
+			}
+		}
+		deleteRecursively(new File(rootNode, label));
+	}
+
+	void deleteAll() {
+		final Iterator<Series> it = series.values().iterator();
+		while (it.hasNext()) {
+			final Series s = it.next();
+			synchronized (s) {
+				s.deleted = true;
+			}
+			it.remove();
+		}
+		final File[] files = rootNode.listFiles();
+		if (files != null) {
+			for (File f : files) {
+				deleteRecursively(f);
+			}
+		}
+	}
+
+	/**
+	 * Delete rollup files that only contain data older than limit, for all series.
+	 * 
+	 * @param limit
+	 * @throws IOException
+	 */
+	void deleteOlderThan(long limit) throws IOException {
+		final File[] labels = rootNode.listFiles();
+		if (labels == null)
+			return;
+		for (File folder : labels) {
+			if (!folder.isDirectory())
+				continue;
+			final Series s = series.get(folder.getName());
+			if (s != null) {
+				synchronized (s) {
+					s.flush();
+					deleteOlderThan(folder, limit);
+					if (s.initialized && s.since < limit) {
+						s.since = limit;
+						s.stateDirty = true;
+						s.flush();
+					}
+				}
+			} else {
+				deleteOlderThan(folder, limit);
+				final long[] state = readState(folder);
+				if (state != null && state[0] < limit)
+					writeState(folder, limit, state[1]);
+			}
+		}
+	}
+
+	private static void deleteOlderThan(File seriesFolder, long limit) {
+		for (long length : TIERS) {
+			final File[] files = new File(seriesFolder, String.valueOf(length)).listFiles();
+			if (files == null)
+				continue;
+			final long span = length * BUCKETS_PER_FILE;
+			for (File f : files) {
+				final long spanStart = getSpanStart(f);
+				if (spanStart != Long.MIN_VALUE && spanStart + span <= limit)
+					f.delete();
+			}
+		}
+	}
+
+	private static void deleteRecursively(File file) {
+		final File[] files = file.listFiles();
+		if (files != null) {
+			for (File f : files) {
+				deleteRecursively(f);
+			}
+		}
+		file.delete();
+	}
+
+	static long floor(long timestamp, long length) {
+		final long r = timestamp % length;
+		return r >= 0 ? timestamp - r : timestamp - r - length;
+	}
+
+	/**
+	 * @return
+	 * 		since and last timestamp, or null if the state file does not exist or cannot be read. In the latter
+	 * 		case the rollups do not cover any existing values, and the state is written anew on the next append.
+	 */
+	private static long[] readState(File folder) {
+		final File file = new File(folder, STATE_FILE);
+		if (!file.exists())
+			return null;
+		try (final DataInputStream dis = new DataInputStream(new FileInputStream(file))) {
+			return new long[] { dis.readLong(), dis.readLong() };
+		} catch (IOException e) {
+			logger.warn("Rollup state of {} cannot be read, rollups are used for new values only; "
+					+ "use slotsdb:rebuildRollups to restore them", folder.getName(), e);
+			return null;
+		}
+	}
+
+	// the state file is replaced atomically, so an interrupted write leaves the previous state
+	private static void writeState(File folder, long since, long lastTimestamp) throws IOException {
+		folder.mkdirs();
+		final File temp = new File(folder, STATE_FILE + ".tmp");
+		try (final DataOutputStream dos = new DataOutputStream(new FileOutputStream(temp))) {
+			dos.writeLong(since);
+			dos.writeLong(lastTimestamp);
+		}
+		Files.move(temp.toPath(), new File(folder, STATE_FILE).toPath(), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Bulk writer for the rollups of a single series, which writes complete files.
+	 */
+	static final class Builder implements FileObjectProxy.BlockConsumer {
+
+		private final File folder;
+		private final long[] spans = new long[TIERS.length];
+		private final ByteBuffer[] buffers = new ByteBuffer[TIERS.length];
+		private final int[] sizes = new int[TIERS.length];
+		private long lastTimestamp = Long.MIN_VALUE;
+
+		Builder(File folder) {
+			this.folder = folder;
+			for (int i = 0; i < TIERS.length; i++) {
+				buffers[i] = ByteBuffer.allocate(RECORD_SIZE * BUCKETS_PER_FILE);
+			}
+		}
+
+		@Override
+		public void accept(TimestampedDoubleBlock block) throws IOException {
+			final int size = block.size();
+			final long[] t = block.getTimestamps();
+			final double[] v = block.getValues();
+			final byte[] q = block.getQualities();
+			for (int i = 0; i < size; i++) {
+				add(t[i], v[i], q[i]);
+			}
+		}
+
+		void add(long timestamp, double value, byte quality) throws IOException {
+			if (timestamp <= lastTimestamp)
+				return;
+			lastTimestamp = timestamp;
+			final boolean isGood = quality == Quality.GOOD.getQuality();
+			for (int i = 0; i < TIERS.length; i++) {
+				final long length = TIERS[i];
+				final long span = floor(timestamp, length * BUCKETS_PER_FILE);
+				final ByteBuffer buffer = buffers[i];
+				if (sizes[i] == 0 || span != spans[i]) {
+					writeSpan(i);
+					spans[i] = span;
+				}
+				final int idx = (int) ((timestamp - span) / length);
+				final int pos = idx * RECORD_SIZE;
+				if (idx >= sizes[i]) {
+					// buffer content beyond size has been zeroed
+					sizes[i] = idx + 1;
+				}
+				buffer.putInt(pos + 28, buffer.getInt(pos + 28) + 1);
+				if (!isGood)
+					continue;
+				final int good = buffer.getInt(pos + 24);
+				if (good == 0 || value < buffer.getDouble(pos))
+					buffer.putDouble(pos, value);
+				if (good == 0 || value > buffer.getDouble(pos + 8))
+					buffer.putDouble(pos + 8, value);
+				buffer.putDouble(pos + 16, buffer.getDouble(pos + 16) + value);
+				buffer.putInt(pos + 24, good + 1);
+			}
+		}
+
+		private void writeSpan(int tier) throws IOException {
+			final int size = sizes[tier];
+			if (size == 0)
+				return;
+			final ByteBuffer buffer = buffers[tier];
+			final File file = new File(new File(folder, String.valueOf(TIERS[tier])), spans[tier] + FILE_EXTENSION);
+			file.getParentFile().mkdirs();
+			buffer.position(0);
+			buffer.limit(size * RECORD_SIZE);
+			try (final FileChannel channel = new FileOutputStream(file).getChannel()) {
+				while (buffer.hasRemaining()) {
+					channel.write(buffer);
+				}
+			}
+			buffer.clear();
+			Arrays.fill(buffer.array(), 0, size * RECORD_SIZE, (byte) 0);
+			sizes[tier] = 0;
+		}
+
+		/**
+		 * Write the remaining data; the rollups cover all values passed to the builder.
+		 * @throws IOException
+		 */
+		void finish() throws IOException {
+			for (int i = 0; i < TIERS.length; i++) {
+				writeSpan(i);
+			}
+			writeState(folder, Long.MIN_VALUE, lastTimestamp);
+		}
+
+	}
+
+	/**
+	 * Rollup state of a single time series; guarded by its own monitor 
+	 */
+	private static final class Series {
+
+		private final File folder;
+		private final Bucket[] open = new Bucket[TIERS.length];
+		private boolean initialized;
+		private boolean deleted;
+		private boolean stateDirty;
+		private long since;
+		private long lastTimestamp = Long.MIN_VALUE;
+
+		Series(File folder) {
+			this.folder = folder;
+		}
+
+		void init(long previousRawTimestamp) throws IOException {
+			if (initialized)
+				return;
+			final long[] state = readState(folder);
+			if (state != null && state[1] >= previousRawTimestamp) {
+				since = state[0];
+				lastTimestamp = state[1];
+			} else {
+				// either the rollups are new or values have been logged while rollups were disabled
+				since = previousRawTimestamp == Long.MIN_VALUE ? Long.MIN_VALUE : previousRawTimestamp + 1;
+				lastTimestamp = previousRawTimestamp;
+				stateDirty = true;
+			}
+			initialized = true;
+		}
+
+		void add(long timestamp, double value, byte quality) throws IOException {
+			if (deleted || timestamp <= lastTimestamp)
+				return;
+			for (int i = 0; i < TIERS.length; i++) {
+				final long bucketStart = floor(timestamp, TIERS[i]);
+				Bucket b = open[i];
+				if (b == null || b.start != bucketStart) {
+					if (b != null)
+						write(i, b);
+					b = read(i, bucketStart);
+					open[i] = b;
+				}
+				b.add(value, quality);
+			}
+			lastTimestamp = timestamp;
+			stateDirty = true;
+		}
+
+		void flush() throws IOException {
+			if (deleted || !initialized)
+				return;
+			for (int i = 0; i < TIERS.length; i++) {
+				if (open[i] != null)
+					write(i, open[i]);
+			}
+			if (stateDirty) {
+				writeState(folder, since, lastTimestamp);
+				stateDirty = false;
+			}
+		}
+
+		private File getFile(int tier, long bucketStart) {
+			final long span = TIERS[tier] * BUCKETS_PER_FILE;
+			return new File(new File(folder, String.valueOf(TIERS[tier])), floor(bucketStart, span) + FILE_EXTENSION);
+		}
+
+		private long getOffset(int tier, long bucketStart) {
+			final long span = TIERS[tier] * BUCKETS_PER_FILE;
+			return (bucketStart - floor(bucketStart, span)) / TIERS[tier] * RECORD_SIZE;
+		}
+
+		private Bucket read(int tier, long bucketStart) throws IOException {
+			final Bucket b = new Bucket(bucketStart);
+			final File file = getFile(tier, bucketStart);
+			final long offset = getOffset(tier, bucketStart);
+			if (!file.exists() || file.length() < offset + RECORD_SIZE)
+				return b;
+			try (final RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+				raf.seek(offset);
+				b.min = raf.readDouble();
+				b.max = raf.readDouble();
+				b.sum = raf.readDouble();
+				b.good = raf.readInt();
+				b.total = raf.readInt();
+			}
+			if (b.good == 0) {
+				b.min = Double.MAX_VALUE;
+				b.max = Double.NEGATIVE_INFINITY;
+			}
+			return b;
+		}
+
+		private void write(int tier, Bucket b) throws IOException {
+			if (!b.dirty)
+				return;
+			final File file = getFile(tier, b.start);
+			file.getParentFile().mkdirs();
+			try (final RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+				raf.seek(getOffset(tier, b.start));
+				raf.writeDouble(b.good > 0 ? b.min : 0);
+				raf.writeDouble(b.good > 0 ? b.max : 0);
+				raf.writeDouble(b.sum);
+				raf.writeInt(b.good);
+				raf.writeInt(b.total);
+			}
+			b.dirty = false;
+		}
+
+	}
+
+	private static final class Bucket {
+
+		final long start;
+		double min = Double.MAX_VALUE;
+		double max = Double.NEGATIVE_INFINITY;
+		double sum;
+		int good;
+		int total;
+		boolean dirty;
+
+		Bucket(long start) {
+			this.start = start;
+		}
+
+		void add(double value, byte quality) {
+			total++;
+			dirty = true;
+			if (quality != Quality.GOOD.getQuality())
+				return;
+			good++;
+			sum += value;
+			if (value < min)
+				min = value;
+			if (value > max)
+				max = value;
+		}
+
+	}
+
+}
@@ -23,11 +23,20 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
+import java.security.PrivilegedActionException;
+import java.security.PrivilegedExceptionAction;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.Hashtable;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import org.apache.felix.scr.annotations.Activate;
 import org.apache.felix.scr.annotations.Component;
@@ -42,10 +51,15 @@ import org.ogema.core.administration.FrameworkClock.ClockChangeListener;
 import org.ogema.core.administration.FrameworkClock.ClockChangedEvent;
 import org.ogema.core.channelmanager.measurements.SampledValue;
 import org.ogema.core.recordeddata.RecordedDataConfiguration;
+import org.ogema.core.recordeddata.ReductionMode;
 import org.ogema.recordeddata.DataRecorder;
 import org.ogema.recordeddata.DataRecorderException;
 import org.ogema.recordeddata.RecordedDataStorage;
+import org.ogema.recordeddata.TimeSeriesQueryListener;
 import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceRegistration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /*
  * Timers: 
@@ -65,7 +79,7 @@ import org.osgi.framework.BundleContext;
 @Service(DataRecorder.class)
 public class SlotsDb implements DataRecorder, ClockChangeListener {
 
-//	private final static Logger logger = LoggerFactory.getLogger(SlotsDb.class);
+	private final static Logger logger = LoggerFactory.getLogger(SlotsDb.class);
 
 	/*
 	 * File extension for SlotsDB files. Only these Files will be loaded.
@@ -145,6 +159,60 @@ public class SlotsDb implements DataRecorder, ClockChangeListener {
 		}
 	});
 
+	/*
+	 * configures whether log files are memory-mapped for reading (default: true). If disabled,
+	 * the data section of a file is copied to the heap instead; this may be preferable on
+	 * file systems that do not allow deleting mapped files.
+	 */
+	public final static boolean MEMORY_MAPPED_READS = AccessController.doPrivileged(new PrivilegedAction<Boolean>() {
+
+		@Override
+		public Boolean run() {
+			return !"false".equalsIgnoreCase(System.getProperty("org.ogema.recordeddata.slotsdb.mmap"));
+		}
+	});
+
+	/**
+	 * System property ({@value}) that enables pre-aggregated rollups (minimum, maximum, sum and count per
+	 * 1 min, 15 min, 1 h and 1 d). Reduced queries whose start time and interval size are aligned with a 
+	 * rollup tier are answered from the rollups instead of the raw data. Default: false. Rollups are evaluated
+	 * when the database is started, and can be rebuilt from the raw data with the shell command 
+	 * <code>slotsdb:rebuildRollups</code>.
+	 */
+	public final static String ROLLUPS_PROPERTY = "org.ogema.recordeddata.slotsdb.rollups";
+
+	/**
+	 * System property ({@value}) for the lifetime of rollups in days, independently of the raw data lifetime.
+	 * Default: unlimited.
+	 */
+	public final static String ROLLUPS_LIFETIME_PROPERTY = "org.ogema.recordeddata.slotsdb.rollups.limit_days";
+
+	/**
+	 * System property ({@value}) for the group commit period in milliseconds. If set to a positive value, 
+	 * appended values are buffered in memory and written to disk in one pass per period, instead of
+	 * one file access per value. Values that have not been committed yet are lost if the framework 
+	 * crashes. Default: 0, i.e. values are written immediately.
+	 */
+	public final static String GROUP_COMMIT_PROPERTY = "org.ogema.recordeddata.slotsdb.groupcommit";
+
+	/**
+	 * System property ({@value}) for the maximum size of the in-memory cache for log file contents, in kB.
+	 * The size of an entry is estimated from the number of values it holds. Default: 8192.
+	 */
+	public final static String CACHE_SIZE_PROPERTY = "org.ogema.recordeddata.slotsdb.cache_size";
+
+	/**
+	 * System property ({@value}) for the maximum number of threads used to read multiple time series in parallel,
+	 * see {@link #getValues(Collection, long, long, long, ReductionMode, TimeSeriesQueryListener)}. 
+	 * Default: the number of available processors.
+	 */
+	public final static String QUERY_THREADS_PROPERTY = "org.ogema.recordeddata.slotsdb.query_threads";
+
+	/*
+	 * Subfolder of the database root folder for rollup files
+	 */
+	final static String ROLLUPS_FOLDER = "rollups";
+
 	/*
 	 * Minimum Size for SLOTSDB (in MB).
 	 */
@@ -175,7 +243,11 @@ public class SlotsDb implements DataRecorder, ClockChangeListener {
     
 	private String dbRootFolder; // quasi-final
 	private FileObjectProxy proxy; // quasi-final
+	// null if group commit is disabled
+	private volatile AppendBuffer appendBuffer; // quasi-final
+	private volatile ForkJoinPool queryPool; // quasi-final
 	private String SLOTS_DB_STORAGE_ID_PATH; // quasi-final
+	private ServiceRegistration<?> shellCommands; // quasi-final
 	private final Map<String, SlotsDbStorage> slotsDbStorages = new HashMap<String, SlotsDbStorage>();
 	
 	volatile FrameworkClock clock;  
@@ -209,6 +281,10 @@ public class SlotsDb implements DataRecorder, ClockChangeListener {
 		dbRootFolder = baseFolder;
 		SLOTS_DB_STORAGE_ID_PATH = baseFolder + "/slotsDbStorageIDs.ser";
 		this.proxy = new FileObjectProxy(baseFolder, clock);
+		final Long commitPeriod = Long.getLong(GROUP_COMMIT_PROPERTY);
+		this.appendBuffer = commitPeriod != null && commitPeriod > 0 ? new AppendBuffer(commitPeriod) : null;
+		final Integer queryThreads = Integer.getInteger(QUERY_THREADS_PROPERTY);
+		this.queryPool = new ForkJoinPool(queryThreads != null && queryThreads > 0 ? queryThreads : Runtime.getRuntime().availableProcessors());
 		readPersistedSlotsDbStorages();
 	}
 
@@ -216,10 +292,28 @@ public class SlotsDb implements DataRecorder, ClockChangeListener {
     protected synchronized void activate(BundleContext ctx, Map<String, Object> config) {
 		String baseFolder = (DB_ROOT_FOLDER != null ? DB_ROOT_FOLDER : DEFAULT_DB_ROOT_FOLDER);
 		init(baseFolder);
+		final Hashtable<String, Object> props = new Hashtable<String, Object>();
+		props.put("osgi.command.scope", "slotsdb");
+		props.put("osgi.command.function", new String[] { "rebuildRollups", "cacheStats" });
+		shellCommands = ctx.registerService(SlotsDbCommands.class.getName(), new SlotsDbCommands(this), props);
 	}
 
 	@Deactivate
 	protected synchronized void deactivate(Map<String, Object> config) {
+		if (shellCommands != null) {
+			try {
+				shellCommands.unregister();
+			} catch (Exception ignore) {}
+			shellCommands = null;
+		}
+		final AppendBuffer appendBuffer = this.appendBuffer;
+		if (appendBuffer != null)
+			appendBuffer.close();
+		this.appendBuffer = null;
+		final ForkJoinPool queryPool = this.queryPool;
+		if (queryPool != null)
+			queryPool.shutdownNow();
+		this.queryPool = null;
 		if (proxy != null)
 			proxy.close();
 		synchronized (slotsDbStorages) {
@@ -237,6 +331,14 @@ public class SlotsDb implements DataRecorder, ClockChangeListener {
 		return proxy;
 	}
 	
+	/**
+	 * @return
+	 * 		null if group commit is disabled
+	 */
+	final AppendBuffer getAppendBuffer() {
+		return appendBuffer;
+	}
+	
 	/**
 	 * Persist the all SlotsDbStorage objects
 	 */
@@ -329,11 +431,17 @@ public class SlotsDb implements DataRecorder, ClockChangeListener {
 
 	@Override
 	public boolean deleteRecordedDataStorage(String id) {
+		final SlotsDbStorage storage;
 		synchronized (slotsDbStorages) {
-			if (slotsDbStorages.remove(id) == null) {
+			storage = slotsDbStorages.remove(id);
+			if (storage == null) {
 				return false;
 			}
 		}
+		// values not committed yet must not be written by a later group commit
+		final AppendBuffer appendBuffer = this.appendBuffer;
+		if (appendBuffer != null)
+			appendBuffer.drain(storage);
 		persistSlotsDbStorages();
 		return true;
 	}
@@ -349,6 +457,106 @@ public class SlotsDb implements DataRecorder, ClockChangeListener {
 		return ids;
 	}
 	
+	@Override
+	public Map<String, List<SampledValue>> getValues(final Collection<String> ids, final long startTime, final long endTime,
+			final long intervalSize, final ReductionMode mode, final TimeSeriesQueryListener listener) throws DataRecorderException {
+		final Map<String, SlotsDbStorage> storages = new LinkedHashMap<>();
+		synchronized (slotsDbStorages) {
+			for (String id : ids) {
+				final SlotsDbStorage storage = slotsDbStorages.get(id);
+				if (storage != null)
+					storages.put(id, storage);
+			}
+		}
+		final Map<String, List<SampledValue>> results = new LinkedHashMap<>();
+		if (storages.isEmpty() || endTime <= startTime)
+			return results;
+		final ForkJoinPool pool = queryPool;
+		if (pool == null)
+			throw new IllegalStateException("SlotsDb has not been initialized yet");
+		final List<Future<List<SampledValue>>> futures;
+		try {
+			futures = AccessController.doPrivileged(new PrivilegedExceptionAction<List<Future<List<SampledValue>>>>() {
+
+				@Override
+				public List<Future<List<SampledValue>>> run() throws IOException {
+					// the day folders are listed once for all time series
+					final FileObjectProxy.DayFolders dayFolders = getProxy().listDayFolders(startTime, endTime - 1);
+					final List<Future<List<SampledValue>>> futures = new ArrayList<>(storages.size());
+					for (final Map.Entry<String, SlotsDbStorage> entry : storages.entrySet()) {
+						futures.add(pool.submit(new Callable<List<SampledValue>>() {
+
+							@Override
+							public List<SampledValue> call() throws Exception {
+								final SlotsDbStorage storage = entry.getValue();
+								final List<SampledValue> values = mode == null ? storage.getValues(startTime, endTime, dayFolders)
+										: storage.getValues(startTime, endTime, intervalSize, mode, dayFolders);
+								if (listener != null) {
+									try {
+										listener.valuesAvailable(entry.getKey(), values);
+									} catch (Exception e) {
+										logger.warn("Query listener failed", e);
+									}
+								}
+								return values;
+							}
+						}));
+					}
+					return futures;
+				}
+			});
+		} catch (PrivilegedActionException e) {
+			throw new DataRecorderException("Query failed", e.getCause());
+		}
+		final Iterator<String> idIt = storages.keySet().iterator();
+		try {
+			for (Future<List<SampledValue>> future : futures) {
+				results.put(idIt.next(), future.get());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			cancel(futures);
+			throw new DataRecorderException("Query interrupted", e);
+		} catch (ExecutionException e) {
+			cancel(futures);
+			throw new DataRecorderException("Query failed", e.getCause());
+		}
+		return results;
+	}
+
+	private static void cancel(List<? extends Future<?>> futures) {
+		for (Future<?> f : futures) {
+			f.cancel(true);
+		}
+	}
+
+	/**
+	 * Recreates the rollups from the raw data. 
+	 * 
+	 * @param id
+	 * 		the time series id, or null to rebuild all rollups
+	 * @return
+	 * 		the number of time series processed
+	 * @throws IOException
+	 * @throws IllegalStateException if rollups are disabled
+	 */
+	int rebuildRollups(String id) throws IOException {
+		final List<SlotsDbStorage> storages = new ArrayList<>();
+		synchronized (slotsDbStorages) {
+			if (id == null) {
+				storages.addAll(slotsDbStorages.values());
+			} else {
+				final SlotsDbStorage storage = slotsDbStorages.get(id);
+				if (storage != null)
+					storages.add(storage);
+			}
+		}
+		for (SlotsDbStorage storage : storages) {
+			storage.rebuildRollups();
+		}
+		return storages.size();
+	}
+
 	@Override
 	public void clockChanged(ClockChangedEvent e) {
 		final FrameworkClock clock = e.getClock();
@@ -15,21 +15,97 @@
  */
 package org.ogema.recordeddata.slotsdb;
 
-import java.util.List;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
 
-import org.ogema.core.channelmanager.measurements.SampledValue;
+import org.ogema.core.recordeddata.TimestampedDoubleBlock;
 
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.cache.Weigher;
 
+/**
+ * Cache for the content of log files, bounded by the approximate memory footprint of the cached values, 
+ * see {@link SlotsDb#CACHE_SIZE_PROPERTY}. Least recently used files are evicted first. The views of the 
+ * data sections of the files are cached separately, with the same bound on their heap footprint.
+ */
 class SlotsDbCache {
 
+	static final long DEFAULT_MAX_SIZE_KB = 8 * 1024;
+	// per value: timestamp, value and quality
+	private static final int BYTES_PER_VALUE = 17;
+	// approximate size of the block, the array headers and the key
+	private static final int BYTES_PER_ENTRY = 160;
+
 	/*
 	 *Map< encoded recorded data id + "/" + filename -> values> 
 	 */
-	private final Cache<String, List<SampledValue>> valueCache = CacheBuilder.newBuilder().softValues().build();
+	private final Cache<String, TimestampedDoubleBlock> valueCache;
+	/*
+	 *Map< encoded recorded data id + "/" + filename -> data section> 
+	 */
+	private final Cache<String, DataSection> sectionCache;
+	/*
+	 * Mappings no longer used by the cached sections. Readers may still access them, so they are
+	 * unmapped only in releaseRetired(), while no reads are running.
+	 */
+	private final Queue<ByteBuffer> retired = new ConcurrentLinkedQueue<>();
 	
-	private final void cache(final String accessToken, final List<SampledValue> values) {
+	SlotsDbCache() {
+		this(getMaxSize());
+	}
+
+	SlotsDbCache(long maxBytes) {
+		this.valueCache = CacheBuilder.newBuilder()
+				.maximumWeight(maxBytes)
+				.weigher(new Weigher<String, TimestampedDoubleBlock>() {
+
+					@Override
+					public int weigh(String key, TimestampedDoubleBlock value) {
+						// the capacity of the block may exceed its size
+						final long bytes = BYTES_PER_ENTRY + (long) BYTES_PER_VALUE * value.getTimestamps().length;
+						return (int) Math.min(bytes, Integer.MAX_VALUE);
+					}
+				})
+				.recordStats()
+				.build();
+		this.sectionCache = CacheBuilder.newBuilder()
+				.maximumWeight(maxBytes)
+				.weigher(new Weigher<String, DataSection>() {
+
+					@Override
+					public int weigh(String key, DataSection value) {
+						return value.getWeight();
+					}
+				})
+				.removalListener(new RemovalListener<String, DataSection>() {
+
+					@Override
+					public void onRemoval(RemovalNotification<String, DataSection> notification) {
+						// sections are only replaced by themselves, to update their weight
+						if (notification.getCause() != RemovalCause.REPLACED)
+							notification.getValue().release();
+					}
+				})
+				.build();
+	}
+
+	private static long getMaxSize() {
+		final Long kb = Long.getLong(SlotsDb.CACHE_SIZE_PROPERTY);
+		return 1024 * (kb != null && kb >= 0 ? kb : DEFAULT_MAX_SIZE_KB);
+	}
+	
+	private final void cache(final String accessToken, final TimestampedDoubleBlock values) {
 		valueCache.put(accessToken, values);
 	}
 	
@@ -37,7 +113,7 @@ class SlotsDbCache {
 		valueCache.invalidate(accessToken);
 	}
 	
-	private final List<SampledValue> getCache(final String accessToken) {
+	private final TimestampedDoubleBlock getCache(final String accessToken) {
 		return valueCache.getIfPresent(accessToken);
 	}
 	
@@ -45,8 +121,89 @@ class SlotsDbCache {
 		return new RecordedDataCacheImpl(this, encodedRecordedData, filename);
 	}
 	
+	private ByteBuffer getDataBuffer(final String accessToken, final File file, long dataLength) throws IOException {
+		final DataSection section;
+		try {
+			section = sectionCache.get(accessToken, new Callable<DataSection>() {
+
+				@Override
+				public DataSection call() {
+					return new DataSection(file, retired);
+				}
+			});
+		} catch (ExecutionException e) {
+			throw new IllegalStateException(e);
+		}
+		final int weight = section.getWeight();
+		final ByteBuffer buffer = section.get(dataLength);
+		if (section.getWeight() != weight)
+			sectionCache.asMap().replace(accessToken, section, section);
+		return buffer;
+	}
+
+	private void invalidateDataBuffer(final String accessToken, long offset) {
+		final DataSection section = sectionCache.getIfPresent(accessToken);
+		if (section == null)
+			return;
+		if (offset <= 0) {
+			sectionCache.invalidate(accessToken);
+			return;
+		}
+		final int weight = section.getWeight();
+		section.truncate(offset);
+		if (section.getWeight() != weight)
+			sectionCache.asMap().replace(accessToken, section, section);
+	}
+
+	/**
+	 * Unmaps the files in the folder, so it can be deleted. Must only be called while no reads are running,
+	 * i.e. with the folder lock held exclusively.
+	 * 
+	 * @param folder
+	 */
+	void release(File folder) {
+		final String prefix = folder.getAbsolutePath() + File.separator;
+		for (Map.Entry<String, DataSection> entry : sectionCache.asMap().entrySet()) {
+			if (entry.getValue().getFile().getAbsolutePath().startsWith(prefix))
+				sectionCache.invalidate(entry.getKey());
+		}
+		releaseRetired();
+	}
+
+	/**
+	 * Unmaps the mappings no longer used by any cached section. Must only be called while no reads are running,
+	 * i.e. with the folder lock held exclusively.
+	 */
+	void releaseRetired() {
+		ByteBuffer buffer;
+		while ((buffer = retired.poll()) != null)
+			DataSection.unmap(buffer);
+	}
+
+	/**
+	 * Drops all cached values and sections. Must only be called while no reads are running,
+	 * i.e. with the folder lock held exclusively.
+	 */
 	void clearCache() {
 		valueCache.invalidateAll();
+		sectionCache.invalidateAll();
+		releaseRetired();
+	}
+
+	/**
+	 * @return
+	 * 		hit, miss and eviction counts since the cache has been created
+	 */
+	CacheStats getStats() {
+		return valueCache.stats();
+	}
+
+	/**
+	 * @return
+	 * 		number of cached files
+	 */
+	long size() {
+		return valueCache.size();
 	}
 	
 	/**
@@ -64,7 +221,7 @@ class SlotsDbCache {
 			this.key = recordedDataId + "/" + file;
 		}
 		
-		public void cache(List<SampledValue> values) {
+		public void cache(TimestampedDoubleBlock values) {
 			globalCache.cache(key, values);
 		}
 		
@@ -72,9 +229,17 @@ class SlotsDbCache {
 			globalCache.invalidate(key);
 		}
 		
-		public List<SampledValue> getCache() {
+		public TimestampedDoubleBlock getCache() {
 			return globalCache.getCache(key);
 		}
+
+		public ByteBuffer getDataBuffer(File file, long dataLength) throws IOException {
+			return globalCache.getDataBuffer(key, file, dataLength);
+		}
+
+		public void invalidateDataBuffer(long offset) {
+			globalCache.invalidateDataBuffer(key, offset);
+		}
 		
 	}
 	
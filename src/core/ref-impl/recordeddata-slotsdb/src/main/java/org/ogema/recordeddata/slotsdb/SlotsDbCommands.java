@@ -0,0 +1,58 @@
+/**
+ * Copyright 2011-2018 Fraunhofer-Gesellschaft zur Förderung der angewandten Wissenschaften e.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ogema.recordeddata.slotsdb;
+
+import java.io.IOException;
+
+import com.google.common.cache.CacheStats;
+
+/**
+ * Gogo shell commands for the SlotsDB; registered by {@link SlotsDb}.
+ */
+public class SlotsDbCommands {
+
+	private final SlotsDb slotsDb;
+
+	SlotsDbCommands(SlotsDb slotsDb) {
+		this.slotsDb = slotsDb;
+	}
+
+	/**
+	 * Recreate the rollups of all time series from their raw data
+	 */
+	public String rebuildRollups() throws IOException {
+		return "Rebuilt rollups for " + slotsDb.rebuildRollups(null) + " time series.";
+	}
+
+	/**
+	 * Recreate the rollups of a single time series from its raw data
+	 */
+	public String rebuildRollups(String id) throws IOException {
+		final int cnt = slotsDb.rebuildRollups(id);
+		return cnt == 0 ? "Time series " + id + " not found." : "Rebuilt rollups for " + id + ".";
+	}
+
+	/**
+	 * Print the statistics of the log file cache
+	 */
+	public String cacheStats() {
+		final SlotsDbCache cache = slotsDb.getProxy().getValueCache();
+		final CacheStats stats = cache.getStats();
+		return "Cached files: " + cache.size() + ", hits: " + stats.hitCount() + ", misses: " + stats.missCount() 
+				+ ", hit rate: " + String.format("%.3f", stats.hitRate()) + ", evictions: " + stats.evictionCount();
+	}
+
+}
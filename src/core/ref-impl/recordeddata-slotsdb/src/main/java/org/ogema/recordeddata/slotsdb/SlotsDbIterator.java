@@ -115,16 +115,23 @@ class SlotsDbIterator implements Iterator<SampledValue> {
 				public Void run() throws Exception {
 					final FileObjectList newfolder;
 					final List<SampledValue> values;
+					final FileObjectProxy proxy = recorder.getProxy();
 					lock.readLock().lock();
 					try {
-						if (folder == null) 
-							newfolder = recorder.getProxy().getNextFolder(label, start);
-						else
-							newfolder = recorder.getProxy().getNextFolder(label, folder); 
-						if (newfolder != null) 
-							values = FileObjectProxy.readFolder(newfolder);
-						else
-							values = null;
+						// the folder lock keeps the cached data sections from being released while they are read
+						proxy.folderLock.readLock().lock();
+						try {
+							if (folder == null) 
+								newfolder = proxy.getNextFolder(label, start);
+							else
+								newfolder = proxy.getNextFolder(label, folder); 
+							if (newfolder != null) 
+								values = FileObjectProxy.readFolder(newfolder);
+							else
+								values = null;
+						} finally {
+							proxy.folderLock.readLock().unlock();
+						}
 					} finally {
 						lock.readLock().unlock();
 					}
@@ -30,11 +30,11 @@ import org.ogema.core.channelmanager.measurements.Quality;
 import org.ogema.core.channelmanager.measurements.SampledValue;
 import org.ogema.core.recordeddata.RecordedDataConfiguration;
 import org.ogema.core.recordeddata.ReductionMode;
+import org.ogema.core.recordeddata.TimestampedDoubleBlock;
 import org.ogema.core.timeseries.InterpolationMode;
 import org.ogema.recordeddata.DataRecorderException;
 import org.ogema.recordeddata.RecordedDataStorage;
-import org.ogema.recordeddata.slotsdb.reduction.Reduction;
-import org.ogema.recordeddata.slotsdb.reduction.ReductionFactory;
+import org.ogema.recordeddata.slotsdb.reduction.IntervalReducer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -62,7 +62,24 @@ class SlotsDbStorage implements RecordedDataStorage {
 
 	@Override
 	public void insertValue(final SampledValue value) throws DataRecorderException {
-
+		final AppendBuffer buffer = recorder.getAppendBuffer();
+		if (buffer != null) {
+			final double d;
+			try {
+				d = value.getValue().getDoubleValue();
+			} catch (IllegalConversionException e) {
+				logger.error("", e);
+				return;
+			}
+			final int pending = buffer.add(this, value.getTimestamp(), d, (byte) value.getQuality().getQuality());
+			if (pending >= 0) {
+				if (pending >= AppendBuffer.MAX_PENDING_VALUES)
+					commitPending(buffer);
+				return;
+			}
+			// the buffer has been closed concurrently; write previously buffered values first, to preserve the order
+			commitPending(buffer);
+		}
 		try {
 			AccessController.doPrivileged(new PrivilegedExceptionAction<Void>() {
 
@@ -97,7 +114,26 @@ class SlotsDbStorage implements RecordedDataStorage {
 
 	@Override
 	public void insertValues(final List<SampledValue> values) throws DataRecorderException {
-
+		final AppendBuffer buffer = recorder.getAppendBuffer();
+		if (buffer != null) {
+			final TimestampedDoubleBlock block = new TimestampedDoubleBlock();
+			block.ensureAdditionalCapacity(values.size());
+			try {
+				for (SampledValue value : values) {
+					block.add(value);
+				}
+			} catch (IllegalConversionException e) {
+				logger.error("", e);
+			}
+			final int pending = buffer.addAll(this, block);
+			if (pending >= 0) {
+				if (pending >= AppendBuffer.MAX_PENDING_VALUES)
+					commitPending(buffer);
+				return;
+			}
+			// the buffer has been closed concurrently; write previously buffered values first, to preserve the order
+			commitPending(buffer);
+		}
 		try {
 			AccessController.doPrivileged(new PrivilegedExceptionAction<Void>() {
 
@@ -128,8 +164,57 @@ class SlotsDbStorage implements RecordedDataStorage {
 		}
 	}
 
+	/**
+	 * Writes the values buffered for this storage to the log files and forces them to disk, if group commit is enabled. 
+	 * Must be called before reading, and must not be called while holding the lock.
+	 * Values buffered while the storage has no configuration are discarded, like unbuffered values.
+	 */
+	void commitPending() {
+		commitPending(recorder.getAppendBuffer());
+	}
+
+	void commitPending(final AppendBuffer buffer) {
+		if (buffer == null || !buffer.hasPending(this))
+			return;
+		try {
+			AccessController.doPrivileged(new PrivilegedExceptionAction<Void>() {
+
+				@Override
+				public Void run() throws Exception {
+					lock.writeLock().lock();
+					try {
+						if (configuration == null) {
+							buffer.drain(SlotsDbStorage.this);
+							return null;
+						}
+						final FileObjectProxy proxy;
+						try {
+							proxy = recorder.getProxy();
+						} catch (IllegalStateException e) {
+							logger.warn("Cannot commit values for {}, SlotsDb has been closed", id);
+							return null;
+						}
+						// drain while holding the lock, so that concurrent commits cannot reorder values
+						final TimestampedDoubleBlock values = buffer.drain(SlotsDbStorage.this);
+						if (values != null) 
+							proxy.appendValues(id, values, configuration);
+					} catch (IOException e) {
+						logger.error("", e);
+					} finally {
+						lock.writeLock().unlock();
+					}
+					return null;
+				}
+
+			});
+		} catch (PrivilegedActionException e) {
+			logger.error("", e);
+		}
+	}
+
 	@Override
 	public List<SampledValue> getValues(final long startTime) {
+		commitPending();
 
 		try {
 			return AccessController
@@ -167,6 +252,18 @@ class SlotsDbStorage implements RecordedDataStorage {
 
 	@Override
 	public List<SampledValue> getValues(final long startTime, final long endTime) {
+		return getValues(startTime, endTime, (FileObjectProxy.DayFolders) null);
+	}
+
+	/**
+	 * @param startTime
+	 * @param endTime
+	 * @param dayFolders
+	 * 		may be null
+	 * @return
+	 */
+	List<SampledValue> getValues(final long startTime, final long endTime, final FileObjectProxy.DayFolders dayFolders) {
+		commitPending();
 
 		try {
 			return AccessController
@@ -180,7 +277,9 @@ class SlotsDbStorage implements RecordedDataStorage {
 							List<SampledValue> records = null;
 							lock.readLock().lock();
 							try {
-								records = recorder.getProxy().read(id, startTime, endTime - 1, configuration);
+								final TimestampedDoubleBlock block = new TimestampedDoubleBlock();
+								recorder.getProxy().read(id, startTime, endTime - 1, configuration, block, null, dayFolders);
+								records = FileObject.toSampledValues(block);
 							} catch (IOException e) {
 								logger.error("", e);
 							} finally {
@@ -201,8 +300,63 @@ class SlotsDbStorage implements RecordedDataStorage {
 
 	}
 
+	@Override
+	public int getValues(final long startTime, final long endTime, final TimestampedDoubleBlock target) {
+		if (endTime <= startTime)
+			return 0;
+		commitPending();
+		final int sizeBefore = target.size();
+		try {
+			AccessController.doPrivileged(new PrivilegedExceptionAction<Void>() {
+
+				@Override
+				public Void run() throws Exception {
+					lock.readLock().lock();
+					try {
+						recorder.getProxy().read(id, startTime, endTime - 1, configuration, target);
+					} catch (IOException e) {
+						logger.error("", e);
+					} finally {
+						lock.readLock().unlock();
+					}
+					return null;
+				}
+
+			});
+		} catch (PrivilegedActionException e) {
+			logger.error("", e);
+		}
+		return target.size() - sizeBefore;
+	}
+
+	void rebuildRollups() throws IOException {
+		commitPending();
+		try {
+			AccessController.doPrivileged(new PrivilegedExceptionAction<Void>() {
+
+				@Override
+				public Void run() throws Exception {
+					lock.writeLock().lock();
+					try {
+						recorder.getProxy().rebuildRollups(id, configuration);
+					} finally {
+						lock.writeLock().unlock();
+					}
+					return null;
+				}
+
+			});
+		} catch (PrivilegedActionException e) {
+			final Throwable cause = e.getCause();
+			if (cause instanceof IOException)
+				throw (IOException) cause;
+			throw new RuntimeException(cause);
+		}
+	}
+
 	@Override
 	public SampledValue getValue(final long timestamp) {
+		commitPending();
 
 		try {
 			return AccessController.doPrivileged(new PrivilegedExceptionAction<SampledValue>() {
@@ -233,13 +387,27 @@ class SlotsDbStorage implements RecordedDataStorage {
 
 	}
 
-	// TODO more efficient implementation; might as well return an iterator?
 	@Override
 	public List<SampledValue> getValues(final long startTime, final long endTime, final long intervalSize,
 			final ReductionMode mode) {
+		return getValues(startTime, endTime, intervalSize, mode, null);
+	}
+
+	/**
+	 * @param startTime
+	 * @param endTime
+	 * @param intervalSize
+	 * @param mode
+	 * @param dayFolders
+	 * 		may be null
+	 * @return
+	 */
+	List<SampledValue> getValues(final long startTime, final long endTime, final long intervalSize,
+			final ReductionMode mode, final FileObjectProxy.DayFolders dayFolders) {
 
 		// last timestamp is exclusive and therefore not part of the request
 		final long endTimeMinusOne = endTime - 1;
+		commitPending();
 
 		try {
 			return AccessController
@@ -250,45 +418,36 @@ class SlotsDbStorage implements RecordedDataStorage {
 
 							// ----------------
 
-							// TODO could cause crash? extremely long requested time period of very small sampled values
-							List<SampledValue> returnValues = new ArrayList<SampledValue>();
-
-							if (validateArguments(startTime, endTimeMinusOne, intervalSize)) {
-
-								// Issues to consider:
-								// a) calling the for each subinterval will slow down the reduction (many file accesses)
-								// b) calling the read for the whole requested time period might be problematic -
-								// especially when requested
-								// time
-								// period is large and the log interval was very small (large number of values)
-								// Compromise: When the requested time period covers multiple days and therefore
-								// multiple log files, then a
-								// separate read data processing is performed for each file.
+							if (!validateArguments(startTime, endTimeMinusOne, intervalSize)) 
+								return new ArrayList<SampledValue>();
+							if (mode.equals(ReductionMode.NONE)) {
 								final List<SampledValue> loggedValues;
 								lock.readLock().lock();
 								try {
-									loggedValues = getLoggedValues(startTime, endTimeMinusOne);
+									loggedValues = getLoggedValues(startTime, endTimeMinusOne, dayFolders);
 								} finally {
 									lock.readLock().unlock();
 								}
-//								List<SampledValue> loggedValues = removeQualityBad(loggedValuesRaw);
-
-								if (loggedValues.isEmpty()) {
-									// return an empty list since there are no logged values, so it doesn't make sense
-									// to aggregate anything
-									return returnValues;
-								}
-
-								if (mode.equals(ReductionMode.NONE)) {
-									return removeQualityBad(loggedValues);
+								return removeQualityBad(loggedValues);
+							}
+							// the raw values are passed to the reducer file by file, so that at most one file 
+							// is kept in memory, instead of the complete requested period. If possible, 
+							// precomputed rollups are used instead.
+							final IntervalReducer reducer = new IntervalReducer(startTime, endTimeMinusOne, intervalSize, mode);
+							lock.readLock().lock();
+							try {
+								final FileObjectProxy proxy = recorder.getProxy();
+								if (!proxy.readReduced(id, startTime, endTimeMinusOne, intervalSize, configuration, reducer)) {
+									proxy.read(id, startTime, endTimeMinusOne, configuration, 
+											new TimestampedDoubleBlock(), FileObjectProxy.getReducingConsumer(reducer), dayFolders);
 								}
-
-								List<Interval> intervals = generateIntervals(startTime, endTimeMinusOne, intervalSize);
-								returnValues = generateReducedData(intervals, loggedValues.iterator(), mode);
-
+							} catch (IOException e) {
+								logger.error("", e);
+								return new ArrayList<SampledValue>();
+							} finally {
+								lock.readLock().unlock();
 							}
-
-							return returnValues;
+							return reducer.finish();
 
 							// ----------------
 						}
@@ -301,151 +460,13 @@ class SlotsDbStorage implements RecordedDataStorage {
 		}
 	}
 
-	/**
-	 * Generates equidistant intervals starting from periodStart till periodEnd. The last interval might have a
-	 * different length than intervalSize.
-	 * 
-	 * ASSUMPTION: Arguments are valid (see validateArguments method)
-	 * 
-	 * @return List of intervals which cover the entire period
-	 */
-	private static List<Interval> generateIntervals(long periodStart, long periodEnd, long intervalSize) {
-
-		final List<Interval> intervals = new ArrayList<Interval>();
-
-		long start = periodStart;
-		long end;
-		do {
-			end = start + intervalSize - 1;
-			if (end > periodEnd) {
-				end = periodEnd;
-			}
-			intervals.add(new Interval(start, end));
-			start = end + 1;
-		} while (end != periodEnd);
-
-		return intervals;
-	}
-
-	private static List<SampledValue> generateReducedData(List<Interval> intervals, List<SampledValue> loggedValues, ReductionMode mode) {
-
-		final List<SampledValue> returnValues = new ArrayList<SampledValue>();
-		List<SampledValue> reducedValues;
-
-		ReductionFactory reductionFactory = new ReductionFactory();
-		Reduction reduction = reductionFactory.getReduction(mode);
-
-		int index = 0; // used to move forwards in the loggedValues list
-		int maxIndex = loggedValues.size() - 1;
-		SampledValue loggedValue = loggedValues.get(index);
-		long timestamp = loggedValue.getTimestamp();
-
-		Iterator<Interval> it = intervals.iterator();
-		Interval interval;
-
-		while (it.hasNext()) {
-
-			interval = it.next();
-
-			while (timestamp >= interval.getStart() && timestamp <= interval.getEnd()) {
-
-				if (loggedValue.getQuality() == Quality.GOOD)
-					interval.add(loggedValue);
-
-				if (index < maxIndex) {
-					index++;
-					loggedValue = loggedValues.get(index);
-					timestamp = loggedValue.getTimestamp();
-				}
-				else {
-					// complete loggedValues list is processed
-					break;
-				}
-			}
-
-			reducedValues = reduction.performReduction(interval.getValues(), interval.getStart());
-			returnValues.addAll(reducedValues);
-
-		}
-
-		// debug_printIntervals(intervals);
-
-		return returnValues;
-	}
-	
-	// ignores bad quality values
-	private static List<SampledValue> generateReducedData(List<Interval> intervals, Iterator<SampledValue> loggedValues, ReductionMode mode) {
-
-		final List<SampledValue> returnValues = new ArrayList<SampledValue>();
-		if (!loggedValues.hasNext())
-			return returnValues;
-		List<SampledValue> reducedValues;
-
-		final ReductionFactory reductionFactory = new ReductionFactory();
-		final Reduction reduction = reductionFactory.getReduction(mode);
-
-		
-		SampledValue loggedValue = loggedValues.next();
-		long timestamp = loggedValue.getTimestamp();
-
-		Iterator<Interval> it = intervals.iterator();
-		Interval interval;
-		boolean done = false;
-		while (it.hasNext()) {
-
-			interval = it.next();
-			
-			while (   timestamp >= interval.getStart() && timestamp <= interval.getEnd()) {
-
-				if (loggedValue.getQuality() == Quality.GOOD)
-					interval.add(loggedValue);
-				if (!loggedValues.hasNext()) {
-					done = true;
-					break;
-				}
-				loggedValue = loggedValues.next();
-				timestamp = loggedValue.getTimestamp();
-				
-			}
-
-			reducedValues = reduction.performReduction(interval.getValues(), interval.getStart());
-			returnValues.addAll(reducedValues);
-			if (done) 
-				break;
-		}
-		while (it.hasNext()) {
-			interval = it.next();
-			reducedValues = reduction.performReduction(interval.getValues(), interval.getStart());
-			returnValues.addAll(reducedValues);
-		}
-
-		// debug_printIntervals(intervals);
-
-		return returnValues;
-	}
-
-	
-	@SuppressWarnings("unused")
-	private static void debug_printIntervals(List<Interval> intervals) {
-
-		Iterator<Interval> it2 = intervals.iterator();
-		Interval interval2;
-
-		int i = 1;
-		while (it2.hasNext()) {
-			interval2 = it2.next();
-			System.out.println(i + ": " + interval2.getValues().toString());
-			i++;
-		}
-	}
-
 	private static boolean validateArguments(long startTime, long endTime, long interval) {
 		boolean result = false;
 
 		if (startTime > endTime) {
 			logger.warn("Invalid parameters: Start timestamp musst be smaller than end timestamp");
 		}
-		else if (interval < 0) {
+		else if (interval <= 0) {
 			logger.warn("Invalid arguments: interval must be > 0");
 		}
 		else {
@@ -459,13 +480,14 @@ class SlotsDbStorage implements RecordedDataStorage {
 	 * 
 	 * @param startTime
 	 * @param endTime
-	 * @param intervalSize
+	 * @param dayFolders
 	 * @return List with average values on success, otherwise empty list.
 	 */
-	private List<SampledValue> getLoggedValues(long startTime, long endTime) {
+	private List<SampledValue> getLoggedValues(long startTime, long endTime, FileObjectProxy.DayFolders dayFolders) {
 		try {
-			List<SampledValue> loggedValues = recorder.getProxy().read(id, startTime, endTime, configuration);
-			return loggedValues;
+			final TimestampedDoubleBlock block = new TimestampedDoubleBlock();
+			recorder.getProxy().read(id, startTime, endTime, configuration, block, null, dayFolders);
+			return FileObject.toSampledValues(block);
 		} catch (IOException e) {
 			e.printStackTrace();
 			return new ArrayList<SampledValue>();
@@ -530,6 +552,7 @@ class SlotsDbStorage implements RecordedDataStorage {
 
 	@Override
 	public SampledValue getNextValue(final long time) {
+		commitPending();
 
 		try {
 			return AccessController.doPrivileged(new PrivilegedExceptionAction<SampledValue>() {
@@ -562,6 +585,7 @@ class SlotsDbStorage implements RecordedDataStorage {
 	
 	@Override
 	public SampledValue getPreviousValue(final long time) {
+		commitPending();
 		try {
 			return AccessController.doPrivileged(new PrivilegedExceptionAction<SampledValue>() {
 
@@ -620,6 +644,7 @@ class SlotsDbStorage implements RecordedDataStorage {
 
 	@Override
 	public int size(final long startTime, final long endTime) {
+		commitPending();
 		try {
 			return AccessController.doPrivileged(new PrivilegedExceptionAction<Integer>() {
 
@@ -642,41 +667,14 @@ class SlotsDbStorage implements RecordedDataStorage {
 
 	@Override
 	public Iterator<SampledValue> iterator() {
+		commitPending();
 		return new SlotsDbIterator(id, recorder, lock);
 	}
 
 	@Override
 	public Iterator<SampledValue> iterator(long startTime, long endTime) {
+		commitPending();
 		return new SlotsDbIterator(id, recorder, lock, startTime, endTime);
 	}
 
 }
-
-class Interval {
-
-	final List<SampledValue> values = new ArrayList<SampledValue>();
-
-	private final long start;
-	private final long end;
-
-	public Interval(long start, long end) {
-		this.start = start;
-		this.end = end;
-	}
-
-	public long getEnd() {
-		return end;
-	}
-
-	public long getStart() {
-		return start;
-	}
-
-	public void add(SampledValue value) {
-		values.add(value);
-	}
-
-	public List<SampledValue> getValues() {
-		return values;
-	}
-}
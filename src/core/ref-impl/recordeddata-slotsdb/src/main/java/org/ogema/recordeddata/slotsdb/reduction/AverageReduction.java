@@ -22,37 +22,47 @@ import org.ogema.core.channelmanager.measurements.Quality;
 import org.ogema.core.channelmanager.measurements.SampledValue;
 import org.ogema.recordeddata.slotsdb.DoubleValues;
 
-public class AverageReduction implements Reduction {
+/**
+ * Not thread-safe; use a new instance per query.
+ */
+public class AverageReduction implements Reduction, StreamingReduction {
+
+	private double avg = 0;
+	private int count = 0;
 
 	@Override
 	public List<SampledValue> performReduction(List<SampledValue> subIntervalValues, long timestamp) {
+		for (SampledValue value : subIntervalValues) {
+			addValue(value.getValue().getDoubleValue());
+		}
+		final List<SampledValue> toReturn = new ArrayList<SampledValue>(1);
+		finishInterval(timestamp, toReturn);
+		return toReturn;
+	}
+
+	@Override
+	public void addValue(double value) {
+		count++;
+		// compute as running average
+		avg = ( (count-1)*avg + value ) / count;
+	}
 
-		List<SampledValue> toReturn = new ArrayList<SampledValue>();
+	@Override
+	public void addAggregate(double min, double max, double sum, int count) {
+		avg = ( this.count*avg + sum ) / (this.count + count);
+		this.count += count;
+	}
 
-		if (subIntervalValues.isEmpty()) {
-			toReturn.add(new SampledValue(DoubleValues.of(0.f), timestamp, Quality.BAD));
+	@Override
+	public void finishInterval(long timestamp, List<SampledValue> target) {
+		if (count == 0) {
+			target.add(new SampledValue(DoubleValues.of(0.f), timestamp, Quality.BAD));
 		}
 		else {
-                    /*
-			double sum = 0;
-			for (SampledValue value : subIntervalValues) {
-				sum += value.getValue().getDoubleValue();
-			}
-
-			double average = sum / subIntervalValues.size();
-			toReturn.add(new SampledValue(new SampledValue(DoubleValues.of(average), timestamp, Quality.GOOD)));
-                        */
-			double avg = 0;
-			int i = 1;
-			// compute as running average
-			for (SampledValue value : subIntervalValues) {
-				avg = ( (i-1)*avg + value.getValue().getDoubleValue() ) / i;
-				i++;
-			}
-			toReturn.add(new SampledValue(new SampledValue(DoubleValues.of(avg), timestamp, Quality.GOOD)));
+			target.add(new SampledValue(DoubleValues.of(avg), timestamp, Quality.GOOD));
 		}
-
-		return toReturn;
+		avg = 0;
+		count = 0;
 	}
 
 }
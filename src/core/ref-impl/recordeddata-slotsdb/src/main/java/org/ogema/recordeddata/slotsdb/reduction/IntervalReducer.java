@@ -0,0 +1,179 @@
+/**
+ * Copyright 2011-2018 Fraunhofer-Gesellschaft zur Förderung der angewandten Wissenschaften e.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ogema.recordeddata.slotsdb.reduction;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.ogema.core.channelmanager.measurements.Quality;
+import org.ogema.core.channelmanager.measurements.SampledValue;
+import org.ogema.core.recordeddata.ReductionMode;
+import org.ogema.core.recordeddata.TimestampedDoubleBlock;
+
+/**
+ * Single pass reduction over a period that is split into equidistant intervals. Values must be 
+ * passed in chronological order; aggregates are emitted as soon as an interval is complete, so 
+ * memory consumption is proportional to the number of intervals, not to the number of raw values.
+ * The last interval may be shorter than the others. Values with a quality other than 
+ * {@link Quality#GOOD} are ignored.<br>
+ * Not thread-safe.
+ */
+public class IntervalReducer {
+
+	private final long periodStart;
+	private final long periodEnd;
+	private final long intervalSize;
+	private final ReductionMode mode;
+	private StreamingReduction reduction;
+	private final List<SampledValue> result = new ArrayList<SampledValue>();
+	private long intervalStart;
+	private long intervalEnd;
+	private long lowerBound = Long.MIN_VALUE;
+	private boolean valuesSeen = false;
+	private boolean done = false;
+
+	/**
+	 * @param periodStart
+	 * 		inclusive
+	 * @param periodEnd
+	 * 		inclusive
+	 * @param intervalSize
+	 * 		must be positive
+	 * @param mode
+	 * 		any mode but {@link ReductionMode#NONE}
+	 */
+	public IntervalReducer(long periodStart, long periodEnd, long intervalSize, ReductionMode mode) {
+		if (intervalSize <= 0)
+			throw new IllegalArgumentException("Interval size must be positive, got " + intervalSize);
+		if (periodStart > periodEnd)
+			throw new IllegalArgumentException("Start time " + periodStart + " is after end time " + periodEnd);
+		this.periodStart = periodStart;
+		this.periodEnd = periodEnd;
+		this.intervalSize = intervalSize;
+		this.mode = mode;
+		reset();
+	}
+
+	/**
+	 * Discards all values added so far, e.g. if a source fails after some of its values have been added.
+	 */
+	public void reset() {
+		reduction = new ReductionFactory().getStreamingReduction(mode);
+		result.clear();
+		intervalStart = periodStart;
+		intervalEnd = getIntervalEnd(periodStart);
+		lowerBound = Long.MIN_VALUE;
+		valuesSeen = false;
+		done = false;
+	}
+
+	private long getIntervalEnd(long start) {
+		final long end = start + intervalSize - 1;
+		// second condition: overflow
+		return (end > periodEnd || end < start) ? periodEnd : end;
+	}
+
+	private void nextInterval() {
+		reduction.finishInterval(intervalStart, result);
+		if (intervalEnd == periodEnd) {
+			done = true;
+			return;
+		}
+		intervalStart = intervalEnd + 1;
+		intervalEnd = getIntervalEnd(intervalStart);
+	}
+
+	/**
+	 * @param timestamp
+	 * @param value
+	 * @param quality
+	 * 		a {@link Quality#getQuality()} value
+	 */
+	public void add(long timestamp, double value, int quality) {
+		if (!moveTo(timestamp))
+			return;
+		valuesSeen = true;
+		if (quality == Quality.GOOD.getQuality())
+			reduction.addValue(value);
+	}
+
+	/**
+	 * Add pre-aggregated values, such as a rollup bucket. All aggregated values must belong to 
+	 * the same interval.
+	 * 
+	 * @param timestamp
+	 * 		timestamp of the first aggregated value, or the start of the aggregation period
+	 * @param min
+	 * @param max
+	 * @param sum
+	 * @param goodCount
+	 * 		number of aggregated values of quality {@link Quality#GOOD}
+	 * @param totalCount
+	 * 		total number of values, including those of bad quality
+	 */
+	public void addAggregate(long timestamp, double min, double max, double sum, int goodCount, int totalCount) {
+		if (totalCount <= 0 || !moveTo(timestamp))
+			return;
+		valuesSeen = true;
+		if (goodCount > 0)
+			reduction.addAggregate(min, max, sum, goodCount);
+	}
+
+	/**
+	 * Ignore all values added subsequently with timestamp smaller than the given one. 
+	 * Useful when combining different sources whose time ranges may overlap.
+	 * 
+	 * @param timestamp
+	 */
+	public void skipUntil(long timestamp) {
+		lowerBound = timestamp;
+	}
+
+	private boolean moveTo(long timestamp) {
+		if (done || timestamp < intervalStart || timestamp < lowerBound || timestamp > periodEnd)
+			return false;
+		while (timestamp > intervalEnd) {
+			nextInterval();
+		}
+		return true;
+	}
+
+	public void addAll(TimestampedDoubleBlock block) {
+		final int size = block.size();
+		final long[] t = block.getTimestamps();
+		final double[] v = block.getValues();
+		final byte[] q = block.getQualities();
+		for (int i = 0; i < size; i++) {
+			add(t[i], v[i], q[i]);
+		}
+	}
+
+	/**
+	 * Completes the remaining intervals.
+	 * 
+	 * @return
+	 * 		the aggregated values, or an empty list if no values have been added at all. 
+	 */
+	public List<SampledValue> finish() {
+		if (!valuesSeen)
+			return new ArrayList<SampledValue>();
+		while (!done) {
+			nextInterval();
+		}
+		return result;
+	}
+
+}
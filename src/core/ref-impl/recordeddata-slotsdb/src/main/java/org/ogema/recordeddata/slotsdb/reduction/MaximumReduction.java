@@ -22,27 +22,47 @@ import org.ogema.core.channelmanager.measurements.Quality;
 import org.ogema.core.channelmanager.measurements.SampledValue;
 import org.ogema.recordeddata.slotsdb.DoubleValues;
 
-public class MaximumReduction implements Reduction {
+/**
+ * Not thread-safe; use a new instance per query.
+ */
+public class MaximumReduction implements Reduction, StreamingReduction {
+
+	private double maxValue = Double.NEGATIVE_INFINITY;
+	private boolean empty = true;
 
 	@Override
 	public List<SampledValue> performReduction(List<SampledValue> subIntervalValues, long timestamp) {
+		for (SampledValue value : subIntervalValues) {
+			addValue(value.getValue().getDoubleValue());
+		}
+		final List<SampledValue> toReturn = new ArrayList<SampledValue>(1);
+		finishInterval(timestamp, toReturn);
+		return toReturn;
+	}
 
-		List<SampledValue> toReturn = new ArrayList<SampledValue>();
+	@Override
+	public void addValue(double value) {
+		empty = false;
+		if (value > maxValue) {
+			maxValue = value;
+		}
+	}
+
+	@Override
+	public void addAggregate(double min, double max, double sum, int count) {
+		addValue(max);
+	}
 
-		if (subIntervalValues.isEmpty()) {
-			toReturn.add(new SampledValue(DoubleValues.of(0.f), timestamp, Quality.BAD));
+	@Override
+	public void finishInterval(long timestamp, List<SampledValue> target) {
+		if (empty) {
+			target.add(new SampledValue(DoubleValues.of(0.f), timestamp, Quality.BAD));
 		}
 		else {
-			double maxValue = Double.NEGATIVE_INFINITY;
-			for (SampledValue value : subIntervalValues) {
-				if (value.getValue().getDoubleValue() > maxValue) {
-					maxValue = value.getValue().getDoubleValue();
-				}
-			}
-			toReturn.add(new SampledValue(new SampledValue(DoubleValues.of(maxValue), timestamp, Quality.GOOD)));
+			target.add(new SampledValue(DoubleValues.of(maxValue), timestamp, Quality.GOOD));
 		}
-
-		return toReturn;
+		maxValue = Double.NEGATIVE_INFINITY;
+		empty = true;
 	}
 
 }
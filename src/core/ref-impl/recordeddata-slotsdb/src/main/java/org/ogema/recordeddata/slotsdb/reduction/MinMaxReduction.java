@@ -22,35 +22,55 @@ import org.ogema.core.channelmanager.measurements.Quality;
 import org.ogema.core.channelmanager.measurements.SampledValue;
 import org.ogema.recordeddata.slotsdb.DoubleValues;
 
-public class MinMaxReduction implements Reduction {
+/**
+ * Not thread-safe; use a new instance per query.
+ */
+public class MinMaxReduction implements Reduction, StreamingReduction {
+
+	private double minValue = Double.MAX_VALUE;
+	private double maxValue = Double.NEGATIVE_INFINITY;
+	private boolean empty = true;
 
 	@Override
 	public List<SampledValue> performReduction(List<SampledValue> subIntervalValues, long timestamp) {
+		for (SampledValue value : subIntervalValues) {
+			addValue(value.getValue().getDoubleValue());
+		}
+		final List<SampledValue> toReturn = new ArrayList<SampledValue>(2);
+		finishInterval(timestamp, toReturn);
+		return toReturn;
+	}
+
+	@Override
+	public void addValue(double value) {
+		empty = false;
+		if (value < minValue) {
+			minValue = value;
+		}
+		if (value > maxValue) {
+			maxValue = value;
+		}
+	}
 
-		List<SampledValue> toReturn = new ArrayList<SampledValue>();
+	@Override
+	public void addAggregate(double min, double max, double sum, int count) {
+		addValue(min);
+		addValue(max);
+	}
 
-		if (subIntervalValues.isEmpty()) {
-			toReturn.add(new SampledValue(DoubleValues.of(0.f), timestamp, Quality.BAD)); // for minimum
-			toReturn.add(new SampledValue(DoubleValues.of(0.f), timestamp, Quality.BAD)); // for maximum
+	@Override
+	public void finishInterval(long timestamp, List<SampledValue> target) {
+		if (empty) {
+			target.add(new SampledValue(DoubleValues.of(0.f), timestamp, Quality.BAD)); // for minimum
+			target.add(new SampledValue(DoubleValues.of(0.f), timestamp, Quality.BAD)); // for maximum
 		}
 		else {
-			double minValue = Double.MAX_VALUE;
-			double maxValue = Double.NEGATIVE_INFINITY;
-
-			for (SampledValue value : subIntervalValues) {
-				if (value.getValue().getDoubleValue() < minValue) {
-					minValue = value.getValue().getDoubleValue();
-				}
-				if (value.getValue().getDoubleValue() > maxValue) {
-					maxValue = value.getValue().getDoubleValue();
-				}
-			}
-
-			toReturn.add(new SampledValue(new SampledValue(DoubleValues.of(minValue), timestamp, Quality.GOOD)));
-			toReturn.add(new SampledValue(new SampledValue(DoubleValues.of(maxValue), timestamp, Quality.GOOD)));
+			target.add(new SampledValue(DoubleValues.of(minValue), timestamp, Quality.GOOD));
+			target.add(new SampledValue(DoubleValues.of(maxValue), timestamp, Quality.GOOD));
 		}
-
-		return toReturn;
+		minValue = Double.MAX_VALUE;
+		maxValue = Double.NEGATIVE_INFINITY;
+		empty = true;
 	}
 
 }
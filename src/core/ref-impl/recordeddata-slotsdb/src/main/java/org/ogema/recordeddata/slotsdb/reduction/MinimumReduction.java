@@ -22,27 +22,47 @@ import org.ogema.core.channelmanager.measurements.Quality;
 import org.ogema.core.channelmanager.measurements.SampledValue;
 import org.ogema.recordeddata.slotsdb.DoubleValues;
 
-public class MinimumReduction implements Reduction {
+/**
+ * Not thread-safe; use a new instance per query.
+ */
+public class MinimumReduction implements Reduction, StreamingReduction {
+
+	private double minValue = Double.MAX_VALUE;
+	private boolean empty = true;
 
 	@Override
 	public List<SampledValue> performReduction(List<SampledValue> subIntervalValues, long timestamp) {
+		for (SampledValue value : subIntervalValues) {
+			addValue(value.getValue().getDoubleValue());
+		}
+		final List<SampledValue> toReturn = new ArrayList<SampledValue>(1);
+		finishInterval(timestamp, toReturn);
+		return toReturn;
+	}
 
-		List<SampledValue> toReturn = new ArrayList<SampledValue>();
+	@Override
+	public void addValue(double value) {
+		empty = false;
+		if (value < minValue) {
+			minValue = value;
+		}
+	}
+
+	@Override
+	public void addAggregate(double min, double max, double sum, int count) {
+		addValue(min);
+	}
 
-		if (subIntervalValues.isEmpty()) {
-			toReturn.add(new SampledValue(DoubleValues.of(0.f), timestamp, Quality.BAD));
+	@Override
+	public void finishInterval(long timestamp, List<SampledValue> target) {
+		if (empty) {
+			target.add(new SampledValue(DoubleValues.of(0.f), timestamp, Quality.BAD));
 		}
 		else {
-			double minValue = Double.MAX_VALUE;
-			for (SampledValue value : subIntervalValues) {
-				if (value.getValue().getDoubleValue() < minValue) {
-					minValue = value.getValue().getDoubleValue();
-				}
-			}
-			toReturn.add(new SampledValue(new SampledValue(DoubleValues.of(minValue), timestamp, Quality.GOOD)));
+			target.add(new SampledValue(DoubleValues.of(minValue), timestamp, Quality.GOOD));
 		}
-
-		return toReturn;
+		minValue = Double.MAX_VALUE;
+		empty = true;
 	}
 
 }
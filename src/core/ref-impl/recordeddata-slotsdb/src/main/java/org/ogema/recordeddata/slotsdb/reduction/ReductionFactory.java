@@ -37,4 +37,9 @@ public class ReductionFactory {
 
 	}
 
+	public StreamingReduction getStreamingReduction(ReductionMode mode) {
+		// all reductions support the incremental interface
+		return (StreamingReduction) getReduction(mode);
+	}
+
 }
@@ -0,0 +1,57 @@
+/**
+ * Copyright 2011-2018 Fraunhofer-Gesellschaft zur Förderung der angewandten Wissenschaften e.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ogema.recordeddata.slotsdb.reduction;
+
+import java.util.List;
+
+import org.ogema.core.channelmanager.measurements.SampledValue;
+
+/**
+ * Incremental variant of {@link Reduction}: values are passed one by one, so the values of an
+ * interval need not be collected in a list. Implementations are stateful and not thread-safe.
+ */
+public interface StreamingReduction {
+
+	/**
+	 * Add a value of the current interval.
+	 * 
+	 * @param value
+	 */
+	void addValue(double value);
+
+	/**
+	 * Add pre-aggregated values of the current interval.
+	 * 
+	 * @param min
+	 * @param max
+	 * @param sum
+	 * @param count
+	 * 		number of aggregated values, must be positive
+	 */
+	void addAggregate(double min, double max, double sum, int count);
+
+	/**
+	 * Append the aggregated value(s) of the current interval to the target list, and reset 
+	 * the state for the next interval. Same result as {@link Reduction#performReduction(List, long)}
+	 * for the values added since the last call.
+	 * 
+	 * @param timestamp
+	 *            of the resulting value
+	 * @param target
+	 */
+	void finishInterval(long timestamp, List<SampledValue> target);
+
+}
@@ -0,0 +1,150 @@
+/**
+ * Copyright 2011-2018 Fraunhofer-Gesellschaft zur Förderung der angewandten Wissenschaften e.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ogema.recordeddata.slotsdb;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.ogema.core.channelmanager.measurements.Quality;
+import org.ogema.core.channelmanager.measurements.SampledValue;
+import org.ogema.core.recordeddata.RecordedDataConfiguration;
+import org.ogema.core.recordeddata.RecordedDataConfiguration.StorageType;
+import org.ogema.core.recordeddata.TimestampedDoubleBlock;
+import org.ogema.recordeddata.DataRecorderException;
+import org.ogema.recordeddata.RecordedDataStorage;
+
+/**
+ * Compressed log files must return the same data as the uncompressed formats
+ */
+public class CompressedStorageTest extends DbTest {
+
+	private static final int NR_VALUES = 5000;
+	private static final long START = 20 * ONE_DAY + 3600 * 1000;
+
+	private static RecordedDataStorage createStorage(String id, StorageType type, boolean compressed) throws DataRecorderException {
+		final RecordedDataConfiguration conf = new RecordedDataConfiguration();
+		conf.setStorageType(type);
+		conf.setFixedInterval(10000);
+		conf.setCompressed(compressed);
+		return sdb.createRecordedDataStorage(id, conf);
+	}
+
+	// slowly changing values with jittered timestamps, some bad quality values and a few special values
+	private static List<SampledValue> createValues() {
+		final Random random = new Random(5);
+		final List<SampledValue> values = new ArrayList<>(NR_VALUES);
+		long t = START;
+		double v = 20;
+		for (int i = 0; i < NR_VALUES; i++) {
+			t += 10000 + random.nextInt(20) - 10;
+			if (i % 500 == 0)
+				t += 3600 * 1000;
+			v += random.nextInt(3) - 1;
+			final double value = i == 100 ? Double.MAX_VALUE : i == 200 ? -0. : i % 7 == 0 ? v + random.nextDouble() : v;
+			values.add(new SampledValue(DoubleValues.of(value), t, i % 97 == 0 ? Quality.BAD : Quality.GOOD));
+		}
+		return values;
+	}
+
+	private static long size(String id) throws IOException {
+		long size = 0;
+		for (File day : new File(SlotsDb.DB_TEST_ROOT_FOLDER).listFiles()) {
+			final File folder = new File(day, sdb.getProxy().encodeLabel(id));
+			if (!folder.isDirectory())
+				continue;
+			for (File f : folder.listFiles()) {
+				size += f.length();
+			}
+		}
+		return size;
+	}
+
+	private static void assertEqual(List<SampledValue> expected, List<SampledValue> actual) {
+		Assert.assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			Assert.assertEquals(expected.get(i).getTimestamp(), actual.get(i).getTimestamp());
+			Assert.assertEquals(Double.doubleToLongBits(expected.get(i).getValue().getDoubleValue()),
+					Double.doubleToLongBits(actual.get(i).getValue().getDoubleValue()));
+			Assert.assertEquals(expected.get(i).getQuality(), actual.get(i).getQuality());
+		}
+	}
+
+	private static void compare(RecordedDataStorage expected, RecordedDataStorage actual) {
+		assertEqual(expected.getValues(Long.MIN_VALUE), actual.getValues(Long.MIN_VALUE));
+		final long s = START + 1234567;
+		final long e = START + 7654321;
+		assertEqual(expected.getValues(s, e), actual.getValues(s, e));
+		Assert.assertEquals(expected.getNextValue(s).getTimestamp(), actual.getNextValue(s).getTimestamp());
+		Assert.assertEquals(expected.getPreviousValue(e).getTimestamp(), actual.getPreviousValue(e).getTimestamp());
+		final long t = expected.getNextValue(s).getTimestamp();
+		Assert.assertEquals(expected.getValue(t).getValue().getDoubleValue(), actual.getValue(t).getValue().getDoubleValue(), 0);
+		Assert.assertEquals(expected.getValue(t + 1) == null, actual.getValue(t + 1) == null);
+		final TimestampedDoubleBlock block = new TimestampedDoubleBlock();
+		Assert.assertEquals(expected.getValues(s, e).size(), actual.getValues(s, e, block));
+	}
+
+	private void testFormat(StorageType type) throws Exception {
+		final RecordedDataStorage plain = createStorage("plain" + type, type, false);
+		final RecordedDataStorage compressed = createStorage("compressed" + type, type, true);
+		final List<SampledValue> values = createValues();
+		plain.insertValues(values);
+		// insert half of the values one by one, with a reopen in between; the last chunk must be continued
+		final int half = NR_VALUES / 2;
+		compressed.insertValues(values.subList(0, half));
+		sdb.getProxy().clearOpenFilesHashMap();
+		for (SampledValue sv : values.subList(half, NR_VALUES)) {
+			compressed.insertValue(sv);
+			if (sv.getTimestamp() % 100 == 0) // some interleaved reads
+				Assert.assertEquals(FileObjectProxy.getRoundedTimestamp(sv.getTimestamp(), compressed.getConfiguration()),
+						compressed.getPreviousValue(Long.MAX_VALUE).getTimestamp());
+		}
+		compare(plain, compressed);
+		sdb.getProxy().clearOpenFilesHashMap();
+		compare(plain, compressed);
+		Assert.assertTrue("Compressed files not smaller than uncompressed ones", 2 * size(compressed.getPath()) < size(plain.getPath()));
+	}
+
+	@Test
+	public void compressedFlexibleIntervalWorks() throws Exception {
+		testFormat(StorageType.ON_VALUE_UPDATE);
+	}
+
+	@Test
+	public void compressedFixedIntervalWorks() throws Exception {
+		testFormat(StorageType.FIXED_INTERVAL);
+	}
+
+	@Test
+	public void formatChangeIsReadable() throws Exception {
+		final RecordedDataStorage rds = createStorage("formatChange", StorageType.ON_VALUE_UPDATE, false);
+		final List<SampledValue> values = createValues().subList(0, 300);
+		rds.insertValues(values.subList(0, 100));
+		final RecordedDataConfiguration conf = rds.getConfiguration();
+		conf.setCompressed(true);
+		rds.setConfiguration(conf);
+		rds.insertValues(values.subList(100, 200));
+		conf.setCompressed(false);
+		rds.setConfiguration(conf);
+		rds.insertValues(values.subList(200, 300));
+		assertEqual(values, rds.getValues(Long.MIN_VALUE));
+	}
+
+}
@@ -0,0 +1,148 @@
+/**
+ * Copyright 2011-2018 Fraunhofer-Gesellschaft zur Förderung der angewandten Wissenschaften e.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ogema.recordeddata.slotsdb;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.ogema.core.channelmanager.measurements.Quality;
+import org.ogema.core.channelmanager.measurements.SampledValue;
+import org.ogema.core.recordeddata.RecordedDataConfiguration;
+import org.ogema.core.recordeddata.RecordedDataConfiguration.StorageType;
+import org.ogema.recordeddata.DataRecorderException;
+import org.ogema.recordeddata.RecordedDataStorage;
+
+/**
+ * Tests for the persistent folder index, which replaces the scans of the database folder.
+ */
+public class FolderIndexTest extends DbTest {
+
+	// values on days 10, 12 and 15; days 11, 13 and 14 are empty
+	private static final long[] DAYS = { 10, 12, 15 };
+	private static final int VALUES_PER_DAY = 10;
+
+	private static final File INDEX_FILE = new File(SlotsDb.DB_TEST_ROOT_FOLDER, FolderIndex.FILE_NAME);
+	private static final File JOURNAL_FILE = new File(SlotsDb.DB_TEST_ROOT_FOLDER, FolderIndex.JOURNAL_NAME);
+
+	private static RecordedDataStorage createStorage(String id) throws DataRecorderException {
+		final RecordedDataConfiguration conf = new RecordedDataConfiguration();
+		conf.setStorageType(StorageType.ON_VALUE_UPDATE);
+		final RecordedDataStorage rds = sdb.createRecordedDataStorage(id, conf);
+		final List<SampledValue> values = new ArrayList<>();
+		for (long day : DAYS) {
+			for (int i = 0; i < VALUES_PER_DAY; i++) {
+				values.add(new SampledValue(DoubleValues.of(i), day * ONE_DAY + 3600 * 1000 + i * 60000, Quality.GOOD));
+			}
+		}
+		rds.insertValues(values);
+		return rds;
+	}
+
+	private static void restart() {
+		sdb.deactivate(null);
+		sdb = new SlotsDb(SlotsDb.DB_TEST_ROOT_FOLDER);
+	}
+
+	private static void checkValues(String id) {
+		final RecordedDataStorage rds = sdb.getRecordedDataStorage(id);
+		Assert.assertNotNull(rds);
+		Assert.assertEquals(DAYS.length * VALUES_PER_DAY, rds.getValues(Long.MIN_VALUE, Long.MAX_VALUE).size());
+		Assert.assertEquals(VALUES_PER_DAY, rds.getValues(11 * ONE_DAY, 13 * ONE_DAY).size());
+		// next and previous value across empty days
+		final SampledValue next = rds.getNextValue(11 * ONE_DAY);
+		Assert.assertNotNull(next);
+		Assert.assertEquals(12 * ONE_DAY + 3600 * 1000, next.getTimestamp());
+		final SampledValue previous = rds.getPreviousValue(15 * ONE_DAY);
+		Assert.assertNotNull(previous);
+		Assert.assertEquals(12 * ONE_DAY + 3600 * 1000 + (VALUES_PER_DAY - 1) * 60000, previous.getTimestamp());
+		Assert.assertNull(rds.getNextValue(16 * ONE_DAY));
+		Assert.assertNull(rds.getPreviousValue(10 * ONE_DAY));
+	}
+
+	@Test
+	public void indexIsPersistedOnShutdown() throws DataRecorderException {
+		createStorage("indexPersisted");
+		checkValues("indexPersisted");
+		restart();
+		// the snapshot is kept while the database is open, changes are journaled
+		Assert.assertTrue(INDEX_FILE.isFile());
+		Assert.assertFalse(JOURNAL_FILE.exists());
+		checkValues("indexPersisted");
+		sdb.deactivate(null);
+		Assert.assertTrue(INDEX_FILE.isFile());
+		sdb = new SlotsDb(SlotsDb.DB_TEST_ROOT_FOLDER);
+		checkValues("indexPersisted");
+	}
+
+	@Test
+	public void journalIsReplayedAfterCrash() throws Exception {
+		// separate from the folder of the running database
+		final File root = new File(SlotsDb.DB_TEST_ROOT_FOLDER, "journalTest");
+		Assert.assertTrue(root.mkdirs());
+		final File journal = new File(root, FolderIndex.JOURNAL_NAME);
+		FolderIndex index = FolderIndex.open(root);
+		index.add("20000101", "crashed", 1000);
+		index.add("20000102", "crashed", 2000);
+		index.add("20000103", "crashed", 3000);
+		index.removeDay("20000101");
+		Assert.assertTrue(journal.isFile());
+		// no close: the journal is replayed on the next start
+		index = FolderIndex.open(root);
+		Assert.assertFalse(journal.exists());
+		Assert.assertFalse(index.getDays().contains("20000101"));
+		Assert.assertEquals(2, index.getFolders("crashed", null, "20000101", "20000103", 0, Long.MAX_VALUE).size());
+		// values appended after the last snapshot: upper bound unknown
+		Assert.assertEquals(1, index.getFolders("crashed", null, "20000102", "20000102", 1000000, Long.MAX_VALUE).size());
+		// lower bound is kept
+		Assert.assertTrue(index.getFolders("crashed", null, "20000103", "20000103", 0, 2000).isEmpty());
+		index.add("20000103", "crashed", 2500);
+		index.add("20000103", "crashed", 3500);
+		index.close();
+		Assert.assertFalse(journal.exists());
+		index = FolderIndex.open(root);
+		Assert.assertEquals(1, index.getFolders("crashed", null, "20000103", "20000103", 0, 2600).size());
+		index.close();
+	}
+
+	@Test
+	public void indexIsRebuiltIfMissing() throws DataRecorderException {
+		createStorage("indexMissing");
+		sdb.deactivate(null);
+		Assert.assertTrue(INDEX_FILE.delete());
+		sdb = new SlotsDb(SlotsDb.DB_TEST_ROOT_FOLDER);
+		checkValues("indexMissing");
+		// new values after the rebuild
+		sdb.getRecordedDataStorage("indexMissing").insertValue(new SampledValue(DoubleValues.of(1), 20 * ONE_DAY, Quality.GOOD));
+		Assert.assertEquals(20 * ONE_DAY, sdb.getRecordedDataStorage("indexMissing").getNextValue(16 * ONE_DAY).getTimestamp());
+	}
+
+	@Test
+	public void indexIsRebuiltIfCorrupt() throws DataRecorderException, IOException {
+		createStorage("indexCorrupt");
+		sdb.deactivate(null);
+		try (final FileOutputStream out = new FileOutputStream(INDEX_FILE)) {
+			out.write(new byte[] { 1, 2, 3 });
+		}
+		sdb = new SlotsDb(SlotsDb.DB_TEST_ROOT_FOLDER);
+		checkValues("indexCorrupt");
+	}
+
+}
@@ -0,0 +1,230 @@
+/**
+ * Copyright 2011-2018 Fraunhofer-Gesellschaft zur Förderung der angewandten Wissenschaften e.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ogema.recordeddata.slotsdb;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.ogema.core.channelmanager.measurements.Quality;
+import org.ogema.core.channelmanager.measurements.SampledValue;
+import org.ogema.core.recordeddata.RecordedDataConfiguration;
+import org.ogema.core.recordeddata.RecordedDataConfiguration.StorageType;
+import org.ogema.recordeddata.DataRecorderException;
+import org.ogema.recordeddata.RecordedDataStorage;
+
+/**
+ * Appends buffered for a group commit must be visible to reads immediately, and written to disk 
+ * within the commit period
+ */
+public class GroupCommitTest extends SlotsDbTest {
+
+	private static final long START = 30 * ONE_DAY;
+	private static final int NR_SERIES = 20;
+	private static final int NR_VALUES = 500;
+
+	private SlotsDb sdb;
+
+	private void start(long commitPeriod) {
+		deleteTestFiles();
+		System.setProperty(SlotsDb.GROUP_COMMIT_PROPERTY, String.valueOf(commitPeriod));
+		sdb = new SlotsDb(SlotsDb.DB_TEST_ROOT_FOLDER);
+		System.clearProperty(SlotsDb.GROUP_COMMIT_PROPERTY);
+	}
+
+	@After
+	public void cleanup() {
+		if (sdb != null)
+			sdb.deactivate(null);
+		sdb = null;
+		deleteTestFiles();
+	}
+
+	private static RecordedDataStorage createStorage(SlotsDb sdb, String id) throws DataRecorderException {
+		final RecordedDataConfiguration conf = new RecordedDataConfiguration();
+		conf.setStorageType(StorageType.ON_VALUE_UPDATE);
+		return sdb.createRecordedDataStorage(id, conf);
+	}
+
+	private static SampledValue value(int i) {
+		return new SampledValue(DoubleValues.of(i), START + i * 1000, Quality.GOOD);
+	}
+
+	private static long sizeOnDisk(String id) {
+		long size = 0;
+		final File[] days = new File(SlotsDb.DB_TEST_ROOT_FOLDER).listFiles();
+		if (days == null)
+			return 0;
+		for (File day : days) {
+			final File[] folders = day.listFiles();
+			if (folders == null)
+				continue;
+			for (File folder : folders) {
+				if (!folder.getName().equals(id))
+					continue;
+				for (File f : folder.listFiles()) {
+					size += f.length();
+				}
+			}
+		}
+		return size;
+	}
+
+	@Test
+	public void bufferedValuesAreVisibleToReads() throws Exception {
+		start(3600 * 1000);
+		final List<RecordedDataStorage> storages = new ArrayList<>();
+		for (int s = 0; s < NR_SERIES; s++) {
+			storages.add(createStorage(sdb, "series" + s));
+		}
+		for (int i = 0; i < NR_VALUES; i++) {
+			for (RecordedDataStorage rds : storages) {
+				rds.insertValue(value(i));
+			}
+			if (i % 100 == 0) {
+				Assert.assertEquals(START + i * 1000, storages.get(i % NR_SERIES).getPreviousValue(Long.MAX_VALUE).getTimestamp());
+			}
+		}
+		for (RecordedDataStorage rds : storages) {
+			final List<SampledValue> values = rds.getValues(Long.MIN_VALUE);
+			Assert.assertEquals(NR_VALUES, values.size());
+			for (int i = 0; i < NR_VALUES; i++) {
+				Assert.assertEquals(START + i * 1000, values.get(i).getTimestamp());
+			}
+		}
+	}
+
+	@Test
+	public void valuesAreCommittedPeriodically() throws Exception {
+		start(100);
+		final RecordedDataStorage rds = createStorage(sdb, "periodic");
+		final List<SampledValue> values = new ArrayList<>();
+		for (int i = 0; i < NR_VALUES; i++) {
+			values.add(value(i));
+		}
+		rds.insertValues(values);
+		// 16 byte header plus 17 bytes per value
+		final long expectedSize = 16 + NR_VALUES * 17;
+		final long end = System.currentTimeMillis() + 5000;
+		while (sizeOnDisk("periodic") < expectedSize && System.currentTimeMillis() < end) {
+			Thread.sleep(50);
+		}
+		Assert.assertEquals(expectedSize, sizeOnDisk("periodic"));
+	}
+
+	@Test
+	public void pendingValuesAreCommittedOnShutdown() throws Exception {
+		start(3600 * 1000);
+		final RecordedDataStorage rds = createStorage(sdb, "shutdown");
+		for (int i = 0; i < NR_VALUES; i++) {
+			rds.insertValue(value(i));
+		}
+		sdb.deactivate(null);
+		sdb = new SlotsDb(SlotsDb.DB_TEST_ROOT_FOLDER);
+		Assert.assertEquals(NR_VALUES, sdb.getRecordedDataStorage("shutdown").getValues(Long.MIN_VALUE).size());
+	}
+
+	@Test
+	public void batchSpanningSeveralDaysIsCommitted() throws Exception {
+		start(3600 * 1000);
+		final RecordedDataStorage rds = createStorage(sdb, "days");
+		final List<SampledValue> values = new ArrayList<>();
+		for (int i = 0; i < NR_VALUES; i++) {
+			values.add(new SampledValue(DoubleValues.of(i), START + i * ONE_DAY / 100, Quality.GOOD));
+		}
+		rds.insertValues(values);
+		sdb.deactivate(null);
+		sdb = new SlotsDb(SlotsDb.DB_TEST_ROOT_FOLDER);
+		final List<SampledValue> result = sdb.getRecordedDataStorage("days").getValues(Long.MIN_VALUE);
+		Assert.assertEquals(NR_VALUES, result.size());
+		for (int i = 0; i < NR_VALUES; i++) {
+			Assert.assertEquals(START + i * ONE_DAY / 100, result.get(i).getTimestamp());
+		}
+	}
+
+	@Test
+	public void valuesWithoutConfigurationAreDropped() throws Exception {
+		start(3600 * 1000);
+		final SlotsDbStorage rds = new SlotsDbStorage("unconfigured", null, sdb);
+		for (int i = 0; i < NR_VALUES; i++) {
+			rds.insertValue(value(i));
+		}
+		rds.commitPending();
+		Assert.assertFalse(sdb.getAppendBuffer().hasPending(rds));
+		final RecordedDataConfiguration conf = new RecordedDataConfiguration();
+		conf.setStorageType(StorageType.ON_VALUE_UPDATE);
+		rds.setConfiguration(conf);
+		Assert.assertEquals(0, rds.getValues(Long.MIN_VALUE).size());
+	}
+
+	@Test
+	public void valuesOfDeletedStorageAreDiscarded() throws Exception {
+		start(3600 * 1000);
+		final RecordedDataStorage rds = createStorage(sdb, "deleted");
+		for (int i = 0; i < NR_VALUES; i++) {
+			rds.insertValue(value(i));
+		}
+		Assert.assertTrue(sdb.deleteRecordedDataStorage("deleted"));
+		Assert.assertFalse(sdb.getAppendBuffer().hasPending((SlotsDbStorage) rds));
+		sdb.getAppendBuffer().commit();
+		Assert.assertEquals(0, sizeOnDisk("deleted"));
+	}
+
+	@Test
+	public void concurrentAppendsWork() throws Exception {
+		start(20);
+		final int nrThreads = 4;
+		final List<RecordedDataStorage> storages = new ArrayList<>();
+		for (int s = 0; s < nrThreads; s++) {
+			storages.add(createStorage(sdb, "concurrent" + s));
+		}
+		final ExecutorService exec = Executors.newFixedThreadPool(nrThreads);
+		try {
+			final List<Future<Void>> results = new ArrayList<>();
+			for (final RecordedDataStorage rds : storages) {
+				results.add(exec.submit(new Callable<Void>() {
+
+					@Override
+					public Void call() throws Exception {
+						for (int i = 0; i < NR_VALUES; i++) {
+							rds.insertValue(value(i));
+							if (i % 50 == 0)
+								Assert.assertEquals(i + 1, rds.size());
+						}
+						return null;
+					}
+				}));
+			}
+			for (Future<Void> f : results) {
+				f.get(30, TimeUnit.SECONDS);
+			}
+		} finally {
+			exec.shutdownNow();
+		}
+		for (RecordedDataStorage rds : storages) {
+			Assert.assertEquals(NR_VALUES, rds.size());
+		}
+	}
+
+}
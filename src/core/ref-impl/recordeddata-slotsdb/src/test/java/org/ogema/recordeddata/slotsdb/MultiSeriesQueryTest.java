@@ -0,0 +1,103 @@
+/**
+ * Copyright 2011-2018 Fraunhofer-Gesellschaft zur Förderung der angewandten Wissenschaften e.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ogema.recordeddata.slotsdb;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.ogema.core.channelmanager.measurements.Quality;
+import org.ogema.core.channelmanager.measurements.SampledValue;
+import org.ogema.core.recordeddata.RecordedDataConfiguration;
+import org.ogema.core.recordeddata.RecordedDataConfiguration.StorageType;
+import org.ogema.core.recordeddata.ReductionMode;
+import org.ogema.recordeddata.RecordedDataStorage;
+import org.ogema.recordeddata.TimeSeriesQueryListener;
+
+/**
+ * Queries for multiple time series must return the same values as individual queries
+ */
+public class MultiSeriesQueryTest extends DbTest {
+
+	private static final long START = 40 * ONE_DAY;
+	private static final long STEP = 15 * 60 * 1000;
+	private static final int NR_SERIES = 12;
+	// three days
+	private static final int NR_VALUES = (int) (3 * ONE_DAY / STEP);
+
+	private static List<String> createSeries() throws Exception {
+		final List<String> ids = new ArrayList<>();
+		for (int s = 0; s < NR_SERIES; s++) {
+			final String id = "multi/series" + s;
+			final RecordedDataConfiguration conf = new RecordedDataConfiguration();
+			conf.setStorageType(s % 2 == 0 ? StorageType.ON_VALUE_UPDATE : StorageType.FIXED_INTERVAL);
+			conf.setFixedInterval(STEP);
+			final RecordedDataStorage rds = sdb.createRecordedDataStorage(id, conf);
+			final List<SampledValue> values = new ArrayList<>(NR_VALUES);
+			for (int i = 0; i < NR_VALUES; i++) {
+				values.add(new SampledValue(DoubleValues.of(s * i), START + i * STEP, i % 5 == 0 ? Quality.BAD : Quality.GOOD));
+			}
+			rds.insertValues(values);
+			ids.add(id);
+		}
+		return ids;
+	}
+
+	private static void assertEqual(List<SampledValue> expected, List<SampledValue> actual) {
+		Assert.assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			Assert.assertEquals(expected.get(i).getTimestamp(), actual.get(i).getTimestamp());
+			Assert.assertEquals(expected.get(i).getValue().getDoubleValue(), actual.get(i).getValue().getDoubleValue(), 0.0001);
+			Assert.assertEquals(expected.get(i).getQuality(), actual.get(i).getQuality());
+		}
+	}
+
+	@Test
+	public void multiSeriesQueriesWork() throws Exception {
+		final List<String> ids = createSeries();
+		final List<String> query = new ArrayList<>(ids);
+		query.add("doesNotExist");
+		final long start = START + ONE_DAY / 2;
+		final long end = START + 5 * ONE_DAY / 2;
+		final ConcurrentMap<String, Integer> notified = new ConcurrentHashMap<>();
+		final Map<String, List<SampledValue>> raw = sdb.getValues(query, start, end, 0, null, new TimeSeriesQueryListener() {
+
+			@Override
+			public void valuesAvailable(String id, List<SampledValue> values) {
+				Assert.assertNull("Listener called twice for " + id, notified.put(id, values.size()));
+			}
+		});
+		Assert.assertEquals(ids, new ArrayList<>(raw.keySet()));
+		Assert.assertEquals(ids.size(), notified.size());
+		for (String id : ids) {
+			final List<SampledValue> expected = sdb.getRecordedDataStorage(id).getValues(start, end);
+			Assert.assertFalse(expected.isEmpty());
+			assertEqual(expected, raw.get(id));
+			Assert.assertEquals(expected.size(), notified.get(id).intValue());
+		}
+		final Map<String, List<SampledValue>> reduced = sdb.getValues(ids, start, end, 4 * STEP, ReductionMode.AVERAGE, null);
+		for (String id : ids) {
+			assertEqual(sdb.getRecordedDataStorage(id).getValues(start, end, 4 * STEP, ReductionMode.AVERAGE), reduced.get(id));
+		}
+		Assert.assertTrue(sdb.getValues(Arrays.asList("doesNotExist"), start, end, 0, null, null).isEmpty());
+	}
+
+}
@@ -0,0 +1,125 @@
+/**
+ * Copyright 2011-2018 Fraunhofer-Gesellschaft zur Förderung der angewandten Wissenschaften e.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ogema.recordeddata.slotsdb;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.ogema.core.channelmanager.measurements.Quality;
+import org.ogema.core.channelmanager.measurements.SampledValue;
+import org.ogema.core.recordeddata.RecordedDataConfiguration;
+import org.ogema.core.recordeddata.RecordedDataConfiguration.StorageType;
+import org.ogema.core.recordeddata.ReductionMode;
+import org.ogema.core.recordeddata.TimestampedDoubleBlock;
+import org.ogema.recordeddata.DataRecorderException;
+import org.ogema.recordeddata.RecordedDataStorage;
+
+/**
+ * Range reads on log files that are large enough to be memory-mapped
+ */
+public class RangeReadTest extends DbTest {
+
+	private static final int NR_VALUES = 10000;
+	private static final long START = 10 * ONE_DAY + 3600 * 1000;
+
+	private static RecordedDataStorage createStorage(String id, StorageType type) throws DataRecorderException {
+		final RecordedDataConfiguration conf = new RecordedDataConfiguration();
+		conf.setStorageType(type);
+		conf.setFixedInterval(1000);
+		final RecordedDataStorage rds = sdb.createRecordedDataStorage(id, conf);
+		final List<SampledValue> values = new ArrayList<>(NR_VALUES);
+		for (int i = 0; i < NR_VALUES; i++) {
+			values.add(new SampledValue(DoubleValues.of((double) i), START + i * 1000, Quality.GOOD));
+		}
+		rds.insertValues(values);
+		return rds;
+	}
+
+	private static void checkRanges(RecordedDataStorage rds) throws DataRecorderException {
+		Assert.assertEquals(NR_VALUES, rds.getValues(Long.MIN_VALUE, Long.MAX_VALUE).size());
+		// end time is exclusive; for fixed intervals timestamps are rounded to the nearest slot
+		final List<SampledValue> part = rds.getValues(START + 1000 * 1000, START + 1999 * 1000 + 500);
+		Assert.assertEquals(1000, part.size());
+		Assert.assertEquals(START + 1000 * 1000, part.get(0).getTimestamp());
+		Assert.assertEquals(1999, part.get(part.size() - 1).getValue().getDoubleValue(), 0.001);
+		Assert.assertEquals(START + 5000 * 1000, rds.getNextValue(START + 5000 * 1000 - 1).getTimestamp());
+		Assert.assertEquals(START + 5000 * 1000, rds.getPreviousValue(START + 5000 * 1000 + 1).getTimestamp());
+		final TimestampedDoubleBlock block = new TimestampedDoubleBlock();
+		Assert.assertEquals(1000, rds.getValues(START + 1000 * 1000, START + 1999 * 1000 + 500, block));
+		Assert.assertEquals(part.size(), block.size());
+		for (int i = 0; i < block.size(); i++) {
+			Assert.assertEquals(part.get(i).getTimestamp(), block.getTimestamp(i));
+			Assert.assertEquals(part.get(i).getValue().getDoubleValue(), block.getValue(i), 0.001);
+		}
+		Assert.assertEquals(NR_VALUES, rds.getValues(Long.MIN_VALUE, Long.MAX_VALUE, block));
+		Assert.assertEquals(NR_VALUES + 1000, block.size());
+		// interleaved write and read access
+		rds.insertValue(new SampledValue(DoubleValues.of(-1), START + NR_VALUES * 1000, Quality.GOOD));
+		Assert.assertEquals(START + NR_VALUES * 1000, rds.getPreviousValue(Long.MAX_VALUE).getTimestamp());
+		Assert.assertEquals(NR_VALUES + 1, rds.getValues(START).size());
+	}
+
+	private static void checkReduction(RecordedDataStorage rds) {
+		// interval does not divide the period, so the last interval is shorter
+		final long interval = 3000 * 1000;
+		final List<SampledValue> raw = rds.getValues(START, START + NR_VALUES * 1000);
+		final List<SampledValue> minmax = rds.getValues(START, START + NR_VALUES * 1000, interval, ReductionMode.MIN_MAX_VALUE);
+		final List<SampledValue> avg = rds.getValues(START, START + NR_VALUES * 1000, interval, ReductionMode.AVERAGE);
+		Assert.assertEquals(8, minmax.size());
+		Assert.assertEquals(4, avg.size());
+		for (int i = 0; i < avg.size(); i++) {
+			final long t0 = START + i * interval;
+			double min = Double.MAX_VALUE, max = Double.NEGATIVE_INFINITY, sum = 0;
+			int cnt = 0;
+			for (SampledValue sv : raw) {
+				if (sv.getTimestamp() < t0 || sv.getTimestamp() >= t0 + interval)
+					continue;
+				final double d = sv.getValue().getDoubleValue();
+				min = Math.min(min, d);
+				max = Math.max(max, d);
+				sum += d;
+				cnt++;
+			}
+			Assert.assertEquals(t0, avg.get(i).getTimestamp());
+			Assert.assertEquals(sum / cnt, avg.get(i).getValue().getDoubleValue(), 0.001);
+			Assert.assertEquals(min, minmax.get(2 * i).getValue().getDoubleValue(), 0.001);
+			Assert.assertEquals(max, minmax.get(2 * i + 1).getValue().getDoubleValue(), 0.001);
+		}
+	}
+
+	@Test
+	public void reductionsWorkForFlexibleInterval() throws DataRecorderException {
+		checkReduction(createStorage("reductionFlexible", StorageType.ON_VALUE_UPDATE));
+	}
+
+	@Test
+	public void reductionsWorkForFixedInterval() throws DataRecorderException {
+		checkReduction(createStorage("reductionFixed", StorageType.FIXED_INTERVAL));
+	}
+
+	@Test
+	public void rangeReadsWorkForFlexibleInterval() throws DataRecorderException {
+		checkRanges(createStorage("rangeReadFlexible", StorageType.ON_VALUE_UPDATE));
+	}
+
+	@Test
+	public void rangeReadsWorkForFixedInterval() throws DataRecorderException {
+		checkRanges(createStorage("rangeReadFixed", StorageType.FIXED_INTERVAL));
+	}
+
+}
@@ -0,0 +1,209 @@
+/**
+ * Copyright 2011-2018 Fraunhofer-Gesellschaft zur Förderung der angewandten Wissenschaften e.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ogema.recordeddata.slotsdb;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.ogema.core.channelmanager.measurements.Quality;
+import org.ogema.core.channelmanager.measurements.SampledValue;
+import org.ogema.core.recordeddata.RecordedDataConfiguration;
+import org.ogema.core.recordeddata.RecordedDataConfiguration.StorageType;
+import org.ogema.core.recordeddata.ReductionMode;
+import org.ogema.recordeddata.DataRecorderException;
+import org.ogema.recordeddata.RecordedDataStorage;
+
+/**
+ * Reduced queries answered from pre-aggregated rollups must match those computed from raw data 
+ */
+public class RollupTest extends SlotsDbTest {
+
+	private static final long START = 20 * ONE_DAY;
+	private static final long STEP = 10 * 1000;
+	// two and a half days
+	private static final int NR_VALUES = (int) (5 * ONE_DAY / 2 / STEP);
+	private static final long HOUR = 3600 * 1000;
+
+	private SlotsDb sdb;
+
+	@Before
+	public void setup() {
+		deleteTestFiles();
+		System.setProperty(SlotsDb.ROLLUPS_PROPERTY, "true");
+		sdb = new SlotsDb(SlotsDb.DB_TEST_ROOT_FOLDER);
+	}
+
+	@After
+	public void cleanup() {
+		if (sdb != null)
+			sdb.deactivate(null);
+		System.clearProperty(SlotsDb.ROLLUPS_PROPERTY);
+		deleteTestFiles();
+	}
+
+	private static void addValues(RecordedDataStorage rds, int from, int to) throws DataRecorderException {
+		final List<SampledValue> values = new ArrayList<>(to - from);
+		for (int i = from; i < to; i++) {
+			// every 7th value is bad and must be ignored
+			values.add(new SampledValue(DoubleValues.of(Math.sin(i / 100.)), START + i * STEP, i % 7 == 0 ? Quality.BAD : Quality.GOOD));
+		}
+		rds.insertValues(values);
+	}
+
+	private static RecordedDataStorage createStorage(SlotsDb sdb, String id) throws DataRecorderException {
+		final RecordedDataConfiguration conf = new RecordedDataConfiguration();
+		conf.setStorageType(StorageType.ON_VALUE_UPDATE);
+		return sdb.createRecordedDataStorage(id, conf);
+	}
+
+	/**
+	 * Compare the reduction to one computed by hand from the raw data
+	 */
+	private static void checkReduction(RecordedDataStorage rds, long start, long end, long interval) {
+		final List<SampledValue> raw = rds.getValues(start, end);
+		final List<SampledValue> avg = rds.getValues(start, end, interval, ReductionMode.AVERAGE);
+		final List<SampledValue> minmax = rds.getValues(start, end, interval, ReductionMode.MIN_MAX_VALUE);
+		final int nrIntervals = (int) ((end - start + interval - 1) / interval);
+		Assert.assertEquals(nrIntervals, avg.size());
+		Assert.assertEquals(2 * nrIntervals, minmax.size());
+		for (int i = 0; i < nrIntervals; i++) {
+			final long t0 = start + i * interval;
+			double min = Double.MAX_VALUE, max = Double.NEGATIVE_INFINITY, sum = 0;
+			int cnt = 0;
+			for (SampledValue sv : raw) {
+				if (sv.getTimestamp() < t0 || sv.getTimestamp() >= t0 + interval || sv.getQuality() != Quality.GOOD)
+					continue;
+				final double d = sv.getValue().getDoubleValue();
+				min = Math.min(min, d);
+				max = Math.max(max, d);
+				sum += d;
+				cnt++;
+			}
+			Assert.assertEquals(t0, avg.get(i).getTimestamp());
+			if (cnt == 0) {
+				Assert.assertEquals(Quality.BAD, avg.get(i).getQuality());
+				continue;
+			}
+			Assert.assertEquals(sum / cnt, avg.get(i).getValue().getDoubleValue(), 1E-6);
+			Assert.assertEquals(min, minmax.get(2 * i).getValue().getDoubleValue(), 1E-9);
+			Assert.assertEquals(max, minmax.get(2 * i + 1).getValue().getDoubleValue(), 1E-9);
+		}
+	}
+
+	@Test
+	public void reducedQueriesMatchRawData() throws DataRecorderException {
+		final RecordedDataStorage rds = createStorage(sdb, "rollupTest");
+		addValues(rds, 0, NR_VALUES);
+		Assert.assertTrue("Rollup files missing", new File(SlotsDb.DB_TEST_ROOT_FOLDER, SlotsDb.ROLLUPS_FOLDER).list().length > 0);
+		// aligned with the daily tier; ends with an incomplete day, which is read from raw data 
+		checkReduction(rds, START, START + NR_VALUES * STEP, ONE_DAY);
+		// aligned with the hourly tier
+		checkReduction(rds, START + HOUR, START + 30 * HOUR + 17 * STEP, 2 * HOUR);
+		// aligned with the minute tier
+		checkReduction(rds, START + 60000, START + 2 * HOUR, 5 * 60000);
+		// not aligned, computed from raw data only
+		checkReduction(rds, START + 1, START + 2 * HOUR, HOUR);
+		// interval extends beyond the data
+		checkReduction(rds, START - ONE_DAY, START + 4 * ONE_DAY, ONE_DAY);
+	}
+
+	@Test
+	public void rollupsCanBeRebuilt() throws DataRecorderException, IOException {
+		final RecordedDataStorage rds = createStorage(sdb, "rollupRebuildTest");
+		addValues(rds, 0, NR_VALUES);
+		final List<SampledValue> expected = rds.getValues(START, START + NR_VALUES * STEP, HOUR, ReductionMode.AVERAGE);
+		Assert.assertEquals(1, sdb.rebuildRollups("rollupRebuildTest"));
+		final List<SampledValue> rebuilt = rds.getValues(START, START + NR_VALUES * STEP, HOUR, ReductionMode.AVERAGE);
+		Assert.assertEquals(expected.size(), rebuilt.size());
+		for (int i = 0; i < expected.size(); i++) {
+			Assert.assertEquals(expected.get(i).getValue().getDoubleValue(), rebuilt.get(i).getValue().getDoubleValue(), 1E-6);
+		}
+		addValues(rds, NR_VALUES, NR_VALUES + 1000);
+		checkReduction(rds, START, START + (NR_VALUES + 1000) * STEP, HOUR);
+	}
+
+	/**
+	 * Data logged while rollups were disabled must not be hidden by the rollups
+	 */
+	@Test
+	public void rollupsAreNotUsedForUncoveredPeriods() throws DataRecorderException {
+		RecordedDataStorage rds = createStorage(sdb, "rollupCoverageTest");
+		addValues(rds, 0, NR_VALUES / 2);
+		sdb.deactivate(null);
+		System.clearProperty(SlotsDb.ROLLUPS_PROPERTY);
+		sdb = new SlotsDb(SlotsDb.DB_TEST_ROOT_FOLDER);
+		rds = sdb.getRecordedDataStorage("rollupCoverageTest");
+		addValues(rds, NR_VALUES / 2, 3 * NR_VALUES / 4);
+		sdb.deactivate(null);
+		System.setProperty(SlotsDb.ROLLUPS_PROPERTY, "true");
+		sdb = new SlotsDb(SlotsDb.DB_TEST_ROOT_FOLDER);
+		rds = sdb.getRecordedDataStorage("rollupCoverageTest");
+		checkReduction(rds, START, START + NR_VALUES * STEP, HOUR);
+		addValues(rds, 3 * NR_VALUES / 4, NR_VALUES);
+		checkReduction(rds, START, START + NR_VALUES * STEP, HOUR);
+	}
+
+	private static File getSeriesFolder() {
+		final File[] series = new File(SlotsDb.DB_TEST_ROOT_FOLDER, SlotsDb.ROLLUPS_FOLDER).listFiles();
+		Assert.assertEquals(1, series.length);
+		return series[0];
+	}
+
+	/**
+	 * A state file truncated by a crash must neither break appends nor queries
+	 */
+	@Test
+	public void truncatedStateIsIgnored() throws DataRecorderException, IOException {
+		RecordedDataStorage rds = createStorage(sdb, "rollupStateTest");
+		addValues(rds, 0, NR_VALUES / 2);
+		sdb.deactivate(null);
+		try (final FileOutputStream out = new FileOutputStream(new File(getSeriesFolder(), "state"))) {
+			out.write(new byte[] { 1, 2, 3 });
+		}
+		sdb = new SlotsDb(SlotsDb.DB_TEST_ROOT_FOLDER);
+		rds = sdb.getRecordedDataStorage("rollupStateTest");
+		checkReduction(rds, START, START + NR_VALUES * STEP, HOUR);
+		addValues(rds, NR_VALUES / 2, NR_VALUES);
+		checkReduction(rds, START, START + NR_VALUES * STEP, HOUR);
+	}
+
+	/**
+	 * Damaged rollup files must not hide the raw data
+	 */
+	@Test
+	public void unreadableRollupsFallBackToRawData() throws DataRecorderException {
+		RecordedDataStorage rds = createStorage(sdb, "rollupDamagedTest");
+		addValues(rds, 0, NR_VALUES);
+		sdb.deactivate(null);
+		final File[] files = new File(getSeriesFolder(), String.valueOf(HOUR)).listFiles();
+		Assert.assertTrue(files.length > 0);
+		for (File f : files) {
+			Assert.assertTrue(f.delete());
+			Assert.assertTrue(f.mkdir());
+		}
+		sdb = new SlotsDb(SlotsDb.DB_TEST_ROOT_FOLDER);
+		rds = sdb.getRecordedDataStorage("rollupDamagedTest");
+		checkReduction(rds, START, START + NR_VALUES * STEP, HOUR);
+	}
+
+}
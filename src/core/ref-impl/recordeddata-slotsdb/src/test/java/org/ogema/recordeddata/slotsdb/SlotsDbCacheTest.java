@@ -0,0 +1,147 @@
+/**
+ * Copyright 2011-2018 Fraunhofer-Gesellschaft zur Förderung der angewandten Wissenschaften e.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ogema.recordeddata.slotsdb;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.ogema.core.recordeddata.TimestampedDoubleBlock;
+
+import com.google.common.cache.CacheStats;
+
+public class SlotsDbCacheTest extends SlotsDbTest {
+
+	private static TimestampedDoubleBlock createBlock(int size) {
+		final TimestampedDoubleBlock block = new TimestampedDoubleBlock();
+		for (int i = 0; i < size; i++) {
+			block.add(i, i, (byte) 1);
+		}
+		return block;
+	}
+
+	// 16 byte header, followed by bytes with value (index % 100)
+	private static File createFile(File folder, int dataLength) throws IOException {
+		Assert.assertTrue(folder.isDirectory() || folder.mkdirs());
+		final File file = new File(folder, "f0.slots");
+		try (final FileOutputStream out = new FileOutputStream(file)) {
+			out.write(new byte[16]);
+			append(out, 0, dataLength);
+		}
+		return file;
+	}
+
+	private static void append(FileOutputStream out, int from, int to) throws IOException {
+		final byte[] bytes = new byte[to - from];
+		for (int i = from; i < to; i++)
+			bytes[i - from] = (byte) (i % 100);
+		out.write(bytes);
+	}
+
+	private static void check(ByteBuffer buffer, int dataLength) {
+		Assert.assertEquals(0, buffer.position());
+		Assert.assertEquals(dataLength, buffer.limit());
+		for (int i = 0; i < dataLength; i++)
+			Assert.assertEquals(i % 100, buffer.get(i));
+	}
+
+	@Test
+	public void dataSectionIsSharedAndOnlyTheTailIsRead() throws IOException {
+		final SlotsDbCache cache = new SlotsDbCache(1024 * 1024);
+		final int length = DataSection.MMAP_THRESHOLD * 2;
+		final File file = createFile(new File(SlotsDb.DB_TEST_ROOT_FOLDER, "sectionTest"), length);
+		final ByteBuffer first = cache.getCache("test", "f0.slots").getDataBuffer(file, length);
+		check(first, length);
+		try (final FileOutputStream out = new FileOutputStream(file, true)) {
+			append(out, length, length + 100);
+		}
+		// another FileObject of the same file
+		final ByteBuffer second = cache.getCache("test", "f0.slots").getDataBuffer(file, length + 100);
+		check(second, length + 100);
+		check(first, length);
+		// modified in place
+		try (final RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.seek(16 + length);
+			raf.write(new byte[100]);
+		}
+		cache.getCache("test", "f0.slots").invalidateDataBuffer(length);
+		final ByteBuffer third = cache.getCache("test", "f0.slots").getDataBuffer(file, length + 100);
+		Assert.assertEquals(length + 100, third.limit());
+		Assert.assertEquals((length - 1) % 100, third.get(length - 1));
+		Assert.assertEquals(0, third.get(length + 99));
+		check(second, length + 100);
+		cache.release(file.getParentFile());
+		Assert.assertTrue(file.delete());
+	}
+
+	@Test
+	public void mappedSectionsAreReleasedWithTheirFolder() throws IOException {
+		final SlotsDbCache cache = new SlotsDbCache(1024 * 1024);
+		final int length = DataSection.MMAP_THRESHOLD;
+		final File folder = new File(SlotsDb.DB_TEST_ROOT_FOLDER, "releaseTest");
+		final File file = createFile(folder, length);
+		final File other = createFile(new File(SlotsDb.DB_TEST_ROOT_FOLDER, "releaseTest2"), length);
+		check(cache.getCache("test", "f0.slots").getDataBuffer(file, length), length);
+		check(cache.getCache("test2", "f0.slots").getDataBuffer(other, length), length);
+		cache.release(folder);
+		Assert.assertTrue(file.delete());
+		Assert.assertTrue(folder.delete());
+		// sections of other folders are kept
+		check(cache.getCache("test2", "f0.slots").getDataBuffer(other, length), length);
+		cache.clearCache();
+		Assert.assertTrue(other.delete());
+	}
+
+	@Test
+	public void cacheSizeIsBounded() {
+		// room for roughly 10 blocks of 1000 values each
+		final SlotsDbCache cache = new SlotsDbCache(10 * 20000);
+		for (int i = 0; i < 100; i++) {
+			cache.getCache("test", "f" + i + ".slots").cache(createBlock(1000));
+		}
+		Assert.assertTrue("Cache exceeds its maximum size: " + cache.size(), cache.size() <= 10);
+		Assert.assertTrue(cache.getStats().evictionCount() >= 90);
+		// the most recent entry is still there
+		Assert.assertNotNull(cache.getCache("test", "f99.slots").getCache());
+	}
+
+	@Test
+	public void statisticsWork() {
+		final SlotsDbCache cache = new SlotsDbCache(1024 * 1024);
+		final RecordedDataCache fileCache = cache.getCache("test", "f0.slots");
+		Assert.assertNull(fileCache.getCache());
+		fileCache.cache(createBlock(10));
+		Assert.assertEquals(10, fileCache.getCache().size());
+		fileCache.invalidate();
+		Assert.assertNull(fileCache.getCache());
+		final CacheStats stats = cache.getStats();
+		Assert.assertEquals(1, stats.hitCount());
+		Assert.assertEquals(2, stats.missCount());
+	}
+
+	@Test
+	public void oversizedEntriesAreNotCached() {
+		final SlotsDbCache cache = new SlotsDbCache(1000);
+		final RecordedDataCache fileCache = cache.getCache("test", "f0.slots");
+		fileCache.cache(createBlock(1000));
+		Assert.assertNull(fileCache.getCache());
+	}
+
+}
@@ -0,0 +1,185 @@
+/**
+ * Copyright 2011-2018 Fraunhofer-Gesellschaft zur Förderung der angewandten Wissenschaften e.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ogema.resourcemanager.impl;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.ogema.core.channelmanager.measurements.SampledValue;
+import org.ogema.core.model.simple.FloatResource;
+import org.ogema.core.recordeddata.RecordedDataConfiguration;
+import org.ogema.core.recordeddata.ReductionMode;
+import org.ogema.persistence.impl.mem.MemoryResourceDB;
+import org.ogema.recordeddata.DataRecorder;
+import org.ogema.recordeddata.RecordedDataStorage;
+import org.ogema.recordeddata.TimeSeriesQueryListener;
+import org.ogema.resourcetree.SimpleResourceData;
+import org.ogema.resourcetree.TreeElement;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of value writes under the global resource lock of the {@link ResourceDBManager}, while another
+ * thread keeps changing the resource structure. Each writer thread writes its own float resource under the read
+ * lock, like the setters of the value resources, and resolves it by an optimistic read, like ResourceBase#getEl. 
+ * lockStripes 1 corresponds to a single read-write lock, 0 means the default, one stripe per processor.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Group)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class LockContentionBenchmark {
+
+	private static final String APP_ID = "lockBenchmark";
+
+	@Param({ "1", "0" })
+	public int lockStripes;
+
+	private MemoryResourceDB db;
+	private ResourceDBManager dbMan;
+	private int writers;
+	private int structureCounter;
+
+	@State(Scope.Thread)
+	public static class Writer {
+
+		private TreeElement el;
+		private float value;
+
+		@Setup(Level.Trial)
+		public void createResource(LockContentionBenchmark b) {
+			synchronized (b) {
+				el = b.db.addResource("value" + b.writers++, FloatResource.class, APP_ID);
+			}
+		}
+
+	}
+
+	@Setup(Level.Trial)
+	public void setup() {
+		if (lockStripes > 0)
+			System.setProperty(ResourceDBManager.PROP_LOCK_STRIPES, String.valueOf(lockStripes));
+		else
+			System.clearProperty(ResourceDBManager.PROP_LOCK_STRIPES);
+		db = new MemoryResourceDB();
+		dbMan = new ResourceDBManager(db, new NoDataRecorder(), null, null);
+	}
+
+	private void writeValue(Writer w) {
+		dbMan.lockRead();
+		try {
+			final SimpleResourceData data = resolve(w).getData();
+			data.setFloat(w.value++);
+		} finally {
+			dbMan.unlockRead();
+		}
+	}
+
+	private TreeElement resolve(Writer w) {
+		final long stamp = dbMan.tryOptimisticRead();
+		if (stamp != 0) {
+			final TreeElement el = w.el;
+			if (dbMan.validateOptimisticRead(stamp))
+				return el;
+		}
+		dbMan.lockStructureRead();
+		try {
+			return w.el;
+		} finally {
+			dbMan.unlockStructureRead();
+		}
+	}
+
+	private void changeStructure() {
+		dbMan.lockStructureWrite();
+		try {
+			final TreeElement el = db.addResource("structure" + structureCounter++, FloatResource.class, APP_ID);
+			dbMan.incrementRevision();
+			db.deleteResource(el);
+		} finally {
+			dbMan.unlockStructureWrite();
+		}
+	}
+
+	@Benchmark
+	@Group("values")
+	@GroupThreads(8)
+	public void valueWritesOnly(Writer w) {
+		writeValue(w);
+	}
+
+	@Benchmark
+	@Group("mixed")
+	@GroupThreads(7)
+	public void valueWrites(Writer w) {
+		writeValue(w);
+	}
+
+	@Benchmark
+	@Group("mixed")
+	@GroupThreads(1)
+	public void structureChanges() {
+		changeStructure();
+	}
+
+	private static class NoDataRecorder implements DataRecorder {
+
+		@Override
+		public RecordedDataStorage createRecordedDataStorage(String id, RecordedDataConfiguration configuration) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public RecordedDataStorage getRecordedDataStorage(String id) {
+			return null;
+		}
+
+		@Override
+		public boolean deleteRecordedDataStorage(String id) {
+			return false;
+		}
+
+		@Override
+		public List<String> getAllRecordedDataStorageIDs() {
+			return Collections.emptyList();
+		}
+
+		@Override
+		public Map<String, List<SampledValue>> getValues(Collection<String> ids, long startTime, long endTime,
+				long intervalSize, ReductionMode mode, TimeSeriesQueryListener listener) {
+			return Collections.emptyMap();
+		}
+
+	}
+
+}
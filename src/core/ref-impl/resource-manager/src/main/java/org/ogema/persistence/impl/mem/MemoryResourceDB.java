@@ -15,9 +15,11 @@
  */
 package org.ogema.persistence.impl.mem;
 
+import java.io.File;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -178,6 +180,11 @@ public class MemoryResourceDB implements ResourceDB {
 		return null;
 	}
 
+	@Override
+	public Iterable<TreeElement> getNodesByType(Class<? extends Resource> type) {
+		return Collections.emptyList();
+	}
+
 	@Override
 	public TreeElement getFilteredNodesByPath(String path, boolean isRoot) {
 		// TODO Auto-generated method stub
@@ -201,4 +208,10 @@ public class MemoryResourceDB implements ResourceDB {
 		// TODO Auto-generated method stub
 		
 	}
+
+	@Override
+	public void snapshot(File directory) {
+		throw new UnsupportedOperationException("Memory resource database has no persistent data.");
+	}
+
 }
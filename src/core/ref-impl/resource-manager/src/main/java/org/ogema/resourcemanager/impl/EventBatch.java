@@ -0,0 +1,54 @@
+/**
+ * Copyright 2011-2018 Fraunhofer-Gesellschaft zur Förderung der angewandten Wissenschaften e.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ogema.resourcemanager.impl;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.ogema.resourcetree.TreeElement;
+
+/**
+ * Structure and demand events of the resources created and activated by one thread while many resources are built
+ * at once, see {@link ResourceDBManager#startEventBatch()}. The events are fired together when the batch is
+ * finished: the listeners of a parent resource are looked up once for all of its new sub resources, and the demand
+ * listeners once for all activated resources.
+ */
+class EventBatch {
+
+    int depth;
+    /* new sub resources by path of the parent */
+    final Map<String, List<ResourceBase>> created = new LinkedHashMap<>();
+    final Map<String, ResourceBase> parents = new LinkedHashMap<>();
+    final List<TreeElement> activated = new ArrayList<>();
+
+    void created(ResourceBase parent, ResourceBase newResource) {
+        String path = parent.getPath();
+        List<ResourceBase> children = created.get(path);
+        if (children == null) {
+            children = new ArrayList<>(4);
+            created.put(path, children);
+            parents.put(path, parent);
+        }
+        children.add(newResource);
+    }
+
+    void activated(TreeElement el) {
+        activated.add(el);
+    }
+
+}
@@ -85,7 +85,8 @@ import org.ogema.core.model.ValueResource;
 public abstract class ResourceBase implements ConnectedResource {
 
 	private VirtualTreeElement el;
-	private int revision;
+	/* volatile, so that el is up to date for an optimistic read which sees the current revision, see getEl */
+	private volatile int revision;
 	protected final ApplicationResourceManager resMan;
 	protected final String path;
 	protected ResourceAccessRights accessRights;
@@ -275,11 +276,16 @@ public abstract class ResourceBase implements ConnectedResource {
 
 	@Override
 	public void addValueListener(ResourceValueListener<?> listener, boolean callOnEveryUpdate) {
+		addValueListener(listener, callOnEveryUpdate, false);
+	}
+
+	@Override
+	public void addValueListener(ResourceValueListener<?> listener, boolean callOnEveryUpdate, boolean coalesce) {
 		InternalValueChangedListenerRegistration reg;
 		if (listener instanceof InternalValueChangedListenerRegistration)
 			reg = (InternalValueChangedListenerRegistration) listener;
 		else
-			reg = new ValueListenerRegistration(this, listener, callOnEveryUpdate);
+			reg = new ValueListenerRegistration(this, listener, callOnEveryUpdate, coalesce);
 		resMan.registeredValueListeners.put(reg, listener);
 		final ResourceDBManager manager = resMan.getDatabaseManager();
 		ElementInfo info = manager.getElementInfo(getEl());
@@ -832,7 +838,7 @@ public abstract class ResourceBase implements ConnectedResource {
 				for (InternalValueChangedListenerRegistration l : oldReferenceListeners) {
 					info.addResourceListener(l); //XXX why?
 					if (!(l instanceof ResourceListenerRegistration)) {
-                        l.getResource().addValueListener(l.getValueListener(), l.isCallOnEveryUpdate());
+                        l.getResource().addValueListener(l.getValueListener(), l.isCallOnEveryUpdate(), l.isCoalescing());
                     } else {
                     	ResourceListenerRegistration rlr = (ResourceListenerRegistration) l;
                         l.getResource().addResourceListener(rlr.getListener(), rlr.isRecursive());
@@ -1164,7 +1170,7 @@ public abstract class ResourceBase implements ConnectedResource {
 				for (InternalValueChangedListenerRegistration l : oldReferenceListeners) {
 					info.addResourceListener(l); //XXX why?
 					if (!(l instanceof ResourceListenerRegistration)) {
-                        l.getResource().addValueListener(l.getValueListener(), l.isCallOnEveryUpdate());
+                        l.getResource().addValueListener(l.getValueListener(), l.isCallOnEveryUpdate(), l.isCoalescing());
                     } else {
                     	ResourceListenerRegistration rlr = (ResourceListenerRegistration) l;
                         l.getResource().addResourceListener(rlr.getListener(), rlr.isRecursive());
@@ -1430,11 +1436,22 @@ public abstract class ResourceBase implements ConnectedResource {
 
     //raises structure events for newly created resources; requires read lock held
     private void notifyCreate(ResourceBase parent, ResourceBase newResource) {
-        //FIXME loops between root and the created resource are not handled correctly
         if (parent == null) {
             //no listener registrations can exist for new top level resources
             return;
         }
+        EventBatch batch = resMan.getDatabaseManager().getEventBatch();
+        if (batch != null) {
+            batch.created(parent, newResource);
+            return;
+        }
+        notifyCreate(parent, Collections.singletonList(newResource));
+    }
+
+    /* raises structure events for new sub resources of parent; requires read lock held */
+    static void notifyCreate(ResourceBase parent, List<ResourceBase> newResources) {
+        //FIXME loops between root and the created resource are not handled correctly
+        ApplicationResourceManager resMan = parent.resMan;
         List<String> parentAliases = parent.computeAliasesForLocation();
         for (String alias: parentAliases) {
             for (Map.Entry<String, List<InternalStructureListenerRegistration>> e:
@@ -1447,13 +1464,17 @@ public abstract class ResourceBase implements ConnectedResource {
                 }
                 if (listenerResource.equalsLocation(parent)) {
                     for (InternalStructureListenerRegistration reg: e.getValue()) {
-                        reg.queueSubResourceAddedEvent(newResource.getElInternal());
+                        for (ResourceBase newResource: newResources) {
+                            reg.queueSubResourceAddedEvent(newResource.getElInternal());
+                        }
                     }
                 } else {
-                    if (listenerResource.equalsLocation(newResource)) {
-                        for (InternalStructureListenerRegistration reg: e.getValue()) {
-                            //FIXME path string mangling
-                            reg.queueResourceCreatedEvent(listenerPath.substring(1));
+                    for (ResourceBase newResource: newResources) {
+                        if (listenerResource.equalsLocation(newResource)) {
+                            for (InternalStructureListenerRegistration reg: e.getValue()) {
+                                //FIXME path string mangling
+                                reg.queueResourceCreatedEvent(listenerPath.substring(1));
+                            }
                         }
                     }
                 }
@@ -1789,11 +1810,20 @@ public abstract class ResourceBase implements ConnectedResource {
 	}
 
 	protected VirtualTreeElement getEl() {
-        resMan.getDatabaseManager().lockStructureRead();
+        final ResourceDBManager dbMan = resMan.getDatabaseManager();
+        // no lock required if the element has been resolved for the current revision and no structure change is in progress
+        final long stamp = dbMan.tryOptimisticRead();
+        if (stamp != 0 && revision == dbMan.getRevision()) {
+            final VirtualTreeElement e = this.el;
+            if (dbMan.validateOptimisticRead(stamp)) {
+                return e;
+            }
+        }
+        dbMan.lockStructureRead();
         try {
             return getElInternal();
         } finally {
-            resMan.getDatabaseManager().unlockStructureRead();
+            dbMan.unlockStructureRead();
         }
 	}
 
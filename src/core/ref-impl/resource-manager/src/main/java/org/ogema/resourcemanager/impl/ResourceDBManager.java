@@ -31,7 +31,6 @@ import java.util.Set;
 import java.util.TreeMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.ogema.accesscontrol.AccessManager;
 import org.ogema.core.model.Resource;
@@ -77,15 +76,23 @@ public class ResourceDBManager {
     private final AtomicInteger revisionCounter = new AtomicInteger(0);
 
 	final private Map<Class<? extends Resource>, List<ResourceDemandListenerRegistration>> resourceTypeListeners = new HashMap<>();
+	/**
+	 * Number of read stripes of the global lock, default is the number of processors.
+	 */
+	public static final String PROP_LOCK_STRIPES = "org.ogema.resourcemanager.lockstripes";
 	/**
 	 * Global lock for read- and write-operations.
 	 */
-	private final ReentrantReadWriteLock commitLock = new ReentrantReadWriteLock();
+	private final StripedReadWriteLock commitLock = new StripedReadWriteLock(
+			Integer.getInteger(PROP_LOCK_STRIPES, Runtime.getRuntime().availableProcessors()));
 	/** global lock guarding structural changes */
 	//private final ReentrantReadWriteLock structureLock = new ReentrantReadWriteLock();
 	protected RecordedDataManager recordedDataManager;
     protected ScheduleTreeElementFactory scheduleFactory = new ScheduleTreeElementFactory();
 
+    /* open event batch of the current thread, see startEventBatch */
+    private final ThreadLocal<EventBatch> eventBatch = new ThreadLocal<>();
+
     //private final Collection<StructureListenerRegistration> structureListeners = new ConcurrentLinkedQueue<>();
     private final NavigableMap<String, List<InternalStructureListenerRegistration>> structureListeners = new TreeMap<>();
 
@@ -446,20 +453,15 @@ public class ResourceDBManager {
 		return resdb.getAllResourceTypesInstalled();
 	}
     
-    public Collection<TreeElement> getElementsByType(Class<? extends Resource> resourceType, boolean includeSubTypes) {
+    public Iterable<TreeElement> getElementsByType(Class<? extends Resource> resourceType, boolean includeSubTypes) {
         if (resourceType == null) {
             resourceType = Resource.class;
         }
         if (!includeSubTypes) {
             return getElementsByType(resourceType);
         }
-		final List<TreeElement> result = new ArrayList<>();
-        for (Class<?> t: resdb.getResourceTypesInstalled(resourceType)) {
-            if (resourceType.isAssignableFrom(t)) {
-                result.addAll(getElementsByType(t));
-            }
-        }
-        return result;
+        // the type index of the database contains the sub types already
+        return resdb.getNodesByType(resourceType);
 	}
     
     private Collection<TreeElement> getElementsByType(final Class<?> resourceType) {
@@ -529,6 +531,11 @@ public class ResourceDBManager {
 	 * Called by Resource implementation when an inactive Resource is activated
 	 */
 	public void resourceActivated(TreeElement el) {
+		EventBatch batch = eventBatch.get();
+		if (batch != null) {
+			batch.activated(el);
+			return;
+		}
 		Class<? extends Resource> elType = el.getType();
 		synchronized (resourceTypeListeners) {
 			for (Map.Entry<Class<? extends Resource>, List<ResourceDemandListenerRegistration>> e : resourceTypeListeners
@@ -542,6 +549,33 @@ public class ResourceDBManager {
 		}
 	}
 
+	/*
+	 * Reports the resources activated during an event batch which are still active, all resources matching a
+	 * listener registration in one callback task.
+	 */
+	private void resourcesActivated(List<TreeElement> elements) {
+		if (elements.isEmpty()) {
+			return;
+		}
+		synchronized (resourceTypeListeners) {
+			for (Map.Entry<Class<? extends Resource>, List<ResourceDemandListenerRegistration>> e : resourceTypeListeners
+					.entrySet()) {
+				List<TreeElement> matching = new ArrayList<>();
+				for (TreeElement el : elements) {
+					if (el.isActive() && e.getKey().isAssignableFrom(el.getType())) {
+						matching.add(el);
+					}
+				}
+				if (matching.isEmpty()) {
+					continue;
+				}
+				for (ResourceDemandListenerRegistration reg : e.getValue()) {
+					reg.resourcesAvailable(matching);
+				}
+			}
+		}
+	}
+
 	/*
 	 * Called by Resource implementation when an active Resource is deactivated
 	 */
@@ -584,22 +618,75 @@ public class ResourceDBManager {
 
     public void lockStructureRead() {
         //structureLock.readLock().lock();
-        commitLock.readLock().lock();
+        commitLock.lockRead();
     }
 
     public void unlockStructureRead() {
         //structureLock.readLock().unlock();
-        commitLock.readLock().unlock();
+        commitLock.unlockRead();
     }
 
     public void lockStructureWrite() {
         //structureLock.writeLock().lock();
-        commitLock.writeLock().lock();
+        commitLock.lockWrite();
     }
 
     public void unlockStructureWrite() {
         //structureLock.writeLock().unlock();
-        commitLock.writeLock().unlock();
+        commitLock.unlockWrite();
+    }
+
+    /**
+     * Defers the structure events for new resources and the demand events for activated resources of the current
+     * thread until {@link #finishEventBatch()}, so that they can be fired together after many resources have been
+     * created at once. Batches may be nested, the events are fired when the outermost batch is finished.
+     */
+    public void startEventBatch() {
+        EventBatch batch = eventBatch.get();
+        if (batch == null) {
+            batch = new EventBatch();
+            eventBatch.set(batch);
+        }
+        batch.depth++;
+    }
+
+    public void finishEventBatch() {
+        EventBatch batch = eventBatch.get();
+        if (batch == null || --batch.depth > 0) {
+            return;
+        }
+        eventBatch.remove();
+        lockStructureRead();
+        try {
+            for (Map.Entry<String, List<ResourceBase>> e : batch.created.entrySet()) {
+                ResourceBase.notifyCreate(batch.parents.get(e.getKey()), e.getValue());
+            }
+        } finally {
+            unlockStructureRead();
+        }
+        resourcesActivated(batch.activated);
+    }
+
+    /* returns the open event batch of the current thread, or null */
+    EventBatch getEventBatch() {
+        return eventBatch.get();
+    }
+
+    /**
+     * Optimistic alternative to {@link #lockStructureRead()} for short reads, which must be confirmed by
+     * {@link #validateOptimisticRead(long)} afterwards; fall back to the read lock if that fails.
+     * @return a stamp, or 0 if a write lock is currently held.
+     */
+    public long tryOptimisticRead() {
+        return commitLock.tryOptimisticRead();
+    }
+
+    /**
+     * @return true if no write lock has been acquired since the stamp was obtained from
+     *         {@link #tryOptimisticRead()}.
+     */
+    public boolean validateOptimisticRead(long stamp) {
+        return commitLock.validate(stamp);
     }
 
     // TODO The convention for obtaining these locks must be explained here.
@@ -609,28 +696,28 @@ public class ResourceDBManager {
 	 * Lock for reading.
 	 */
 	public void lockRead() {
-		commitLock.readLock().lock();
+		commitLock.lockRead();
 	}
 
 	/**
 	 * Lock for writing.
 	 */
 	public void lockWrite() {
-		commitLock.writeLock().lock();
+		commitLock.lockWrite();
 	}
 
 	/**
 	 * Unlock reading.
 	 */
 	public void unlockRead() {
-		commitLock.readLock().unlock();
+		commitLock.unlockRead();
 	}
 
 	/**
 	 * Unlock writing.
 	 */
 	public void unlockWrite() {
-		commitLock.writeLock().unlock();
+		commitLock.unlockWrite();
 	}
 
 	/*
@@ -15,8 +15,10 @@
  */
 package org.ogema.resourcemanager.impl;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.Callable;
 import org.ogema.core.administration.AdminApplication;
@@ -59,6 +61,55 @@ public class ResourceDemandListenerRegistration implements RegisteredResourceDem
         }
     }
     
+    /*
+     * called by {@link ResourceDBManager} for the resources activated in an event batch,
+     * the listener is called for all of them in one callback task
+     */
+    public void resourcesAvailable(final List<TreeElement> elements) {
+        final List<Resource> resources = new ArrayList<>(elements.size());
+        for (TreeElement el : elements) {
+            try {
+                Resource res = resman.findResource(el);
+                if (res != null) {
+                    resources.add(res);
+                    availableResources.add(el);
+                }
+            } catch (SecurityException se) {
+                resman.logger.info("No permissions for resource matching ResourceDemand: {}", se.getMessage());
+            }
+        }
+        if (resources.isEmpty()) {
+            return;
+        }
+        resman.getApplicationManager().submitEvent(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                // like the single callbacks, a failure is reported to the caller, but only after all resources
+                Throwable failure = null;
+                for (Resource res : resources) {
+                    try {
+                        listener.resourceAvailable(res);
+                    } catch (Throwable t) {
+                        resman.logger.error("{}.resourceAvailable({}): ", listener, res, t);
+                        if (failure == null) {
+                            failure = t;
+                        }
+                    }
+                }
+                if (failure instanceof Error) {
+                    throw (Error) failure;
+                }
+                if (failure instanceof Exception) {
+                    throw (Exception) failure;
+                }
+                if (failure != null) {
+                    throw new Exception(failure);
+                }
+                return null;
+            }
+        });
+    }
+
     private Callable<Void> createResourceAvaillableCallback(final Resource res){
         return new Callable<Void>() {
             @Override
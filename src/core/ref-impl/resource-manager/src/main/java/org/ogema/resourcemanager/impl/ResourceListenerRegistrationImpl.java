@@ -22,6 +22,8 @@ import org.ogema.core.application.ApplicationManager;
 
 import org.ogema.core.model.Resource;
 import org.ogema.core.resourcemanager.ResourceValueListener;
+import org.ogema.events.ListenerCallback;
+import org.ogema.events.OrderedEvent;
 import org.ogema.resourcetree.TreeElement;
 import org.ogema.resourcetree.listeners.InternalValueChangedListenerRegistration;
 
@@ -82,18 +84,65 @@ public class ResourceListenerRegistrationImpl extends InternalValueChangedListen
 		}
 		final Resource changedResource = originPathResource != null ? originPathResource : r;
 
-		Callable<Void> listenerCall = new Callable<Void>() {
+		origin.resMan.getApplicationManager().submitEvent(new ListenerCall(changedResource));
+	}
 
-			@Override
-			public Void call() throws Exception {
-				org.ogema.core.resourcemanager.ResourceListener l = listener.get();
-				if (l != null) {
-					l.resourceChanged(changedResource);
-				}
-				return null;
+	/*
+	 * callbacks of one resource are executed in order, also by applications with concurrent callbacks; calls of the
+	 * same registration for the same resource are equal
+	 */
+	private class ListenerCall implements Callable<Void>, OrderedEvent, ListenerCallback {
+
+		private final Resource changedResource;
+
+		ListenerCall(Resource changedResource) {
+			this.changedResource = changedResource;
+		}
+
+		@Override
+		public Void call() throws Exception {
+			org.ogema.core.resourcemanager.ResourceListener l = listener.get();
+			if (l != null) {
+				l.resourceChanged(changedResource);
 			}
-		};
-		origin.resMan.getApplicationManager().submitEvent(listenerCall);
+			return null;
+		}
+
+		@Override
+		public Object getOrderingKey() {
+			return origin.path;
+		}
+
+		@Override
+		public Object getListener() {
+			final Object l = listener.get();
+			return l != null ? l : ResourceListenerRegistrationImpl.this;
+		}
+
+		@Override
+		public boolean isValueEvent() {
+			return true;
+		}
+
+		private ResourceListenerRegistrationImpl getRegistration() {
+			return ResourceListenerRegistrationImpl.this;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof ListenerCall)) {
+				return false;
+			}
+			final ListenerCall other = (ListenerCall) obj;
+			return other.getRegistration() == getRegistration()
+					&& other.changedResource.getPath().equals(changedResource.getPath());
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * System.identityHashCode(getRegistration()) + changedResource.getPath().hashCode();
+		}
+
 	}
 
 	@Override
@@ -0,0 +1,104 @@
+/**
+ * Copyright 2011-2018 Fraunhofer-Gesellschaft zur Förderung der angewandten Wissenschaften e.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ogema.resourcemanager.impl;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Read-write lock which spreads its readers over several {@link ReentrantReadWriteLock}s, selected by the id of the
+ * reading thread, so that concurrent value writes do not all compete for the state of a single lock. The write lock
+ * acquires all stripes in index order and is exclusive as before. Re-entrance works as for a single
+ * {@link ReentrantReadWriteLock}, since a thread always uses the same stripe for reading.
+ * <br>
+ * Additionally, the lock offers optimistic reads similar to a stamped lock: {@link #tryOptimisticRead()} returns a
+ * stamp which stays valid until the next write lock is acquired, see {@link #validate(long)}.
+ */
+class StripedReadWriteLock {
+
+    private static final int MAX_STRIPES = 64;
+
+    private final ReentrantReadWriteLock[] stripes;
+    private final int mask;
+    /* odd while the write lock is held, incremented when the outermost write lock is acquired and released */
+    private final AtomicLong stamp = new AtomicLong(2);
+
+    StripedReadWriteLock(int stripes) {
+        int n = 1;
+        while (n < stripes && n < MAX_STRIPES) {
+            n <<= 1;
+        }
+        this.stripes = new ReentrantReadWriteLock[n];
+        for (int i = 0; i < n; i++) {
+            this.stripes[i] = new ReentrantReadWriteLock();
+        }
+        this.mask = n - 1;
+    }
+
+    private ReentrantReadWriteLock stripe() {
+        final long id = Thread.currentThread().getId();
+        // thread ids are sequential, spread them over the stripes
+        final int h = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+        return stripes[(h ^ (h >>> 16)) & mask];
+    }
+
+    void lockRead() {
+        stripe().readLock().lock();
+    }
+
+    void unlockRead() {
+        stripe().readLock().unlock();
+    }
+
+    void lockWrite() {
+        for (ReentrantReadWriteLock l : stripes) {
+            l.writeLock().lock();
+        }
+        if (stripes[0].getWriteHoldCount() == 1) {
+            stamp.incrementAndGet();
+        }
+    }
+
+    void unlockWrite() {
+        if (stripes[0].getWriteHoldCount() == 1) {
+            stamp.incrementAndGet();
+        }
+        for (int i = stripes.length - 1; i >= 0; i--) {
+            stripes[i].writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return a stamp for an optimistic read, or 0 if the write lock is currently held.
+     */
+    long tryOptimisticRead() {
+        final long s = stamp.get();
+        return (s & 1) == 0 ? s : 0;
+    }
+
+    /**
+     * @return true if the write lock has not been acquired since the stamp was obtained from
+     *         {@link #tryOptimisticRead()}.
+     */
+    boolean validate(long stamp) {
+        return stamp != 0 && this.stamp.get() == stamp;
+    }
+
+    int getStripeCount() {
+        return stripes.length;
+    }
+
+}
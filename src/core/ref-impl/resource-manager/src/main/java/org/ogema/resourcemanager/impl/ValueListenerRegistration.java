@@ -16,11 +16,15 @@
 package org.ogema.resourcemanager.impl;
 
 import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
 import org.ogema.core.administration.AdminApplication;
 import org.ogema.core.application.ApplicationManager;
 
 import org.ogema.core.model.Resource;
 import org.ogema.core.resourcemanager.ResourceValueListener;
+import org.ogema.events.ListenerCallback;
+import org.ogema.events.OrderedEvent;
 import org.ogema.resourcetree.listeners.InternalValueChangedListenerRegistration;
 
 /**
@@ -35,11 +39,20 @@ public class ValueListenerRegistration extends InternalValueChangedListenerRegis
 	@SuppressWarnings("rawtypes")
 	protected final ResourceValueListener listener;
 	protected final boolean callOnEveryUpdate;
+	protected final boolean coalescing;
+	// last callback submitted by a coalescing registration
+	private final AtomicReference<ListenerCall> pendingCall = new AtomicReference<>();
 
 	public ValueListenerRegistration(ResourceBase origin, ResourceValueListener<?> listener, boolean callOnEveryUpdate) {
+		this(origin, listener, callOnEveryUpdate, false);
+	}
+
+	public ValueListenerRegistration(ResourceBase origin, ResourceValueListener<?> listener, boolean callOnEveryUpdate,
+			boolean coalescing) {
 		this.origin = origin;
 		this.listener = listener;
 		this.callOnEveryUpdate = callOnEveryUpdate;
+		this.coalescing = coalescing;
 	}
 
 	@Override
@@ -47,17 +60,88 @@ public class ValueListenerRegistration extends InternalValueChangedListenerRegis
 		if (!callOnEveryUpdate && !valueChanged) {
 			return;
 		}
-		Callable<Void> listenerCall = new Callable<Void>() {
-
-			@Override
-			@SuppressWarnings("unchecked")
-			public Void call() throws Exception {
-				if (isActive())
-					listener.resourceChanged(getResource()); //always call on registration resource
-				return null;
+		if (!coalescing) {
+			origin.resMan.getApplicationManager().submitEvent(new ListenerCall());
+			return;
+		}
+		final ListenerCall call = new ListenerCall();
+		ListenerCall pending;
+		do {
+			pending = pendingCall.get();
+			if (pending != null && pending.isWaiting()) {
+				// the waiting callback has not read the value yet
+				return;
 			}
-		};
-		origin.resMan.getApplicationManager().submitEvent(listenerCall);
+		} while (!pendingCall.compareAndSet(pending, call));
+		// only one thread gets here until the new call has started
+		final Future<Void> future = origin.resMan.getApplicationManager().submitEvent(call);
+		if (future == null) {
+			pendingCall.compareAndSet(call, null);
+		} else if (pending != null && future == pending.future) {
+			// merged by the executor into the previous call, the new one will never start
+			pendingCall.compareAndSet(call, pending);
+		} else {
+			call.future = future;
+		}
+	}
+
+	/*
+	 * callbacks of one resource are executed in order, also by applications with concurrent callbacks; calls of the
+	 * same registration are equal, the listener always sees the current value
+	 */
+	private class ListenerCall implements Callable<Void>, OrderedEvent, ListenerCallback {
+
+		// only used by coalescing registrations
+		volatile boolean started;
+		volatile Future<Void> future;
+
+		/*
+		 * true until the callback starts, unless it has been dropped by the executor; also true while the call is
+		 * being submitted
+		 */
+		boolean isWaiting() {
+			final Future<Void> f = future;
+			return !started && (f == null || !f.isDone());
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public Void call() throws Exception {
+			started = true;
+			if (isActive())
+				listener.resourceChanged(getResource()); //always call on registration resource
+			return null;
+		}
+
+		@Override
+		public Object getOrderingKey() {
+			return origin.path;
+		}
+
+		@Override
+		public Object getListener() {
+			return listener;
+		}
+
+		@Override
+		public boolean isValueEvent() {
+			return true;
+		}
+
+		private ValueListenerRegistration getRegistration() {
+			return ValueListenerRegistration.this;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof ListenerCall && ((ListenerCall) obj).getRegistration() == getRegistration();
+		}
+
+		@Override
+		public int hashCode() {
+			return System.identityHashCode(getRegistration());
+		}
+
 	}
 
 	@Override
@@ -76,6 +160,11 @@ public class ValueListenerRegistration extends InternalValueChangedListenerRegis
 		return callOnEveryUpdate;
 	}
 
+	@Override
+	public boolean isCoalescing() {
+		return coalescing;
+	}
+
 	@Override
 	@SuppressWarnings("unchecked")
 	public <T extends Resource> ResourceValueListener<T> getValueListener() {
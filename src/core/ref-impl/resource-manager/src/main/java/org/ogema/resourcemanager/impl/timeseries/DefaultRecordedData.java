@@ -35,10 +35,12 @@ import org.ogema.core.model.simple.BooleanResource;
 import org.ogema.core.model.simple.FloatResource;
 import org.ogema.core.model.simple.IntegerResource;
 import org.ogema.core.model.simple.TimeResource;
+import org.ogema.core.recordeddata.BulkReadable;
 import org.ogema.core.recordeddata.RecordedData;
 import org.ogema.core.recordeddata.RecordedDataConfiguration;
 import org.ogema.core.recordeddata.RecordedDataConfiguration.StorageType;
 import org.ogema.core.recordeddata.ReductionMode;
+import org.ogema.core.recordeddata.TimestampedDoubleBlock;
 import org.ogema.core.timeseries.InterpolationMode;
 import org.ogema.persistence.DBConstants;
 import org.ogema.recordeddata.DataRecorder;
@@ -55,7 +57,7 @@ import org.slf4j.LoggerFactory;
  * 
  * @author Jan Lapp, Fraunhofer IWES
  */
-public class DefaultRecordedData implements RecordedData {
+public class DefaultRecordedData implements RecordedData, BulkReadable {
 
 	public static final String SET_LAST_RECORDED_VALUE_PROP = "org.ogema.resources.setLastRecordedValueOnStart";
 
@@ -280,7 +282,8 @@ public class DefaultRecordedData implements RecordedData {
 	private synchronized void setupTimer() {
 		if (config.getStorageType() == StorageType.FIXED_INTERVAL) {
 			if (timer == null) {
-				timer = scheduler.createTimer(exec, logger);
+				// aligned, so that all series log at the same time stamps, in one task per interval
+				timer = scheduler.createAlignedTimer(exec, logger, null);
 				timer.addListener(new TimerListener() {
 
 					@Override
@@ -326,6 +329,19 @@ public class DefaultRecordedData implements RecordedData {
 		});
 	}
 
+	@Override
+	public int getValues(final long startTime, final long endTime, final TimestampedDoubleBlock target) {
+		if (!SECURITY_ENABLED)
+			return data.getValues(startTime, endTime, target);
+		return AccessController.doPrivileged(new PrivilegedAction<Integer>() {
+
+			@Override
+			public Integer run() {
+				return data.getValues(startTime, endTime, target);
+			}
+		});
+	}
+
 	@Override
 	public SampledValue getValue(long timestamp) {
 		return data.getValue(timestamp);
@@ -22,6 +22,7 @@ import java.util.List;
 import org.ogema.core.channelmanager.measurements.SampledValue;
 import org.ogema.core.recordeddata.RecordedDataConfiguration;
 import org.ogema.core.recordeddata.ReductionMode;
+import org.ogema.core.recordeddata.TimestampedDoubleBlock;
 import org.ogema.core.timeseries.InterpolationMode;
 import org.ogema.recordeddata.DataRecorderException;
 import org.ogema.recordeddata.RecordedDataStorage;
@@ -57,6 +58,11 @@ public class EmptyRecordedData implements RecordedDataStorage {
 		return Collections.emptyList();
 	}
 
+	@Override
+	public int getValues(long startTime, long endTime, TimestampedDoubleBlock target) {
+		return 0;
+	}
+
 	@Override
 	public SampledValue getValue(long timestamp) {
 		return null;
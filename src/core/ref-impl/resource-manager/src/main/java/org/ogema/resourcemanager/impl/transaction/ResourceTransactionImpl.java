@@ -86,6 +86,13 @@ public class ResourceTransactionImpl implements ResourceTransaction {
 		final boolean writeLock = requiresCommitWriteLock;
 		final boolean structureWriteLock = requiresStructureWriteLock;
 		lock(structureWriteLock, writeLock);
+		/*
+		 * Structure changes are built as one batch: the structure and demand events of all new and activated
+		 * resources are fired together at the end, not once per resource.
+		 */
+		boolean eventBatch = structureWriteLock;
+		if (eventBatch)
+			dbMan.startEventBatch();
 		try {
 			while ((action = pending.poll()) != null) {
 				if(Boolean.getBoolean("org.ogema.resourcemanager.impl.transaction.debug"))
@@ -96,11 +103,18 @@ public class ResourceTransactionImpl implements ResourceTransaction {
 				} catch (Exception e) {
 					// will be rethrown after rollback
 					appMan.getLogger().warn("Transaction failed at action {} for resource {}",action.getType(), action.getSource(), e);
+					// listeners learn about the changes before they are rolled back
+					if (eventBatch) {
+						eventBatch = false;
+						dbMan.finishEventBatch();
+					}
 					rollback(done,action,e);
 					return;
 				}
 			}
 		} finally {
+			if (eventBatch)
+				dbMan.finishEventBatch();
 			unlock(structureWriteLock, writeLock);
 		}
 	}
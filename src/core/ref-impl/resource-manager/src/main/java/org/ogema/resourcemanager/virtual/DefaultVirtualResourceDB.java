@@ -19,8 +19,11 @@ import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.RemovalListener;
 import com.google.common.cache.RemovalNotification;
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
@@ -73,7 +76,7 @@ public class DefaultVirtualResourceDB implements VirtualResourceDB {
         TreeElement te = realResources.addResource(name, type, appID);
         DefaultVirtualTreeElement dvte = getElement(te);
         // MemoryTreeElement updates
-        for (DefaultVirtualTreeElement child : dvte.virtualSubresources.values()) {
+        for (DefaultVirtualTreeElement child : dvte.getVirtualSubresources(false).values()) {
         	if (child.isVirtual()) {
         		((MemoryTreeElement) child.getEl()).setParent(dvte.getEl());
         	}
@@ -153,7 +156,7 @@ public class DefaultVirtualResourceDB implements VirtualResourceDB {
             if (oldResRef != null) {
                 replacement.setResRef(oldResRef);
             }
-			virtualElement.virtualSubresources.clear();
+			virtualElement.getVirtualSubresources(false).clear();
             virtualElement.setEl(replacement);
             if (elem.isToplevel()) {
                 topLevelElementCache.invalidate(elem.getName());
@@ -262,6 +265,35 @@ public class DefaultVirtualResourceDB implements VirtualResourceDB {
 		return vEls;
 	}
 
+	@Override
+	public Iterable<TreeElement> getNodesByType(Class<? extends Resource> type) {
+		final Iterable<TreeElement> realElements = realResources.getNodesByType(type);
+		return new Iterable<TreeElement>() {
+
+			@Override
+			public Iterator<TreeElement> iterator() {
+				final Iterator<TreeElement> it = realElements.iterator();
+				return new Iterator<TreeElement>() {
+
+					@Override
+					public boolean hasNext() {
+						return it.hasNext();
+					}
+
+					@Override
+					public TreeElement next() {
+						return getElement(it.next());
+					}
+
+					@Override
+					public void remove() {
+						throw new UnsupportedOperationException();
+					}
+				};
+			}
+		};
+	}
+
 	@Override
 	public TreeElement getFilteredNodesByPath(String path, boolean isRoot) {
 		// TODO Auto-generated method stub
@@ -285,4 +317,9 @@ public class DefaultVirtualResourceDB implements VirtualResourceDB {
 		
 	}
 
+	@Override
+	public void snapshot(File directory) throws IOException {
+		realResources.snapshot(directory);
+	}
+
 }
@@ -20,6 +20,7 @@ import java.lang.reflect.Method;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -28,6 +29,7 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 import org.ogema.core.model.Resource;
 import org.ogema.core.model.ResourceList;
@@ -61,7 +63,12 @@ public class DefaultVirtualTreeElement implements VirtualTreeElement {
 
     final DefaultVirtualResourceDB resourceDB;
     //final Map<String, DefaultVirtualTreeElement> virtualSubresources = new HashMap<>();
-    final Map<String, DefaultVirtualTreeElement> virtualSubresources;// = new HashMap<>();
+    // created with the first virtual child, most elements never get one
+    private volatile Map<String, DefaultVirtualTreeElement> virtualSubresources;// = new HashMap<>();
+
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<DefaultVirtualTreeElement, Map> VIRTUAL_SUBRESOURCES
+            = AtomicReferenceFieldUpdater.newUpdater(DefaultVirtualTreeElement.class, Map.class, "virtualSubresources");
 
     private static final AtomicLong IDCOUNTER = new AtomicLong(0);
     final long id = IDCOUNTER.getAndIncrement();
@@ -71,10 +78,20 @@ public class DefaultVirtualTreeElement implements VirtualTreeElement {
         this.el = getRealElement(el);
         resref = this.el.getResRef();
         this.resourceDB = resourceDB;
-        virtualSubresources = new MapMaker().weakValues().concurrencyLevel(2).initialCapacity(4).makeMap();
         parent = getParent();
     }
 
+    Map<String, DefaultVirtualTreeElement> getVirtualSubresources(boolean create) {
+        Map<String, DefaultVirtualTreeElement> map = virtualSubresources;
+        if (map != null || !create) {
+            return map != null ? map : Collections.<String, DefaultVirtualTreeElement>emptyMap();
+        }
+        // no lock, callers may hold the lock of a child element
+        VIRTUAL_SUBRESOURCES.compareAndSet(this, null,
+                new MapMaker().weakValues().concurrencyLevel(2).initialCapacity(4).<String, DefaultVirtualTreeElement>makeMap());
+        return virtualSubresources;
+    }
+
     private TreeElement getRealElement(TreeElement el) {
         while (el instanceof DefaultVirtualTreeElement) {
             el = ((DefaultVirtualTreeElement) el).el;
@@ -202,7 +219,7 @@ public class DefaultVirtualTreeElement implements VirtualTreeElement {
                 );
             }
         }
-        virtualSubresources.remove(name);
+        getVirtualSubresources(false).remove(name);
         DefaultVirtualTreeElement newChild = resourceDB.getElement(newElement);
         if (existingResRef != null) {
             newChild.setResRef(existingResRef);
@@ -228,11 +245,11 @@ public class DefaultVirtualTreeElement implements VirtualTreeElement {
             reference = resourceDB.getElement(getEl().addReference(direktRef, name, isDecorating));
         }
 
-        DefaultVirtualTreeElement existingVirtualChild = virtualSubresources.get(name);
+        DefaultVirtualTreeElement existingVirtualChild = getVirtualSubresources(false).get(name);
         if (existingVirtualChild != null) {
             TreeElement newRealElement = getEl().getChild(name);
             existingVirtualChild.realizedBy(newRealElement);
-            virtualSubresources.remove(name);
+            getVirtualSubresources(false).remove(name);
         }
 
         return reference;
@@ -242,13 +259,13 @@ public class DefaultVirtualTreeElement implements VirtualTreeElement {
     private void realizedBy(TreeElement e) {
         assert e.getName().equals(getName()) : "name mismatch: " + getPath() + " / " + e.getPath();
         for (TreeElement child : e.getChildren()) {
-            DefaultVirtualTreeElement vChild = virtualSubresources.get(child.getName());
+            DefaultVirtualTreeElement vChild = getVirtualSubresources(false).get(child.getName());
             if (vChild != null) {
                 vChild.realizedBy(child);
-                virtualSubresources.remove(child.getName());
+                getVirtualSubresources(false).remove(child.getName());
             }
         }
-        for (DefaultVirtualTreeElement vChild : virtualSubresources.values()) {
+        for (DefaultVirtualTreeElement vChild : getVirtualSubresources(false).values()) {
         	MemoryTreeElement mtw = (MemoryTreeElement) vChild.getEl();
         	mtw.setParent(e);
         }
@@ -266,15 +283,15 @@ public class DefaultVirtualTreeElement implements VirtualTreeElement {
     }
 
     Collection<DefaultVirtualTreeElement> getVirtualChildren() {
-        return virtualSubresources.values();
+        return getVirtualSubresources(false).values();
     }
 
     /** @return all real and virtual children. */
     public List<TreeElement> getAllChildren() {
         List<TreeElement> realChildren = getChildren();
-        List<TreeElement> allChildren = new ArrayList<>(realChildren.size() + virtualSubresources.size());
+        List<TreeElement> allChildren = new ArrayList<>(realChildren.size() + getVirtualSubresources(false).size());
         allChildren.addAll(realChildren);
-        allChildren.addAll(virtualSubresources.values());
+        allChildren.addAll(getVirtualSubresources(false).values());
         return allChildren;
     }
 
@@ -318,7 +335,7 @@ public class DefaultVirtualTreeElement implements VirtualTreeElement {
     }
 
     protected synchronized DefaultVirtualTreeElement getVirtualChild(String name) {
-        DefaultVirtualTreeElement child = virtualSubresources.get(name);
+        DefaultVirtualTreeElement child = getVirtualSubresources(false).get(name);
         if (child != null) {
         	assert child.getParent().equals(this) : "Child resource has multiple parents: p1="
 					+ getPath()+ ", p2=" + child.getParent().getPath() + ", child=" + child.getName();
@@ -335,13 +352,13 @@ public class DefaultVirtualTreeElement implements VirtualTreeElement {
             return null; // requested non existing decorator
         }
         child = resourceDB.getElement(name, el, optType, false);
-        virtualSubresources.put(name, child);
+        getVirtualSubresources(true).put(name, child);
         return child;
     }
 
     @Override
     public synchronized VirtualTreeElement getChild(String name, Class<? extends Resource> type) {
-        DefaultVirtualTreeElement child = virtualSubresources.get(name);
+        DefaultVirtualTreeElement child = getVirtualSubresources(false).get(name);
         if (child != null) {
         	assert child.getParent().equals(this) : "Child resource has multiple parents";
         	assert child.el instanceof MemoryTreeElement : "Virtual resource has invalid tree element: " + child.el.getPath(); 
@@ -349,7 +366,7 @@ public class DefaultVirtualTreeElement implements VirtualTreeElement {
         }
         //child = resourceDB.getElement(new MemoryTreeElement(name, type, el, true));
         child = resourceDB.getElement(name, el, type, true);
-        virtualSubresources.put(name, child);
+        getVirtualSubresources(true).put(name, child);
         return child;
     }
 
@@ -414,7 +431,7 @@ public class DefaultVirtualTreeElement implements VirtualTreeElement {
     /* after a create, the MemoryTreeElements in virtual subresources need to
     be replaced with elements containing the new parent resource */
     private static void rebuildVirtualSubtree(DefaultVirtualTreeElement e) {
-        for (Map.Entry<String, DefaultVirtualTreeElement> entrySet : e.virtualSubresources.entrySet()) {
+        for (Map.Entry<String, DefaultVirtualTreeElement> entrySet : e.getVirtualSubresources(false).entrySet()) {
             DefaultVirtualTreeElement value = entrySet.getValue();
             if (value.el instanceof MemoryTreeElement) {
             	value.el = new MemoryTreeElement((MemoryTreeElement) value.el, e);
@@ -569,7 +586,7 @@ public class DefaultVirtualTreeElement implements VirtualTreeElement {
         if (parent != null) {
             assert parent.el.getChild(getName()) == null;
             assert el instanceof MemoryTreeElement : "existing resource registered as virtual child";
-            parent.virtualSubresources.put(getName(), this);
+            parent.getVirtualSubresources(true).put(getName(), this);
         }
     }
 
@@ -0,0 +1,100 @@
+/**
+ * Copyright 2011-2018 Fraunhofer-Gesellschaft zur Förderung der angewandten Wissenschaften e.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ogema.resourcemanager.impl;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+public class StripedReadWriteLockTest {
+
+	@Test
+	public void stripeCountIsPowerOfTwo() {
+		assertEquals(1, new StripedReadWriteLock(0).getStripeCount());
+		assertEquals(8, new StripedReadWriteLock(6).getStripeCount());
+		assertEquals(64, new StripedReadWriteLock(1000).getStripeCount());
+	}
+
+	@Test
+	public void locksAreReentrant() {
+		StripedReadWriteLock lock = new StripedReadWriteLock(4);
+		lock.lockRead();
+		lock.lockRead();
+		lock.unlockRead();
+		lock.unlockRead();
+		lock.lockWrite();
+		lock.lockWrite();
+		lock.lockRead();
+		lock.unlockRead();
+		lock.unlockWrite();
+		lock.unlockWrite();
+	}
+
+	@Test
+	public void writeLockExcludesReaders() throws InterruptedException {
+		final StripedReadWriteLock lock = new StripedReadWriteLock(8);
+		final AtomicBoolean writing = new AtomicBoolean();
+		final AtomicBoolean readWhileWriting = new AtomicBoolean();
+		final CountDownLatch done = new CountDownLatch(8);
+		lock.lockWrite();
+		writing.set(true);
+		for (int i = 0; i < 8; i++) {
+			new Thread(new Runnable() {
+
+				@Override
+				public void run() {
+					lock.lockRead();
+					try {
+						readWhileWriting.compareAndSet(false, writing.get());
+					} finally {
+						lock.unlockRead();
+						done.countDown();
+					}
+				}
+			}).start();
+		}
+		assertFalse(done.await(100, TimeUnit.MILLISECONDS));
+		writing.set(false);
+		lock.unlockWrite();
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		assertFalse(readWhileWriting.get());
+	}
+
+	@Test
+	public void optimisticReadIsInvalidatedByWriteLock() {
+		StripedReadWriteLock lock = new StripedReadWriteLock(4);
+		long stamp = lock.tryOptimisticRead();
+		assertTrue(stamp != 0);
+		lock.lockRead();
+		lock.unlockRead();
+		assertTrue(lock.validate(stamp));
+		lock.lockWrite();
+		lock.lockWrite();
+		assertEquals(0, lock.tryOptimisticRead());
+		lock.unlockWrite();
+		assertEquals(0, lock.tryOptimisticRead());
+		lock.unlockWrite();
+		assertFalse(lock.validate(stamp));
+		long next = lock.tryOptimisticRead();
+		assertTrue(next != 0 && lock.validate(next));
+		assertFalse(lock.validate(0));
+	}
+
+}
@@ -54,9 +54,11 @@ import org.ogema.core.model.simple.BooleanResource;
 import org.ogema.core.model.simple.FloatResource;
 import org.ogema.core.model.simple.IntegerResource;
 import org.ogema.core.model.simple.TimeResource;
+import org.ogema.core.recordeddata.BulkReadable;
 import org.ogema.core.recordeddata.RecordedData;
 import org.ogema.core.recordeddata.RecordedDataConfiguration;
 import org.ogema.core.recordeddata.ReductionMode;
+import org.ogema.core.recordeddata.TimestampedDoubleBlock;
 import org.ogema.core.resourcemanager.ResourceManagement;
 import org.ogema.core.resourcemanager.ResourceValueListener;
 import org.ogema.exam.OsgiAppTestBase;
@@ -237,6 +239,36 @@ public class RecordedDataTest extends OsgiAppTestBase {
 		assertEquals(-7324, values.get(2).getValue().getIntegerValue());
 	}
 
+	@Test
+	public void blockReadsWorkThroughRecordedData() throws Exception {
+		final FloatResource resource = getApplicationManager().getResourceManagement().createResource(
+				newResourceName(), FloatResource.class);
+		resource.activate(true);
+		final RecordedData data = resource.getHistoricalData();
+		final RecordedDataConfiguration config = new RecordedDataConfiguration();
+		config.setStorageType(RecordedDataConfiguration.StorageType.ON_VALUE_UPDATE);
+		data.setConfiguration(config);
+
+		resource.setValue(1.5f);
+		Thread.sleep(20);
+		resource.setValue(-3f);
+		Thread.sleep(20);
+		resource.setValue(7f);
+		assertTrue(data instanceof BulkReadable);
+		final TimestampedDoubleBlock block = new TimestampedDoubleBlock();
+		assertEquals(3, ((BulkReadable) data).getValues(0, Long.MAX_VALUE, block));
+		final List<SampledValue> values = data.getValues(0);
+		assertEquals(values.size(), block.size());
+		for (int i = 0; i < values.size(); i++) {
+			assertEquals(values.get(i).getTimestamp(), block.getTimestamps()[i]);
+			assertEquals(values.get(i).getValue().getFloatValue(), block.getValues()[i], 0);
+		}
+		// the adapter takes the same path
+		block.clear();
+		assertEquals(3, TimestampedDoubleBlock.addValues(data, 0, Long.MAX_VALUE, block));
+		assertEquals(7f, block.getValues()[2], 0);
+	}
+
 	@Test
 	public void fixedIntervalUpdatesWork() throws Exception {
 		ResourceManagement resman = getApplicationManager().getResourceManagement();
@@ -21,6 +21,8 @@ import static org.ogema.exam.ResourceAssertions.*;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.Assert;
 import org.junit.Test;
@@ -34,7 +36,10 @@ import org.ogema.core.model.simple.IntegerResource;
 import org.ogema.core.model.simple.TimeResource;
 import org.ogema.core.resourcemanager.AccessMode;
 import org.ogema.core.resourcemanager.AccessPriority;
+import org.ogema.core.resourcemanager.ResourceDemandListener;
 import org.ogema.core.resourcemanager.ResourceOperationException;
+import org.ogema.core.resourcemanager.ResourceStructureEvent;
+import org.ogema.core.resourcemanager.ResourceStructureListener;
 import org.ogema.core.resourcemanager.transaction.ReadConfiguration;
 import org.ogema.core.resourcemanager.transaction.ResourceTransaction;
 import org.ogema.core.resourcemanager.transaction.TransactionFuture;
@@ -330,7 +335,45 @@ public class ResourceTransactionTest extends OsgiTestBase {
 		Assert.assertNull("ReadConfiguration.RETURN_NULL was ignored", v3.getValue());
 	}
 	
-	
-	
+	@Test
+	public void batchCreationFiresStructureAndDemandEvents() throws InterruptedException {
+		final TemperatureSensor top = resMan.createResource(newResourceName(), TemperatureSensor.class);
+		final Room room = top.location().room();
+		final CountDownLatch added = new CountDownLatch(2);
+		final ResourceStructureListener structureListener = new ResourceStructureListener() {
+
+			@Override
+			public void resourceStructureChanged(ResourceStructureEvent event) {
+				if (event.getType() == ResourceStructureEvent.EventType.SUBRESOURCE_ADDED)
+					added.countDown();
+			}
+		};
+		top.addStructureListener(structureListener);
+		final CountDownLatch available = new CountDownLatch(2);
+		final ResourceDemandListener<TemperatureSensor> demandListener = new ResourceDemandListener<TemperatureSensor>() {
+
+			@Override
+			public void resourceAvailable(TemperatureSensor resource) {
+				if (resource.equalsLocation(top) || resource.equalsLocation(room.temperatureSensor()))
+					available.countDown();
+			}
+
+			@Override
+			public void resourceUnavailable(TemperatureSensor resource) {
+			}
+		};
+		resAcc.addResourceDemand(TemperatureSensor.class, demandListener);
+		final ResourceTransaction transaction = resAcc.createResourceTransaction();
+		transaction.create(top.reading());
+		transaction.create(room.temperatureSensor());
+		transaction.activate(top, false, true);
+		transaction.commit();
+		assertExists(room.temperatureSensor());
+		assertTrue("missing subresource added events", added.await(5, TimeUnit.SECONDS));
+		assertTrue("missing resource available events", available.await(5, TimeUnit.SECONDS));
+		resAcc.removeResourceDemand(TemperatureSensor.class, demandListener);
+		top.removeStructureListener(structureListener);
+		top.delete();
+	}
 	
 }
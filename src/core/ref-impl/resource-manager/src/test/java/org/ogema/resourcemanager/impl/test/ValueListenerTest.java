@@ -459,4 +459,48 @@ public class ValueListenerTest extends OsgiTestBase {
 		tempSens.delete();
 	}
 
+	@Test
+	public void coalescingListenerGetsOnlyLatestValue() throws InterruptedException {
+		final FloatResource f = resMan.createResource(newResourceName(), FloatResource.class);
+		f.activate(false);
+		final CountDownLatch entered = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final List<Float> values = new ArrayList<>();
+		final CountDownLatch latestValue = new CountDownLatch(1);
+		ResourceValueListener<FloatResource> l = new ResourceValueListener<FloatResource>() {
+
+			@Override
+			public void resourceChanged(FloatResource resource) {
+				final float value = resource.getValue();
+				synchronized (values) {
+					values.add(value);
+				}
+				entered.countDown();
+				try {
+					release.await(5, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				if (value == 100) {
+					latestValue.countDown();
+				}
+			}
+		};
+		f.addValueListener(l, false, true);
+		f.setValue(0);
+		assertTrue(entered.await(5, TimeUnit.SECONDS));
+		// the listener is busy, all changes are merged into one waiting callback
+		for (int i = 1; i <= 100; i++) {
+			f.setValue(i);
+		}
+		release.countDown();
+		assertTrue("missing callback with latest value", latestValue.await(5, TimeUnit.SECONDS));
+		synchronized (values) {
+			assertEquals(2, values.size());
+			assertEquals(100f, values.get(1), 0f);
+		}
+		assertTrue(f.removeValueListener(l));
+		f.delete();
+	}
+
 }
@@ -93,6 +93,11 @@ public class RootResource implements Resource {
 		throw new UnsupportedOperationException("Not supported yet.");
 	}
 
+	@Override
+	public void addValueListener(ResourceValueListener<?> listener, boolean callOnEveryUpdate, boolean coalesce) {
+		throw new UnsupportedOperationException("Not supported yet.");
+	}
+
 	@Override
 	public boolean removeValueListener(ResourceValueListener<?> listener) {
 		throw new UnsupportedOperationException("Not supported yet.");